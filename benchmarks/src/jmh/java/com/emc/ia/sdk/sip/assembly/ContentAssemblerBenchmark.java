@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.sip.assembly;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.emc.ia.sdk.support.io.DefaultZipAssembler;
+import com.emc.ia.sdk.support.io.HashAssembler;
+import com.emc.ia.sdk.support.io.SingleHashAssembler;
+import com.emc.ia.sdk.support.io.ZipAssembler;
+
+
+/**
+ * Latency of adding the content of a domain object to a SIP, for the different deduplication strategies. A given
+ * fraction of the domain objects have content that was added before. The ZIP itself is discarded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContentAssemblerBenchmark {
+
+  private static final int CONTENT_SIZE = 4096;
+  private static final int NUM_DISTINCT_CONTENTS = 1024;
+
+  @Param({ "noDedup", "dedupOnRi", "dedupOnHash", "prefilteredDedupOnHash" })
+  private String dedup;
+
+  @Param({ "0", "50", "90" })
+  private int percentDuplicates;
+
+  private byte[][] contents;
+  private ContentAssembler<Integer> contentAssembler;
+  private ZipAssembler zip;
+  private int numObjects;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(percentDuplicates);
+    contents = new byte[NUM_DISTINCT_CONTENTS][CONTENT_SIZE];
+    for (byte[] content : contents) {
+      random.nextBytes(content);
+    }
+  }
+
+  @Setup(Level.Iteration)
+  public void begin() throws IOException {
+    contentAssembler = newContentAssembler(dedup);
+    zip = new DefaultZipAssembler();
+    zip.begin(new NullOutputStream());
+    contentAssembler.begin(zip, new Counters());
+  }
+
+  private ContentAssembler<Integer> newContentAssembler(String name) {
+    switch (name) {
+      case "noDedup":
+        return ContentAssembler.noDedup(this::extractUnique, newHashAssembler());
+      case "dedupOnRi":
+        return ContentAssembler.withDedupOnRi(this::extractShared, newHashAssembler());
+      case "dedupOnHash":
+        return ContentAssembler.withDedupOnHash(this::extractUnique, newHashAssembler());
+      case "prefilteredDedupOnHash":
+        return ContentAssembler.withPrefilteredDedupOnHash(this::extractUnique, this::newHashAssembler);
+      default:
+        throw new IllegalArgumentException("Unknown deduplication: " + name);
+    }
+  }
+
+  private HashAssembler newHashAssembler() {
+    return new SingleHashAssembler();
+  }
+
+  // Every object has its own reference information, so only the content can reveal duplicates
+  private Iterator<DigitalObject> extractUnique(Integer object) {
+    return Collections.singletonList(DigitalObject.fromBytes("object-" + object, contentOf(freshIndexOf(object))))
+        .iterator();
+  }
+
+  // Objects with the same content have the same reference information
+  private Iterator<DigitalObject> extractShared(Integer object) {
+    int fresh = freshIndexOf(object);
+    return Collections.singletonList(DigitalObject.fromBytes("content-" + fresh, contentOf(fresh))).iterator();
+  }
+
+  // The first (100 - percentDuplicates) objects in each block of 100 have fresh content, the others repeat the last
+  private int freshIndexOf(int object) {
+    int numFresh = 100 - percentDuplicates;
+    return object / 100 * numFresh + Math.min(object % 100, numFresh - 1);
+  }
+
+  private byte[] contentOf(int fresh) {
+    byte[] result = contents[fresh % NUM_DISTINCT_CONTENTS].clone();
+    result[0] = (byte)fresh;
+    result[1] = (byte)(fresh >>> 8);
+    result[2] = (byte)(fresh >>> 16);
+    result[3] = (byte)(fresh >>> 24);
+    return result;
+  }
+
+  @TearDown(Level.Iteration)
+  public void end() throws IOException {
+    zip.close();
+    contentAssembler.end();
+  }
+
+  @Benchmark
+  public Map<String, ContentInfo> addContentsOf() throws IOException {
+    return contentAssembler.addContentsOf(numObjects++);
+  }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.sip.assembly;
+
+import java.net.URI;
+import java.util.Map;
+
+
+/**
+ * Domain object for benchmarks.
+ */
+public class Customer {
+
+  static final URI NAMESPACE = URI.create("urn:com.emc.ia.sdk:benchmark");
+  static final String HEADER = "<customers xmlns=\"" + NAMESPACE + "\">\n";
+  static final String FOOTER = "</customers>\n";
+
+  private final String id;
+  private final String name;
+  private final String city;
+
+  public Customer(int id) {
+    this.id = "customer-" + id;
+    this.name = "Customer #" + id;
+    this.city = "Santa Clara";
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getCity() {
+    return city;
+  }
+
+  static PackagingInformation packagingInformation() {
+    return PackagingInformation.builder()
+        .dss()
+            .application("benchmark")
+            .holding("customers")
+            .schema(NAMESPACE.toString())
+            .entity("customer")
+        .end()
+        .build();
+  }
+
+
+  /**
+   * Assemble a PDI of customers using the DOM.
+   */
+  static class XmlAssembler extends XmlPdiAssembler<Customer> {
+
+    XmlAssembler() {
+      super(NAMESPACE, "customers", "customer");
+    }
+
+    @Override
+    protected void doAdd(Customer customer, Map<String, ContentInfo> contentInfo) {
+      getBuilder()
+          .element("id", customer.getId())
+          .element("name", customer.getName())
+          .element("city", customer.getCity());
+    }
+
+  }
+
+
+  /**
+   * Assemble a PDI of customers by streaming XML.
+   */
+  static class StreamingXmlAssembler extends StreamingXmlPdiAssembler<Customer> {
+
+    StreamingXmlAssembler() {
+      super(NAMESPACE, "customers", "customer");
+    }
+
+    @Override
+    protected void doAdd(Customer customer, Map<String, ContentInfo> contentInfo) {
+      getBuilder()
+          .element("id", customer.getId())
+          .element("name", customer.getName())
+          .element("city", customer.getCity());
+    }
+
+  }
+
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.sip.assembly;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.io.input.ClosedInputStream;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+
+import com.emc.ia.sdk.support.io.DataBuffer;
+
+
+/**
+ * {@linkplain DataBuffer} that only counts the data written to it, so that benchmarks measure the SDK rather than
+ * memory or disk.
+ */
+class DiscardingDataBuffer implements DataBuffer {
+
+  private CountingOutputStream output;
+
+  @Override
+  public InputStream openForReading() {
+    return new ClosedInputStream();
+  }
+
+  @Override
+  public OutputStream openForWriting() {
+    output = new CountingOutputStream(new NullOutputStream());
+    return output;
+  }
+
+  @Override
+  public long length() {
+    return output == null ? 0 : output.getByteCount();
+  }
+
+}
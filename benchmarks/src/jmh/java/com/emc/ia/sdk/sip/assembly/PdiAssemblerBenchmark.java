@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.sip.assembly;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.emc.ia.sip.assembly.stringtemplate.StringTemplate;
+import com.emc.ia.sip.assembly.velocity.VelocityTemplate;
+
+
+/**
+ * Latency of rendering a domain object into the PDI, using the DOM ({@linkplain XmlPdiAssembler}), streaming XML
+ * ({@linkplain StreamingXmlPdiAssembler}) and using templates ({@linkplain TemplatePdiAssembler} with StringTemplate,
+ * in regular and high-throughput mode, and Velocity).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PdiAssemblerBenchmark {
+
+  private static final String STRING_TEMPLATE_ROW =
+      "  <customer><id>$model.id$</id><name>$model.name$</name><city>$model.city$</city></customer>\n";
+
+  @Param({ "xml", "streamingXml", "stringtemplate", "stringtemplateHighThroughput", "velocity" })
+  private String assembler;
+
+  private Assembler<HashedContents<Customer>> pdiAssembler;
+  private int numCustomers;
+
+  @Setup(Level.Iteration)
+  public void startPdi() throws IOException {
+    pdiAssembler = newPdiAssembler(assembler);
+    pdiAssembler.start(new DiscardingDataBuffer());
+  }
+
+  private static Assembler<HashedContents<Customer>> newPdiAssembler(String name) {
+    switch (name) {
+      case "xml":
+        return new Customer.XmlAssembler();
+      case "streamingXml":
+        return new Customer.StreamingXmlAssembler();
+      case "stringtemplate":
+        return new TemplatePdiAssembler<>(new StringTemplate<>(Customer.HEADER, Customer.FOOTER, STRING_TEMPLATE_ROW));
+      case "stringtemplateHighThroughput":
+        StringTemplate<Customer> template = new StringTemplate<>(Customer.HEADER, Customer.FOOTER, STRING_TEMPLATE_ROW);
+        template.setHighThroughput(true);
+        return new TemplatePdiAssembler<>(template);
+      case "velocity":
+        return new TemplatePdiAssembler<>(new VelocityTemplate<>(Customer.HEADER, Customer.FOOTER,
+            "  <customer><id>$model.id</id><name>$model.name</name><city>$model.city</city></customer>\n"));
+      default:
+        throw new IllegalArgumentException("Unknown PDI assembler: " + name);
+    }
+  }
+
+  @TearDown(Level.Iteration)
+  public void endPdi() throws IOException {
+    pdiAssembler.end();
+  }
+
+  @Benchmark
+  public void add() throws IOException {
+    pdiAssembler.add(new HashedContents<>(new Customer(numCustomers++), Collections.emptyMap()));
+  }
+
+}
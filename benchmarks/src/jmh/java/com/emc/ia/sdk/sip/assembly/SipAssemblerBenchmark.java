@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.sip.assembly;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.emc.ia.sdk.support.io.SingleHashAssembler;
+
+
+/**
+ * Latency of {@linkplain SipAssembler#add(Object) adding} domain objects to a SIP, with and without content. The SIP
+ * itself is discarded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SipAssemblerBenchmark {
+
+  @Param({ "0", "4096" })
+  private int contentSize;
+
+  private byte[] content;
+  private SipAssembler<Customer> assembler;
+  private int numCustomers;
+
+  @Setup
+  public void setUp() {
+    content = new byte[contentSize];
+    new Random(contentSize).nextBytes(content);
+  }
+
+  @Setup(Level.Iteration)
+  public void startSip() throws IOException {
+    DigitalObjectsExtraction<Customer> contentsExtraction = contentSize == 0
+        ? customer -> Collections.emptyIterator()
+        : customer -> Collections.singletonList(DigitalObject.fromBytes(customer.getId(), content)).iterator();
+    assembler = new SipAssembler<>(new DefaultPackagingInformationFactory(Customer.packagingInformation()),
+        new Customer.XmlAssembler(), new SingleHashAssembler(), DiscardingDataBuffer::new,
+        ContentAssembler.noDedup(contentsExtraction, new SingleHashAssembler()));
+    assembler.start(new DiscardingDataBuffer());
+  }
+
+  @TearDown(Level.Iteration)
+  public void endSip() throws IOException {
+    assembler.end();
+  }
+
+  @Benchmark
+  public void add() {
+    assembler.add(new Customer(numCustomers++));
+  }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Throughput of the {@linkplain HashAssembler}s.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashAssemblerBenchmark {
+
+  private static final int CHUNK_SIZE = 65536;
+
+  @Param({ "none", "md5", "sha1", "sha256", "sha256+sha1", "xxh64" })
+  private String hash;
+
+  @Param({ "1024", "1048576" })
+  private int size;
+
+  private HashAssembler hashAssembler;
+  private byte[][] chunks;
+
+  @Setup
+  public void setUp() {
+    hashAssembler = newHashAssembler(hash);
+    Random random = new Random(size);
+    chunks = new byte[(size + CHUNK_SIZE - 1) / CHUNK_SIZE][];
+    for (int i = 0; i < chunks.length; i++) {
+      chunks[i] = new byte[Math.min(CHUNK_SIZE, size - i * CHUNK_SIZE)];
+      random.nextBytes(chunks[i]);
+    }
+  }
+
+  private static HashAssembler newHashAssembler(String name) {
+    switch (name) {
+      case "none":
+        return new NoHashAssembler();
+      case "md5":
+        return new SingleHashAssembler(HashFunction.MD5, Encoding.BASE64);
+      case "sha1":
+        return new SingleHashAssembler(HashFunction.SHA1, Encoding.BASE64);
+      case "sha256":
+        return new SingleHashAssembler(HashFunction.SHA256, Encoding.BASE64);
+      case "sha256+sha1":
+        return new MultiHashAssembler(Encoding.BASE64, HashFunction.SHA256, HashFunction.SHA1);
+      case "xxh64":
+        return new XxHashAssembler();
+      default:
+        throw new IllegalArgumentException("Unknown hash: " + name);
+    }
+  }
+
+  @Benchmark
+  public Collection<EncodedHash> hash() {
+    hashAssembler.initialize();
+    for (byte[] chunk : chunks) {
+      hashAssembler.add(chunk, chunk.length);
+    }
+    return hashAssembler.get();
+  }
+
+}
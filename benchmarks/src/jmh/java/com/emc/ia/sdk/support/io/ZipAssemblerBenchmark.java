@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Latency of adding entries to a ZIP using a {@linkplain DefaultZipAssembler}, for entries of different sizes and
+ * compressibility. The ZIP itself is discarded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ZipAssemblerBenchmark {
+
+  private static final String TEXT = "the quick brown fox jumps over the lazy dog 0123456789 ";
+
+  @Param({ "1024", "65536", "1048576" })
+  private int size;
+
+  @Param({ "text", "random", "jpeg" })
+  private String content;
+
+  private byte[] data;
+  private String mediaType;
+  private ZipAssembler zip;
+  private HashAssembler hashAssembler;
+  private int numEntries;
+
+  @Setup
+  public void setUp() {
+    data = new byte[size];
+    Random random = new Random(size);
+    if ("text".equals(content)) {
+      for (int i = 0; i < size; i++) {
+        data[i] = (byte)TEXT.charAt(random.nextInt(TEXT.length()));
+      }
+    } else {
+      random.nextBytes(data);
+    }
+    mediaType = "jpeg".equals(content) ? "image/jpeg" : null;
+    hashAssembler = new SingleHashAssembler(HashFunction.SHA256, Encoding.BASE64);
+  }
+
+  @Setup(Level.Iteration)
+  public void beginZip() throws IOException {
+    zip = new DefaultZipAssembler();
+    zip.begin(new NullOutputStream());
+  }
+
+  @TearDown(Level.Iteration)
+  public void endZip() throws IOException {
+    zip.close();
+  }
+
+  @Benchmark
+  public Collection<EncodedHash> addEntry() throws IOException {
+    return zip.addEntry("entry" + numEntries++, new ByteArrayInputStream(data), hashAssembler, mediaType);
+  }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.xml;
+
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Element;
+
+
+/**
+ * Latency of {@linkplain XmlUtil#toString(org.w3c.dom.Node) serializing} XML elements of different sizes, either to a
+ * string or {@linkplain XmlUtil#write(org.w3c.dom.Node, Writer, XmlUtil.Options) straight to a writer}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XmlUtilBenchmark {
+
+  @Param({ "1", "100" })
+  private int numChildren;
+
+  private final Writer writer = new NullWriter();
+  private Element element;
+
+  @Setup
+  public void setUp() {
+    XmlBuilder builder = XmlBuilder.newDocument()
+        .namespace("urn:com.emc.ia.sdk:benchmark")
+        .element("customer")
+            .attribute("id", "42");
+    for (int i = 0; i < numChildren; i++) {
+      builder.element("order")
+          .attribute("number", Integer.toString(i))
+          .element("date", "2016-07-14T13:37:00Z")
+          .element("amount", "123.45")
+          .element("description", "Some <escaped> & \"quoted\" text")
+          .end();
+    }
+    element = builder.build().getDocumentElement();
+  }
+
+  @Benchmark
+  public String toStringCompact() {
+    return XmlUtil.toString(element);
+  }
+
+  @Benchmark
+  public String toStringIndented() {
+    return XmlUtil.toString(element, "  ");
+  }
+
+  @Benchmark
+  public void writeIndented() {
+    XmlUtil.write(element, writer, XmlUtil.Options.pretty("  "));
+  }
+
+  @Benchmark
+  public void writeCompact() {
+    XmlUtil.write(element, writer, XmlUtil.Options.compact());
+  }
+
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.sip.assembly;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.validation.ValidationException;
+
+
+/**
+ * {@linkplain OutputStream} that feeds everything written to it to a {@linkplain Validator} running on a background
+ * thread, so that validation happens while the content is being written rather than in a second pass afterwards.
+ * Background threads are pooled and shared by all instances. Validation must be either {@linkplain #finish() finished}
+ * or {@linkplain #abort() aborted} to release its thread.
+ * <p>
+ * Data is handed to the validator in chunks through a bounded queue, so writing blocks when the validator falls too far
+ * behind. When validation fails, the rest of the data is discarded. Only the last few chunks the validator read are
+ * kept, so that the failure can be {@linkplain InvalidContent described} without keeping the whole content in memory.
+ */
+class BackgroundValidation extends OutputStream {
+
+  private static final int CHUNK_SIZE = 8192;
+  private static final int QUEUE_SIZE = 16;
+  private static final int RETAINED_CHUNKS = 4;
+  private static final Chunk END = new Chunk(0);
+  private static final ExecutorService VALIDATORS = Executors.newCachedThreadPool(runnable -> {
+    Thread result = new Thread(runnable, "Background validation");
+    result.setDaemon(true);
+    return result;
+  });
+
+  private final Validator validator;
+  private final BlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+  private final BlockingQueue<Chunk> free = new ArrayBlockingQueue<>(QUEUE_SIZE + RETAINED_CHUNKS + 2);
+  private final Future<?> task;
+  private Chunk current = new Chunk(CHUNK_SIZE);
+  private boolean closed;
+  private volatile boolean aborted;
+  private volatile String failure;
+  private volatile Throwable error;
+
+  /**
+   * Create an instance and start validating on a background thread.
+   * @param validator The validator to feed the written data to
+   */
+  BackgroundValidation(Validator validator) {
+    this.validator = validator;
+    this.task = VALIDATORS.submit(this::run);
+  }
+
+  private void run() {
+    ChunkInputStream input = new ChunkInputStream();
+    try {
+      validator.validate(input);
+    } catch (ValidationException e) {
+      if (!aborted) {
+        failure = describe(e, input);
+      }
+    } catch (RuntimeException | Error e) { // NOPMD AvoidCatchingThrowable - Reported to writer
+      error = e;
+    }
+    try {
+      input.drain();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private String describe(ValidationException failure, ChunkInputStream input) {
+    try {
+      return InvalidContent.describe(failure, input.retained(), input.retainedFirstLineNumber);
+    } catch (IOException e) {
+      return "Invalid content: " + failure.getMessage();
+    }
+  }
+
+  @Override
+  public void write(int value) throws IOException {
+    if (current.length == CHUNK_SIZE) {
+      handOff();
+    }
+    current.data[current.length++] = (byte)value;
+  }
+
+  @Override
+  public void write(byte[] buffer, int offset, int count) throws IOException {
+    int written = 0;
+    while (written < count) {
+      if (current.length == CHUNK_SIZE) {
+        handOff();
+      }
+      int n = Math.min(count - written, CHUNK_SIZE - current.length);
+      System.arraycopy(buffer, offset + written, current.data, current.length, n);
+      current.length += n;
+      written += n;
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (current.length > 0) {
+      handOff();
+    }
+  }
+
+  private void handOff() throws IOException {
+    if (aborted) {
+      current.length = 0;
+      return;
+    }
+    put(current);
+    Chunk next = free.poll();
+    current = next == null ? new Chunk(CHUNK_SIZE) : next;
+    current.length = 0;
+  }
+
+  private void put(Chunk chunk) throws IOException {
+    try {
+      queue.put(chunk);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for validation");
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      flush();
+      put(END);
+    }
+  }
+
+  /**
+   * Wait for validation to complete.
+   * @throws IOException When the written data is invalid
+   */
+  void finish() throws IOException {
+    if (aborted) {
+      throw new IOException("Validation was aborted");
+    }
+    close();
+    try {
+      task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for validation");
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Background validation failed", e.getCause());
+    }
+    if (error instanceof RuntimeException) {
+      throw (RuntimeException)error;
+    }
+    if (error != null) {
+      throw (Error)error;
+    }
+    if (failure != null) {
+      throw new IOException(failure);
+    }
+  }
+
+  /**
+   * Stop validating without waiting for the result, e.g. because writing the content failed. Releases the background
+   * thread and the data that is waiting to be validated.
+   */
+  void abort() {
+    aborted = true;
+    closed = true;
+    queue.clear();
+    queue.offer(END);
+    task.cancel(true);
+  }
+
+
+  private static final class Chunk {
+
+    private final byte[] data;
+    private int length;
+
+    Chunk(int size) {
+      data = new byte[size];
+    }
+
+  }
+
+
+  /**
+   * The validator's end of the queue. Keeps the last few chunks read for describing validation failures.
+   */
+  private final class ChunkInputStream extends InputStream {
+
+    private final Deque<Chunk> retained = new ArrayDeque<>();
+    private long retainedFirstLineNumber = 1;
+    private Chunk chunk;
+    private int position;
+    private boolean ended;
+
+    @Override
+    public int read() throws IOException {
+      if (!ensureAvailable()) {
+        return -1;
+      }
+      return chunk.data[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+      if (count == 0) {
+        return 0;
+      }
+      if (!ensureAvailable()) {
+        return -1;
+      }
+      int result = Math.min(count, chunk.length - position);
+      System.arraycopy(chunk.data, position, buffer, offset, result);
+      position += result;
+      return result;
+    }
+
+    private boolean ensureAvailable() throws IOException {
+      while (!ended && (chunk == null || position == chunk.length)) {
+        try {
+          Chunk next = queue.take();
+          if (next == END) { // NOPMD CompareObjectsWithEquals - Sentinel
+            ended = true;
+          } else {
+            retain(next);
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while waiting for data to validate");
+        }
+      }
+      return !ended;
+    }
+
+    private void retain(Chunk next) {
+      chunk = next;
+      position = 0;
+      retained.addLast(next);
+      if (retained.size() > RETAINED_CHUNKS) {
+        Chunk evicted = retained.removeFirst();
+        for (int i = 0; i < evicted.length; i++) {
+          if (evicted.data[i] == '\n') {
+            retainedFirstLineNumber++;
+          }
+        }
+        free.offer(evicted);
+      }
+    }
+
+    InputStream retained() {
+      Deque<InputStream> result = new ArrayDeque<>();
+      for (Chunk retainedChunk : retained) {
+        result.add(new ByteArrayInputStream(retainedChunk.data, 0, retainedChunk.length));
+      }
+      return new SequenceInputStream(Collections.enumeration(result));
+    }
+
+    void drain() throws InterruptedException {
+      while (!ended) {
+        Chunk next = queue.take();
+        if (next == END) { // NOPMD CompareObjectsWithEquals - Sentinel
+          ended = true;
+        } else {
+          free.offer(next);
+        }
+      }
+    }
+
+  }
+
+}
@@ -24,6 +24,8 @@ import com.emc.ia.sdk.support.io.FileSupplier;
  * There are several {@linkplain SipSegmentationStrategy factory methods} available to create common segmentation
  * strategies and you can also {@linkplain SipSegmentationStrategy#combining(SipSegmentationStrategy...) combine} them.
  * <p>
+ * To spread the assembly of a batch over multiple threads, use {@linkplain ParallelBatchSipAssembler}.
+ * <p>
  * @param <D> The type of domain object to assemble SIPs from
  */
 public class BatchSipAssembler<D> {
@@ -84,7 +86,7 @@ public class BatchSipAssembler<D> {
   }
 
   private boolean shouldStartNewSip(D component) {
-    return current == null || segmentationStrategy.shouldStartNewSip(component, assembler.getMetrics());
+    return current == null || segmentationStrategy.shouldStartNewSip(component, assembler.getLiveMetrics());
   }
 
   private void startSip() throws IOException {
@@ -94,13 +96,29 @@ public class BatchSipAssembler<D> {
 
   protected final void closeCurrentSip() throws IOException {
     if (current != null) {
+      File file = current;
+      // NOTE: Cleared *before* ending [assembler], since the SIP is closed even when ending it fails
+      current = null;
       assembler.end();
-      FileGenerationMetrics metrics = new FileGenerationMetrics(current, assembler.getMetrics());
+      sipEnded(new FileGenerationMetrics(file, assembler.getMetrics()));
+    }
+  }
+
+  /**
+   * Close the SIP that is being assembled without Packaging Information, because assembling the batch failed.
+   * @param failure Why assembling the batch failed. Any failure to close the SIP is added to it
+   */
+  void abortCurrentSip(Throwable failure) {
+    if (current != null) {
       current = null;
-      sipEnded(metrics);
+      assembler.abort(failure);
     }
   }
 
+  boolean isAssemblingSip() {
+    return current != null;
+  }
+
   protected void sipEnded(FileGenerationMetrics metrics) {
     sipsMetrics.add(metrics);
   }
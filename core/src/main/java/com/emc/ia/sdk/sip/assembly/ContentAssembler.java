@@ -5,7 +5,9 @@ package com.emc.ia.sdk.sip.assembly;
 
 import java.io.IOException;
 import java.util.Map;
+import java.util.function.Supplier;
 
+import com.emc.ia.sdk.support.io.DigestIndex;
 import com.emc.ia.sdk.support.io.HashAssembler;
 import com.emc.ia.sdk.support.io.NoHashAssembler;
 import com.emc.ia.sdk.support.io.ZipAssembler;
@@ -17,6 +19,11 @@ import com.emc.ia.sdk.support.io.ZipAssembler;
  */
 public interface ContentAssembler<D> {
 
+  /**
+   * The number of distinct digital objects per SIP that deduplicating content assemblers expect by default.
+   */
+  int DEFAULT_ESTIMATED_MAX_DIGITAL_OBJECTS = 64000;
+
   /**
    * Start the assembly process.
    * @param zip Container to add the digital objects to.
@@ -33,6 +40,14 @@ public interface ContentAssembler<D> {
    */
   Map<String, ContentInfo> addContentsOf(D domainObject) throws IOException;
 
+  /**
+   * End the assembly process. This is called only when the SIP was assembled successfully.
+   * @throws IOException When an I/O error occurs
+   */
+  default void end() throws IOException {
+    // Nothing to do
+  }
+
   /**
    * Do not deduplicate the digital objects but perform the specified hash calculations.
    * @param contentsExtraction Extraction of content from domain objects added to the SIP
@@ -71,7 +86,8 @@ public interface ContentAssembler<D> {
    * @return The newly created content assembler
    */
   static <D> ContentAssembler<D> withDedupOnRi(DigitalObjectsExtraction<D> contentsExtraction) {
-    return new ContentAssemblerWithDedupOnRi<>(contentsExtraction, new NoHashAssembler(), false, false, 64000);
+    return new ContentAssemblerWithDedupOnRi<>(contentsExtraction, new NoHashAssembler(), false, false,
+        DEFAULT_ESTIMATED_MAX_DIGITAL_OBJECTS);
   }
 
   /**
@@ -83,7 +99,8 @@ public interface ContentAssembler<D> {
    */
   static <D> ContentAssembler<D> withDedupOnRi(DigitalObjectsExtraction<D> contentsExtraction,
       HashAssembler contentHashAssembler) {
-    return new ContentAssemblerWithDedupOnRi<>(contentsExtraction, contentHashAssembler, false, false, 64000);
+    return new ContentAssemblerWithDedupOnRi<>(contentsExtraction, contentHashAssembler, false, false,
+        DEFAULT_ESTIMATED_MAX_DIGITAL_OBJECTS);
   }
 
   /**
@@ -124,7 +141,7 @@ public interface ContentAssembler<D> {
       HashAssembler contentHashAssembler, boolean errorWhenEqualRiAndNotEqualHash,
       boolean errorWhenEqualHashAndNotEqualRI) {
     return new ContentAssemblerWithDedupOnRi<>(contentsExtraction, contentHashAssembler,
-        errorWhenEqualRiAndNotEqualHash, errorWhenEqualHashAndNotEqualRI, 64000);
+        errorWhenEqualRiAndNotEqualHash, errorWhenEqualHashAndNotEqualRI, DEFAULT_ESTIMATED_MAX_DIGITAL_OBJECTS);
   }
 
   /**
@@ -165,7 +182,8 @@ public interface ContentAssembler<D> {
    */
   static <D> ContentAssembler<D> withDedupOnHash(DigitalObjectsExtraction<D> contentsExtraction,
       HashAssembler contentHashAssembler) {
-    return new ContentAssemblerWithDedupOnHash<>(contentsExtraction, contentHashAssembler, 64000);
+    return new ContentAssemblerWithDedupOnHash<>(contentsExtraction, contentHashAssembler,
+        DEFAULT_ESTIMATED_MAX_DIGITAL_OBJECTS);
   }
 
   /**
@@ -181,4 +199,31 @@ public interface ContentAssembler<D> {
       HashAssembler contentHashAssembler, int estimatedMaxDigitalObjects) {
     return new ContentAssemblerWithDedupOnHash<>(contentsExtraction, contentHashAssembler, estimatedMaxDigitalObjects);
   }
+
+  /**
+   * Deduplicate digital objects based on their hash value across all SIPs that share the given index.
+   * @param contentsExtraction Extraction of content from domain objects added to the SIP
+   * @param contentHashAssembler Assembler that builds up an encoded hash for the extracted content
+   * @param index The index of the content that was archived before
+   * @param <D> The type of domain objects to assemble the SIP from
+   * @return The newly created content assembler
+   */
+  static <D> ContentAssembler<D> withPersistentDedupOnHash(DigitalObjectsExtraction<D> contentsExtraction,
+      HashAssembler contentHashAssembler, DigestIndex index) {
+    return new ContentAssemblerWithPersistentDedupOnHash<>(contentsExtraction, contentHashAssembler, index);
+  }
+
+  /**
+   * Deduplicate digital objects based on their hash value, but compute cryptographic hashes only when needed.
+   * @param contentsExtraction Extraction of content from domain objects added to the SIP
+   * @param contentHashAssemblers Supplier of assemblers that build up an encoded hash for the extracted content
+   * @param <D> The type of domain objects to assemble the SIP from
+   * @return The newly created content assembler
+   * @see ContentAssemblerWithPrefilteredDedupOnHash
+   */
+  static <D> ContentAssembler<D> withPrefilteredDedupOnHash(DigitalObjectsExtraction<D> contentsExtraction,
+      Supplier<? extends HashAssembler> contentHashAssemblers) {
+    return new ContentAssemblerWithPrefilteredDedupOnHash<>(contentsExtraction, contentHashAssemblers,
+        DEFAULT_ESTIMATED_MAX_DIGITAL_OBJECTS);
+  }
 }
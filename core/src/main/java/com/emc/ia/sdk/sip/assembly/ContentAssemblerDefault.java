@@ -3,6 +3,7 @@
  */
 package com.emc.ia.sdk.sip.assembly;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collection;
@@ -74,16 +75,38 @@ public class ContentAssemblerDefault<D> implements ContentAssembler<D> {
 
   protected ContentInfo addContent(String ri, DigitalObject digitalObject) throws IOException {
     try (InputStream stream = digitalObject.get()) {
-      Collection<EncodedHash> hashes = zip.addEntry(ri, stream, contentHashAssembler);
+      Collection<EncodedHash> hashes = zip.addEntry(ri, stream, contentHashAssembler, digitalObject.getMediaType());
       metrics.inc(SipMetrics.SIZE_DIGITAL_OBJECTS, contentHashAssembler.numBytesHashed());
       return new ContentInfo(ri, hashes);
     }
   }
 
+  /**
+   * Return the binary form of the given hashes, for use as a compact key.
+   * @param hashes The hashes to convert
+   * @return The concatenated binary forms of the hashes
+   */
+  protected static byte[] digestOf(Collection<EncodedHash> hashes) {
+    if (hashes.size() == 1) {
+      return hashes.iterator().next().getDigest();
+    }
+    ByteArrayOutputStream result = new ByteArrayOutputStream();
+    for (EncodedHash hash : hashes) {
+      byte[] digest = hash.getDigest();
+      result.write(digest, 0, digest.length);
+    }
+    return result.toByteArray();
+  }
+
   protected Collection<EncodedHash> contentHashFor(InputStream stream) throws IOException {
     final HashAssembler hashAssembler = getContentHashAssembler();
     hashAssembler.initialize();
-    IOStreams.copy(stream, new NullOutputStream(), BUFFER_SIZE, hashAssembler);
+    try {
+      IOStreams.copy(stream, new NullOutputStream(), BUFFER_SIZE, hashAssembler);
+    } catch (IOException | RuntimeException | Error e) { // NOPMD AvoidCatchingThrowable - Rethrown
+      hashAssembler.abort();
+      throw e;
+    }
     return hashAssembler.get();
   }
 
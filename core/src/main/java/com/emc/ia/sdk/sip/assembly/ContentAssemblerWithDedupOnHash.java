@@ -5,34 +5,55 @@ package com.emc.ia.sdk.sip.assembly;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
 
+import com.emc.ia.sdk.support.io.DigestMap;
 import com.emc.ia.sdk.support.io.EncodedHash;
+import com.emc.ia.sdk.support.io.FileChannelInputStream;
 import com.emc.ia.sdk.support.io.HashAssembler;
+import com.emc.ia.sdk.support.io.IOStreams;
 import com.emc.ia.sdk.support.io.NoHashAssembler;
-import com.emc.ia.sdk.support.io.RepeatableInputStream;
+import com.emc.ia.sdk.support.io.SpillingDataBuffer;
 import com.emc.ia.sdk.support.io.ZipAssembler;
 
 /**
  * A ContentAssembler implementation which will perform deduplication based on the hash value of the content, i.e. a
  * digital object with a given hash is only included once in the SIP.
  * <p>
- * <b>Note</b>Important to note that this content assembler buffers the bytes that make up the digital object in memory
- * so it is not suitable to very large digital objects.
- * </p>
+ * The content of a digital object is read only once: it's hashed while being copied to a
+ * {@linkplain SpillingDataBuffer}, and the copy is added to the SIP only if no content with the same hash was added
+ * before. Up to a given number of bytes are kept in memory, larger content is moved to a temporary file, so memory use
+ * doesn't depend on the size of the digital objects. Content that is read from a file isn't copied at all: the file is
+ * hashed and then read again if it must be added to the SIP.
+ * <p>
+ * Content is looked up by the binary form of its hashes in a {@linkplain DigestMap}, which takes much less memory than
+ * a map of {@linkplain EncodedHash}es.
  * @param <D> The type of domain object to assemble SIPs from
  */
 public class ContentAssemblerWithDedupOnHash<D> extends ContentAssemblerDefault<D> {
 
-  private final Map<Collection<EncodedHash>, ContentInfo> hashesToContentInfo;
+  /**
+   * The default maximum number of bytes of a digital object to keep in memory.
+   */
+  public static final int DEFAULT_MAX_BYTES_IN_MEMORY = 1024 * 1024;
+  private static final int BUFFER_SIZE = 65536;
+
+  private final DigestMap<ContentInfo> hashesToContentInfo;
   private final HashAssembler noHashAssembler = new NoHashAssembler();
+  private final int maxBytesInMemory;
 
   public ContentAssemblerWithDedupOnHash(DigitalObjectsExtraction<D> contentsExtraction,
       HashAssembler contentHashAssembler, int estimatedMaxDigitalObjects) {
+    this(contentsExtraction, contentHashAssembler, estimatedMaxDigitalObjects, DEFAULT_MAX_BYTES_IN_MEMORY);
+  }
+
+  public ContentAssemblerWithDedupOnHash(DigitalObjectsExtraction<D> contentsExtraction,
+      HashAssembler contentHashAssembler, int estimatedMaxDigitalObjects, int maxBytesInMemory) {
     super(contentsExtraction, contentHashAssembler);
-    hashesToContentInfo = new HashMap<>(estimatedMaxDigitalObjects);
+    hashesToContentInfo = new DigestMap<>(estimatedMaxDigitalObjects);
+    this.maxBytesInMemory = maxBytesInMemory;
   }
 
   @Override
@@ -43,36 +64,82 @@ public class ContentAssemblerWithDedupOnHash<D> extends ContentAssemblerDefault<
 
   @Override
   protected ContentInfo addContent(String ri, DigitalObject digitalObject) throws IOException {
-    RepeatableInputStream memoryStream = memoryStreamOf(digitalObject);
-    // First compute hashes
-    Collection<EncodedHash> hashes = contentHashFor(memoryStream);
-
-    // Check if contentInfo exist of the collection of hashes.
-    // If yes, skip adding the content and return existing content info.
-    ContentInfo contentInfo = hashesToContentInfo.get(hashes);
-    if (contentInfo != null) {
-      return contentInfo;
+    try (InputStream stream = digitalObject.get()) {
+      if (stream instanceof FileChannelInputStream && ((FileChannelInputStream)stream).isAtStart()) {
+        return addFileContent(ri, digitalObject, (FileChannelInputStream)stream);
+      }
+      return addBufferedContent(ri, digitalObject, stream);
     }
+  }
 
-    try (InputStream stream = memoryStream.get()) {
-      getZip().addEntry(ri, stream, noHashAssembler);
-      getMetrics().inc(SipMetrics.SIZE_DIGITAL_OBJECTS, getContentHashAssembler().numBytesHashed());
-      contentInfo = new ContentInfo(ri, hashes);
-      hashesToContentInfo.put(hashes, contentInfo);
+  private ContentInfo addFileContent(String ri, DigitalObject digitalObject, FileChannelInputStream file)
+      throws IOException {
+    HashAssembler hashAssembler = getContentHashAssembler();
+    hashAssembler.initialize();
+    try {
+      IOStreams.hash(file.getChannel(), hashAssembler, null);
+    } catch (IOException | RuntimeException | Error e) { // NOPMD AvoidCatchingThrowable - Rethrown
+      hashAssembler.abort();
+      throw e;
     }
-    return contentInfo;
+    Collection<EncodedHash> hashes = hashAssembler.get();
+    ContentInfo result = lookup(hashes);
+    if (result == null) {
+      Path path = file.getPath();
+      try (InputStream content = new FileChannelInputStream(path)) {
+        result = addEntry(ri, digitalObject, hashes, content);
+      }
+    }
+    return result;
   }
 
-  private RepeatableInputStream memoryStreamOf(DigitalObject digitalObject) throws IOException {
-    try (InputStream raw = digitalObject.get()) {
-      return new RepeatableInputStream(raw);
+  private ContentInfo addBufferedContent(String ri, DigitalObject digitalObject, InputStream stream)
+      throws IOException {
+    try (SpillingDataBuffer buffer = new SpillingDataBuffer(maxBytesInMemory)) {
+      HashAssembler hashAssembler = getContentHashAssembler();
+      hashAssembler.initialize();
+      try (OutputStream copy = buffer.openForWriting()) {
+        IOStreams.copy(stream, copy, BUFFER_SIZE, hashAssembler);
+      } catch (IOException | RuntimeException | Error e) { // NOPMD AvoidCatchingThrowable - Rethrown
+        hashAssembler.abort();
+        throw e;
+      }
+      Collection<EncodedHash> hashes = hashAssembler.get();
+      ContentInfo result = lookup(hashes);
+      if (result == null) {
+        try (InputStream content = buffer.openForReading()) {
+          result = addEntry(ri, digitalObject, hashes, content);
+        }
+      }
+      return result;
     }
   }
 
-  private Collection<EncodedHash> contentHashFor(RepeatableInputStream memoryStream) throws IOException {
-    try (InputStream stream = memoryStream.get()) {
-      return contentHashFor(stream);
-    }
+  /**
+   * Return the content with the given hashes that was added before.
+   * @param hashes The hashes of the content to look up
+   * @return The content with the given hashes, or <code>null</code> if no such content was added
+   * @throws IOException When an I/O error occurs
+   */
+  protected ContentInfo lookup(Collection<EncodedHash> hashes) throws IOException {
+    return hashesToContentInfo.get(digestOf(hashes));
+  }
+
+  /**
+   * Return the content that was added to the current SIP.
+   * @return The content that was added to the current SIP
+   */
+  protected Collection<ContentInfo> getAddedContent() {
+    return hashesToContentInfo.values();
+  }
+
+  private ContentInfo addEntry(String ri, DigitalObject digitalObject, Collection<EncodedHash> hashes,
+      InputStream content) throws IOException {
+    getZip().addEntry(ri, content, noHashAssembler, digitalObject.getMediaType());
+    getMetrics().inc(SipMetrics.SIZE_DIGITAL_OBJECTS, getContentHashAssembler().numBytesHashed());
+    ContentInfo result = new ContentInfo(ri, hashes);
+    hashesToContentInfo.putIfAbsent(digestOf(hashes), result);
+    return result;
   }
 
 }
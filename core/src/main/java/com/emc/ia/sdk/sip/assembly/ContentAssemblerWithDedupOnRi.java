@@ -9,6 +9,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.emc.ia.sdk.support.io.DigestMap;
 import com.emc.ia.sdk.support.io.EncodedHash;
 import com.emc.ia.sdk.support.io.HashAssembler;
 import com.emc.ia.sdk.support.io.ZipAssembler;
@@ -23,7 +24,7 @@ import com.emc.ia.sdk.support.io.ZipAssembler;
 public class ContentAssemblerWithDedupOnRi<D> extends ContentAssemblerDefault<D> {
 
   private final Map<String, ContentInfo> riToContentInfo;
-  private final Map<Collection<EncodedHash>, String> hashesToRi;
+  private final DigestMap<String> hashesToRi;
   private final boolean errorWhenEqualHashAndNotEqualRI;
   private final boolean errorWhenEqualRiAndNotEqualHash;
 
@@ -32,7 +33,7 @@ public class ContentAssemblerWithDedupOnRi<D> extends ContentAssemblerDefault<D>
       boolean errorWhenEqualHashAndNotEqualRI, int estimatedMaxDigitalObjects) {
     super(contentsExtraction, contentHashAssembler);
     riToContentInfo = new HashMap<>(estimatedMaxDigitalObjects);
-    hashesToRi = new HashMap<>(estimatedMaxDigitalObjects);
+    hashesToRi = new DigestMap<>(estimatedMaxDigitalObjects);
     this.errorWhenEqualHashAndNotEqualRI = errorWhenEqualHashAndNotEqualRI;
     this.errorWhenEqualRiAndNotEqualHash = errorWhenEqualRiAndNotEqualHash;
   }
@@ -50,7 +51,7 @@ public class ContentAssemblerWithDedupOnRi<D> extends ContentAssemblerDefault<D>
       ContentInfo newContentInfo = super.addContent(ri, digitalObject);
       checkNotAlreadyIncluded(newContentInfo);
       riToContentInfo.put(ri, newContentInfo);
-      hashesToRi.put(newContentInfo.getContentHashes(), ri);
+      hashesToRi.putIfAbsent(digestOf(newContentInfo.getContentHashes()), ri);
       return newContentInfo;
     } else {
       checkSameRIMeansSameContent(ri, digitalObject, contentInfo.getContentHashes());
@@ -60,7 +61,7 @@ public class ContentAssemblerWithDedupOnRi<D> extends ContentAssemblerDefault<D>
 
   private void checkNotAlreadyIncluded(ContentInfo newContentInfo) {
     if (errorWhenEqualHashAndNotEqualRI) {
-      String ri = hashesToRi.get(newContentInfo.getContentHashes());
+      String ri = hashesToRi.get(digestOf(newContentInfo.getContentHashes()));
       if (ri != null && !ri.equals(newContentInfo.getReferenceInformation())) {
         throw new IllegalStateException("Content already included with a different ri.");
       }
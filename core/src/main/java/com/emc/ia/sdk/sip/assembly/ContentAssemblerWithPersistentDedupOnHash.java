@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.sip.assembly;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import com.emc.ia.sdk.support.io.DigestIndex;
+import com.emc.ia.sdk.support.io.EncodedHash;
+import com.emc.ia.sdk.support.io.HashAssembler;
+
+/**
+ * A ContentAssembler implementation which will perform deduplication based on the hash value of the content across
+ * SIPs, batches, and restarts of the process, i.e. a digital object with a given hash is only included once in all the
+ * SIPs that share the same {@linkplain DigestIndex}.
+ * <p>
+ * When content was archived before, the returned {@linkplain ContentInfo} holds the reference information under which
+ * it was first archived, so the reference information of digital objects should identify them across SIPs. Content
+ * is recorded in the index only when the SIP that contains it was assembled successfully.
+ * @param <D> The type of domain object to assemble SIPs from
+ */
+public class ContentAssemblerWithPersistentDedupOnHash<D> extends ContentAssemblerWithDedupOnHash<D> {
+
+  private final DigestIndex index;
+
+  public ContentAssemblerWithPersistentDedupOnHash(DigitalObjectsExtraction<D> contentsExtraction,
+      HashAssembler contentHashAssembler, DigestIndex index) {
+    super(contentsExtraction, contentHashAssembler, 1024);
+    this.index = index;
+  }
+
+  @Override
+  protected ContentInfo lookup(Collection<EncodedHash> hashes) throws IOException {
+    ContentInfo result = super.lookup(hashes);
+    if (result == null) {
+      String ri = index.get(digestOf(hashes));
+      if (ri != null) {
+        result = new ContentInfo(ri, hashes);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public void end() throws IOException {
+    for (ContentInfo contentInfo : getAddedContent()) {
+      index.putIfAbsent(digestOf(contentInfo.getContentHashes()), contentInfo.getReferenceInformation());
+    }
+    index.flush();
+  }
+
+}
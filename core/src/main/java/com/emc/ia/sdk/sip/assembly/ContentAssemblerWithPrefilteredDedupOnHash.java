@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.sip.assembly;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.apache.commons.io.output.NullOutputStream;
+
+import com.emc.ia.sdk.support.io.DigestMap;
+import com.emc.ia.sdk.support.io.EncodedHash;
+import com.emc.ia.sdk.support.io.HashAssembler;
+import com.emc.ia.sdk.support.io.IOStreams;
+import com.emc.ia.sdk.support.io.NoHashAssembler;
+import com.emc.ia.sdk.support.io.RuntimeIoException;
+import com.emc.ia.sdk.support.io.SpillingDataBuffer;
+import com.emc.ia.sdk.support.io.XxHashAssembler;
+import com.emc.ia.sdk.support.io.ZipAssembler;
+
+/**
+ * A ContentAssembler implementation which will perform deduplication based on the hash value of the content, like
+ * {@linkplain ContentAssemblerWithDedupOnHash}, but that avoids computing cryptographic hashes where possible.
+ * <p>
+ * The content of a digital object is first hashed with a fast, non-cryptographic {@linkplain XxHashAssembler hash}.
+ * Content whose fast hash and length differ from those of all content added before is unique, so it's added to the
+ * SIP without computing its cryptographic hashes. Those are computed, by reading the digital object again, only when
+ * the PDI asks for them through {@linkplain ContentInfo#getContentHashes()}, or when later content has the same fast
+ * hash and length and the two must be compared. Digital objects must therefore return the same content every time they
+ * are read. A digital object is kept until its hashes are computed or the SIP ends, whichever comes first.
+ * <p>
+ * Since cryptographic hashes may be computed on the thread that assembles the PDI, a fresh {@linkplain HashAssembler}
+ * is used for every digital object whose hashes are computed lazily.
+ * @param <D> The type of domain object to assemble SIPs from
+ */
+public class ContentAssemblerWithPrefilteredDedupOnHash<D> extends ContentAssemblerDefault<D> {
+
+  private static final int BUFFER_SIZE = 65536;
+
+  private final Supplier<? extends HashAssembler> contentHashAssemblers;
+  private final DigestMap<List<ContentInfo>> prefilter;
+  private final XxHashAssembler prefilterHashAssembler = new XxHashAssembler();
+  private final HashAssembler noHashAssembler = new NoHashAssembler();
+  private final int maxBytesInMemory;
+
+  public ContentAssemblerWithPrefilteredDedupOnHash(DigitalObjectsExtraction<D> contentsExtraction,
+      Supplier<? extends HashAssembler> contentHashAssemblers, int estimatedMaxDigitalObjects) {
+    this(contentsExtraction, contentHashAssemblers, estimatedMaxDigitalObjects,
+        ContentAssemblerWithDedupOnHash.DEFAULT_MAX_BYTES_IN_MEMORY);
+  }
+
+  public ContentAssemblerWithPrefilteredDedupOnHash(DigitalObjectsExtraction<D> contentsExtraction,
+      Supplier<? extends HashAssembler> contentHashAssemblers, int estimatedMaxDigitalObjects, int maxBytesInMemory) {
+    super(contentsExtraction, contentHashAssemblers.get());
+    this.contentHashAssemblers = contentHashAssemblers;
+    this.prefilter = new DigestMap<>(estimatedMaxDigitalObjects);
+    this.maxBytesInMemory = maxBytesInMemory;
+  }
+
+  @Override
+  public void begin(ZipAssembler zip, Counters metrics) {
+    super.begin(zip, metrics);
+    prefilter.clear();
+  }
+
+  @Override
+  public void end() throws IOException {
+    // Release the digital objects whose hashes were never needed
+    prefilter.clear();
+  }
+
+  @Override
+  protected ContentInfo addContent(String ri, DigitalObject digitalObject) throws IOException {
+    try (InputStream stream = digitalObject.get();
+        SpillingDataBuffer buffer = new SpillingDataBuffer(maxBytesInMemory)) {
+      prefilterHashAssembler.initialize();
+      try (OutputStream copy = buffer.openForWriting()) {
+        IOStreams.copy(stream, copy, BUFFER_SIZE, prefilterHashAssembler);
+      }
+      byte[] key = ByteBuffer.allocate(16)
+        .putLong(prefilterHashAssembler.getHash())
+        .putLong(buffer.length())
+        .array();
+      Collection<EncodedHash> hashes = null;
+      List<ContentInfo> candidates = prefilter.get(key);
+      if (candidates == null) {
+        candidates = new ArrayList<>(1);
+        prefilter.putIfAbsent(key, candidates);
+      } else {
+        try (InputStream content = buffer.openForReading()) {
+          hashes = contentHashFor(content);
+        }
+        for (ContentInfo candidate : candidates) {
+          if (candidate.getContentHashes().equals(hashes)) {
+            return candidate;
+          }
+        }
+      }
+      // The temporary file is deleted when the buffer is closed, so the ZIP must not hold on to it
+      try (InputStream content = new BufferedInputStream(buffer.openForReading(), BUFFER_SIZE)) {
+        getZip().addEntry(ri, content, noHashAssembler, digitalObject.getMediaType());
+      }
+      getMetrics().inc(SipMetrics.SIZE_DIGITAL_OBJECTS, buffer.length());
+      ContentInfo result = hashes == null ? new ContentInfo(ri, () -> hashesOf(digitalObject))
+          : new ContentInfo(ri, hashes);
+      candidates.add(result);
+      return result;
+    }
+  }
+
+  private Collection<EncodedHash> hashesOf(DigitalObject digitalObject) {
+    HashAssembler hashAssembler = contentHashAssemblers.get();
+    hashAssembler.initialize();
+    try (InputStream stream = digitalObject.get()) {
+      IOStreams.copy(stream, new NullOutputStream(), BUFFER_SIZE, hashAssembler);
+    } catch (IOException e) {
+      hashAssembler.abort();
+      throw new RuntimeIoException(e);
+    } catch (RuntimeException | Error e) { // NOPMD AvoidCatchingThrowable - Rethrown
+      hashAssembler.abort();
+      throw e;
+    }
+    return hashAssembler.get();
+  }
+
+}
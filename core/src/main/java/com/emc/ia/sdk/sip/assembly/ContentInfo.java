@@ -7,6 +7,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Objects;
+import java.util.function.Supplier;
 
 import com.emc.ia.sdk.support.io.EncodedHash;
 
@@ -15,19 +16,34 @@ import com.emc.ia.sdk.support.io.EncodedHash;
  */
 public class ContentInfo {
 
-  private final Collection<EncodedHash> contentHashes;
   private final String referenceInformation;
+  private Collection<EncodedHash> contentHashes;
+  private Supplier<Collection<EncodedHash>> contentHashesSupplier;
 
   public ContentInfo(String referenceInformation, Collection<EncodedHash> contentHashes) {
     this.referenceInformation = Objects.requireNonNull(referenceInformation);
     this.contentHashes = Collections.unmodifiableList(new ArrayList<EncodedHash>(contentHashes));
   }
 
+  /**
+   * Create an instance whose hashes are computed when they're first needed.
+   * @param referenceInformation The reference information
+   * @param contentHashesSupplier Supplier of the hashes of the contents
+   */
+  public ContentInfo(String referenceInformation, Supplier<Collection<EncodedHash>> contentHashesSupplier) {
+    this.referenceInformation = Objects.requireNonNull(referenceInformation);
+    this.contentHashesSupplier = Objects.requireNonNull(contentHashesSupplier);
+  }
+
   /**
    * Return the hashes of the contents extracted from the source.
    * @return The hashes of the contents extracted from the source
    */
-  public Collection<EncodedHash> getContentHashes() {
+  public synchronized Collection<EncodedHash> getContentHashes() {
+    if (contentHashes == null) {
+      contentHashes = Collections.unmodifiableList(new ArrayList<EncodedHash>(contentHashesSupplier.get()));
+      contentHashesSupplier = null;
+    }
     return contentHashes;
   }
 
@@ -36,16 +52,19 @@ public class ContentInfo {
   }
 
   /**
-   * Return a hash code value for this object.
+   * Return a hash code value for this object. This is based on the reference information only, so that it never
+   * requires computing the hashes of the contents.
    * @return A hash code value for this object
    */
   @Override
   public int hashCode() {
-    return Objects.hash(referenceInformation, contentHashes);
+    return referenceInformation.hashCode();
   }
 
   /**
-   * Indicates whether some other object is "equal to" this one.
+   * Indicates whether some other object is "equal to" this one. When the reference information is the same, this
+   * compares the hashes of the contents, which computes them if they haven't been computed yet. That reads the whole
+   * content and may fail with a {@linkplain com.emc.ia.sdk.support.io.RuntimeIoException}.
    * @param obj The reference object with which to compare
    * @return <code>true</code> if this object is the same as the reference object; <code>false</code> otherwise
    */
@@ -55,16 +74,21 @@ public class ContentInfo {
       return false;
     }
     ContentInfo other = (ContentInfo)obj;
-    return referenceInformation.equals(other.referenceInformation) && contentHashes.equals(other.contentHashes);
+    return referenceInformation.equals(other.referenceInformation)
+        && getContentHashes().equals(other.getContentHashes());
   }
 
   /**
-   * Return a human-readable version of this object.
+   * Return a human-readable version of this object. This never computes the hashes of the contents.
    * @return A human-readable version of this object
    */
   @Override
   public String toString() {
-    return referenceInformation + " and content hashes " + contentHashes;
+    Collection<EncodedHash> hashes;
+    synchronized (this) {
+      hashes = contentHashes;
+    }
+    return referenceInformation + " and content hashes " + (hashes == null ? "not computed" : hashes);
   }
 
 }
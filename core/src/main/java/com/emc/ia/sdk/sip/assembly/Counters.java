@@ -3,28 +3,77 @@
  */
 package com.emc.ia.sdk.sip.assembly;
 
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 
 /**
- * Set of related counters.
+ * Set of related counters. Counters may be updated and read from different threads.
+ * <p>
+ * Counters whose names are given at construction time are kept in fixed primitive slots, so that updating them never
+ * allocates memory or takes a lock. Counters with other names are created on first use.
+ * <p>
+ * Use {@linkplain #view()} to get a cheap, live, read-only view of the counters, e.g. for monitoring threads, and
+ * {@linkplain #forReading()} to get a snapshot of the current values.
  */
 public class Counters {
 
-  private final Map<String, Long> values;
+  private final String[] names;
+  private final AtomicLongArray slots;
+  private final ConcurrentMap<String, AtomicLong> others;
+  private final boolean readOnly;
 
-  public Counters() {
-    this(new HashMap<>());
+  /**
+   * Create an instance with fixed slots for the given counters.
+   * @param names The names of the counters to keep in fixed slots
+   */
+  public Counters(String... names) {
+    this(names.clone(), new AtomicLongArray(names.length), new ConcurrentHashMap<>(), false);
+  }
+
+  private Counters(String[] names, AtomicLongArray slots, ConcurrentMap<String, AtomicLong> others, boolean readOnly) {
+    this.names = names;
+    this.slots = slots;
+    this.others = others;
+    this.readOnly = readOnly;
+  }
+
+  private int slotOf(String name) {
+    for (int i = 0; i < names.length; i++) {
+      if (names[i] == name) { // NOPMD CompareObjectsWithEquals - Fast path for the usual constant names
+        return i;
+      }
+    }
+    for (int i = 0; i < names.length; i++) {
+      if (names[i].equals(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private AtomicLong other(String name) {
+    AtomicLong result = others.get(name);
+    return result == null ? others.computeIfAbsent(name, n -> new AtomicLong()) : result;
   }
 
-  Counters(Map<String, Long> values) {
-    this.values = values;
+  private void assertWritable() {
+    if (readOnly) {
+      throw new UnsupportedOperationException("Counters are read-only");
+    }
   }
 
   public long get(String name) {
-    return values.containsKey(name) ? values.get(name) : 0;
+    int slot = slotOf(name);
+    if (slot >= 0) {
+      return slots.get(slot);
+    }
+    AtomicLong result = others.get(name);
+    return result == null ? 0 : result.get();
   }
 
   /**
@@ -41,7 +90,13 @@ public class Counters {
    * @param delta The amount to increase the metric with
    */
   public void inc(String name, long delta) {
-    set(name, get(name) + delta);
+    assertWritable();
+    int slot = slotOf(name);
+    if (slot >= 0) {
+      slots.addAndGet(slot, delta);
+    } else {
+      other(name).addAndGet(delta);
+    }
   }
 
   /**
@@ -50,22 +105,55 @@ public class Counters {
    * @param value The value to set the metric to
    */
   public void set(String name, long value) {
-    values.put(name, value);
+    assertWritable();
+    int slot = slotOf(name);
+    if (slot >= 0) {
+      slots.set(slot, value);
+    } else {
+      other(name).set(value);
+    }
   }
 
   /**
    * Reset all metrics to zero.
    */
   public void reset() {
-    values.clear();
+    assertWritable();
+    for (int i = 0; i < names.length; i++) {
+      slots.set(i, 0);
+    }
+    others.values().forEach(value -> value.set(0));
   }
 
+  /**
+   * Return a read-only snapshot of the current values of the counters.
+   * @return A read-only snapshot of the counters
+   */
   public Counters forReading() {
-    return new Counters(Collections.unmodifiableMap(new HashMap<String, Long>(values)));
+    AtomicLongArray values = new AtomicLongArray(names.length);
+    for (int i = 0; i < names.length; i++) {
+      values.set(i, slots.get(i));
+    }
+    ConcurrentMap<String, AtomicLong> otherValues = new ConcurrentHashMap<>();
+    others.forEach((name, value) -> otherValues.put(name, new AtomicLong(value.get())));
+    return new Counters(names, values, otherValues, true);
+  }
+
+  /**
+   * Return a live, read-only view of the counters. The view reflects updates to these counters without copying them.
+   * @return A read-only view of the counters
+   */
+  public Counters view() {
+    return readOnly ? this : new Counters(names, slots, others, true);
   }
 
   @Override
   public String toString() {
+    Map<String, Long> values = new LinkedHashMap<>();
+    for (int i = 0; i < names.length; i++) {
+      values.put(names[i], slots.get(i));
+    }
+    others.forEach((name, value) -> values.put(name, value.get()));
     return values.toString();
   }
 
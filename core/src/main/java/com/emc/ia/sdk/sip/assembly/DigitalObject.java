@@ -5,13 +5,13 @@ package com.emc.ia.sdk.sip.assembly;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.util.function.Supplier;
 
+import com.emc.ia.sdk.support.io.FileChannelInputStream;
 import com.emc.ia.sdk.support.io.RuntimeIoException;
 
 
@@ -29,21 +29,33 @@ public interface DigitalObject extends Supplier<InputStream> {
    */
   String getReferenceInformation();
 
+  /**
+   * The media type of this object's content, e.g. <code>image/jpeg</code>. This is a hint that may be used to decide
+   * how to compress the object in the SIP.
+   * @return The media type of this object's content, or <code>null</code> if not known
+   */
+  default String getMediaType() {
+    return null;
+  }
 
   /**
-   * Create a {@linkplain DigitalObject} from a file.
+   * The number of bytes in this object's content. This is a hint that may be used to size buffers.
+   * @return The number of bytes in this object's content, or a negative number if not known
+   */
+  default long getSize() {
+    return -1;
+  }
+
+
+  /**
+   * Create a {@linkplain DigitalObject} from a file. The content is read through a {@linkplain FileChannelInputStream},
+   * so that it can be hashed and added to a SIP with minimal copying.
    * @param referenceInformation The unique identifier to use as Reference Information
    * @param file The file that holds the content of the {@linkplain DigitalObject}
    * @return The newly created {@linkplain DigitalObject}
    */
   static DigitalObject fromFile(String referenceInformation, File file) {
-    return fromSupplier(referenceInformation, () -> {
-      try {
-        return new FileInputStream(file);
-      } catch (FileNotFoundException e) {
-        throw new RuntimeIoException(e);
-      }
-    });
+    return fromPath(referenceInformation, file.toPath());
   }
 
   /**
@@ -73,7 +85,27 @@ public interface DigitalObject extends Supplier<InputStream> {
    * @return The newly created {@linkplain DigitalObject}
    */
   static DigitalObject fromPath(String referenceInformation, Path path) {
-    return fromFile(referenceInformation, path.toFile());
+    return new DigitalObject() {
+      @Override
+      public InputStream get() {
+        try {
+          return new FileChannelInputStream(path);
+        } catch (IOException e) {
+          throw new RuntimeIoException(e);
+        }
+      }
+
+      @Override
+      public String getReferenceInformation() {
+        return referenceInformation;
+      }
+
+      @Override
+      public long getSize() {
+        File file = path.toFile();
+        return file.isFile() ? file.length() : -1;
+      }
+    };
   }
 
   /**
@@ -83,7 +115,22 @@ public interface DigitalObject extends Supplier<InputStream> {
    * @return The newly created {@linkplain DigitalObject}
    */
   static DigitalObject fromBytes(String referenceInformation, byte[] bytes) {
-    return fromSupplier(referenceInformation, () -> new ByteArrayInputStream(bytes));
+    return new DigitalObject() {
+      @Override
+      public InputStream get() {
+        return new ByteArrayInputStream(bytes);
+      }
+
+      @Override
+      public String getReferenceInformation() {
+        return referenceInformation;
+      }
+
+      @Override
+      public long getSize() {
+        return bytes.length;
+      }
+    };
   }
 
   /**
@@ -55,7 +55,8 @@ public class InfoArchivePackagingInformationAssembler extends PrintWriterAssembl
           .text(hash.getValue())
       .end();
     });
-    writer.println(XmlUtil.toString(builder.build()));
+    XmlUtil.write(builder.build(), writer, XmlUtil.Options.pretty());
+    writer.println();
   }
 
   @Override
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.sip.assembly;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import javax.validation.ValidationException;
+
+import org.xml.sax.SAXParseException;
+
+
+/**
+ * Describes content that failed validation by showing a bounded window of lines around the failure, rather than the
+ * whole content, which may well be too large to keep in memory.
+ */
+final class InvalidContent {
+
+  private static final int CONTEXT_LINES = 5;
+  private static final int MAX_LINE_LENGTH = 160;
+
+  private InvalidContent() {
+    // Utility class
+  }
+
+  /**
+   * Describe content that failed validation.
+   * @param failure The validation failure
+   * @param content The content that failed validation. May start anywhere before the failure
+   * @param firstLineNumber The line number of the first line in the content
+   * @return A human-readable description of the failure
+   * @throws IOException When an I/O error occurs
+   */
+  static String describe(ValidationException failure, InputStream content, long firstLineNumber) throws IOException {
+    SAXParseException location = locationOf(failure);
+    long lineNumber = location == null ? -1 : location.getLineNumber();
+    long columnNumber = location == null ? -1 : location.getColumnNumber();
+    StringBuilder result = new StringBuilder("Invalid content");
+    if (lineNumber > 0) {
+      result.append(" at line ").append(lineNumber);
+      if (columnNumber > 0) {
+        result.append(", column ").append(columnNumber);
+      }
+    }
+    result.append(":\n");
+    for (String line : linesAround(content, firstLineNumber, lineNumber, columnNumber)) {
+      result.append(line).append('\n');
+    }
+    return result.toString();
+  }
+
+  private static SAXParseException locationOf(Throwable failure) {
+    for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+      if (cause instanceof SAXParseException) {
+        return (SAXParseException)cause;
+      }
+    }
+    return null;
+  }
+
+  private static Deque<String> linesAround(InputStream content, long firstLineNumber, long lineNumber,
+      long columnNumber) throws IOException {
+    long lastLineNumber = lineNumber > 0 ? lineNumber + CONTEXT_LINES : firstLineNumber + 2 * CONTEXT_LINES;
+    Deque<String> result = new ArrayDeque<>();
+    Reader reader = new InputStreamReader(content, StandardCharsets.UTF_8);
+    StringBuilder line = new StringBuilder(MAX_LINE_LENGTH);
+    for (long current = firstLineNumber; current <= lastLineNumber; current++) {
+      boolean failed = current == lineNumber;
+      long start = failed ? Math.max(0, columnNumber - MAX_LINE_LENGTH / 2) : 0;
+      boolean more = readLine(reader, start, line);
+      result.add(String.format("%s%6d: %s%s", failed ? ">" : " ", current, start > 0 ? "..." : "", line));
+      if (result.size() > 2 * CONTEXT_LINES + 1) {
+        result.removeFirst();
+      }
+      if (!more) {
+        break;
+      }
+    }
+    return result;
+  }
+
+  private static boolean readLine(Reader reader, long start, StringBuilder line) throws IOException {
+    line.setLength(0);
+    long column = 0;
+    int c = reader.read();
+    while (c >= 0 && c != '\n') {
+      if (c == '\r') { // NOPMD EmptyIfStmt - Line separators differ between platforms
+        // Ignore
+      } else if (column >= start && line.length() < MAX_LINE_LENGTH) {
+        line.append((char)c);
+      } else if (line.length() == MAX_LINE_LENGTH) {
+        line.append("...");
+      }
+      column++;
+      c = reader.read();
+    }
+    return c >= 0;
+  }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.sip.assembly;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Histogram of latencies, in the spirit of <a href="http://hdrhistogram.org">HdrHistogram</a>. Latencies are kept in
+ * buckets whose width doubles with every power of two, with 16 buckets per power of two, so that percentiles are
+ * reported with a relative error of at most 1/16. Latencies over {@linkplain #MAX_TRACKABLE_NANOS} are counted in the
+ * last bucket.
+ * <p>
+ * Recording a latency doesn't allocate memory or take a lock, so a histogram may be updated and read from different
+ * threads.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int MAX_EXPONENT = 40;
+
+  /**
+   * The highest latency, in nanoseconds (about 18 minutes), that is tracked with full precision.
+   */
+  public static final long MAX_TRACKABLE_NANOS = (1L << MAX_EXPONENT) - 1;
+
+  private static final int NUM_BUCKETS = bucketOf(MAX_TRACKABLE_NANOS) + 1;
+
+  private final AtomicLongArray buckets;
+  private final AtomicLong count;
+  private final AtomicLong total;
+  private final AtomicLong max;
+
+  public LatencyHistogram() {
+    this(new AtomicLongArray(NUM_BUCKETS), 0, 0, 0);
+  }
+
+  private LatencyHistogram(AtomicLongArray buckets, long count, long total, long max) {
+    this.buckets = buckets;
+    this.count = new AtomicLong(count);
+    this.total = new AtomicLong(total);
+    this.max = new AtomicLong(max);
+  }
+
+  private static int bucketOf(long nanos) {
+    long value = Math.min(Math.max(nanos, 0), MAX_TRACKABLE_NANOS);
+    if (value < SUB_BUCKET_COUNT) {
+      return (int)value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return (shift + 1) * SUB_BUCKET_COUNT + (int)(value >>> shift) - SUB_BUCKET_COUNT;
+  }
+
+  private static long highestValueIn(int bucket) {
+    int shift = bucket / SUB_BUCKET_COUNT - 1;
+    if (shift < 0) {
+      return bucket;
+    }
+    long lowest = (long)(SUB_BUCKET_COUNT + bucket % SUB_BUCKET_COUNT) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+
+  /**
+   * Record a latency.
+   * @param nanos The latency to record, in nanoseconds
+   */
+  public void record(long nanos) {
+    buckets.incrementAndGet(bucketOf(nanos));
+    count.incrementAndGet();
+    total.addAndGet(nanos);
+    long current = max.get();
+    while (nanos > current && !max.compareAndSet(current, nanos)) {
+      current = max.get();
+    }
+  }
+
+  /**
+   * Return the number of recorded latencies.
+   * @return The number of recorded latencies
+   */
+  public long getCount() {
+    return count.get();
+  }
+
+  /**
+   * Return the sum of all recorded latencies.
+   * @return The sum of all recorded latencies, in nanoseconds
+   */
+  public long getTotalNanos() {
+    return total.get();
+  }
+
+  /**
+   * Return the highest recorded latency.
+   * @return The highest recorded latency, in nanoseconds
+   */
+  public long getMaxNanos() {
+    return max.get();
+  }
+
+  /**
+   * Return the average recorded latency.
+   * @return The average recorded latency, in nanoseconds
+   */
+  public double getMeanNanos() {
+    long n = count.get();
+    return n == 0 ? 0 : (double)total.get() / n;
+  }
+
+  /**
+   * Return the latency at the given percentile, i.e. the latency that the given percentage of recorded latencies
+   * doesn't exceed.
+   * @param percentile The percentile, between 0 and 100
+   * @return The latency at the given percentile, in nanoseconds
+   */
+  public long getValueAtPercentile(double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("percentile must be between 0 and 100");
+    }
+    long n = count.get();
+    if (n == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long)Math.ceil(percentile / 100 * n));
+    long seen = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      seen += buckets.get(i);
+      if (seen >= rank) {
+        return i == NUM_BUCKETS - 1 ? max.get() : Math.min(highestValueIn(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  /**
+   * Forget all recorded latencies.
+   */
+  public void reset() {
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      buckets.set(i, 0);
+    }
+    count.set(0);
+    total.set(0);
+    max.set(0);
+  }
+
+  LatencyHistogram copy() {
+    AtomicLongArray values = new AtomicLongArray(NUM_BUCKETS);
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      values.set(i, buckets.get(i));
+    }
+    return new LatencyHistogram(values, count.get(), total.get(), max.get());
+  }
+
+  @Override
+  public String toString() {
+    return String.format("count=%d, mean=%dus, p50=%dus, p99=%dus, max=%dus", getCount(), micros(getMeanNanos()),
+        micros(getValueAtPercentile(50)), micros(getValueAtPercentile(99)), micros(getMaxNanos()));
+  }
+
+  private static long micros(double nanos) {
+    return TimeUnit.NANOSECONDS.toMicros(Math.round(nanos));
+  }
+
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.sip.assembly;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.emc.ia.sdk.support.io.EncodedHash;
+import com.emc.ia.sdk.support.io.FileSupplier;
+
+
+/**
+ * Assemble a batch of SIPs using multiple threads. Domain objects are {@linkplain #add(Object) added} from a single
+ * producer and are spread in a round-robin fashion over a number of lanes. Each lane has its own
+ * {@linkplain SipAssembler} running on its own thread and applies the {@linkplain SipSegmentationStrategy
+ * segmentation strategy} to the SIP it is currently assembling.
+ * <p>
+ * Since SIPs are built concurrently, the lanes share a single {@linkplain PackagingInformationFactory}. Sequence
+ * numbers are assigned in the order in which SIPs are completed, and only the last SIP completed when the batch
+ * {@linkplain #end() ends} is marked as the last SIP in the DSS.
+ * <p>
+ * The assemblers for the lanes are created using a function that receives the packaging information factory to use.
+ * Each assembler should have its own PDI assembler, PDI buffer and {@linkplain ContentAssembler}, for instance:
+ * <pre>
+ * new ParallelBatchSipAssembler&lt;&gt;(factory -&gt; SipAssembler.forPdiAndContent(factory, new MyPdiAssembler(),
+ *     ContentAssembler.noDedup(new MyDigitalObjectsExtraction())), packagingInformationFactory,
+ *     SipSegmentationStrategy.byMaxAius(1000), 4);
+ * </pre>
+ * @param <D> The type of domain object to assemble SIPs from
+ */
+public class ParallelBatchSipAssembler<D> {
+
+  private static final int DEFAULT_QUEUE_SIZE = 64;
+
+  private final PackagingInformationFactory packagingInformationFactory;
+  private final List<Lane> lanes;
+  private final Collection<FileGenerationMetrics> sipsMetrics = Collections.synchronizedList(new ArrayList<>());
+  private int nextLane;
+
+  /**
+   * Create an instance that assembles SIPs in a temporary directory.
+   * @param laneAssemblerFactory Function that creates a SIP assembler for a lane using the given factory
+   * @param packagingInformationFactory The factory for Packaging Information that is shared by all lanes
+   * @param segmentationStrategy A strategy that determines when a lane should start a new SIP
+   * @param numLanes The number of SIPs to assemble concurrently
+   */
+  public ParallelBatchSipAssembler(Function<PackagingInformationFactory, SipAssembler<D>> laneAssemblerFactory,
+      PackagingInformationFactory packagingInformationFactory, SipSegmentationStrategy<D> segmentationStrategy,
+      int numLanes) {
+    this(laneAssemblerFactory, packagingInformationFactory, segmentationStrategy,
+        FileSupplier.fromTemporaryDirectory(), numLanes);
+  }
+
+  /**
+   * Create an instance that assembles SIPs in the given directory.
+   * @param laneAssemblerFactory Function that creates a SIP assembler for a lane using the given factory
+   * @param packagingInformationFactory The factory for Packaging Information that is shared by all lanes
+   * @param segmentationStrategy A strategy that determines when a lane should start a new SIP
+   * @param dir Directory in which to generate SIP files
+   * @param numLanes The number of SIPs to assemble concurrently
+   */
+  public ParallelBatchSipAssembler(Function<PackagingInformationFactory, SipAssembler<D>> laneAssemblerFactory,
+      PackagingInformationFactory packagingInformationFactory, SipSegmentationStrategy<D> segmentationStrategy,
+      File dir, int numLanes) {
+    this(laneAssemblerFactory, packagingInformationFactory, segmentationStrategy, FileSupplier.fromDirectory(dir),
+        numLanes);
+  }
+
+  /**
+   * Create an instance that assembles SIPs using the given supplier of SIP files.
+   * @param laneAssemblerFactory Function that creates a SIP assembler for a lane using the given factory
+   * @param packagingInformationFactory The factory for Packaging Information that is shared by all lanes
+   * @param segmentationStrategy A strategy that determines when a lane should start a new SIP
+   * @param fileSupplier A supplier of files in which to store the SIPs
+   * @param numLanes The number of SIPs to assemble concurrently
+   */
+  public ParallelBatchSipAssembler(Function<PackagingInformationFactory, SipAssembler<D>> laneAssemblerFactory,
+      PackagingInformationFactory packagingInformationFactory, SipSegmentationStrategy<D> segmentationStrategy,
+      Supplier<File> fileSupplier, int numLanes) {
+    if (numLanes <= 0) {
+      throw new IllegalArgumentException("numLanes must be positive");
+    }
+    this.packagingInformationFactory = packagingInformationFactory;
+    setFinalSipInDss(false);
+    Supplier<File> sharedFileSupplier = () -> {
+      synchronized (fileSupplier) {
+        return fileSupplier.get();
+      }
+    };
+    this.lanes = new ArrayList<>(numLanes);
+    for (int i = 0; i < numLanes; i++) {
+      PackagingInformationFactory laneFactory = new LanePackagingInformationFactory();
+      SipAssembler<D> assembler = laneAssemblerFactory.apply(laneFactory);
+      if (assembler.getPackagingInformationFactory() != laneFactory) {
+        throw new IllegalArgumentException("Lane assembler must use the packaging information factory it's given");
+      }
+      lanes.add(new Lane(i, assembler, segmentationStrategy, sharedFileSupplier));
+    }
+  }
+
+  private void setFinalSipInDss(boolean finalSipInDss) {
+    synchronized (packagingInformationFactory) {
+      packagingInformationFactory.setFinalSipInDss(finalSipInDss);
+    }
+  }
+
+  /**
+   * Add a domain object to the batch of SIPs. This method blocks only when the lane that should assemble the domain
+   * object has too much work queued up.
+   * @param domainObject The domain object to add
+   * @throws IOException When an I/O error occurred while assembling a previously added domain object
+   */
+  public void add(D domainObject) throws IOException {
+    Lane lane = lanes.get(nextLane);
+    nextLane = (nextLane + 1) % lanes.size();
+    lane.worker.submit(domainObject);
+  }
+
+  /**
+   * End the batch assembly process. This waits until all lanes have processed the domain objects added to them. When
+   * any of the lanes failed, the SIPs that are still being assembled are closed without Packaging Information, and the
+   * first failure is reported with any others {@linkplain Throwable#addSuppressed(Throwable) suppressed}.
+   * @throws IOException When an I/O error occurs
+   */
+  public void end() throws IOException {
+    Throwable failure = null;
+    for (Lane lane : lanes) {
+      try {
+        lane.worker.finish();
+      } catch (IOException | RuntimeException | Error e) { // NOPMD AvoidCatchingThrowable - Rethrown
+        failure = addFailure(failure, e);
+      }
+    }
+    if (failure == null) {
+      try {
+        endLanes();
+      } catch (IOException | RuntimeException | Error e) { // NOPMD AvoidCatchingThrowable - Rethrown
+        failure = e;
+      }
+    }
+    if (failure != null) {
+      for (Lane lane : lanes) {
+        lane.abortCurrentSip(failure);
+      }
+      rethrow(failure);
+    }
+  }
+
+  private static Throwable addFailure(Throwable failure, Throwable next) {
+    if (failure == null) {
+      return next;
+    }
+    if (next != failure) { // NOPMD CompareObjectsWithEquals - Can't suppress self
+      failure.addSuppressed(next);
+    }
+    return failure;
+  }
+
+  private void endLanes() throws IOException {
+    Optional<Lane> lastLane = lanes.stream()
+        .filter(Lane::isAssemblingSip)
+        .reduce((first, second) -> second);
+    for (Lane lane : lanes) {
+      if (!lastLane.isPresent() || lane != lastLane.get()) {
+        lane.end();
+      }
+    }
+    setFinalSipInDss(true);
+    if (lastLane.isPresent()) {
+      lastLane.get().end();
+    }
+  }
+
+  private static void rethrow(Throwable failure) throws IOException {
+    if (failure instanceof IOException) {
+      throw (IOException)failure;
+    }
+    if (failure instanceof RuntimeException) {
+      throw (RuntimeException)failure;
+    }
+    throw (Error)failure;
+  }
+
+  /**
+   * Returns the files that were generated as part of this batch and metrics about the SIPs stored in them. The SIPs
+   * of the different lanes are reported in the order in which they were completed.
+   * @return The files that were generated as part of this batch and metrics about the SIPs stored in them
+   */
+  public Collection<FileGenerationMetrics> getSipsMetrics() {
+    synchronized (sipsMetrics) {
+      return Collections.unmodifiableCollection(new ArrayList<>(sipsMetrics));
+    }
+  }
+
+
+  /**
+   * Batch of SIPs assembled on a dedicated thread.
+   */
+  private final class Lane extends BatchSipAssembler<D> {
+
+    private final WorkerThread<D> worker;
+
+    Lane(int index, SipAssembler<D> assembler, SipSegmentationStrategy<D> segmentationStrategy,
+        Supplier<File> fileSupplier) {
+      super(assembler, segmentationStrategy, fileSupplier);
+      this.worker = new WorkerThread<>("SIP assembly lane " + index, DEFAULT_QUEUE_SIZE, this::add);
+    }
+
+    @Override
+    protected void sipEnded(FileGenerationMetrics metrics) {
+      sipsMetrics.add(metrics);
+    }
+
+  }
+
+
+  /**
+   * Packaging information factory for a single lane. It delegates to the shared factory, but leaves the decision on
+   * which SIP is the last in the DSS to the {@linkplain ParallelBatchSipAssembler}.
+   */
+  private final class LanePackagingInformationFactory implements PackagingInformationFactory {
+
+    @Override
+    public PackagingInformation newInstance(long aiuCount, Optional<EncodedHash> pdiHash) {
+      synchronized (packagingInformationFactory) {
+        return packagingInformationFactory.newInstance(aiuCount, pdiHash);
+      }
+    }
+
+    @Override
+    public void setFinalSipInDss(boolean finalSipInDss) {
+      // Ignored, since a lane doesn't know whether its SIP is the last in the DSS
+    }
+
+  }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.sip.assembly;
+
+import java.io.IOException;
+import java.util.function.Supplier;
+
+import com.emc.ia.sdk.support.io.DataBuffer;
+import com.emc.ia.sdk.support.io.HashAssembler;
+import com.emc.ia.sdk.support.io.RuntimeIoException;
+
+
+/**
+ * {@linkplain SipAssembler} that assembles a SIP in a pipeline of background stages. {@linkplain #add(Object) Adding}
+ * a domain object only puts it in a bounded queue, so that the thread that produces domain objects can continue
+ * reading its source while earlier domain objects are processed. The pipeline consists of the following stages, each
+ * running on its own thread:
+ * <ol>
+ * <li>Extracting the digital objects from the domain object, hashing them and adding them to the ZIP</li>
+ * <li>Rendering the domain object and the resulting {@linkplain ContentInfo} into the PDI</li>
+ * </ol>
+ * Each stage processes domain objects in the order in which they were added, so the resulting SIP is the same as the
+ * one a regular {@linkplain SipAssembler} would create. The producing thread blocks only when a queue is full.
+ * <p>
+ * Failures in any of the stages are reported on the next call to {@linkplain #add(Object)} or {@linkplain #end()}.
+ * Since domain objects may still be in the pipeline, {@linkplain #getMetrics() metrics} taken before the SIP has
+ * {@linkplain #end() ended} may lag behind the domain objects that were added.
+ * @param <D> The type of domain objects to assemble the SIP from
+ */
+public class PipelinedSipAssembler<D> extends SipAssembler<D> {
+
+  private static final int DEFAULT_QUEUE_SIZE = 64;
+
+  private final int queueSize;
+  private WorkerThread<D> contentStage;
+  private WorkerThread<HashedContents<D>> pdiStage;
+
+  /**
+   * Create an instance with a default queue size.
+   * @param packagingInformationFactory Factory for creating the Packaging Information
+   * @param pdiAssembler Assembler that builds up the PDI
+   * @param pdiHashAssembler Assembler that builds up an encoded hash for the PDI and the unstructured data
+   * @param pdiBufferSupplier Supplier for a data buffer to store the PDI
+   * @param contentAssembler ContentAssembler that adds the digital objects to the SIP
+   */
+  public PipelinedSipAssembler(PackagingInformationFactory packagingInformationFactory,
+      Assembler<HashedContents<D>> pdiAssembler, HashAssembler pdiHashAssembler,
+      Supplier<? extends DataBuffer> pdiBufferSupplier, ContentAssembler<D> contentAssembler) {
+    this(packagingInformationFactory, pdiAssembler, pdiHashAssembler, pdiBufferSupplier, contentAssembler,
+        DEFAULT_QUEUE_SIZE);
+  }
+
+  /**
+   * Create an instance.
+   * @param packagingInformationFactory Factory for creating the Packaging Information
+   * @param pdiAssembler Assembler that builds up the PDI
+   * @param pdiHashAssembler Assembler that builds up an encoded hash for the PDI and the unstructured data
+   * @param pdiBufferSupplier Supplier for a data buffer to store the PDI
+   * @param contentAssembler ContentAssembler that adds the digital objects to the SIP
+   * @param queueSize The maximum number of domain objects waiting for each stage of the pipeline
+   */
+  public PipelinedSipAssembler(PackagingInformationFactory packagingInformationFactory,
+      Assembler<HashedContents<D>> pdiAssembler, HashAssembler pdiHashAssembler,
+      Supplier<? extends DataBuffer> pdiBufferSupplier, ContentAssembler<D> contentAssembler, int queueSize) {
+    super(packagingInformationFactory, pdiAssembler, pdiHashAssembler, pdiBufferSupplier, contentAssembler);
+    if (queueSize <= 0) {
+      throw new IllegalArgumentException("queueSize must be positive");
+    }
+    this.queueSize = queueSize;
+  }
+
+  @Override
+  public void start(DataBuffer buffer) throws IOException {
+    super.start(buffer);
+    pdiStage = new WorkerThread<>("PDI rendering", queueSize, this::addToPdi);
+    contentStage = new WorkerThread<>("SIP content", queueSize,
+        domainObject -> pdiStage.submit(addContentsOf(domainObject)));
+  }
+
+  @Override
+  public void add(D domainObject) {
+    if (contentStage == null) {
+      throw new IllegalStateException("Should call start() first");
+    }
+    try {
+      contentStage.submit(domainObject);
+    } catch (IOException e) {
+      throw new RuntimeIoException(e);
+    }
+  }
+
+  /**
+   * Wait for the stages of the pipeline to process all domain objects, and then finish the SIP. If any stage failed, the
+   * SIP is closed without Packaging Information, and the failure of the stage is reported. The content assembler is
+   * {@linkplain ContentAssembler#end() ended} only when the SIP was assembled successfully.
+   */
+  @Override
+  public void end() throws IOException {
+    finishStages();
+    endSip();
+    endContent();
+  }
+
+  /**
+   * Wait for the stages of the pipeline to stop, and then close the SIP without Packaging Information.
+   */
+  @Override
+  void abort(Throwable failure) {
+    if (contentStage != null) {
+      try {
+        finishStages();
+      } catch (IOException | RuntimeException | Error e) { // NOPMD AvoidCatchingThrowable - Reported with failure
+        // The failing stage already aborted the SIP
+        if (e != failure) { // NOPMD CompareObjectsWithEquals - Can't suppress self
+          failure.addSuppressed(e);
+        }
+        return;
+      }
+    }
+    super.abort(failure);
+  }
+
+  private void finishStages() throws IOException {
+    try {
+      finish(contentStage, pdiStage);
+      finish(pdiStage, null);
+    } finally {
+      contentStage = null;
+      pdiStage = null;
+    }
+  }
+
+  /**
+   * Finish a stage of the pipeline. If that fails, the stages after it are stopped and the SIP is aborted.
+   */
+  private void finish(WorkerThread<?> stage, WorkerThread<?> nextStage) throws IOException {
+    try {
+      stage.finish();
+    } catch (IOException | RuntimeException | Error e) { // NOPMD AvoidCatchingThrowable - Rethrown
+      if (nextStage != null) {
+        try {
+          nextStage.finish();
+        } catch (IOException | RuntimeException suppressed) {
+          e.addSuppressed(suppressed);
+        }
+      }
+      abortSip(e);
+      throw e;
+    }
+  }
+
+}
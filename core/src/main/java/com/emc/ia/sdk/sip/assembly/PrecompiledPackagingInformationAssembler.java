@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.sip.assembly;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+import javax.validation.ValidationException;
+
+import com.emc.ia.sdk.support.datetime.Dates;
+import com.emc.ia.sdk.support.io.DataBuffer;
+import com.emc.ia.sdk.support.xml.XmlUtil;
+
+
+/**
+ * Convert {@linkplain PackagingInformation} into a format accepted by InfoArchive, like
+ * {@linkplain InfoArchivePackagingInformationAssembler}, but without building a DOM. The Packaging Information always
+ * has the same shape, so this assembler fills in a precompiled template with escaped field values and writes the result
+ * in one go. This makes it suitable for workloads that create many small SIPs.
+ * <p>
+ * Since the template is known to be valid, the result is only validated against the XML Schema in verification mode.
+ * Use that mode during development or when diagnosing problems with field values, like values that are too long.
+ */
+public class PrecompiledPackagingInformationAssembler implements Assembler<PackagingInformation> {
+
+  private static final String START = XmlUtil.XML_DECLARATION
+      + "<sip xmlns=\"urn:x-emc:ia:schema:sip:1.0\">\n  <dss>\n";
+  private static final List<Field<DataSubmissionSession>> DSS_FIELDS = Arrays.asList(
+      new Field<>("    ", "holding", DataSubmissionSession::getHolding),
+      new Field<>("    ", "id", DataSubmissionSession::getId),
+      new Field<>("    ", "pdi_schema", DataSubmissionSession::getSchema),
+      new Field<>("    ", "production_date", dss -> Dates.toIso(dss.getProductionDate())),
+      new Field<>("    ", "base_retention_date", dss -> Dates.toIso(dss.getBaseRetentionDate())),
+      new Field<>("    ", "producer", DataSubmissionSession::getProducer),
+      new Field<>("    ", "entity", DataSubmissionSession::getEntity),
+      new Field<>("    ", "priority", dss -> Integer.toString(dss.getPriority())),
+      new Field<>("    ", "application", DataSubmissionSession::getApplication),
+      new Field<>("    ", "retention_class", DataSubmissionSession::getRetentionClass));
+  private static final String END_DSS = "  </dss>\n";
+  private static final List<Field<PackagingInformation>> SIP_FIELDS = Arrays.asList(
+      new Field<>("  ", "production_date", packagingInformation -> Dates.toIso(
+          packagingInformation.getProductionDate())),
+      new Field<>("  ", "seqno", packagingInformation -> String.valueOf(packagingInformation.getSequenceNumber())),
+      new Field<>("  ", "is_last", packagingInformation -> String.valueOf(packagingInformation.isLast())),
+      new Field<>("  ", "aiu_count", packagingInformation -> String.valueOf(packagingInformation.getAiuCount())),
+      new Field<>("  ", "page_count", packagingInformation -> String.valueOf(packagingInformation.getPageCount())));
+  private static final String END = "</sip>\n" + System.lineSeparator();
+  private static final int INITIAL_SIZE = 2048;
+
+  private final boolean verify;
+  private final StringBuilder xml = new StringBuilder(INITIAL_SIZE);
+  private DataBuffer buffer;
+  private OutputStream output;
+
+  /**
+   * Create an instance that doesn't validate the Packaging Information.
+   */
+  public PrecompiledPackagingInformationAssembler() {
+    this(false);
+  }
+
+  /**
+   * Create an instance.
+   * @param verify Whether to validate the Packaging Information against the XML Schema
+   */
+  public PrecompiledPackagingInformationAssembler(boolean verify) {
+    this.verify = verify;
+  }
+
+  @Override
+  public void start(DataBuffer product) throws IOException {
+    buffer = product;
+    output = product.openForWriting();
+  }
+
+  @Override
+  public void add(PackagingInformation packagingInformation) throws IOException {
+    Objects.requireNonNull(output, "Should call start() first");
+    xml.setLength(0);
+    xml.append(START);
+    DataSubmissionSession dss = packagingInformation.getDss();
+    for (Field<DataSubmissionSession> field : DSS_FIELDS) {
+      field.appendTo(xml, dss);
+    }
+    xml.append(END_DSS);
+    for (Field<PackagingInformation> field : SIP_FIELDS) {
+      field.appendTo(xml, packagingInformation);
+    }
+    packagingInformation.pdiHash().ifPresent(hash -> {
+      xml.append("  <pdi_hash algorithm=\"");
+      appendEscaped(hash.getHashFunction(), xml);
+      xml.append("\" encoding=\"");
+      appendEscaped(hash.getEncoding(), xml);
+      xml.append("\">");
+      appendEscaped(hash.getValue(), xml);
+      xml.append("</pdi_hash>\n");
+    });
+    xml.append(END);
+    output.write(xml.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void appendEscaped(String text, StringBuilder builder) {
+    if (text == null) {
+      return;
+    }
+    int start = 0;
+    int end = text.length();
+    while (start < end && text.charAt(start) <= ' ') {
+      start++;
+    }
+    while (end > start && text.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    for (int i = start; i < end; i++) {
+      char c = text.charAt(i);
+      switch (c) {
+        case '&':
+          builder.append("&amp;");
+          break;
+        case '<':
+          builder.append("&lt;");
+          break;
+        case '>':
+          builder.append("&gt;");
+          break;
+        case '\'':
+          builder.append("&apos;");
+          break;
+        case '"':
+          builder.append("&quot;");
+          break;
+        default:
+          builder.append(c);
+          break;
+      }
+    }
+  }
+
+  @Override
+  public void end() throws IOException {
+    Objects.requireNonNull(output, "Should call start() first");
+    output.close();
+    output = null;
+    if (verify) {
+      verify();
+    }
+  }
+
+  private void verify() throws IOException {
+    Validator validator = new XmlSchemaValidator(getClass().getResourceAsStream("/sip.xsd"));
+    try (InputStream packagingInformation = buffer.openForReading()) {
+      try {
+        validator.validate(packagingInformation);
+      } catch (ValidationException e) {
+        try (InputStream actual = buffer.openForReading()) {
+          throw new IOException(InvalidContent.describe(e, actual, 1), e);
+        }
+      }
+    }
+  }
+
+  @Override
+  public Metrics getMetrics() {
+    return null;
+  }
+
+
+  /**
+   * An element in the template whose text is taken from a field.
+   * @param <T> The type of object that holds the field
+   */
+  private static final class Field<T> {
+
+    private final String start;
+    private final String end;
+    private final Function<T, String> value;
+
+    Field(String indentation, String name, Function<T, String> value) {
+      this.start = indentation + '<' + name + '>';
+      this.end = "</" + name + ">\n";
+      this.value = value;
+    }
+
+    void appendTo(StringBuilder builder, T source) {
+      String text = value.apply(source);
+      if (text != null) {
+        builder.append(start);
+        appendEscaped(text, builder);
+        builder.append(end);
+      }
+    }
+
+  }
+
+}
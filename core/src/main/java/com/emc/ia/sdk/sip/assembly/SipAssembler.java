@@ -3,9 +3,13 @@
  */
 package com.emc.ia.sdk.sip.assembly;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.function.Supplier;
 
@@ -20,7 +24,9 @@ import com.emc.ia.sdk.support.io.HashAssembler;
 import com.emc.ia.sdk.support.io.MemoryBuffer;
 import com.emc.ia.sdk.support.io.NoHashAssembler;
 import com.emc.ia.sdk.support.io.RuntimeIoException;
+import com.emc.ia.sdk.support.io.StreamingZipAssembler;
 import com.emc.ia.sdk.support.io.ZipAssembler;
+import com.emc.ia.sdk.support.io.ZipEntryBuffer;
 
 /**
  * Assembles a <a href="http://public.ccsds.org/publications/archive/650x0m2.pdf">Submission Information Package</a>
@@ -44,7 +50,13 @@ import com.emc.ia.sdk.support.io.ZipAssembler;
  * {@linkplain ZipAssembler}. Each domain object may also contain zero or more {@linkplain DigitalObject}s, which are
  * extracted from the domain object using a {@linkplain DigitalObjectsExtraction} and added to the ZIP. The PDI is
  * written to a {@linkplain DataBuffer} until it is complete. For small PDIs, you can use a {@linkplain MemoryBuffer} to
- * hold this data, but for larger PDIs you should use a {@linkplain FileBuffer} to prevent running out of memory.
+ * hold this data, but for larger PDIs you should use a {@linkplain FileBuffer} to prevent running out of memory. A
+ * {@linkplain com.emc.ia.sdk.support.io.SpillingDataBuffer} combines the two, while a
+ * {@linkplain com.emc.ia.sdk.support.io.SlabBuffer} keeps large PDIs in pooled memory outside the Java heap. Buffers
+ * that are {@linkplain Closeable} are closed once the ZIP is closed.
+ * Alternatively, you can have the PDI written directly into the ZIP by using a {@linkplain StreamingZipAssembler}, so
+ * that it's written only once. The PDI then becomes the first entry in the ZIP, followed by the digital objects, which
+ * are spooled while the PDI is being written. Since a streamed PDI can't be read back, it can't be validated either.
  * <p>
  * Use the following steps to assemble a SIP:
  * <ol>
@@ -53,11 +65,15 @@ import com.emc.ia.sdk.support.io.ZipAssembler;
  * <li>Finish the process by calling the {@linkplain #end()} method</li>
  * </ol>
  * You can optionally get metrics about the SIP assembly process by calling {@linkplain #getMetrics()} at any time.
+ * Besides counts and sizes, the metrics include {@linkplain SipMetrics#latency(SipAssemblyStage) latency histograms}
+ * for the stages of the process, so you can tell where time is spent. To push metrics to a monitoring system instead,
+ * {@linkplain #setListener(SipAssemblyListener) set a listener}.
  * <p>
  * If the number of domain objects is small and each individual domain object is also small, you can wrap a
  * {@linkplain SipAssembler} in a {@linkplain Generator} to reduce the above code to a single call.
  * <p>
- * To assemble a number of SIPs in a batch, use {@linkplain BatchSipAssembler}.
+ * To assemble a number of SIPs in a batch, use {@linkplain BatchSipAssembler}. To overlap reading domain objects with
+ * adding their content to the ZIP and rendering the PDI, use {@linkplain PipelinedSipAssembler}.
  * <p>
  * @param <D> The type of domain objects to assemble the SIP from
  */
@@ -67,16 +83,21 @@ public class SipAssembler<D> implements Assembler<D> {
   private static final String PDI_ENTRY = "eas_pdi.xml";
 
   private final ZipAssembler zip;
+  private final TimingZipAssembler timedZip;
   private final Assembler<PackagingInformation> packagingInformationAssembler;
   private final Assembler<HashedContents<D>> pdiAssembler;
   private final HashAssembler pdiHashAssembler;
   private final Supplier<? extends DataBuffer> pdiBufferSupplier;
   private final PackagingInformationFactory packagingInformationFactory;
-  private final Counters metrics = new Counters();
+  private final Counters metrics = SipMetrics.newCounters();
+  private final Map<SipAssemblyStage, LatencyHistogram> latencies = SipMetrics.newLatencies();
+  private final SipMetrics liveMetrics = new SipMetrics(metrics.view(), Collections.unmodifiableMap(latencies));
   private final ContentAssembler<D> contentAssembler;
+  private final boolean streamPdi;
   private DataBuffer pdiBuffer;
   private DataBuffer sipFileBuffer;
   private Optional<EncodedHash> pdiHash;
+  private volatile SipAssemblyListener listener = new SipAssemblyListener() { };
 
   /**
    * Assemble a SIP that contains only structured data and is the only SIP in its DSS.
@@ -264,6 +285,28 @@ public class SipAssembler<D> implements Assembler<D> {
         contentAssembler);
   }
 
+  /**
+   * Assemble a SIP that writes its PDI directly into the ZIP rather than buffering it. This saves buffering the PDI,
+   * but has costs and limitations:
+   * <ul>
+   * <li>The PDI entry stays open until the SIP ends, so the content of all digital objects is compressed into a
+   * temporary spool file first and then copied from there into the ZIP</li>
+   * <li>The PDI can't be read back, so it can only be validated {@linkplain PrintWriterAssembler#setValidateWhileWriting(
+   * boolean) while it's being written}. {@linkplain #start(DataBuffer) Starting} a SIP fails when the PDI assembler
+   * would validate the PDI afterwards</li>
+   * </ul>
+   * @param <D> The type of domain objects to assemble the SIP from
+   * @param factory Factory for creating the Packaging Information
+   * @param pdiAssembler Assembler that builds up the PDI
+   * @param pdiHashAssembler Assembler that builds up an encoded hash for the PDI
+   * @param contentAssembler ContentAssembler that adds the digital objects to the SIP
+   * @return The newly created SIP assembler
+   */
+  public static <D> SipAssembler<D> forStreamedPdiAndContentWithHashing(PackagingInformationFactory factory,
+      Assembler<HashedContents<D>> pdiAssembler, HashAssembler pdiHashAssembler, ContentAssembler<D> contentAssembler) {
+    return new SipAssembler<>(factory, pdiAssembler, pdiHashAssembler, new StreamingZipAssembler(), contentAssembler);
+  }
+
   /**
    * Create a new instance.
    * @param packagingInformationFactory Factory for creating the Packaging Information
@@ -279,10 +322,65 @@ public class SipAssembler<D> implements Assembler<D> {
         pdiBufferSupplier, new DefaultZipAssembler(), contentAssembler);
   }
 
-  SipAssembler(PackagingInformationFactory packagingInformationFactory,
+  /**
+   * Create a new instance that writes the SIP using the given ZIP assembler, for instance a
+   * {@linkplain com.emc.ia.sdk.support.io.ParallelZipAssembler} to compress the digital objects on multiple threads.
+   * @param packagingInformationFactory Factory for creating the Packaging Information
+   * @param pdiAssembler Assembler that builds up the PDI
+   * @param pdiHashAssembler Assembler that builds up an encoded hash for the PDI and the unstructured data
+   * @param pdiBufferSupplier Supplier for a data buffer to store the PDI
+   * @param zipAssembler Assembler that writes the SIP's ZIP
+   * @param contentAssembler ContentAssembler that adds the digital objects to the SIP
+   */
+  public SipAssembler(PackagingInformationFactory packagingInformationFactory,
+      Assembler<HashedContents<D>> pdiAssembler, HashAssembler pdiHashAssembler,
+      Supplier<? extends DataBuffer> pdiBufferSupplier, ZipAssembler zipAssembler,
+      ContentAssembler<D> contentAssembler) {
+    this(packagingInformationFactory, new InfoArchivePackagingInformationAssembler(), pdiAssembler, pdiHashAssembler,
+        pdiBufferSupplier, zipAssembler, contentAssembler);
+  }
+
+  /**
+   * Create a new instance that writes the PDI directly into a streamed entry of the given ZIP assembler. See
+   * {@linkplain #forStreamedPdiAndContentWithHashing(PackagingInformationFactory, Assembler, HashAssembler,
+   * ContentAssembler)} for the costs and limitations of streaming the PDI.
+   * @param packagingInformationFactory Factory for creating the Packaging Information
+   * @param pdiAssembler Assembler that builds up the PDI
+   * @param pdiHashAssembler Assembler that builds up an encoded hash for the PDI and the unstructured data
+   * @param zipAssembler Assembler that writes the SIP's ZIP
+   * @param contentAssembler ContentAssembler that adds the digital objects to the SIP
+   */
+  public SipAssembler(PackagingInformationFactory packagingInformationFactory,
+      Assembler<HashedContents<D>> pdiAssembler, HashAssembler pdiHashAssembler, StreamingZipAssembler zipAssembler,
+      ContentAssembler<D> contentAssembler) {
+    this(packagingInformationFactory, new InfoArchivePackagingInformationAssembler(), pdiAssembler, pdiHashAssembler,
+        null, zipAssembler, contentAssembler, true);
+  }
+
+  /**
+   * Create a new instance that writes the Packaging Information using the given assembler, for instance a
+   * {@linkplain PrecompiledPackagingInformationAssembler} when creating many small SIPs.
+   * @param packagingInformationFactory Factory for creating the Packaging Information
+   * @param packagingInformationAssembler Assembler that writes the Packaging Information
+   * @param pdiAssembler Assembler that builds up the PDI
+   * @param pdiHashAssembler Assembler that builds up an encoded hash for the PDI and the unstructured data
+   * @param pdiBufferSupplier Supplier for a data buffer to store the PDI
+   * @param zipAssembler Assembler that writes the SIP's ZIP
+   * @param contentAssembler ContentAssembler that adds the digital objects to the SIP
+   */
+  public SipAssembler(PackagingInformationFactory packagingInformationFactory,
       Assembler<PackagingInformation> packagingInformationAssembler, Assembler<HashedContents<D>> pdiAssembler,
       HashAssembler pdiHashAssembler, Supplier<? extends DataBuffer> pdiBufferSupplier, ZipAssembler zipAssembler,
       ContentAssembler<D> contentAssembler) {
+    this(packagingInformationFactory, packagingInformationAssembler, pdiAssembler, pdiHashAssembler, pdiBufferSupplier,
+        zipAssembler, contentAssembler, false);
+  }
+
+  private SipAssembler(PackagingInformationFactory packagingInformationFactory,
+      Assembler<PackagingInformation> packagingInformationAssembler, Assembler<HashedContents<D>> pdiAssembler,
+      HashAssembler pdiHashAssembler, Supplier<? extends DataBuffer> pdiBufferSupplier, ZipAssembler zipAssembler,
+      ContentAssembler<D> contentAssembler, boolean streamPdi) {
+    this.streamPdi = streamPdi;
     this.packagingInformationFactory = packagingInformationFactory;
     this.packagingInformationAssembler = packagingInformationAssembler;
     this.pdiAssembler = pdiAssembler;
@@ -290,36 +388,52 @@ public class SipAssembler<D> implements Assembler<D> {
     this.pdiBufferSupplier = pdiBufferSupplier;
     this.contentAssembler = contentAssembler;
     this.zip = zipAssembler;
+    this.timedZip = new TimingZipAssembler(zipAssembler, this::record);
   }
 
   @Override
   public void start(DataBuffer buffer) throws IOException {
+    if (streamPdi && pdiAssembler instanceof PrintWriterAssembler
+        && ((PrintWriterAssembler<?>)pdiAssembler).validatesAfterWriting()) {
+      throw new IllegalStateException("Can't validate a streamed PDI after writing it; validate while writing instead");
+    }
     this.sipFileBuffer = buffer;
     pdiHash = Optional.empty();
     metrics.reset();
+    latencies.values().forEach(LatencyHistogram::reset);
     metrics.set(SipMetrics.ASSEMBLY_TIME, System.currentTimeMillis());
     zip.begin(sipFileBuffer.openForWriting());
-    contentAssembler.begin(zip, metrics);
+    contentAssembler.begin(timedZip, metrics);
     startPdi();
   }
 
   private void startPdi() throws IOException {
-    pdiBuffer = pdiBufferSupplier.get();
+    pdiBuffer = streamPdi ? new ZipEntryBuffer(zip, PDI_ENTRY, pdiHashAssembler) : pdiBufferSupplier.get();
     pdiAssembler.start(pdiBuffer);
   }
 
   @Override
   public void add(D domainObject) {
     try {
-      Map<String, ContentInfo> contentInfo = contentAssembler.addContentsOf(domainObject);
-      pdiAssembler.add(new HashedContents<>(domainObject, contentInfo));
-      metrics.inc(SipMetrics.NUM_AIUS);
-      setPdiSize(pdiBuffer.length()); // Approximate PDI size until the end, when we know for sure
+      addToPdi(addContentsOf(domainObject));
     } catch (IOException e) {
       throw new RuntimeIoException(e);
     }
   }
 
+  HashedContents<D> addContentsOf(D domainObject) throws IOException {
+    Map<String, ContentInfo> contentInfo = contentAssembler.addContentsOf(domainObject);
+    return new HashedContents<>(domainObject, contentInfo);
+  }
+
+  void addToPdi(HashedContents<D> hashedContents) throws IOException {
+    long start = System.nanoTime();
+    pdiAssembler.add(hashedContents);
+    record(SipAssemblyStage.PDI_RENDERING, System.nanoTime() - start);
+    metrics.inc(SipMetrics.NUM_AIUS);
+    setPdiSize(pdiBuffer.length()); // Approximate PDI size until the end, when we know for sure
+  }
+
   private void setPdiSize(long pdiSize) {
     metrics.set(SipMetrics.SIZE_PDI, pdiSize);
     metrics.set(SipMetrics.SIZE_SIP, metrics.get(SipMetrics.SIZE_DIGITAL_OBJECTS) + metrics.get(SipMetrics.SIZE_PDI));
@@ -327,32 +441,83 @@ public class SipAssembler<D> implements Assembler<D> {
 
   @Override
   public void end() throws IOException {
+    endSip();
+    endContent();
+  }
+
+  void endSip() throws IOException {
     try {
       endPdi();
+      long start = System.nanoTime();
       addPackagingInformation();
+      record(SipAssemblyStage.PACKAGING_INFORMATION, System.nanoTime() - start);
     } finally {
-      IOUtils.closeQuietly(zip);
+      IOUtils.closeQuietly(timedZip);
+      closePdiBuffer();
       metrics.set(SipMetrics.ASSEMBLY_TIME, System.currentTimeMillis() - metrics.get(SipMetrics.ASSEMBLY_TIME));
       metrics.set(SipMetrics.SIZE_SIP_FILE, sipFileBuffer.length());
     }
+    listener.sipEnded(getMetrics());
   }
 
-  private void endPdi() throws IOException {
+  /**
+   * Close the ZIP without adding the PDI and the Packaging Information, because assembling the SIP failed.
+   * @param failure Why assembling the SIP failed. Any failure to close the ZIP is added to it
+   */
+  void abortSip(Throwable failure) {
     try {
-      pdiAssembler.end();
-      addPdiToZip();
+      timedZip.close();
+    } catch (IOException | RuntimeException e) {
+      failure.addSuppressed(e);
     } finally {
-      pdiBuffer = null;
+      closePdiBuffer();
+    }
+  }
+
+  /**
+   * Abandon the SIP that is being assembled, e.g. because assembling a batch of SIPs failed. The ZIP is closed without
+   * the PDI and the Packaging Information, and the content assembler isn't {@linkplain ContentAssembler#end() ended}.
+   * @param failure Why the SIP is abandoned. Any failure to close the SIP is added to it
+   */
+  void abort(Throwable failure) {
+    abortSip(failure);
+  }
+
+  void endContent() throws IOException {
+    contentAssembler.end();
+  }
+
+  private void endPdi() throws IOException {
+    long start = System.nanoTime();
+    pdiAssembler.end();
+    record(SipAssemblyStage.PDI_VALIDATION, System.nanoTime() - start);
+    addPdiToZip();
+  }
+
+  /**
+   * Release the PDI buffer. This must wait until the ZIP is closed, since the ZIP assembler may still read from the
+   * buffer after the PDI entry is added, like the temporary file of a spilled buffer.
+   */
+  private void closePdiBuffer() {
+    if (pdiBuffer instanceof Closeable) {
+      IOUtils.closeQuietly((Closeable)pdiBuffer);
     }
+    pdiBuffer = null;
   }
 
   void addPdiToZip() throws IOException {
-    try (InputStream in = pdiBuffer.openForReading()) {
-      pdiHash = zip.addEntry(PDI_ENTRY, in, pdiHashAssembler)
-        .stream()
-        .limit(1)
-        .findAny();
+    Collection<EncodedHash> hashes;
+    if (streamPdi) {
+      ((ZipEntryBuffer)pdiBuffer).close();
+      hashes = pdiHashAssembler.get();
+    } else {
+      try (InputStream in = pdiBuffer.openForReading()) {
+        hashes = timedZip.addEntry(PDI_ENTRY, in, pdiHashAssembler);
+      }
     }
+    pdiHash = hashes.stream()
+      .limit(1)
+      .findAny();
     setPdiSize(pdiHashAssembler.numBytesHashed());
   }
 
@@ -373,9 +538,44 @@ public class SipAssembler<D> implements Assembler<D> {
     return packagingInformationFactory.newInstance(metrics.get(SipMetrics.NUM_AIUS), pdiHash);
   }
 
+  private void record(SipAssemblyStage stage, long nanos) {
+    latencies.get(stage).record(nanos);
+    listener.stageCompleted(stage, nanos);
+  }
+
   @Override
   public SipMetrics getMetrics() {
-    return new SipMetrics(metrics.forReading());
+    return new SipMetrics(metrics.forReading(), SipMetrics.copyOf(latencies));
+  }
+
+  /**
+   * Return a live, read-only view of the metrics about the SIP that is currently being assembled. Unlike
+   * {@linkplain #getMetrics()}, this doesn't copy the metrics, so it's cheap enough to call for every domain object
+   * and safe to read from monitoring threads.
+   * @return A live view of the metrics
+   */
+  public SipMetrics getLiveMetrics() {
+    return liveMetrics;
+  }
+
+  /**
+   * Set the listener that is notified of metrics about the SIP assembly process.
+   * @param listener The listener to notify of metrics
+   */
+  public void setListener(SipAssemblyListener listener) {
+    this.listener = Objects.requireNonNull(listener, "Missing listener");
+  }
+
+  /**
+   * Set whether to record the latencies of reading, hashing and compressing ZIP entries, which is the default. Timing
+   * costs a couple of calls to {@linkplain System#nanoTime()} for every read and every chunk of data hashed, so turn it
+   * off when assembling many small entries and these latencies aren't needed. The {@linkplain
+   * SipAssemblyStage#CONTENT_IO}, {@linkplain SipAssemblyStage#HASHING}, and {@linkplain SipAssemblyStage#DEFLATE}
+   * latencies then remain empty.
+   * @param timeZipEntries Whether to record the latencies of ZIP entries
+   */
+  public void setTimeZipEntries(boolean timeZipEntries) {
+    timedZip.setEnabled(timeZipEntries);
   }
 
   public PackagingInformationFactory getPackagingInformationFactory() {
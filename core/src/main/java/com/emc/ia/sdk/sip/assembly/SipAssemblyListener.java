@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.sip.assembly;
+
+
+/**
+ * Listener for metrics about the {@linkplain SipAssembler SIP assembly process}, e.g. to forward them to a monitoring
+ * system. Listeners may be called from different threads when SIPs are {@linkplain PipelinedSipAssembler assembled in a
+ * pipeline}, and should return quickly, since they are called on the assembly path.
+ */
+public interface SipAssemblyListener {
+
+  /**
+   * Called whenever the latency of a stage of the SIP assembly process is recorded.
+   * @param stage The stage that completed
+   * @param nanos The latency of the stage, in nanoseconds
+   */
+  default void stageCompleted(SipAssemblyStage stage, long nanos) {
+    // Ignore by default
+  }
+
+  /**
+   * Called when a SIP is successfully assembled.
+   * @param metrics Metrics about the assembled SIP
+   */
+  default void sipEnded(SipMetrics metrics) {
+    // Ignore by default
+  }
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.sip.assembly;
+
+
+/**
+ * Stage of the {@linkplain SipAssembler SIP assembly process} whose latencies are {@linkplain SipMetrics#latency(
+ * SipAssemblyStage) recorded}.
+ */
+public enum SipAssemblyStage {
+
+  /**
+   * Reading the content of digital objects and of the PDI, measured per entry.
+   */
+  CONTENT_IO,
+
+  /**
+   * Hashing the content of digital objects and of the PDI, measured per entry.
+   */
+  HASHING,
+
+  /**
+   * Compressing and writing ZIP entries, measured per entry. This is the time spent adding an entry other than reading
+   * and hashing its content, plus the time to close the ZIP.
+   */
+  DEFLATE,
+
+  /**
+   * Rendering a domain object into the PDI, measured per domain object.
+   */
+  PDI_RENDERING,
+
+  /**
+   * Finishing the PDI, which includes validating it, if the PDI assembler has a validator. Measured per SIP.
+   */
+  PDI_VALIDATION,
+
+  /**
+   * Assembling the Packaging Information and adding it to the SIP, measured per SIP.
+   */
+  PACKAGING_INFORMATION
+
+}
@@ -3,6 +3,10 @@
  */
 package com.emc.ia.sdk.sip.assembly;
 
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
 
 /**
  * Metrics about the {@linkplain SipAssembler SIP assembly process}.
@@ -18,9 +22,34 @@ public class SipMetrics implements Metrics {
   static final String ASSEMBLY_TIME = "time to assemble (ms)";
 
   private final Counters counters;
+  private final Map<SipAssemblyStage, LatencyHistogram> latencies;
+
+  static Counters newCounters() {
+    return new Counters(NUM_AIUS, NUM_DIGITAL_OBJECTS, SIZE_DIGITAL_OBJECTS, SIZE_PDI, SIZE_SIP, SIZE_SIP_FILE,
+        ASSEMBLY_TIME);
+  }
 
   SipMetrics(Counters metrics) {
+    this(metrics, Collections.emptyMap());
+  }
+
+  SipMetrics(Counters metrics, Map<SipAssemblyStage, LatencyHistogram> latencies) {
     this.counters = metrics;
+    this.latencies = latencies;
+  }
+
+  static Map<SipAssemblyStage, LatencyHistogram> newLatencies() {
+    Map<SipAssemblyStage, LatencyHistogram> result = new EnumMap<>(SipAssemblyStage.class);
+    for (SipAssemblyStage stage : SipAssemblyStage.values()) {
+      result.put(stage, new LatencyHistogram());
+    }
+    return result;
+  }
+
+  static Map<SipAssemblyStage, LatencyHistogram> copyOf(Map<SipAssemblyStage, LatencyHistogram> latencies) {
+    Map<SipAssemblyStage, LatencyHistogram> result = new EnumMap<>(SipAssemblyStage.class);
+    latencies.forEach((stage, histogram) -> result.put(stage, histogram.copy()));
+    return result;
   }
 
   public long numAius() {
@@ -51,9 +80,25 @@ public class SipMetrics implements Metrics {
     return counters.get(ASSEMBLY_TIME);
   }
 
+  /**
+   * Return the latencies of the given stage of the SIP assembly process.
+   * @param stage The stage to return the latencies for
+   * @return The latencies of the given stage
+   */
+  public LatencyHistogram latency(SipAssemblyStage stage) {
+    LatencyHistogram result = latencies.get(stage);
+    return result == null ? new LatencyHistogram() : result;
+  }
+
   @Override
   public String toString() {
-    return counters.toString();
+    StringBuilder result = new StringBuilder(counters.toString());
+    latencies.forEach((stage, histogram) -> {
+      if (histogram.getCount() > 0) {
+        result.append(System.lineSeparator()).append(stage).append(": ").append(histogram);
+      }
+    });
+    return result.toString();
   }
 
 }
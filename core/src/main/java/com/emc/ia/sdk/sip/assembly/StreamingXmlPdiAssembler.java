@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.sip.assembly;
+
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+import org.atteo.evo.inflector.English;
+
+import com.emc.ia.sdk.support.xml.StreamingXmlBuilder;
+import com.emc.ia.sdk.support.xml.XmlUtil;
+
+/**
+ * Base class for assembling XML documents from domain objects using a {@linkplain StreamingXmlBuilder}. This is a
+ * drop-in replacement for {@linkplain XmlPdiAssembler}: derived classes use the same fluent API, but the XML is
+ * written straight to the PDI instead of being built up as a DOM and then serialized, which makes assembling the PDI
+ * much faster and hardly allocates any memory per domain object.
+ * @param <D> The type of domain objects to assemble the XML document from
+ */
+public abstract class StreamingXmlPdiAssembler<D> extends PdiAssembler<D> {
+
+  private final Optional<URI> namespace;
+  private final String namespaceUri;
+  private final Optional<String> documentElementName;
+  private final String domainObjectName;
+  private StreamingXmlBuilder builder;
+
+  /**
+   * Create an instance.
+   * @param namespace Optional URI of the XML Namespace to use for the XML document
+   * @param domainObjectName The name/tag of the element that captures the domain object. The pluralized version of this
+   *          will be used for the document element name/tag.
+   */
+  public StreamingXmlPdiAssembler(URI namespace, String domainObjectName) {
+    this(namespace, English.plural(domainObjectName), domainObjectName);
+  }
+
+  /**
+   * Create an instance.
+   * @param namespace Optional URI of the XML Namespace to use for the XML document
+   * @param documentElementName The name/tag of the document element wrapping the domain objects. This may be
+   *          <code>null</code> if only one domain object is ever added
+   * @param domainObjectName The name/tag of the element that captures the domain object
+   */
+  public StreamingXmlPdiAssembler(URI namespace, String documentElementName, String domainObjectName) {
+    this(namespace, documentElementName, domainObjectName, (Validator)null);
+  }
+
+  /**
+   * Create an instance.
+   * @param namespace Optional URI of the XML Namespace to use for the XML document
+   * @param domainObjectName The name/tag of the element that captures the domain object
+   * @param schema Optional XML Schema for validating the assembled XML document
+   */
+  public StreamingXmlPdiAssembler(URI namespace, String domainObjectName, InputStream schema) {
+    this(namespace, English.plural(domainObjectName), domainObjectName, schema);
+  }
+
+  /**
+   * Create an instance.
+   * @param namespace Optional URI of the XML Namespace to use for the XML document
+   * @param documentElementName The name/tag of the document element wrapping the domain objects. This may be
+   *          <code>null</code> if only one domain object is ever added
+   * @param domainObjectName The name/tag of the element that captures the domain object
+   * @param schema Optional XML Schema for validating the assembled XML document
+   */
+  public StreamingXmlPdiAssembler(URI namespace, String documentElementName, String domainObjectName, InputStream schema) {
+    this(namespace, documentElementName, domainObjectName, schema == null ? null : new XmlSchemaValidator(schema));
+  }
+
+  /**
+   * Create an instance.
+   * @param namespace Optional URI of the XML Namespace to use for the XML document
+   * @param documentElementName The name/tag of the document element wrapping the domain objects. This may be
+   *          <code>null</code> if only one domain object is ever added
+   * @param domainObjectName The name/tag of the element that captures the domain object
+   * @param validator Optional validator for checking whether the XML document meets expectations
+   */
+  public StreamingXmlPdiAssembler(URI namespace, String documentElementName, String domainObjectName, Validator validator) {
+    super(validator);
+    this.namespace = Optional.ofNullable(namespace);
+    this.namespaceUri = namespace == null ? null : namespace.toString();
+    this.documentElementName = Optional.ofNullable(documentElementName);
+    this.domainObjectName = Objects.requireNonNull(domainObjectName);
+  }
+
+  /**
+   * Return the XML builder for capturing a domain object.
+   * @return The XML builder for capturing a domain object
+   */
+  protected StreamingXmlBuilder getBuilder() {
+    return builder;
+  }
+
+  /**
+   * Add the domain object to the XML document, using {@linkplain #getBuilder()}.
+   * @param domainObject The domain object to add
+   * @param contentInfo The reference information and the encoded hashed of the content associated with the domain object
+   */
+  protected abstract void doAdd(D domainObject, Map<String, ContentInfo> contentInfo);
+
+  @Override
+  public void start(PrintWriter writer) {
+    writer.println(XmlUtil.XML_DECLARATION);
+    documentElementName.ifPresent(tag -> {
+      writer.format("<%s", tag);
+      namespace.ifPresent(uri -> writer.format(" xmlns=\"%s\"", uri));
+      writer.println('>');
+    });
+  }
+
+  @Override
+  public final void add(D domainObject, Map<String, ContentInfo> contentInfo, PrintWriter writer) {
+    if (builder == null) {
+      builder = new StreamingXmlBuilder(writer, "  ");
+    }
+    boolean added = false;
+    try {
+      builder.namespace(namespaceUri);
+      builder.element(domainObjectName);
+      doAdd(domainObject, contentInfo);
+      builder.end();
+      if (builder.getDepth() != 0) {
+        throw new IllegalStateException("Unbalanced elements for domain object " + domainObject);
+      }
+      added = true;
+    } finally {
+      if (!added) {
+        // Discard the open elements and buffered output of the failed domain object
+        builder = null;
+      }
+    }
+    writer.println();
+  }
+
+  @Override
+  public final void end(PrintWriter writer) {
+    builder = null;
+    documentElementName.ifPresent(tag -> writer.format("</%s>%n", tag));
+  }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.sip.assembly;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.function.ObjLongConsumer;
+
+import com.emc.ia.sdk.support.io.EncodedHash;
+import com.emc.ia.sdk.support.io.FileChannelInputStream;
+import com.emc.ia.sdk.support.io.HashAssembler;
+import com.emc.ia.sdk.support.io.ZipAssembler;
+
+
+/**
+ * {@linkplain ZipAssembler} that records how long it takes to read, hash and compress entries. The time spent on each
+ * of these is summed over all reads and chunks of an entry and recorded once per entry. Streams of files are passed on
+ * as is, so that the wrapped ZIP assembler can still map them into memory; reading them is then counted as part of
+ * hashing and compressing. Timing can be {@linkplain #setEnabled(boolean) disabled} to avoid its overhead entirely.
+ */
+class TimingZipAssembler implements ZipAssembler {
+
+  private final ZipAssembler zip;
+  private final ObjLongConsumer<SipAssemblyStage> recorder;
+  private volatile boolean enabled = true;
+
+  TimingZipAssembler(ZipAssembler zip, ObjLongConsumer<SipAssemblyStage> recorder) {
+    this.zip = zip;
+    this.recorder = recorder;
+  }
+
+  /**
+   * Set whether to record how long it takes to read, hash and compress entries.
+   * @param enabled Whether to record timings
+   */
+  void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  @Override
+  public void begin(OutputStream output) throws IOException {
+    zip.begin(output);
+  }
+
+  @Override
+  public Collection<EncodedHash> addEntry(String name, InputStream content, HashAssembler hashAssembler)
+      throws IOException {
+    return addEntry(name, content, hashAssembler, null);
+  }
+
+  @Override
+  public Collection<EncodedHash> addEntry(String name, InputStream content, HashAssembler hashAssembler,
+      String mediaType) throws IOException {
+    if (!enabled) {
+      return zip.addEntry(name, content, hashAssembler, mediaType);
+    }
+    long start = System.nanoTime();
+    TimingHashAssembler timedHashAssembler = new TimingHashAssembler(hashAssembler);
+    TimingInputStream timedContent = content instanceof FileChannelInputStream ? null : new TimingInputStream(content);
+    try {
+      return zip.addEntry(name, timedContent == null ? content : timedContent, timedHashAssembler, mediaType);
+    } finally {
+      long other = System.nanoTime() - start - timedHashAssembler.nanos;
+      if (timedContent != null) {
+        other -= timedContent.nanos;
+        recorder.accept(SipAssemblyStage.CONTENT_IO, timedContent.nanos);
+      }
+      recorder.accept(SipAssemblyStage.HASHING, timedHashAssembler.nanos);
+      recorder.accept(SipAssemblyStage.DEFLATE, Math.max(other, 0));
+    }
+  }
+
+  @Override
+  public OutputStream beginEntry(String name, HashAssembler hashAssembler) throws IOException {
+    return zip.beginEntry(name, hashAssembler);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!enabled) {
+      zip.close();
+      return;
+    }
+    long start = System.nanoTime();
+    try {
+      zip.close();
+    } finally {
+      recorder.accept(SipAssemblyStage.DEFLATE, System.nanoTime() - start);
+    }
+  }
+
+
+  private class TimingInputStream extends FilterInputStream {
+
+    private long nanos;
+
+    TimingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      long start = System.nanoTime();
+      try {
+        return super.read();
+      } finally {
+        record(start);
+      }
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      long start = System.nanoTime();
+      try {
+        return super.read(buffer, offset, length);
+      } finally {
+        record(start);
+      }
+    }
+
+    private void record(long start) {
+      nanos += System.nanoTime() - start;
+    }
+
+  }
+
+
+  private class TimingHashAssembler implements HashAssembler {
+
+    private final HashAssembler hashAssembler;
+    private long nanos;
+
+    TimingHashAssembler(HashAssembler hashAssembler) {
+      this.hashAssembler = hashAssembler;
+    }
+
+    @Override
+    public void initialize() {
+      hashAssembler.initialize();
+    }
+
+    @Override
+    public void add(byte[] buffer, int length) {
+      long start = System.nanoTime();
+      hashAssembler.add(buffer, length);
+      record(start);
+    }
+
+    @Override
+    public void add(ByteBuffer buffer) {
+      long start = System.nanoTime();
+      hashAssembler.add(buffer);
+      record(start);
+    }
+
+    private void record(long start) {
+      nanos += System.nanoTime() - start;
+    }
+
+    @Override
+    public void abort() {
+      hashAssembler.abort();
+    }
+
+    @Override
+    public Collection<EncodedHash> get() {
+      return hashAssembler.get();
+    }
+
+    @Override
+    public long numBytesHashed() {
+      return hashAssembler.numBytesHashed();
+    }
+
+  }
+
+}
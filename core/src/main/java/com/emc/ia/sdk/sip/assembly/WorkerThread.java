@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.sip.assembly;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Background thread that processes items from a bounded queue in the order in which they were
+ * {@linkplain #submit(Object) submitted}. Submitting blocks only when the queue is full.
+ * <p>
+ * When processing an item fails, the remaining items are discarded and the failure is reported to the submitting
+ * thread on the next call to {@linkplain #submit(Object)} or {@linkplain #finish()}.
+ * @param <T> The type of items to process
+ */
+class WorkerThread<T> {
+
+  private static final Object END = new Object();
+  private static final long POLL_MILLIS = 100;
+
+  private final BlockingQueue<Object> queue;
+  private final ItemProcessor<T> processor;
+  private final Thread thread;
+  private volatile Throwable failure;
+
+  /**
+   * Create and start a worker thread.
+   * @param name The name of the thread
+   * @param capacity The maximum number of items waiting to be processed
+   * @param processor What to do with each item
+   */
+  WorkerThread(String name, int capacity, ItemProcessor<T> processor) {
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.processor = processor;
+    this.thread = new Thread(this::run, name);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  @SuppressWarnings("unchecked")
+  private void run() {
+    try {
+      Object item = queue.take();
+      while (item != END) { // NOPMD CompareObjectsWithEquals - Sentinel
+        if (failure == null) {
+          process((T)item);
+        }
+        item = queue.take();
+      }
+    } catch (InterruptedException e) {
+      failure = e;
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void process(T item) {
+    try {
+      processor.process(item);
+    } catch (IOException | RuntimeException | Error e) { // NOPMD AvoidCatchingThrowable - Reported to submitter
+      failure = e;
+    }
+  }
+
+  /**
+   * Queue an item for processing, blocking while the queue is full.
+   * @param item The item to process
+   * @throws IOException When processing a previously submitted item failed
+   */
+  void submit(T item) throws IOException {
+    put(item);
+  }
+
+  private void put(Object item) throws IOException {
+    try {
+      while (!queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+        checkFailure();
+        if (!thread.isAlive()) {
+          throw new IllegalStateException("Worker thread " + thread.getName() + " is no longer running");
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for " + thread.getName());
+    }
+    checkFailure();
+  }
+
+  /**
+   * Process all submitted items and stop the thread.
+   * @throws IOException When processing any of the submitted items failed
+   */
+  void finish() throws IOException {
+    if (thread.isAlive()) {
+      put(END);
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for " + thread.getName());
+      }
+    }
+    checkFailure();
+  }
+
+  private void checkFailure() throws IOException {
+    Throwable cause = failure;
+    if (cause == null) {
+      return;
+    }
+    if (cause instanceof RuntimeException) {
+      throw (RuntimeException)cause;
+    }
+    if (cause instanceof Error) {
+      throw (Error)cause;
+    }
+    throw new IOException("Failed to process item in " + thread.getName(), cause);
+  }
+
+
+  /**
+   * Processes a single item on the worker thread.
+   * @param <T> The type of item to process
+   */
+  @FunctionalInterface
+  interface ItemProcessor<T> {
+
+    /**
+     * Process an item.
+     * @param item The item to process
+     * @throws IOException When an I/O error occurs
+     */
+    void process(T item) throws IOException;
+
+  }
+
+}
@@ -14,9 +14,12 @@ import org.atteo.evo.inflector.English;
 
 import com.emc.ia.sdk.support.xml.XmlBuilder;
 import com.emc.ia.sdk.support.xml.XmlUtil;
+import com.emc.ia.sdk.support.xml.XmlUtil.Options;
 
 /**
- * Base class for assembling XML documents from domain objects using an {@linkplain XmlBuilder}.
+ * Base class for assembling XML documents from domain objects using an {@linkplain XmlBuilder}. To assemble large
+ * PDIs, consider using {@linkplain StreamingXmlPdiAssembler}, which offers the same API without building a DOM for each
+ * domain object.
  * @param <D> The type of domain objects to assemble the XML document from
  */
 public abstract class XmlPdiAssembler<D> extends PdiAssembler<D> {
@@ -24,6 +27,7 @@ public abstract class XmlPdiAssembler<D> extends PdiAssembler<D> {
   private final Optional<URI> namespace;
   private final Optional<String> documentElementName;
   private final String domainObjectName;
+  private Options options = Options.pretty("  ");
   private XmlBuilder builder;
 
   /**
@@ -84,6 +88,16 @@ public abstract class XmlPdiAssembler<D> extends PdiAssembler<D> {
     this.domainObjectName = Objects.requireNonNull(domainObjectName);
   }
 
+  /**
+   * Set whether to write the XML for domain objects without indentation and line breaks. Compact XML is considerably
+   * smaller, which means less data to compress and upload, but is harder for humans to read. The default is to
+   * pretty-print.
+   * @param compact Whether to write compact XML
+   */
+  public void setCompact(boolean compact) {
+    options = compact ? Options.compact() : Options.pretty("  ");
+  }
+
   /**
    * Return the XML document builder for capturing a domain object.
    * @return The XML document builder for capturing a domain object
@@ -116,8 +130,10 @@ public abstract class XmlPdiAssembler<D> extends PdiAssembler<D> {
       namespace.ifPresent(uri -> builder.namespace(uri));
       builder.element(domainObjectName);
       doAdd(domainObject, contentInfo);
-      writer.println(XmlUtil.toString(builder.build()
-        .getDocumentElement(), "  "));
+      XmlUtil.write(builder.build().getDocumentElement(), writer, options);
+      if (options.isPretty()) {
+        writer.println();
+      }
     } finally {
       builder = null;
     }
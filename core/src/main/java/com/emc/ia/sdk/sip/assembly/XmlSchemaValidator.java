@@ -8,9 +8,12 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.validation.ValidationException;
 import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
 
 import org.xml.sax.SAXException;
 
@@ -18,11 +21,26 @@ import com.emc.ia.sdk.support.xml.XmlUtil;
 
 
 /**
- * Validate an XML instance against an XML Schema.
+ * Validate an XML instance against an XML Schema. The schema is {@linkplain XmlUtil#getXmlSchema(InputStream) compiled
+ * only once} per process, so creating instances is cheap. Instances are thread-safe: each thread validates with its own
+ * {@linkplain javax.xml.validation.Validator validator}, which it reuses for all instances that share a schema. Each
+ * thread keeps validators for the few schemas it used most recently, so that threads don't keep schemas that are no
+ * longer used.
  */
 public class XmlSchemaValidator implements Validator {
 
-  private final javax.xml.validation.Validator validator;
+  private static final int MAX_VALIDATORS_PER_THREAD = 8;
+  private static final ThreadLocal<Map<Schema, javax.xml.validation.Validator>> VALIDATORS =
+      ThreadLocal.withInitial(() -> new LinkedHashMap<Schema, javax.xml.validation.Validator>(16, 0.75f, true) {
+        private static final long serialVersionUID = 4683513290931275461L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Schema, javax.xml.validation.Validator> eldest) {
+          return size() > MAX_VALIDATORS_PER_THREAD;
+        }
+      });
+
+  private final Schema schema;
 
   /**
    * Create an instance.
@@ -38,15 +56,18 @@ public class XmlSchemaValidator implements Validator {
    * @param xmlSchema The XML Schema to use for validation
    */
   public XmlSchemaValidator(InputStream xmlSchema) {
-    validator = XmlUtil.newXmlSchemaValidator(xmlSchema);
+    schema = XmlUtil.getXmlSchema(xmlSchema);
   }
 
   @Override
   public void validate(InputStream xmlInstance) throws ValidationException {
+    javax.xml.validation.Validator validator = VALIDATORS.get().computeIfAbsent(schema, Schema::newValidator);
     try {
       validator.validate(new StreamSource(xmlInstance));
     } catch (SAXException | IOException e) {
       throw new ValidationException(e);
+    } finally {
+      validator.reset();
     }
   }
 
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+
+/**
+ * Probabilistic set of 64-bit hashes that answers whether a hash might have been added. It never answers no for a hash
+ * that was added, and answers yes for a hash that wasn't added with a probability of about 1% when it holds the number
+ * of hashes it was sized for. Use it to avoid expensive lookups of values that most likely aren't there.
+ */
+public class BloomFilter {
+
+  private static final int BITS_PER_HASH = 10;
+  private static final int NUM_PROBES = 7;
+
+  private final long[] bits;
+  private final long numBits;
+
+  /**
+   * Create an instance.
+   * @param expectedSize The number of hashes the filter is expected to hold
+   */
+  public BloomFilter(int expectedSize) {
+    long size = Math.max(64, (long)Math.max(1, expectedSize) * BITS_PER_HASH);
+    bits = new long[(int)Math.min(Integer.MAX_VALUE - 8, (size + 63) / 64)];
+    numBits = 64L * bits.length;
+  }
+
+  /**
+   * Add a hash to the filter.
+   * @param hash The hash to add
+   */
+  public void add(long hash) {
+    int first = (int)hash;
+    int second = (int)(hash >>> 32);
+    for (int i = 0; i < NUM_PROBES; i++) {
+      long bit = index(first + i * second);
+      bits[(int)(bit >>> 6)] |= 1L << bit;
+    }
+  }
+
+  private long index(int combined) {
+    return (combined & 0xFFFFFFFFL) % numBits;
+  }
+
+  /**
+   * Return whether the given hash might have been added.
+   * @param hash The hash to look for
+   * @return <code>false</code> if the hash certainly wasn't added, <code>true</code> if it probably was
+   */
+  public boolean mightContain(long hash) {
+    int first = (int)hash;
+    int second = (int)(hash >>> 32);
+    for (int i = 0; i < NUM_PROBES; i++) {
+      long bit = index(first + i * second);
+      if ((bits[(int)(bit >>> 6)] & 1L << bit) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+}
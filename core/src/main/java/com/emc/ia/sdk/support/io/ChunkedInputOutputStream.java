@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * {@linkplain OutputStream} that stores its data in memory and allows it to be {@linkplain #getInputStream() read} back
+ * any number of times. Unlike a {@linkplain ByteArrayInputOutputStream}, the data is stored in a list of fixed-size
+ * chunks, so growing never copies data that was written before and never allocates more than one chunk too many.
+ * Reading doesn't copy the data either.
+ * <p>
+ * When the number of bytes to be written is known up front, pass it to the
+ * {@linkplain #ChunkedInputOutputStream(long) constructor} to size the chunks exactly.
+ */
+public class ChunkedInputOutputStream extends OutputStream {
+
+  /**
+   * The size of a chunk.
+   */
+  public static final int CHUNK_SIZE = 65536;
+  private static final int FIRST_CHUNK_SIZE = 4096;
+
+  private final List<byte[]> chunks = new ArrayList<>();
+  private long expectedLength;
+  private long size;
+  private int position;
+
+  /**
+   * Create an instance for an unknown number of bytes.
+   */
+  public ChunkedInputOutputStream() {
+    this(-1);
+  }
+
+  /**
+   * Create an instance for a known number of bytes.
+   * @param expectedLength The number of bytes that will be written, or a negative number if not known
+   */
+  public ChunkedInputOutputStream(long expectedLength) {
+    this.expectedLength = expectedLength;
+  }
+
+  @Override
+  public void write(int value) {
+    currentChunk()[position++] = (byte)value;
+    size++;
+  }
+
+  @Override
+  public void write(byte[] buffer, int offset, int count) {
+    int written = 0;
+    while (written < count) {
+      byte[] chunk = currentChunk();
+      int numBytes = Math.min(count - written, chunk.length - position);
+      System.arraycopy(buffer, offset + written, chunk, position, numBytes);
+      position += numBytes;
+      written += numBytes;
+    }
+    size += count;
+  }
+
+  private byte[] currentChunk() {
+    if (chunks.isEmpty() || position == chunks.get(chunks.size() - 1).length) {
+      chunks.add(new byte[nextChunkSize()]);
+      position = 0;
+    }
+    return chunks.get(chunks.size() - 1);
+  }
+
+  private int nextChunkSize() {
+    if (expectedLength > size) {
+      return (int)Math.min(CHUNK_SIZE, expectedLength - size);
+    }
+    return chunks.isEmpty() && expectedLength < 0 ? FIRST_CHUNK_SIZE : CHUNK_SIZE;
+  }
+
+  /**
+   * Return the number of bytes written.
+   * @return The number of bytes written
+   */
+  public long size() {
+    return size;
+  }
+
+  /**
+   * Write the stored data to the given stream.
+   * @param out The stream to write to
+   * @throws IOException When an I/O error occurs
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    long remaining = size;
+    for (byte[] chunk : chunks) {
+      int numBytes = (int)Math.min(chunk.length, remaining);
+      out.write(chunk, 0, numBytes);
+      remaining -= numBytes;
+    }
+  }
+
+  /**
+   * Discard the stored data.
+   */
+  public void reset() {
+    chunks.clear();
+    size = 0;
+    position = 0;
+    expectedLength = -1;
+  }
+
+  /**
+   * @return The stored data as an {@linkplain InputStream}
+   */
+  public InputStream getInputStream() {
+    return new ChunkedInputStream(new ArrayList<>(chunks), size);
+  }
+
+
+  /**
+   * Stream that reads a snapshot of the chunks.
+   */
+  private static class ChunkedInputStream extends InputStream {
+
+    private final List<byte[]> chunks;
+    private long remaining;
+    private int index;
+    private int position;
+
+    ChunkedInputStream(List<byte[]> chunks, long size) {
+      this.chunks = chunks;
+      this.remaining = size;
+    }
+
+    @Override
+    public int read() {
+      byte[] chunk = currentChunk();
+      if (chunk == null) {
+        return -1;
+      }
+      remaining--;
+      return chunk[position++] & 0xFF;
+    }
+
+    private byte[] currentChunk() {
+      if (remaining == 0) {
+        return null;
+      }
+      byte[] result = chunks.get(index);
+      if (position == result.length) {
+        index++;
+        position = 0;
+        result = chunks.get(index);
+      }
+      return result;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) {
+      if (count == 0) {
+        return 0;
+      }
+      if (remaining == 0) {
+        return -1;
+      }
+      int result = 0;
+      byte[] chunk = currentChunk();
+      while (chunk != null && result < count) {
+        int numBytes = (int)Math.min(Math.min(count - result, chunk.length - position), remaining);
+        System.arraycopy(chunk, position, buffer, offset + result, numBytes);
+        position += numBytes;
+        remaining -= numBytes;
+        result += numBytes;
+        chunk = currentChunk();
+      }
+      return result;
+    }
+
+    @Override
+    public long skip(long count) {
+      long result = 0;
+      byte[] chunk = currentChunk();
+      while (chunk != null && result < count) {
+        int numBytes = (int)Math.min(Math.min(count - result, chunk.length - position), remaining);
+        position += numBytes;
+        remaining -= numBytes;
+        result += numBytes;
+        chunk = currentChunk();
+      }
+      return result;
+    }
+
+    @Override
+    public int available() {
+      return (int)Math.min(Integer.MAX_VALUE, remaining);
+    }
+
+  }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+import java.util.zip.Deflater;
+
+
+/**
+ * How the content of a ZIP entry is compressed.
+ */
+public enum Compression {
+
+  STORED(Deflater.NO_COMPRESSION), FAST(Deflater.BEST_SPEED), DEFAULT(Deflater.DEFAULT_COMPRESSION),
+  BEST(Deflater.BEST_COMPRESSION);
+
+  private final int level;
+
+  Compression(int level) {
+    this.level = level;
+  }
+
+  /**
+   * Return the {@linkplain Deflater} compression level to use for deflated entries.
+   * @return The compression level
+   */
+  public int getLevel() {
+    return level;
+  }
+
+  /**
+   * Return whether the content is stored as is, without compressing it.
+   * @return <code>true</code> if the content is not compressed
+   */
+  public boolean isStored() {
+    return this == STORED;
+  }
+
+}
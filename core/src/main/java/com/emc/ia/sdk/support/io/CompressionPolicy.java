@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+
+/**
+ * Strategy for deciding how to compress a ZIP entry.
+ */
+@FunctionalInterface
+public interface CompressionPolicy {
+
+  /**
+   * Compress all entries in the same way.
+   * @param compression How to compress the entries
+   * @return A policy that always returns the given compression
+   */
+  static CompressionPolicy always(Compression compression) {
+    return (name, mediaType, sample, sampleLength) -> compression;
+  }
+
+  /**
+   * Store content that is already compressed as is and deflate all other content.
+   * @return A policy that bases its decision on the entry's name, media type, and content
+   * @see ContentBasedCompressionPolicy
+   */
+  static CompressionPolicy byContent() {
+    return new ContentBasedCompressionPolicy();
+  }
+
+  /**
+   * Decide how to compress a ZIP entry.
+   * @param name The name of the entry
+   * @param mediaType The media type of the entry's content, or <code>null</code> if not known
+   * @param sample The first bytes of the entry's content
+   * @param sampleLength The number of bytes in the sample
+   * @return How to compress the entry
+   */
+  Compression compressionFor(String name, String mediaType, byte[] sample, int sampleLength);
+
+}
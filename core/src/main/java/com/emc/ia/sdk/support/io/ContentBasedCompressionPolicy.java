@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+
+/**
+ * {@linkplain CompressionPolicy} that stores content that is already compressed and compresses everything else. Whether
+ * content is already compressed is decided by looking at, in order:
+ * <ol>
+ * <li>The extension of the entry's name, e.g. <code>.jpg</code> or <code>.zip</code></li>
+ * <li>The media type of the entry's content, e.g. <code>application/pdf</code> or <code>video/mp4</code></li>
+ * <li>The <a href="https://en.wikipedia.org/wiki/Entropy_(information_theory)">entropy</a> of the first bytes of the
+ * entry's content</li>
+ * </ol>
+ */
+public class ContentBasedCompressionPolicy implements CompressionPolicy {
+
+  private static final Set<String> COMPRESSED_EXTENSIONS = new HashSet<>(Arrays.asList("7z", "avi", "bz2", "docx",
+      "flac", "gif", "gz", "heic", "jar", "jp2", "jpeg", "jpg", "m4a", "mkv", "mov", "mp3", "mp4", "odp", "ods", "odt",
+      "ogg", "pdf", "png", "pptx", "rar", "tgz", "webm", "webp", "xlsx", "xz", "zip"));
+  private static final Set<String> COMPRESSED_MEDIA_TYPES = new HashSet<>(Arrays.asList("application/gzip",
+      "application/java-archive", "application/pdf", "application/x-7z-compressed", "application/x-bzip2",
+      "application/x-rar-compressed", "application/x-xz", "application/zip", "image/gif", "image/jp2", "image/jpeg",
+      "image/png", "image/webp"));
+  private static final String[] COMPRESSED_MEDIA_TYPE_PREFIXES = { "video/", "application/vnd.openxmlformats",
+      "application/vnd.oasis.opendocument" };
+  private static final int MIN_SAMPLE_LENGTH = 256;
+  private static final double MAX_COMPRESSIBLE_ENTROPY = 7.5;
+
+  private final Compression compression;
+
+  /**
+   * Create an instance that uses default compression for content that isn't already compressed.
+   */
+  public ContentBasedCompressionPolicy() {
+    this(Compression.DEFAULT);
+  }
+
+  /**
+   * Create an instance.
+   * @param compression How to compress content that isn't already compressed
+   */
+  public ContentBasedCompressionPolicy(Compression compression) {
+    this.compression = compression;
+  }
+
+  @Override
+  public Compression compressionFor(String name, String mediaType, byte[] sample, int sampleLength) {
+    if (hasCompressedExtension(name) || hasCompressedMediaType(mediaType) || hasHighEntropy(sample, sampleLength)) {
+      return Compression.STORED;
+    }
+    return compression;
+  }
+
+  private boolean hasCompressedExtension(String name) {
+    int index = name.lastIndexOf('.');
+    return index >= 0 && COMPRESSED_EXTENSIONS.contains(name.substring(index + 1).toLowerCase(Locale.ENGLISH));
+  }
+
+  private boolean hasCompressedMediaType(String mediaType) {
+    if (mediaType == null) {
+      return false;
+    }
+    String type = mediaType.toLowerCase(Locale.ENGLISH);
+    int index = type.indexOf(';');
+    if (index >= 0) {
+      type = type.substring(0, index).trim();
+    }
+    if (COMPRESSED_MEDIA_TYPES.contains(type)) {
+      return true;
+    }
+    for (String prefix : COMPRESSED_MEDIA_TYPE_PREFIXES) {
+      if (type.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean hasHighEntropy(byte[] sample, int sampleLength) {
+    if (sampleLength < MIN_SAMPLE_LENGTH) {
+      return false;
+    }
+    int[] counts = new int[256];
+    for (int i = 0; i < sampleLength; i++) {
+      counts[sample[i] & 0xFF]++;
+    }
+    double entropy = 0;
+    for (int count : counts) {
+      if (count > 0) {
+        double probability = (double)count / sampleLength;
+        entropy -= probability * Math.log(probability);
+      }
+    }
+    return entropy / Math.log(2) > MAX_COMPRESSIBLE_ENTROPY;
+  }
+
+}
@@ -4,13 +4,11 @@
 package com.emc.ia.sdk.support.io;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
-
-import org.apache.commons.io.IOUtils;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 
 /**
@@ -46,9 +44,9 @@ public final class CopyFile {
   }
 
   private void copyToFile(File destination) {
-    try (InputStream src = new FileInputStream(source)) {
+    try (FileChannel src = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
       try (OutputStream dst = new FileOutputStream(destination)) {
-        IOUtils.copy(src, dst);
+        IOStreams.transfer(src, dst);
       }
     } catch (IOException e) {
       throw new RuntimeIoException(e);
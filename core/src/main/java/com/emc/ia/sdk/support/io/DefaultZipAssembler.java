@@ -6,20 +6,57 @@ package com.emc.ia.sdk.support.io;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.util.Collection;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
+import org.apache.commons.io.IOUtils;
+
 
 /**
- * Default implementation of {@linkplain ZipAssembler}.
+ * Default implementation of {@linkplain ZipAssembler}. A {@linkplain CompressionPolicy} decides per entry whether to
+ * deflate the content or to store it as is. The CRC and size of a stored entry must be known before its content is
+ * written, so its content is buffered in a {@linkplain SpillingDataBuffer} while it's being hashed, unless it's read
+ * from a {@linkplain FileChannelInputStream}: then the file is hashed through memory-mapped buffers and copied
+ * afterwards. Stored content is typically large media, so only a limited amount of it is kept in memory; the rest is
+ * moved to a temporary file.
  */
 public class DefaultZipAssembler implements ZipAssembler {
 
   private static final int BUFFER_SIZE = 65536;
 
+  private final CompressionPolicy compressionPolicy;
+  private final int maxBytesInMemory;
   private ZipOutputStream zip;
 
+  /**
+   * Create an instance that deflates all entries.
+   */
+  public DefaultZipAssembler() {
+    this(CompressionPolicy.always(Compression.DEFAULT));
+  }
+
+  /**
+   * Create an instance that uses the given policy to decide how to compress entries.
+   * @param compressionPolicy The policy that decides how to compress entries
+   */
+  public DefaultZipAssembler(CompressionPolicy compressionPolicy) {
+    this(compressionPolicy, SpillingDataBuffer.DEFAULT_THRESHOLD);
+  }
+
+  /**
+   * Create an instance that uses the given policy to decide how to compress entries.
+   * @param compressionPolicy The policy that decides how to compress entries
+   * @param maxBytesInMemory The maximum number of bytes of a stored entry to keep in memory
+   */
+  public DefaultZipAssembler(CompressionPolicy compressionPolicy, int maxBytesInMemory) {
+    this.compressionPolicy = compressionPolicy;
+    this.maxBytesInMemory = maxBytesInMemory;
+  }
+
   @Override
   public void begin(OutputStream stream) {
     zip = new ZipOutputStream(stream);
@@ -28,13 +65,61 @@ public class DefaultZipAssembler implements ZipAssembler {
   @Override
   public Collection<EncodedHash> addEntry(String name, InputStream stream, HashAssembler hashAssembler)
       throws IOException {
+    return addEntry(name, stream, hashAssembler, null);
+  }
+
+  @Override
+  public Collection<EncodedHash> addEntry(String name, InputStream stream, HashAssembler hashAssembler,
+      String mediaType) throws IOException {
     hashAssembler.initialize();
-    zip.putNextEntry(new ZipEntry(name));
-    IOStreams.copy(stream, zip, BUFFER_SIZE, hashAssembler);
-    zip.closeEntry();
+    try {
+      putEntry(name, stream, hashAssembler, mediaType);
+    } catch (IOException | RuntimeException | Error e) { // NOPMD AvoidCatchingThrowable - Rethrown
+      hashAssembler.abort();
+      throw e;
+    }
     return hashAssembler.get();
   }
 
+  private void putEntry(String name, InputStream stream, HashAssembler hashAssembler, String mediaType)
+      throws IOException {
+    boolean fromFile = stream instanceof FileChannelInputStream && ((FileChannelInputStream)stream).isAtStart();
+    ZipEntrySample sample = new ZipEntrySample(stream);
+    Compression compression = sample.compressionFor(compressionPolicy, name, mediaType);
+    ZipEntry entry = new ZipEntry(name);
+    if (compression.isStored() && fromFile) {
+      FileChannel channel = ((FileChannelInputStream)stream).getChannel();
+      CRC32 crc = new CRC32();
+      long size = IOStreams.hash(channel, hashAssembler, crc);
+      entry.setMethod(ZipEntry.STORED);
+      entry.setSize(size);
+      entry.setCompressedSize(size);
+      entry.setCrc(crc.getValue());
+      zip.putNextEntry(entry);
+      IOStreams.transfer(channel, zip);
+    } else if (compression.isStored()) {
+      try (SpillingDataBuffer content = new SpillingDataBuffer(maxBytesInMemory)) {
+        CRC32 crc = new CRC32();
+        try (OutputStream output = new CheckedOutputStream(content.openForWriting(), crc)) {
+          IOStreams.copy(sample.getContent(), output, BUFFER_SIZE, hashAssembler);
+        }
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(content.length());
+        entry.setCompressedSize(content.length());
+        entry.setCrc(crc.getValue());
+        zip.putNextEntry(entry);
+        try (InputStream input = content.openForReading()) {
+          IOUtils.copyLarge(input, zip, new byte[BUFFER_SIZE]);
+        }
+      }
+    } else {
+      zip.setLevel(compression.getLevel());
+      zip.putNextEntry(entry);
+      IOStreams.copy(sample.getContent(), zip, BUFFER_SIZE, hashAssembler);
+    }
+    zip.closeEntry();
+  }
+
   /**
    * Close the ZIP to make it available for use.
    */
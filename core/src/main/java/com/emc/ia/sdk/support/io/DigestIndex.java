@@ -0,0 +1,435 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+
+/**
+ * Persistent map from digests to values that survives restarts of the process. Use it to find out whether content with
+ * a given digest has been seen before, and where it went.
+ * <p>
+ * The index consists of two files in a directory:<ul>
+ * <li>An append-only log that holds the digests and their values. This is the source of truth.</li>
+ * <li>An open-addressing hash table in a memory-mapped file that points into the log. Every slot holds a fingerprint
+ * of the digest and the position of its log record, so that lookups take constant time and don't use the Java heap.
+ * </li>
+ * </ul>
+ * A {@linkplain BloomFilter} of the fingerprints is kept in memory, so that looking up a digest that isn't in the index
+ * usually doesn't touch the table at all.
+ * Every log record carries a checksum. When the index is opened, records that were appended after the table was last
+ * updated are added to it, and a record that was only partly written because of a crash is discarded. If the table
+ * is missing or damaged, it's rebuilt from the log.
+ * <p>
+ * Changes are written to disk by the operating system at its own pace. Call {@linkplain #flush()} to force them out.
+ * Instances are thread-safe, but only one instance may use a directory at any time. The log is locked while the index
+ * is open, so that opening an index that is already in use, by this or another process, fails.
+ */
+public class DigestIndex implements Closeable {
+
+  private static final String TABLE_FILE = "digests.idx";
+  private static final String LOG_FILE = "digests.log";
+  private static final int MAGIC = 0x44494458;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 32;
+  private static final int SIZE_OFFSET = 8;
+  private static final int CAPACITY_OFFSET = 12;
+  private static final int LOG_LENGTH_OFFSET = 16;
+  private static final int SLOT_SIZE = 16;
+  private static final int RECORD_HEADER_SIZE = 8;
+  private static final int MIN_CAPACITY = 1024;
+  private static final int MAX_CAPACITY = 1 << 26;
+  // Closing any channel to a locked file releases the process's lock, so don't even open the log when this process
+  // already uses it
+  private static final Set<Path> DIRECTORIES_IN_USE = ConcurrentHashMap.newKeySet();
+
+  private final Path directory;
+  private final Path tableFile;
+  private final FileChannel log;
+  private MappedByteBuffer table;
+  private BloomFilter bloomFilter;
+  private int capacity;
+  private int size;
+  private long logLength;
+
+  /**
+   * Open the index in the given directory, creating it if needed.
+   * @param directory The directory that holds the index files
+   * @throws IOException When an I/O error occurs
+   */
+  public DigestIndex(Path directory) throws IOException {
+    this(directory, MIN_CAPACITY);
+  }
+
+  /**
+   * Open the index in the given directory, creating it if needed.
+   * @param directory The directory that holds the index files
+   * @param expectedSize The number of digests the new index is expected to hold. Ignored for existing indexes
+   * @throws IOException When an I/O error occurs
+   */
+  public DigestIndex(Path directory, int expectedSize) throws IOException {
+    Files.createDirectories(directory);
+    this.directory = directory.toRealPath();
+    if (!DIRECTORIES_IN_USE.add(this.directory)) {
+      throw inUse();
+    }
+    tableFile = this.directory.resolve(TABLE_FILE);
+    try {
+      log = FileChannel.open(tableFile.resolveSibling(LOG_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ,
+          StandardOpenOption.WRITE);
+    } catch (IOException | RuntimeException e) {
+      DIRECTORIES_IN_USE.remove(this.directory);
+      throw e;
+    }
+    try {
+      lock();
+      if (openTable()) {
+        rebuildBloomFilter();
+        replayLog(logLength);
+      } else {
+        table = createTable(tableFile, capacityFor(expectedSize));
+        rebuildBloomFilter();
+        replayLog(0);
+      }
+    } catch (IOException | RuntimeException e) {
+      try {
+        log.close();
+      } finally {
+        DIRECTORIES_IN_USE.remove(this.directory);
+      }
+      throw e;
+    }
+  }
+
+  private IOException inUse() {
+    return new IOException("Digest index in " + directory + " is already in use");
+  }
+
+  private void lock() throws IOException {
+    FileLock lock;
+    try {
+      lock = log.tryLock();
+    } catch (OverlappingFileLockException e) {
+      lock = null;
+    }
+    if (lock == null) {
+      throw inUse();
+    }
+  }
+
+  private static int capacityFor(int numDigests) {
+    int result = MIN_CAPACITY;
+    while (result < MAX_CAPACITY && result < 2L * numDigests) {
+      result <<= 1;
+    }
+    return result;
+  }
+
+  private boolean openTable() throws IOException {
+    if (!Files.isRegularFile(tableFile) || Files.size(tableFile) < HEADER_SIZE) {
+      return false;
+    }
+    try (FileChannel channel = FileChannel.open(tableFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      MappedByteBuffer candidate = channel.map(MapMode.READ_WRITE, 0, channel.size());
+      int candidateCapacity = candidate.getInt(CAPACITY_OFFSET);
+      long indexedLogLength = candidate.getLong(LOG_LENGTH_OFFSET);
+      if (candidate.getInt(0) != MAGIC || candidate.getInt(4) != VERSION
+          || Integer.bitCount(candidateCapacity) != 1 || candidateCapacity > MAX_CAPACITY
+          || channel.size() != HEADER_SIZE + (long)candidateCapacity * SLOT_SIZE
+          || indexedLogLength < 0 || indexedLogLength > log.size()) {
+        return false;
+      }
+      table = candidate;
+      capacity = candidateCapacity;
+      size = candidate.getInt(SIZE_OFFSET);
+      logLength = indexedLogLength;
+      return true;
+    }
+  }
+
+  private MappedByteBuffer createTable(Path file, int newCapacity) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      MappedByteBuffer result = channel.map(MapMode.READ_WRITE, 0, HEADER_SIZE + (long)newCapacity * SLOT_SIZE);
+      result.putInt(0, MAGIC);
+      result.putInt(4, VERSION);
+      result.putInt(CAPACITY_OFFSET, newCapacity);
+      capacity = newCapacity;
+      size = 0;
+      logLength = 0;
+      return result;
+    }
+  }
+
+  private void rebuildBloomFilter() {
+    bloomFilter = new BloomFilter(capacity / 2);
+    for (int slot = 0; slot < capacity; slot++) {
+      if (positionAt(slot) >= 0) {
+        bloomFilter.add(fingerprintAt(slot));
+      }
+    }
+  }
+
+  private void replayLog(long position) throws IOException {
+    long current = position;
+    Record record = readRecord(current);
+    while (record != null) {
+      if (find(record.digest, fingerprint(record.digest)) == null) {
+        insert(fingerprint(record.digest), current);
+      }
+      current += record.length;
+      record = readRecord(current);
+    }
+    if (current < log.size()) {
+      log.truncate(current);
+    }
+    logLength = current;
+    writeHeader();
+  }
+
+  private Record readRecord(long position) throws IOException {
+    long available = log.size() - position;
+    if (available < RECORD_HEADER_SIZE) {
+      return null;
+    }
+    ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+    readFully(header, position);
+    int payloadLength = header.getInt(0);
+    if (payloadLength < 4 || payloadLength > available - RECORD_HEADER_SIZE) {
+      return null;
+    }
+    ByteBuffer payload = ByteBuffer.allocate(payloadLength);
+    readFully(payload, position + RECORD_HEADER_SIZE);
+    CRC32 crc = new CRC32();
+    crc.update(payload.array());
+    if ((int)crc.getValue() != header.getInt(4)) {
+      return null;
+    }
+    int digestLength = payload.getInt(0);
+    if (digestLength < 0 || digestLength > payloadLength - 4) {
+      return null;
+    }
+    byte[] digest = Arrays.copyOfRange(payload.array(), 4, 4 + digestLength);
+    String value = new String(payload.array(), 4 + digestLength, payloadLength - 4 - digestLength,
+        StandardCharsets.UTF_8);
+    return new Record(digest, value, RECORD_HEADER_SIZE + payloadLength);
+  }
+
+  private void readFully(ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (log.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of digest log");
+      }
+    }
+  }
+
+  private static long fingerprint(byte[] digest) {
+    long result = 0xcbf29ce484222325L;
+    for (byte value : digest) {
+      result ^= value & 0xFF;
+      result *= 0x100000001b3L;
+    }
+    result ^= result >>> 33;
+    result *= 0xff51afd7ed558ccdL;
+    result ^= result >>> 33;
+    return result;
+  }
+
+  /**
+   * Return the log record of the given digest, or <code>null</code> if there is none. Slots that point to a record that
+   * can't be read, because the log was damaged, don't match any digest.
+   */
+  private Record find(byte[] digest, long fingerprint) throws IOException {
+    if (!bloomFilter.mightContain(fingerprint)) {
+      return null;
+    }
+    int mask = capacity - 1;
+    int slot = (int)fingerprint & mask;
+    long position = positionAt(slot);
+    while (position >= 0) {
+      if (fingerprintAt(slot) == fingerprint) {
+        Record record = readRecord(position);
+        if (record != null && Arrays.equals(digest, record.digest)) {
+          return record;
+        }
+      }
+      slot = (slot + 1) & mask;
+      position = positionAt(slot);
+    }
+    return null;
+  }
+
+  private long positionAt(int slot) {
+    return table.getLong(HEADER_SIZE + slot * SLOT_SIZE) - 1;
+  }
+
+  private long fingerprintAt(int slot) {
+    return table.getLong(HEADER_SIZE + slot * SLOT_SIZE + 8);
+  }
+
+  private void insert(long fingerprint, long position) throws IOException {
+    if (2L * (size + 1) > capacity) {
+      grow();
+    }
+    put(table, capacity, fingerprint, position);
+    bloomFilter.add(fingerprint);
+    size++;
+  }
+
+  private static void put(MappedByteBuffer target, int targetCapacity, long fingerprint, long position) {
+    int mask = targetCapacity - 1;
+    int slot = (int)fingerprint & mask;
+    while (target.getLong(HEADER_SIZE + slot * SLOT_SIZE) != 0) {
+      slot = (slot + 1) & mask;
+    }
+    target.putLong(HEADER_SIZE + slot * SLOT_SIZE, position + 1);
+    target.putLong(HEADER_SIZE + slot * SLOT_SIZE + 8, fingerprint);
+  }
+
+  private void grow() throws IOException {
+    if (capacity >= MAX_CAPACITY) {
+      throw new IOException("Digest index is full");
+    }
+    Path newFile = tableFile.resolveSibling(TABLE_FILE + ".new");
+    int oldCapacity = capacity;
+    int oldSize = size;
+    long oldLogLength = logLength;
+    MappedByteBuffer newTable = createTable(newFile, 2 * oldCapacity);
+    for (int slot = 0; slot < oldCapacity; slot++) {
+      long position = positionAt(slot);
+      if (position >= 0) {
+        put(newTable, capacity, fingerprintAt(slot), position);
+      }
+    }
+    table = newTable;
+    size = oldSize;
+    logLength = oldLogLength;
+    rebuildBloomFilter();
+    writeHeader();
+    table.force();
+    Files.move(newFile, tableFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private void writeHeader() {
+    table.putInt(SIZE_OFFSET, size);
+    table.putLong(LOG_LENGTH_OFFSET, logLength);
+  }
+
+  /**
+   * Return the value for the given digest.
+   * @param digest The digest to look up
+   * @return The value for the digest, or <code>null</code> if the digest isn't in the index
+   * @throws IOException When an I/O error occurs
+   */
+  public synchronized String get(byte[] digest) throws IOException {
+    Record record = find(digest, fingerprint(digest));
+    return record == null ? null : record.value;
+  }
+
+  /**
+   * Add a digest to the index, unless it's already there.
+   * @param digest The digest to add
+   * @param value The value to associate with the digest
+   * @return The value that was already associated with the digest, or <code>null</code> if the digest was added
+   * @throws IOException When an I/O error occurs
+   */
+  public synchronized String putIfAbsent(byte[] digest, String value) throws IOException {
+    long fingerprint = fingerprint(digest);
+    Record record = find(digest, fingerprint);
+    if (record != null) {
+      return record.value;
+    }
+    long position = logLength;
+    logLength += append(digest, value, position);
+    insert(fingerprint, position);
+    writeHeader();
+    return null;
+  }
+
+  private int append(byte[] digest, String value, long position) throws IOException {
+    byte[] encodedValue = value.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + 4 + digest.length + encodedValue.length);
+    record.putInt(4 + digest.length + encodedValue.length);
+    record.putInt(0);
+    record.putInt(digest.length);
+    record.put(digest);
+    record.put(encodedValue);
+    CRC32 crc = new CRC32();
+    crc.update(record.array(), RECORD_HEADER_SIZE, record.capacity() - RECORD_HEADER_SIZE);
+    record.putInt(4, (int)crc.getValue());
+    record.flip();
+    while (record.hasRemaining()) {
+      log.write(record, position + record.position());
+    }
+    return record.capacity();
+  }
+
+  /**
+   * Return the number of digests in the index.
+   * @return The number of digests in the index
+   */
+  public synchronized int size() {
+    return size;
+  }
+
+  /**
+   * Write all changes to disk.
+   * @throws IOException When an I/O error occurs
+   */
+  public synchronized void flush() throws IOException {
+    log.force(false);
+    table.force();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (!log.isOpen()) {
+      return;
+    }
+    try {
+      flush();
+    } finally {
+      try {
+        log.close();
+      } finally {
+        DIRECTORIES_IN_USE.remove(directory);
+      }
+    }
+  }
+
+
+  /**
+   * Digest and value as stored in the log.
+   */
+  private static class Record {
+
+    private final byte[] digest;
+    private final String value;
+    private final int length;
+
+    Record(byte[] digest, String value, int length) {
+      this.digest = digest;
+      this.value = value;
+      this.length = length;
+    }
+
+  }
+
+}
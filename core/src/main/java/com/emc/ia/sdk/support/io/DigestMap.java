@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+
+/**
+ * Map from binary digests to values. All digests in the map must have the same length. The digests are stored inline in
+ * a single <code>long</code> array, using open addressing, so that an entry takes only a couple of dozen bytes and
+ * looking up a digest doesn't create objects or follow pointers.
+ * @param <V> The type of values in the map
+ */
+public class DigestMap<V> {
+
+  private static final int MIN_CAPACITY = 16;
+
+  private int digestLength = -1;
+  private int width;
+  private int capacity;
+  private int size;
+  private long[] keys;
+  private Object[] values;
+
+  /**
+   * Create an instance.
+   * @param expectedSize The number of digests the map is expected to hold
+   */
+  public DigestMap(int expectedSize) {
+    capacity = MIN_CAPACITY;
+    while (capacity < 2L * expectedSize && capacity < 1 << 30) {
+      capacity <<= 1;
+    }
+    values = new Object[capacity];
+  }
+
+  /**
+   * Return the value for the given digest.
+   * @param digest The digest to look up
+   * @return The value for the digest, or <code>null</code> if the digest isn't in the map
+   */
+  @SuppressWarnings("unchecked")
+  public V get(byte[] digest) {
+    if (size == 0 || digest.length != digestLength) {
+      return null;
+    }
+    int slot = findSlot(digest);
+    return (V)values[slot];
+  }
+
+  /**
+   * Add a digest to the map, unless it's already there.
+   * @param digest The digest to add
+   * @param value The value to associate with the digest. Must not be <code>null</code>
+   * @return The value that was already associated with the digest, or <code>null</code> if the digest was added
+   */
+  @SuppressWarnings("unchecked")
+  public V putIfAbsent(byte[] digest, V value) {
+    Objects.requireNonNull(value);
+    if (digestLength < 0) {
+      digestLength = digest.length;
+      width = (digestLength + 7) / 8;
+      keys = new long[capacity * width];
+    } else if (digest.length != digestLength) {
+      throw new IllegalArgumentException(String.format("digest must have %d bytes", digestLength));
+    }
+    int slot = findSlot(digest);
+    if (values[slot] != null) {
+      return (V)values[slot];
+    }
+    if (2 * (size + 1) > capacity) {
+      grow();
+      slot = findSlot(digest);
+    }
+    store(slot, digest);
+    values[slot] = value;
+    size++;
+    return null;
+  }
+
+  private int findSlot(byte[] digest) {
+    int mask = capacity - 1;
+    int slot = (int)mix(word(digest, 0)) & mask;
+    while (values[slot] != null && !matches(slot, digest)) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private static long mix(long value) {
+    long result = value ^ (value >>> 33);
+    result *= 0xff51afd7ed558ccdL;
+    return result ^ (result >>> 33);
+  }
+
+  private static long word(byte[] digest, int index) {
+    long result = 0;
+    int end = Math.min(digest.length, 8 * index + 8);
+    for (int i = 8 * index; i < end; i++) {
+      result = result << 8 | digest[i] & 0xFF;
+    }
+    return result;
+  }
+
+  private boolean matches(int slot, byte[] digest) {
+    for (int i = 0; i < width; i++) {
+      if (keys[slot * width + i] != word(digest, i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void store(int slot, byte[] digest) {
+    for (int i = 0; i < width; i++) {
+      keys[slot * width + i] = word(digest, i);
+    }
+  }
+
+  private void grow() {
+    long[] oldKeys = keys;
+    Object[] oldValues = values;
+    int oldCapacity = capacity;
+    capacity <<= 1;
+    keys = new long[capacity * width];
+    values = new Object[capacity];
+    int mask = capacity - 1;
+    for (int oldSlot = 0; oldSlot < oldCapacity; oldSlot++) {
+      if (oldValues[oldSlot] != null) {
+        int slot = (int)mix(oldKeys[oldSlot * width]) & mask;
+        while (values[slot] != null) {
+          slot = (slot + 1) & mask;
+        }
+        System.arraycopy(oldKeys, oldSlot * width, keys, slot * width, width);
+        values[slot] = oldValues[oldSlot];
+      }
+    }
+  }
+
+  /**
+   * Return the number of digests in the map.
+   * @return The number of digests in the map
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Return the values in the map.
+   * @return The values in the map
+   */
+  @SuppressWarnings("unchecked")
+  public Collection<V> values() {
+    List<V> result = new ArrayList<>(size);
+    for (Object value : values) {
+      if (value != null) {
+        result.add((V)value);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Remove all digests from the map.
+   */
+  public void clear() {
+    Arrays.fill(values, null);
+    size = 0;
+  }
+
+}
@@ -3,18 +3,28 @@
  */
 package com.emc.ia.sdk.support.io;
 
+import java.util.Arrays;
 import java.util.Objects;
 
 /**
  * Result of a {@linkplain HashFunction hash function} applied to some binary data, {@linkplain Encoding encoded} in
  * ASCII form. An encoded hash can serve as a
  * <a href="http://public.ccsds.org/publications/archive/650x0m2.pdf">Transformational Information Property</a>.
+ * <p>
+ * An encoded hash that is created from the binary digest only encodes it when its {@linkplain #getValue() value} is
+ * first needed, so that hashes that are only compared never allocate strings. Encoded hashes are compared using their
+ * binary digests, if their encoding is known.
+ * <p>
+ * Encoded hashes are safe to share between threads. Since either form is derived from the other, computing it more than
+ * once in a race is harmless, and publishing it through a volatile field makes the whole array or string visible.
  */
 public class EncodedHash {
 
   private final String hashFunction;
   private final String encoding;
-  private final String value;
+  private final Encoding encoder;
+  private volatile byte[] digest;
+  private volatile String value;
 
   /**
    * Create an instance of an encoded hash.
@@ -25,9 +35,23 @@ public class EncodedHash {
   public EncodedHash(String hashFunction, String encoding, String encodedHash) {
     this.hashFunction = hashFunction;
     this.encoding = encoding;
+    this.encoder = Encoding.forName(encoding);
     this.value = encodedHash;
   }
 
+  /**
+   * Create an instance of an encoded hash from its binary form.
+   * @param hashFunction The name of the {@linkplain HashFunction} used to compute the hash
+   * @param encoding The {@linkplain Encoding} to use to convert the hash to ASCII form
+   * @param digest The binary form of the computed hash
+   */
+  public EncodedHash(String hashFunction, Encoding encoding, byte[] digest) {
+    this.hashFunction = hashFunction;
+    this.encoding = encoding.toString();
+    this.encoder = encoding;
+    this.digest = digest.clone();
+  }
+
   /**
    * Return the name of the hash function used to compute the hash.
    * @return The name of the hash function
@@ -49,7 +73,37 @@ public class EncodedHash {
    * @return The encoded hash
    */
   public String getValue() {
-    return value;
+    String result = value;
+    if (result == null) {
+      result = encoder.encode(digest);
+      value = result;
+    }
+    return result;
+  }
+
+  /**
+   * Return the binary form of the hash.
+   * @return The binary form of the hash
+   */
+  public byte[] getDigest() {
+    byte[] result = digest();
+    if (result == null) {
+      throw new IllegalStateException("Can't decode hash with encoding " + encoding);
+    }
+    return result.clone();
+  }
+
+  private byte[] digest() {
+    byte[] result = digest;
+    if (result == null && encoder != null) {
+      try {
+        result = encoder.decode(value);
+      } catch (IllegalArgumentException e) { // NOPMD Rule - Fall back to comparing values
+        return null;
+      }
+      digest = result;
+    }
+    return result;
   }
 
   /**
@@ -58,7 +112,7 @@ public class EncodedHash {
    */
   @Override
   public String toString() {
-    return encoding + "(" + hashFunction + "(...)) = " + value;
+    return encoding + "(" + hashFunction + "(...)) = " + getValue();
   }
 
   /**
@@ -67,7 +121,8 @@ public class EncodedHash {
    */
   @Override
   public int hashCode() {
-    return Objects.hash(hashFunction, encoding, value);
+    byte[] bytes = digest();
+    return 31 * Objects.hash(hashFunction, encoding) + (bytes == null ? value.hashCode() : Arrays.hashCode(bytes));
   }
 
   /**
@@ -81,7 +136,15 @@ public class EncodedHash {
       return false;
     }
     EncodedHash other = (EncodedHash)obj;
-    return value.equals(other.value) && hashFunction.equals(other.hashFunction) && encoding.equals(other.encoding);
+    if (!hashFunction.equals(other.hashFunction) || !encoding.equals(other.encoding)) {
+      return false;
+    }
+    byte[] bytes = digest();
+    byte[] otherBytes = other.digest();
+    if (bytes == null || otherBytes == null) {
+      return getValue().equals(other.getValue());
+    }
+    return Arrays.equals(bytes, otherBytes);
   }
 
 }
@@ -6,6 +6,7 @@ package com.emc.ia.sdk.support.io;
 import java.util.Locale;
 import java.util.function.Function;
 
+import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.codec.binary.Hex;
 
@@ -15,12 +16,77 @@ import org.apache.commons.codec.binary.Hex;
  */
 public enum Encoding {
 
-  BASE64(Base64::encodeBase64String), HEX(Hex::encodeHexString);
+  BASE64(Encoding::encodeBase64, Encoding::decodeBase64), HEX(Encoding::encodeHex, Encoding::decodeHex);
+
+  private static final char[] BASE64_DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+      .toCharArray();
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
 
   private final Function<byte[], String> encoder;
+  private final Function<String, byte[]> decoder;
 
-  Encoding(Function<byte[], String> encoder) {
+  Encoding(Function<byte[], String> encoder, Function<String, byte[]> decoder) {
     this.encoder = encoder;
+    this.decoder = decoder;
+  }
+
+  private static String encodeBase64(byte[] bytes) {
+    char[] result = new char[(bytes.length + 2) / 3 * 4];
+    int index = 0;
+    int end = bytes.length - bytes.length % 3;
+    for (int i = 0; i < end; i += 3) {
+      int bits = (bytes[i] & 0xFF) << 16 | (bytes[i + 1] & 0xFF) << 8 | bytes[i + 2] & 0xFF;
+      result[index++] = BASE64_DIGITS[bits >>> 18];
+      result[index++] = BASE64_DIGITS[bits >>> 12 & 0x3F];
+      result[index++] = BASE64_DIGITS[bits >>> 6 & 0x3F];
+      result[index++] = BASE64_DIGITS[bits & 0x3F];
+    }
+    if (end < bytes.length) {
+      int bits = (bytes[end] & 0xFF) << 16;
+      if (end + 1 < bytes.length) {
+        bits |= (bytes[end + 1] & 0xFF) << 8;
+      }
+      result[index++] = BASE64_DIGITS[bits >>> 18];
+      result[index++] = BASE64_DIGITS[bits >>> 12 & 0x3F];
+      result[index++] = end + 1 < bytes.length ? BASE64_DIGITS[bits >>> 6 & 0x3F] : '=';
+      result[index] = '=';
+    }
+    return new String(result);
+  }
+
+  private static byte[] decodeBase64(String value) {
+    // Commons Codec skips anything that isn't base64, so only accept values that are exactly what we'd encode
+    byte[] result = Base64.decodeBase64(value);
+    if (!encodeBase64(result).equals(value)) {
+      throw new IllegalArgumentException("Invalid base64 value: " + value);
+    }
+    return result;
+  }
+
+  private static String encodeHex(byte[] bytes) {
+    char[] result = new char[2 * bytes.length];
+    for (int i = 0; i < bytes.length; i++) {
+      result[2 * i] = HEX_DIGITS[bytes[i] >>> 4 & 0xF];
+      result[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xF];
+    }
+    return new String(result);
+  }
+
+  private static byte[] decodeHex(String value) {
+    try {
+      return Hex.decodeHex(value.toCharArray());
+    } catch (DecoderException e) {
+      throw new IllegalArgumentException("Invalid hex value: " + value, e);
+    }
+  }
+
+  static Encoding forName(String name) {
+    for (Encoding result : values()) {
+      if (result.toString().equals(name)) {
+        return result;
+      }
+    }
+    return null;
   }
 
   /**
@@ -32,6 +98,16 @@ public enum Encoding {
     return encoder.apply(bytes);
   }
 
+  /**
+   * Convert the given ASCII form back to bytes.
+   * @param value The ASCII form to convert
+   * @return The bytes that the ASCII form represents
+   * @throws IllegalArgumentException When the value isn't valid in this encoding
+   */
+  public byte[] decode(String value) {
+    return decoder.apply(value);
+  }
+
   /**
    * Return a human-readable version of the encoding.
    * @return A human-readable version of the encoding
@@ -4,7 +4,6 @@
 package com.emc.ia.sdk.support.io;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -49,7 +48,7 @@ public class FileBuffer implements DataBuffer {
 
   @Override
   public InputStream openForReading() throws IOException {
-    return new FileInputStream(file);
+    return new FileChannelInputStream(file.toPath());
   }
 
   @Override
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * {@linkplain InputStream} that reads a file through a {@linkplain FileChannel}. Consumers that recognize this stream
+ * can bypass it and use the {@linkplain #getChannel() channel} directly, e.g. to hash the file through memory-mapped
+ * buffers or to {@linkplain FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel) transfer} it
+ * without copying it through user space.
+ */
+public class FileChannelInputStream extends InputStream {
+
+  private final Path path;
+  private final FileChannel channel;
+  private final byte[] singleByte = new byte[1];
+
+  /**
+   * Open a file for reading.
+   * @param path The file to read
+   * @throws IOException When the file can't be opened
+   */
+  public FileChannelInputStream(Path path) throws IOException {
+    this.path = path;
+    this.channel = FileChannel.open(path, StandardOpenOption.READ);
+  }
+
+  /**
+   * Return the file being read.
+   * @return The file being read
+   */
+  public Path getPath() {
+    return path;
+  }
+
+  /**
+   * Return the channel through which the file is read.
+   * @return The channel through which the file is read
+   */
+  public FileChannel getChannel() {
+    return channel;
+  }
+
+  /**
+   * Return whether nothing has been read from this stream yet.
+   * @return <code>true</code> if nothing has been read from this stream yet
+   * @throws IOException When an I/O error occurs
+   */
+  public boolean isAtStart() throws IOException {
+    return channel.position() == 0;
+  }
+
+  @Override
+  public int read() throws IOException {
+    int numRead = read(singleByte, 0, 1);
+    return numRead < 0 ? -1 : singleByte[0] & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+    return channel.read(ByteBuffer.wrap(buffer, offset, length));
+  }
+
+  @Override
+  public long skip(long count) throws IOException {
+    if (count <= 0) {
+      return 0;
+    }
+    long position = channel.position();
+    long result = Math.min(count, Math.max(0, channel.size() - position));
+    channel.position(position + result);
+    return result;
+  }
+
+  @Override
+  public int available() throws IOException {
+    return (int)Math.min(Integer.MAX_VALUE, Math.max(0, channel.size() - channel.position()));
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+}
@@ -3,6 +3,7 @@
  */
 package com.emc.ia.sdk.support.io;
 
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.function.Supplier;
 
@@ -14,6 +15,8 @@ import java.util.function.Supplier;
  * <li>{@linkplain #add(byte[], int) Add} data to the hash zero or more times</li>
  * <li>{@linkplain #get() Retrieve} the hash</li>
  * </ol>
+ * When adding data fails, the process should be {@linkplain #abort() aborted} instead, so that the assembler releases
+ * any resources it holds.
  */
 public interface HashAssembler extends Supplier<Collection<EncodedHash>> {
 
@@ -29,6 +32,29 @@ public interface HashAssembler extends Supplier<Collection<EncodedHash>> {
    */
   void add(byte[] buffer, int length);
 
+  /**
+   * Add data to be hashed. The data is consumed, i.e. the buffer's position is advanced to its limit. The default
+   * implementation copies the data to a byte array; implementations may override this to hash the buffer directly, which
+   * avoids copying memory-mapped or direct buffers to the heap.
+   * @param buffer The buffer of data to hash
+   */
+  default void add(ByteBuffer buffer) {
+    byte[] bytes = new byte[Math.min(buffer.remaining(), 65536)];
+    while (buffer.hasRemaining()) {
+      int length = Math.min(buffer.remaining(), bytes.length);
+      buffer.get(bytes, 0, length);
+      add(bytes, length);
+    }
+  }
+
+  /**
+   * Abandon the current hash assembly process, e.g. because reading the data to hash failed. The default implementation
+   * does nothing.
+   */
+  default void abort() {
+    // Nothing to release
+  }
+
   /**
    * Return the number of bytes hashed.
    * @return The number of bytes hashed
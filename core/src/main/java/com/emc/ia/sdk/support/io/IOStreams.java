@@ -3,12 +3,22 @@
  */
 package com.emc.ia.sdk.support.io;
 
+import java.io.EOFException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32;
 
 public final class IOStreams {
 
+  private static final long MAP_SIZE = 16 * 1024 * 1024;
+
   private IOStreams() {
     throw new IllegalArgumentException(
         "IOStreams is a utility class with only static methods and should not be instantiated.");
@@ -36,4 +46,49 @@ public final class IOStreams {
       numRead = in.read(buffer);
     }
   }
+
+  /**
+   * Utility method to assemble a hash value for the content of a file without copying it into heap memory. The file is
+   * read through memory-mapped buffers. Java can't unmap those explicitly, so they are released only when they are
+   * garbage collected. Until then, some platforms, like Windows, won't delete the file.
+   * @param channel The channel to the file to hash
+   * @param hashAssembler The HashAssembler to use.
+   * @param crc The checksum to update with the file's content, or <code>null</code> to skip calculating a checksum
+   * @return The number of bytes hashed
+   * @throws IOException if an error occurs when reading the file
+   */
+  public static long hash(FileChannel channel, HashAssembler hashAssembler, CRC32 crc) throws IOException {
+    long size = channel.size();
+    for (long position = 0; position < size; position += MAP_SIZE) {
+      MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, position, Math.min(MAP_SIZE, size - position));
+      if (crc != null) {
+        crc.update(buffer.duplicate());
+      }
+      hashAssembler.add(buffer);
+    }
+    return size;
+  }
+
+  /**
+   * Utility method to copy the content of a file to an OutputStream using
+   * {@linkplain FileChannel#transferTo(long, long, WritableByteChannel)}. When the target is a file, the operating
+   * system may copy the bytes without moving them through user space.
+   * @param channel The channel to the source file
+   * @param out The target stream. Any buffered data must be flushed before calling this method
+   * @throws IOException if an error occurs when copying the file
+   */
+  public static void transfer(FileChannel channel, OutputStream out) throws IOException {
+    WritableByteChannel target = out instanceof FileOutputStream ? ((FileOutputStream)out).getChannel()
+        : Channels.newChannel(out);
+    long size = channel.size();
+    long position = 0;
+    while (position < size) {
+      long numTransferred = channel.transferTo(position, size - position, target);
+      if (numTransferred <= 0) {
+        throw new EOFException(String.format("Missing %d bytes of file content", size - position));
+      }
+      position += numTransferred;
+    }
+  }
+
 }
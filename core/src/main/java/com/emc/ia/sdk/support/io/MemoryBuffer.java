@@ -13,7 +13,7 @@ import java.io.OutputStream;
  */
 public class MemoryBuffer implements DataBuffer {
 
-  private final ByteArrayInputOutputStream buffer = new ByteArrayInputOutputStream();
+  private final ChunkedInputOutputStream buffer = new ChunkedInputOutputStream();
 
   @Override
   public OutputStream openForWriting() throws IOException {
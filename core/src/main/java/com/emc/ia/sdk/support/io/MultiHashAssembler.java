@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * Assemble several hashes in one pass over the data. Every hash is computed on its own thread: the data is copied into
+ * a ring of chunks that the threads read concurrently, so that assembling several hashes takes about as long as
+ * assembling the slowest of them.
+ * <p>
+ * Data that fits in a single chunk, and data for a single hash function, is hashed on the calling thread, since handing
+ * it off to other threads would cost more than it saves. The threads are pooled and shared by all instances; they are
+ * released when the hash is {@linkplain #get() retrieved} or the assembly process is {@linkplain #abort() aborted}.
+ * When any of the threads fails, adding data fails rather than waiting for it.
+ */
+public class MultiHashAssembler extends NoHashAssembler {
+
+  private static final int CHUNK_SIZE = 65536;
+  private static final int NUM_CHUNKS = 8;
+  private static final ExecutorService DIGESTERS = Executors.newCachedThreadPool(runnable -> {
+    Thread result = new Thread(runnable, "Hash assembler");
+    result.setDaemon(true);
+    return result;
+  });
+
+  private final Encoding encoding;
+  private final List<MessageDigest> digesters = new ArrayList<>();
+  private final byte[][] chunks = new byte[NUM_CHUNKS][];
+  private final int[] lengths = new int[NUM_CHUNKS];
+  private final long[] numConsumed;
+  private final Object lock = new Object();
+  private final List<Future<?>> workers = new ArrayList<>();
+  private long numPublished;
+  private int position;
+  private boolean ended;
+  private boolean aborted;
+  private Throwable failure;
+
+  /**
+   * Assemble hashes using the given hash functions and encoding.
+   * @param encoding The encoding used to encode the assembled hashes
+   * @param hashFunctions The hash functions used to assemble the hashes
+   */
+  public MultiHashAssembler(Encoding encoding, HashFunction... hashFunctions) {
+    if (hashFunctions.length == 0) {
+      throw new IllegalArgumentException("Missing hash functions");
+    }
+    this.encoding = encoding;
+    for (HashFunction hashFunction : hashFunctions) {
+      try {
+        digesters.add(MessageDigest.getInstance(hashFunction.toString()));
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException("Missing message digest " + hashFunction, e);
+      }
+    }
+    numConsumed = new long[hashFunctions.length];
+    chunks[0] = new byte[CHUNK_SIZE];
+  }
+
+  @Override
+  public void initialize() {
+    super.initialize();
+    if (!workers.isEmpty()) {
+      endWorkers();
+    }
+    digesters.forEach(MessageDigest::reset);
+    numPublished = 0;
+    position = 0;
+    ended = false;
+    aborted = false;
+    failure = null;
+  }
+
+  @Override
+  public void abort() {
+    if (!workers.isEmpty()) {
+      synchronized (lock) {
+        aborted = true;
+      }
+      try {
+        endWorkers();
+      } catch (IllegalStateException e) {
+        // Ignore, since the hash is abandoned anyway
+      }
+    }
+    position = 0;
+  }
+
+  @Override
+  public void add(byte[] buffer, int length) {
+    super.add(buffer, length);
+    int offset = 0;
+    while (offset < length) {
+      int numBytes = Math.min(length - offset, CHUNK_SIZE - position);
+      System.arraycopy(buffer, offset, currentChunk(), position, numBytes);
+      offset += numBytes;
+      position += numBytes;
+      publishIfFull();
+    }
+  }
+
+  @Override
+  public void add(ByteBuffer buffer) {
+    super.add(buffer.duplicate());
+    while (buffer.hasRemaining()) {
+      int numBytes = Math.min(buffer.remaining(), CHUNK_SIZE - position);
+      buffer.get(currentChunk(), position, numBytes);
+      position += numBytes;
+      publishIfFull();
+    }
+  }
+
+  private byte[] currentChunk() {
+    int index = (int)(numPublished % NUM_CHUNKS);
+    if (chunks[index] == null) {
+      chunks[index] = new byte[CHUNK_SIZE];
+    }
+    return chunks[index];
+  }
+
+  private void publishIfFull() {
+    if (position == CHUNK_SIZE) {
+      if (digesters.size() == 1) {
+        digesters.get(0).update(currentChunk(), 0, position);
+        position = 0;
+        return;
+      }
+      if (workers.isEmpty()) {
+        startWorkers();
+      }
+      publish();
+    }
+  }
+
+  private void startWorkers() {
+    for (int i = 0; i < digesters.size(); i++) {
+      int digester = i;
+      numConsumed[digester] = 0;
+      workers.add(DIGESTERS.submit(() -> {
+        try {
+          digest(digester);
+        } catch (InterruptedException | RuntimeException | Error e) { // NOPMD AvoidCatchingThrowable - Rethrown
+          synchronized (lock) {
+            failure = e;
+            lock.notifyAll();
+          }
+          throw e;
+        }
+        return null;
+      }));
+    }
+  }
+
+  private void digest(int digester) throws InterruptedException {
+    MessageDigest messageDigest = digesters.get(digester);
+    long next = 0;
+    while (true) {
+      byte[] chunk;
+      int length;
+      synchronized (lock) {
+        while (next == numPublished && !ended) {
+          lock.wait();
+        }
+        if (next == numPublished || aborted) {
+          return;
+        }
+        int index = (int)(next % NUM_CHUNKS);
+        chunk = chunks[index];
+        length = lengths[index];
+      }
+      messageDigest.update(chunk, 0, length);
+      synchronized (lock) {
+        numConsumed[digester] = ++next;
+        lock.notifyAll();
+      }
+    }
+  }
+
+  private void publish() {
+    synchronized (lock) {
+      lengths[(int)(numPublished % NUM_CHUNKS)] = position;
+      numPublished++;
+      lock.notifyAll();
+      // Wait until all digesters are done with the chunk we're about to fill
+      while (numPublished - minConsumed() >= NUM_CHUNKS) {
+        if (failure != null) {
+          throw new IllegalStateException("Failed to assemble hash", failure);
+        }
+        waitForDigesters();
+      }
+    }
+    position = 0;
+  }
+
+  private long minConsumed() {
+    long result = Long.MAX_VALUE;
+    for (long value : numConsumed) {
+      result = Math.min(result, value);
+    }
+    return result;
+  }
+
+  private void waitForDigesters() {
+    try {
+      lock.wait();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeIoException(new InterruptedIOException("Interrupted while assembling hashes"));
+    }
+  }
+
+  private void endWorkers() {
+    synchronized (lock) {
+      ended = true;
+      lock.notifyAll();
+    }
+    // Wait for all workers, even when one of them failed, so that none of them still uses its digester afterwards
+    Throwable cause = null;
+    try {
+      for (Future<?> worker : workers) {
+        try {
+          worker.get();
+        } catch (ExecutionException e) {
+          cause = cause == null ? e.getCause() : cause;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeIoException(new InterruptedIOException("Interrupted while assembling hashes"));
+    } finally {
+      workers.clear();
+    }
+    if (cause != null) {
+      throw new IllegalStateException("Failed to assemble hash", cause);
+    }
+  }
+
+  @Override
+  public Collection<EncodedHash> get() {
+    if (workers.isEmpty()) {
+      digesters.forEach(digester -> digester.update(chunks[0], 0, position));
+    } else {
+      if (position > 0) {
+        publish();
+      }
+      endWorkers();
+    }
+    position = 0;
+    List<EncodedHash> result = new ArrayList<>(digesters.size());
+    for (MessageDigest digester : digesters) {
+      result.add(new EncodedHash(digester.getAlgorithm(), encoding, digester.digest()));
+    }
+    return result;
+  }
+
+}
@@ -3,6 +3,7 @@
  */
 package com.emc.ia.sdk.support.io;
 
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.Collections;
 
@@ -25,6 +26,12 @@ public class NoHashAssembler implements HashAssembler {
     size += length;
   }
 
+  @Override
+  public void add(ByteBuffer buffer) {
+    size += buffer.remaining();
+    buffer.position(buffer.limit());
+  }
+
   @Override
   public long numBytesHashed() {
     return size;
@@ -0,0 +1,369 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.io.IOUtils;
+
+
+/**
+ * {@linkplain ZipAssembler} that compresses entries on a pool of worker threads. When an entry is
+ * {@linkplain #addEntry(String, InputStream, HashAssembler) added}, its content is read and hashed on the calling thread
+ * and buffered. A worker thread then deflates the buffered content and calculates its CRC and sizes, after which the
+ * compressed content is written to the ZIP as a raw entry. Entries are written in the order in which they were added,
+ * and their compressed content is the same as that written by a {@linkplain DefaultZipAssembler} with the same
+ * {@linkplain CompressionPolicy}. Entries that the policy decides to store as is don't need compression, so their CRC
+ * is calculated while they're being read and hashed. Both the content and the compressed content are buffered in
+ * {@linkplain SpillingDataBuffer}s that keep only a limited amount of it in memory.
+ * <p>
+ * Content that is read from a {@linkplain FileChannelInputStream} isn't buffered: it's hashed through memory-mapped
+ * buffers, and stored entries are transferred from the file to the ZIP with minimal copying. The file is opened again
+ * while the entry is added and kept open until the entry is written, so the caller may close the stream as soon as the
+ * entry is added. The file's content must not change until the entry is written, however. Deleting the file may fail
+ * on some platforms, like Windows, until the memory-mapped buffers are garbage collected.
+ * <p>
+ * To bound memory usage, at most a given number of entries wait for compression or writing at any time. Adding an
+ * entry blocks while that limit is reached. Since each pending entry keeps at most two buffers' worth of bytes in
+ * memory, the memory used doesn't depend on the size of the entries.
+ */
+public class ParallelZipAssembler implements ZipAssembler {
+
+  private static final int BUFFER_SIZE = 65536;
+
+  private final int numThreads;
+  private final int maxPendingEntries;
+  private final CompressionPolicy compressionPolicy;
+  private final int maxBytesInMemory;
+  private final Deque<Future<CompressedEntry>> pendingEntries = new ArrayDeque<>();
+  private final Set<Closeable> openFiles = ConcurrentHashMap.newKeySet();
+  private ExecutorService compressors;
+  private RawZipWriter zip;
+
+  /**
+   * Create an instance that uses a worker thread for every available processor.
+   */
+  public ParallelZipAssembler() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Create an instance that uses the given number of worker threads.
+   * @param numThreads The number of threads that compress entries
+   */
+  public ParallelZipAssembler(int numThreads) {
+    this(numThreads, 2 * numThreads);
+  }
+
+  /**
+   * Create an instance that uses the given number of worker threads.
+   * @param numThreads The number of threads that compress entries
+   * @param maxPendingEntries The maximum number of entries that are buffered while waiting to be compressed or written
+   */
+  public ParallelZipAssembler(int numThreads, int maxPendingEntries) {
+    this(numThreads, maxPendingEntries, CompressionPolicy.always(Compression.DEFAULT));
+  }
+
+  /**
+   * Create an instance that uses the given number of worker threads and the given policy to decide how to compress
+   * entries.
+   * @param numThreads The number of threads that compress entries
+   * @param maxPendingEntries The maximum number of entries that are buffered while waiting to be compressed or written
+   * @param compressionPolicy The policy that decides how to compress entries
+   */
+  public ParallelZipAssembler(int numThreads, int maxPendingEntries, CompressionPolicy compressionPolicy) {
+    this(numThreads, maxPendingEntries, compressionPolicy, SpillingDataBuffer.DEFAULT_THRESHOLD);
+  }
+
+  /**
+   * Create an instance that uses the given number of worker threads and the given policy to decide how to compress
+   * entries.
+   * @param numThreads The number of threads that compress entries
+   * @param maxPendingEntries The maximum number of entries that are buffered while waiting to be compressed or written
+   * @param compressionPolicy The policy that decides how to compress entries
+   * @param maxBytesInMemory The maximum number of bytes of an entry's content, and of its compressed content, to keep in
+   *        memory
+   */
+  public ParallelZipAssembler(int numThreads, int maxPendingEntries, CompressionPolicy compressionPolicy,
+      int maxBytesInMemory) {
+    if (numThreads <= 0) {
+      throw new IllegalArgumentException("numThreads must be positive");
+    }
+    if (maxPendingEntries <= 0) {
+      throw new IllegalArgumentException("maxPendingEntries must be positive");
+    }
+    if (maxBytesInMemory < 0) {
+      throw new IllegalArgumentException("maxBytesInMemory must not be negative");
+    }
+    this.numThreads = numThreads;
+    this.maxPendingEntries = maxPendingEntries;
+    this.compressionPolicy = compressionPolicy;
+    this.maxBytesInMemory = maxBytesInMemory;
+  }
+
+  @Override
+  public void begin(OutputStream output) {
+    zip = new RawZipWriter(output);
+    compressors = Executors.newFixedThreadPool(numThreads, runnable -> {
+      Thread result = new Thread(runnable, "ZIP compressor");
+      result.setDaemon(true);
+      return result;
+    });
+  }
+
+  @Override
+  public Collection<EncodedHash> addEntry(String name, InputStream stream, HashAssembler hashAssembler)
+      throws IOException {
+    return addEntry(name, stream, hashAssembler, null);
+  }
+
+  @Override
+  public Collection<EncodedHash> addEntry(String name, InputStream stream, HashAssembler hashAssembler,
+      String mediaType) throws IOException {
+    hashAssembler.initialize();
+    try {
+      if (stream instanceof FileChannelInputStream && ((FileChannelInputStream)stream).isAtStart()) {
+        addFileEntry(name, (FileChannelInputStream)stream, hashAssembler, mediaType);
+      } else {
+        addStreamEntry(name, stream, hashAssembler, mediaType);
+      }
+      writeCompressedEntries(maxPendingEntries - 1);
+    } catch (IOException | RuntimeException | Error e) { // NOPMD AvoidCatchingThrowable - Rethrown
+      hashAssembler.abort();
+      throw e;
+    }
+    return hashAssembler.get();
+  }
+
+  private void addStreamEntry(String name, InputStream stream, HashAssembler hashAssembler, String mediaType)
+      throws IOException {
+    ZipEntrySample sample = new ZipEntrySample(stream);
+    Compression compression = sample.compressionFor(compressionPolicy, name, mediaType);
+    SpillingDataBuffer content = newBuffer();
+    if (compression.isStored()) {
+      CRC32 crc = new CRC32();
+      try (OutputStream output = new CheckedOutputStream(content.openForWriting(), crc)) {
+        IOStreams.copy(sample.getContent(), output, BUFFER_SIZE, hashAssembler);
+      }
+      pendingEntries.add(CompletableFuture.completedFuture(new CompressedEntry(name, ZipEntry.STORED, crc.getValue(),
+          content.length(), content)));
+    } else {
+      try (OutputStream output = content.openForWriting()) {
+        IOStreams.copy(sample.getContent(), output, BUFFER_SIZE, hashAssembler);
+      }
+      pendingEntries.add(compressors.submit(() -> compressBuffer(name, content, compression)));
+    }
+  }
+
+  private SpillingDataBuffer newBuffer() {
+    SpillingDataBuffer result = new SpillingDataBuffer(maxBytesInMemory);
+    openFiles.add(result);
+    return result;
+  }
+
+  /**
+   * Add an entry whose content is in a file. The file is hashed through memory-mapped buffers, so its content isn't
+   * buffered on the heap. Worker threads read the file again to compress it, while stored entries are transferred
+   * from the file to the ZIP when it's their turn to be written. Either way, the file is read through a channel that is
+   * opened here, while the caller still has the file open, and that is closed once the file is read.
+   */
+  private void addFileEntry(String name, FileChannelInputStream file, HashAssembler hashAssembler, String mediaType)
+      throws IOException {
+    Compression compression = new ZipEntrySample(file).compressionFor(compressionPolicy, name, mediaType);
+    FileChannel channel = open(file);
+    if (compression.isStored()) {
+      CRC32 crc = new CRC32();
+      long size = IOStreams.hash(channel, hashAssembler, crc);
+      pendingEntries.add(CompletableFuture.completedFuture(new CompressedEntry(name, crc.getValue(), size, channel)));
+    } else {
+      IOStreams.hash(channel, hashAssembler, null);
+      pendingEntries.add(compressors.submit(() -> compressFile(name, channel, compression)));
+    }
+  }
+
+  private FileChannel open(FileChannelInputStream file) throws IOException {
+    FileChannel result = FileChannel.open(file.getPath(), StandardOpenOption.READ);
+    openFiles.add(result);
+    return result;
+  }
+
+  private void close(Closeable file) throws IOException {
+    try {
+      file.close();
+    } finally {
+      openFiles.remove(file);
+    }
+  }
+
+  private CompressedEntry compressFile(String name, FileChannel channel, Compression compression) throws IOException {
+    try {
+      return compress(name, Channels.newInputStream(channel), compression);
+    } finally {
+      close(channel);
+    }
+  }
+
+  private CompressedEntry compressBuffer(String name, SpillingDataBuffer content, Compression compression)
+      throws IOException {
+    try (InputStream input = content.openForReading()) {
+      return compress(name, input, compression);
+    } finally {
+      close(content);
+    }
+  }
+
+  private CompressedEntry compress(String name, InputStream content, Compression compression) throws IOException {
+    CRC32 crc = new CRC32();
+    long size = 0;
+    SpillingDataBuffer compressed = newBuffer();
+    Deflater deflater = new Deflater(compression.getLevel(), true);
+    try {
+      try (InputStream input = new CheckedInputStream(content, crc);
+          OutputStream output = new DeflaterOutputStream(compressed.openForWriting(), deflater, BUFFER_SIZE)) {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int numRead = input.read(buffer);
+        while (numRead >= 0) {
+          output.write(buffer, 0, numRead);
+          size += numRead;
+          numRead = input.read(buffer);
+        }
+      }
+    } catch (IOException | RuntimeException | Error e) { // NOPMD AvoidCatchingThrowable - Rethrown
+      IOUtils.closeQuietly(compressed);
+      openFiles.remove(compressed);
+      throw e;
+    } finally {
+      deflater.end();
+    }
+    return new CompressedEntry(name, ZipEntry.DEFLATED, crc.getValue(), size, compressed);
+  }
+
+  /**
+   * Write compressed entries to the ZIP in order. Entries that are already compressed are always written, and this
+   * method waits for as many entries as needed to leave at most the given number of entries pending.
+   */
+  private void writeCompressedEntries(int maxPending) throws IOException {
+    while (!pendingEntries.isEmpty()
+        && (pendingEntries.size() > maxPending || pendingEntries.peekFirst().isDone())) {
+      write(waitFor(pendingEntries.removeFirst()));
+    }
+  }
+
+  private void write(CompressedEntry entry) throws IOException {
+    if (entry.buffer != null) {
+      try (InputStream content = entry.buffer.openForReading()) {
+        zip.writeEntry(entry.name, entry.method, entry.crc, entry.size, entry.buffer.length(), content);
+      } finally {
+        close(entry.buffer);
+      }
+    } else {
+      try {
+        zip.writeStoredEntry(entry.name, entry.crc, entry.file);
+      } finally {
+        close(entry.file);
+      }
+    }
+  }
+
+  private CompressedEntry waitFor(Future<CompressedEntry> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while compressing ZIP entry");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException)cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException)cause;
+      }
+      throw new IOException("Failed to compress ZIP entry", cause);
+    }
+  }
+
+  /**
+   * Write the remaining entries and close the ZIP to make it available for use. The ZIP is closed even when writing the
+   * remaining entries fails.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      writeCompressedEntries(0);
+    } catch (IOException | RuntimeException | Error e) { // NOPMD AvoidCatchingThrowable - Rethrown
+      try {
+        zip.close();
+      } catch (IOException | RuntimeException suppressed) {
+        e.addSuppressed(suppressed);
+      }
+      throw e;
+    } finally {
+      pendingEntries.forEach(future -> future.cancel(true));
+      pendingEntries.clear();
+      compressors.shutdownNow();
+      // Entries that were never written still hold their files or buffers open
+      openFiles.forEach(IOUtils::closeQuietly);
+      openFiles.clear();
+    }
+    zip.close();
+  }
+
+
+  /**
+   * Entry whose content is ready to be written to the ZIP.
+   */
+  private static class CompressedEntry {
+
+    private final String name;
+    private final int method;
+    private final long crc;
+    private final long size;
+    private final SpillingDataBuffer buffer;
+    private final FileChannel file;
+
+    CompressedEntry(String name, int method, long crc, long size, SpillingDataBuffer buffer) {
+      this.name = name;
+      this.method = method;
+      this.crc = crc;
+      this.size = size;
+      this.buffer = buffer;
+      this.file = null;
+    }
+
+    CompressedEntry(String name, long crc, long size, FileChannel file) {
+      this.name = name;
+      this.method = ZipEntry.STORED;
+      this.crc = crc;
+      this.size = size;
+      this.buffer = null;
+      this.file = file;
+    }
+
+  }
+
+}
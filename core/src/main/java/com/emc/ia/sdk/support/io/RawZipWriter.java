@@ -0,0 +1,412 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+
+
+/**
+ * Write a ZIP from entries whose content is already in its final, possibly compressed, form. Since the CRC and sizes of
+ * each entry are known up front, they are written in the local file header and no data descriptors are needed. The only
+ * exception are entries whose content is {@linkplain #beginEntry(String, int) streamed} into the ZIP; these are
+ * followed by a data descriptor. ZIP64 extensions are used where sizes, offsets, or the number of entries require them.
+ */
+final class RawZipWriter implements Closeable {
+
+  private static final int BUFFER_SIZE = 65536;
+  private static final int LOCAL_FILE_HEADER = 0x04034b50;
+  private static final int CENTRAL_FILE_HEADER = 0x02014b50;
+  private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+  private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR = 0x07064b50;
+  private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+  private static final int DATA_DESCRIPTOR = 0x08074b50;
+  private static final int ZIP64_EXTRA_FIELD = 0x0001;
+  private static final int FLAG_UTF8 = 0x0800;
+  private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+  private static final int VERSION_STORED = 10;
+  private static final int VERSION_DEFLATED = 20;
+  private static final int VERSION_ZIP64 = 45;
+  private static final long MAX_32 = 0xFFFFFFFFL;
+  private static final int MAX_16 = 0xFFFF;
+
+  private final OutputStream target;
+  private final OutputStream output;
+  private final List<Entry> entries = new ArrayList<>();
+  private final long time = dosTime(LocalDateTime.now());
+  private long offset;
+  private DeflatedEntryStream openEntry;
+
+  /**
+   * Create an instance.
+   * @param output Where to write the ZIP
+   */
+  RawZipWriter(OutputStream output) {
+    this.target = output;
+    this.output = new BufferedOutputStream(output, BUFFER_SIZE);
+  }
+
+  private static long dosTime(LocalDateTime dateTime) {
+    if (dateTime.getYear() < 1980) {
+      return (1 << 21) | (1 << 16);
+    }
+    return (dateTime.getYear() - 1980) << 25 | dateTime.getMonthValue() << 21 | dateTime.getDayOfMonth() << 16
+        | dateTime.getHour() << 11 | dateTime.getMinute() << 5 | dateTime.getSecond() >> 1;
+  }
+
+  /**
+   * Write an entry to the ZIP.
+   * @param name The name of the entry
+   * @param method The compression method of the entry, either {@linkplain ZipEntry#STORED} or
+   * {@linkplain ZipEntry#DEFLATED}
+   * @param crc The CRC-32 of the uncompressed content
+   * @param size The size of the uncompressed content
+   * @param compressedSize The size of the content as stored in the ZIP
+   * @param content The content as stored in the ZIP, i.e. after compression
+   * @throws IOException When an I/O error occurs
+   */
+  void writeEntry(String name, int method, long crc, long size, long compressedSize, InputStream content)
+      throws IOException {
+    checkNoOpenEntry();
+    Entry entry = new Entry(name, method, crc, size, compressedSize, offset, false);
+    writeLocalFileHeader(entry);
+    copy(content, compressedSize);
+    entries.add(entry);
+  }
+
+  /**
+   * Write an entry whose content is stored as is in a file. The file's content is
+   * {@linkplain IOStreams#transfer(FileChannel, OutputStream) transferred} to the ZIP without copying it through
+   * user space where possible.
+   * @param name The name of the entry
+   * @param crc The CRC-32 of the content
+   * @param content The channel to the file that holds the content
+   * @throws IOException When an I/O error occurs
+   */
+  void writeStoredEntry(String name, long crc, FileChannel content) throws IOException {
+    checkNoOpenEntry();
+    long size = content.size();
+    Entry entry = new Entry(name, ZipEntry.STORED, crc, size, size, offset, false);
+    writeLocalFileHeader(entry);
+    output.flush();
+    IOStreams.transfer(content, target);
+    offset += size;
+    entries.add(entry);
+  }
+
+  /**
+   * Start an entry whose content is written to the returned stream and deflated while it's being written. The entry
+   * ends when the stream is closed. No other entries can be written while the entry is open.
+   * @param name The name of the entry
+   * @param level The compression level
+   * @return The stream to write the entry's uncompressed content to
+   * @throws IOException When an I/O error occurs
+   */
+  OutputStream beginEntry(String name, int level) throws IOException {
+    checkNoOpenEntry();
+    Entry header = new Entry(name, ZipEntry.DEFLATED, 0, 0, 0, offset, true);
+    writeLocalFileHeader(header);
+    openEntry = new DeflatedEntryStream(name, header.offset, level);
+    return openEntry;
+  }
+
+  private void checkNoOpenEntry() {
+    if (openEntry != null) {
+      throw new IllegalStateException("Entry " + openEntry.name + " is still open");
+    }
+  }
+
+  private void writeLocalFileHeader(Entry entry) throws IOException {
+    boolean zip64 = entry.size >= MAX_32 || entry.compressedSize >= MAX_32;
+    byte[] extra = new byte[0];
+    if (zip64) {
+      ExtraField field = new ExtraField();
+      field.writeLong(entry.size);
+      field.writeLong(entry.compressedSize);
+      extra = field.toByteArray();
+    }
+    writeInt(LOCAL_FILE_HEADER);
+    writeShort(zip64 ? VERSION_ZIP64 : entry.version());
+    writeShort(entry.flags());
+    writeShort(entry.method);
+    writeInt(time);
+    writeInt(entry.crc);
+    writeInt(zip64 ? MAX_32 : entry.compressedSize);
+    writeInt(zip64 ? MAX_32 : entry.size);
+    writeShort(entry.name.length);
+    writeShort(extra.length);
+    write(entry.name);
+    write(extra);
+  }
+
+  private void copy(InputStream content, long length) throws IOException {
+    byte[] buffer = new byte[BUFFER_SIZE];
+    long remaining = length;
+    while (remaining > 0) {
+      int numRead = content.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+      if (numRead < 0) {
+        throw new IOException(String.format("Missing %d bytes of entry content", remaining));
+      }
+      output.write(buffer, 0, numRead);
+      remaining -= numRead;
+    }
+    offset += length;
+  }
+
+  /**
+   * Write the central directory and close the ZIP.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      checkNoOpenEntry();
+      long centralDirectoryOffset = offset;
+      for (Entry entry : entries) {
+        writeCentralFileHeader(entry);
+      }
+      long centralDirectorySize = offset - centralDirectoryOffset;
+      if (entries.size() >= MAX_16 || centralDirectoryOffset >= MAX_32 || centralDirectorySize >= MAX_32) {
+        writeZip64EndOfCentralDirectory(centralDirectoryOffset, centralDirectorySize);
+      }
+      writeInt(END_OF_CENTRAL_DIRECTORY);
+      writeShort(0);
+      writeShort(0);
+      writeShort(Math.min(entries.size(), MAX_16));
+      writeShort(Math.min(entries.size(), MAX_16));
+      writeInt(Math.min(centralDirectorySize, MAX_32));
+      writeInt(Math.min(centralDirectoryOffset, MAX_32));
+      writeShort(0);
+      output.flush();
+    } finally {
+      output.close();
+    }
+  }
+
+  private void writeCentralFileHeader(Entry entry) throws IOException {
+    ExtraField field = new ExtraField();
+    if (entry.size >= MAX_32) {
+      field.writeLong(entry.size);
+    }
+    if (entry.compressedSize >= MAX_32) {
+      field.writeLong(entry.compressedSize);
+    }
+    if (entry.offset >= MAX_32) {
+      field.writeLong(entry.offset);
+    }
+    byte[] extra = field.size() == 0 ? new byte[0] : field.toByteArray();
+    int version = extra.length == 0 ? entry.version() : VERSION_ZIP64;
+    writeInt(CENTRAL_FILE_HEADER);
+    writeShort(version);
+    writeShort(version);
+    writeShort(entry.flags());
+    writeShort(entry.method);
+    writeInt(time);
+    writeInt(entry.crc);
+    writeInt(Math.min(entry.compressedSize, MAX_32));
+    writeInt(Math.min(entry.size, MAX_32));
+    writeShort(entry.name.length);
+    writeShort(extra.length);
+    writeShort(0);
+    writeShort(0);
+    writeShort(0);
+    writeInt(0);
+    writeInt(Math.min(entry.offset, MAX_32));
+    write(entry.name);
+    write(extra);
+  }
+
+  private void writeZip64EndOfCentralDirectory(long centralDirectoryOffset, long centralDirectorySize)
+      throws IOException {
+    long recordOffset = offset;
+    writeInt(ZIP64_END_OF_CENTRAL_DIRECTORY);
+    writeLong(44);
+    writeShort(VERSION_ZIP64);
+    writeShort(VERSION_ZIP64);
+    writeInt(0);
+    writeInt(0);
+    writeLong(entries.size());
+    writeLong(entries.size());
+    writeLong(centralDirectorySize);
+    writeLong(centralDirectoryOffset);
+    writeInt(ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR);
+    writeInt(0);
+    writeLong(recordOffset);
+    writeInt(1);
+  }
+
+  private void writeShort(int value) throws IOException {
+    output.write(value & 0xFF);
+    output.write((value >>> 8) & 0xFF);
+    offset += 2;
+  }
+
+  private void writeInt(long value) throws IOException {
+    writeShort((int)(value & MAX_16));
+    writeShort((int)((value >>> 16) & MAX_16));
+  }
+
+  private void writeLong(long value) throws IOException {
+    writeInt(value & MAX_32);
+    writeInt(value >>> 32);
+  }
+
+  private void write(byte[] bytes) throws IOException {
+    output.write(bytes);
+    offset += bytes.length;
+  }
+
+
+  /**
+   * Entry written to the ZIP, remembered for the central directory.
+   */
+  private static class Entry {
+
+    private final byte[] name;
+    private final int method;
+    private final long crc;
+    private final long size;
+    private final long compressedSize;
+    private final long offset;
+    private final boolean dataDescriptor;
+
+    Entry(String name, int method, long crc, long size, long compressedSize, long offset, boolean dataDescriptor) {
+      this.name = name.getBytes(StandardCharsets.UTF_8);
+      this.method = method;
+      this.crc = crc;
+      this.size = size;
+      this.compressedSize = compressedSize;
+      this.offset = offset;
+      this.dataDescriptor = dataDescriptor;
+      if (this.name.length > MAX_16) {
+        throw new IllegalArgumentException("Entry name too long: " + name);
+      }
+      if (method != ZipEntry.STORED && method != ZipEntry.DEFLATED) {
+        throw new IllegalArgumentException("Unsupported compression method: " + method);
+      }
+    }
+
+    int version() {
+      return method == ZipEntry.STORED ? VERSION_STORED : VERSION_DEFLATED;
+    }
+
+    int flags() {
+      return dataDescriptor ? FLAG_UTF8 | FLAG_DATA_DESCRIPTOR : FLAG_UTF8;
+    }
+
+  }
+
+
+  /**
+   * Content of an entry that is deflated while it's being written. Closing the stream writes the data descriptor.
+   */
+  private class DeflatedEntryStream extends DeflaterOutputStream {
+
+    private final String name;
+    private final long entryOffset;
+    private final long contentOffset;
+    private final CRC32 crc = new CRC32();
+    private long size;
+    private boolean closed;
+
+    DeflatedEntryStream(String name, long entryOffset, int level) {
+      super(new ContentOutputStream(), new Deflater(level, true), BUFFER_SIZE);
+      this.name = name;
+      this.entryOffset = entryOffset;
+      this.contentOffset = offset;
+    }
+
+    @Override
+    public void write(byte[] buffer, int start, int length) throws IOException {
+      super.write(buffer, start, length);
+      crc.update(buffer, start, length);
+      size += length;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        finish();
+      } finally {
+        def.end();
+      }
+      long compressedSize = offset - contentOffset;
+      writeInt(DATA_DESCRIPTOR);
+      writeInt(crc.getValue());
+      if (size >= MAX_32 || compressedSize >= MAX_32) {
+        writeLong(compressedSize);
+        writeLong(size);
+      } else {
+        writeInt(compressedSize);
+        writeInt(size);
+      }
+      entries.add(new Entry(name, ZipEntry.DEFLATED, crc.getValue(), size, compressedSize, entryOffset, true));
+      openEntry = null;
+    }
+
+  }
+
+
+  /**
+   * Writes compressed content to the ZIP.
+   */
+  private class ContentOutputStream extends OutputStream {
+
+    @Override
+    public void write(int value) throws IOException {
+      output.write(value);
+      offset++;
+    }
+
+    @Override
+    public void write(byte[] buffer, int start, int length) throws IOException {
+      output.write(buffer, start, length);
+      offset += length;
+    }
+
+  }
+
+
+  /**
+   * ZIP64 extended information extra field.
+   */
+  private static class ExtraField extends ByteArrayOutputStream {
+
+    void writeLong(long value) {
+      for (int i = 0; i < 8; i++) {
+        write((int)(value >>> (8 * i)) & 0xFF);
+      }
+    }
+
+    @Override
+    public synchronized byte[] toByteArray() {
+      byte[] data = super.toByteArray();
+      byte[] result = new byte[4 + data.length];
+      result[0] = (byte)ZIP64_EXTRA_FIELD;
+      result[1] = (byte)(ZIP64_EXTRA_FIELD >>> 8);
+      result[2] = (byte)data.length;
+      result[3] = (byte)(data.length >>> 8);
+      System.arraycopy(data, 0, result, 4, data.length);
+      return result;
+    }
+
+  }
+
+}
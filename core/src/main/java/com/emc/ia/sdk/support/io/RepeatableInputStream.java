@@ -12,11 +12,12 @@ import org.apache.commons.io.IOUtils;
 
 
 /**
- * Provide repeatable access to the same {@linkplain InputStream} by caching it in memory.
+ * Provide repeatable access to the same {@linkplain InputStream} by caching it in memory. The cached data is stored in
+ * {@linkplain ChunkedInputOutputStream chunks}, so it's never copied as it grows or when it's read.
  */
 public class RepeatableInputStream implements Supplier<InputStream> {
 
-  private final ByteArrayInputOutputStream provider = new ByteArrayInputOutputStream();
+  private final ChunkedInputOutputStream provider;
 
   /**
    * Provide repeatable access to the given input stream.
@@ -24,6 +25,17 @@ public class RepeatableInputStream implements Supplier<InputStream> {
    * @throws IOException When an I/O error occurs
    */
   public RepeatableInputStream(InputStream source) throws IOException {
+    this(source, -1);
+  }
+
+  /**
+   * Provide repeatable access to the given input stream, whose length is known.
+   * @param source The input stream to make available for repeated access. Must not be <code>null</code>
+   * @param expectedLength The number of bytes in the stream, or a negative number if not known
+   * @throws IOException When an I/O error occurs
+   */
+  public RepeatableInputStream(InputStream source, long expectedLength) throws IOException {
+    provider = new ChunkedInputOutputStream(expectedLength);
     IOUtils.copy(Objects.requireNonNull(source), provider);
   }
 
@@ -32,4 +44,12 @@ public class RepeatableInputStream implements Supplier<InputStream> {
     return provider.getInputStream();
   }
 
+  /**
+   * Return the number of bytes cached.
+   * @return The number of bytes cached
+   */
+  public long length() {
+    return provider.size();
+  }
+
 }
@@ -3,6 +3,7 @@
  */
 package com.emc.ia.sdk.support.io;
 
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Collection;
@@ -50,10 +51,16 @@ public class SingleHashAssembler extends NoHashAssembler {
     digester.update(buffer, 0, length);
   }
 
+  @Override
+  public void add(ByteBuffer buffer) {
+    ByteBuffer data = buffer.duplicate();
+    super.add(buffer);
+    digester.update(data);
+  }
+
   @Override
   public Collection<EncodedHash> get() {
-    return Collections.singletonList(
-        new EncodedHash(digester.getAlgorithm(), encoding.toString(), encoding.encode(digester.digest())));
+    return Collections.singletonList(new EncodedHash(digester.getAlgorithm(), encoding, digester.digest()));
   }
 
 }
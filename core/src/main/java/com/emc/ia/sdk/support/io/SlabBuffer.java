@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Buffer that stores data in direct {@linkplain ByteBuffer} slabs from a {@linkplain SlabPool}. Unlike a
+ * {@linkplain MemoryBuffer}, this buffer never copies data as it grows, isn't limited to 2 GB, and keeps its data out of
+ * the Java heap.
+ * <p>
+ * The slabs go back to the pool when the buffer is {@linkplain #close() closed}, which
+ * {@linkplain com.emc.ia.sdk.sip.assembly.SipAssembler} does when a SIP ends.
+ */
+public class SlabBuffer implements DataBuffer, Closeable {
+
+  private final SlabPool pool;
+  private final List<ByteBuffer> slabs = new ArrayList<>();
+  private long length;
+
+  /**
+   * Create an instance that takes slabs from the {@linkplain SlabPool#getDefault() process-wide pool}.
+   */
+  public SlabBuffer() {
+    this(SlabPool.getDefault());
+  }
+
+  /**
+   * Create an instance.
+   * @param pool The pool to take slabs from
+   */
+  public SlabBuffer(SlabPool pool) {
+    this.pool = pool;
+  }
+
+  @Override
+  public OutputStream openForWriting() throws IOException {
+    return new OutputStream() {
+      @Override
+      public void write(int value) throws IOException {
+        currentSlab().put((byte)value);
+        length++;
+      }
+
+      @Override
+      public void write(byte[] buffer, int offset, int count) throws IOException {
+        int written = 0;
+        while (written < count) {
+          ByteBuffer slab = currentSlab();
+          int numBytes = Math.min(count - written, slab.remaining());
+          slab.put(buffer, offset + written, numBytes);
+          written += numBytes;
+        }
+        length += count;
+      }
+    };
+  }
+
+  private ByteBuffer currentSlab() throws IOException {
+    if (slabs.isEmpty() || !slabs.get(slabs.size() - 1).hasRemaining()) {
+      slabs.add(pool.acquire());
+    }
+    return slabs.get(slabs.size() - 1);
+  }
+
+  @Override
+  public InputStream openForReading() throws IOException {
+    return new SlabInputStream();
+  }
+
+  @Override
+  public long length() {
+    return length;
+  }
+
+  /**
+   * Return the slabs to the pool.
+   */
+  @Override
+  public void close() {
+    slabs.forEach(pool::release);
+    slabs.clear();
+    length = 0;
+  }
+
+
+  /**
+   * Stream that reads a snapshot of the data without copying the slabs.
+   */
+  private class SlabInputStream extends InputStream {
+
+    private final List<ByteBuffer> readable = new ArrayList<>(slabs.size());
+    private int index;
+
+    SlabInputStream() {
+      for (ByteBuffer slab : slabs) {
+        ByteBuffer view = slab.duplicate();
+        view.flip();
+        readable.add(view);
+      }
+    }
+
+    @Override
+    public int read() {
+      ByteBuffer slab = currentSlab();
+      return slab == null ? -1 : slab.get() & 0xFF;
+    }
+
+    private ByteBuffer currentSlab() {
+      while (index < readable.size()) {
+        ByteBuffer result = readable.get(index);
+        if (result.hasRemaining()) {
+          return result;
+        }
+        index++;
+      }
+      return null;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) {
+      if (count == 0) {
+        return 0;
+      }
+      int result = 0;
+      ByteBuffer slab = currentSlab();
+      while (slab != null && result < count) {
+        int numBytes = Math.min(count - result, slab.remaining());
+        slab.get(buffer, offset + result, numBytes);
+        result += numBytes;
+        slab = currentSlab();
+      }
+      return result == 0 ? -1 : result;
+    }
+
+    @Override
+    public long skip(long count) {
+      long result = 0;
+      ByteBuffer slab = currentSlab();
+      while (slab != null && result < count) {
+        int numBytes = (int)Math.min(count - result, slab.remaining());
+        slab.position(slab.position() + numBytes);
+        result += numBytes;
+        slab = currentSlab();
+      }
+      return result;
+    }
+
+    @Override
+    public int available() {
+      ByteBuffer slab = currentSlab();
+      return slab == null ? 0 : slab.remaining();
+    }
+
+  }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+
+/**
+ * Pool of fixed-size direct {@linkplain ByteBuffer}s, or slabs, that live outside the Java heap. Slabs are allocated on
+ * demand until the pool's budget is reached, and are reused once they're {@linkplain #release(ByteBuffer) released}.
+ * At steady state, no new memory is allocated.
+ * <p>
+ * The budget is a hard limit: when all slabs are in use, {@linkplain #acquire()} fails rather than allocating more.
+ * To keep it that way, the pool tracks which slabs are in use and rejects releasing any other buffer.
+ * <p>
+ * The {@linkplain #getDefault() process-wide pool} uses slabs of {@value #DEFAULT_SLAB_SIZE} bytes and a budget that
+ * can be set with the <code>com.emc.ia.sdk.support.io.SlabPool.maxBytes</code> system property.
+ */
+public class SlabPool {
+
+  /**
+   * The default size of a slab.
+   */
+  public static final int DEFAULT_SLAB_SIZE = 1024 * 1024;
+  /**
+   * The default maximum number of bytes in the process-wide pool.
+   */
+  public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+  private static final SlabPool DEFAULT = new SlabPool(DEFAULT_SLAB_SIZE,
+      Long.getLong(SlabPool.class.getName() + ".maxBytes", DEFAULT_MAX_BYTES));
+
+  private final int slabSize;
+  private final int maxSlabs;
+  private final Semaphore available;
+  private final Queue<ByteBuffer> freeSlabs = new ConcurrentLinkedQueue<>();
+  private final Set<ByteBuffer> slabsInUse = Collections.newSetFromMap(new IdentityHashMap<>());
+
+  /**
+   * Create an instance.
+   * @param slabSize The number of bytes in a slab
+   * @param maxBytes The maximum number of bytes the pool may allocate
+   */
+  public SlabPool(int slabSize, long maxBytes) {
+    if (slabSize <= 0) {
+      throw new IllegalArgumentException("slabSize must be positive");
+    }
+    if (maxBytes < slabSize) {
+      throw new IllegalArgumentException("maxBytes must be at least slabSize");
+    }
+    this.slabSize = slabSize;
+    this.maxSlabs = (int)Math.min(Integer.MAX_VALUE, maxBytes / slabSize);
+    this.available = new Semaphore(maxSlabs);
+  }
+
+  /**
+   * Return the process-wide pool.
+   * @return The process-wide pool
+   */
+  public static SlabPool getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Return the number of bytes in a slab.
+   * @return The number of bytes in a slab
+   */
+  public int getSlabSize() {
+    return slabSize;
+  }
+
+  /**
+   * Return the maximum number of slabs this pool hands out at the same time.
+   * @return The maximum number of slabs
+   */
+  public int getMaxSlabs() {
+    return maxSlabs;
+  }
+
+  /**
+   * Return the number of slabs currently in use.
+   * @return The number of slabs in use
+   */
+  public int numSlabsInUse() {
+    return maxSlabs - available.availablePermits();
+  }
+
+  /**
+   * Take a slab from the pool. The slab is cleared and must be {@linkplain #release(ByteBuffer) released} when no longer
+   * needed.
+   * @return An empty slab
+   * @throws IOException When the pool's budget is exhausted
+   */
+  public ByteBuffer acquire() throws IOException {
+    if (!available.tryAcquire()) {
+      throw new IOException(String.format("All %d slabs of %d bytes are in use", maxSlabs, slabSize));
+    }
+    ByteBuffer result = freeSlabs.poll();
+    if (result == null) {
+      result = ByteBuffer.allocateDirect(slabSize);
+    } else {
+      result.clear();
+    }
+    synchronized (slabsInUse) {
+      slabsInUse.add(result);
+    }
+    return result;
+  }
+
+  /**
+   * Return a slab to the pool so it can be reused.
+   * @param slab The slab to return, which must have been {@linkplain #acquire() acquired} from this pool
+   * @throws IllegalArgumentException When the slab isn't in use, because it doesn't belong to this pool or because it
+   *           was released before
+   */
+  public void release(ByteBuffer slab) {
+    synchronized (slabsInUse) {
+      if (!slabsInUse.remove(slab)) {
+        throw new IllegalArgumentException("slab isn't in use in this pool");
+      }
+    }
+    freeSlabs.add(slab);
+    available.release();
+  }
+
+}
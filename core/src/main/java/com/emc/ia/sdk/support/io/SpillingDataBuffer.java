@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Buffer that keeps data in memory until it grows beyond a threshold, at which point the data is moved to a temporary
+ * file. Small amounts of data thus never touch the disk, while large amounts of data don't exhaust the heap.
+ * <p>
+ * The temporary file is deleted when the buffer is {@linkplain #close() closed}. Process-wide
+ * {@linkplain #getStatistics() statistics} show how often buffers spill to disk, which helps in tuning the threshold.
+ */
+public class SpillingDataBuffer implements DataBuffer, Closeable {
+
+  /**
+   * The default number of bytes kept in memory before spilling to disk.
+   */
+  public static final int DEFAULT_THRESHOLD = 8 * 1024 * 1024;
+  private static final int BUFFER_SIZE = 65536;
+  private static final AtomicLong NUM_BUFFERS = new AtomicLong();
+  private static final AtomicLong NUM_SPILLED = new AtomicLong();
+  private static final AtomicLong NUM_BYTES_SPILLED = new AtomicLong();
+
+  private final int threshold;
+  private ChunkedInputOutputStream memory = new ChunkedInputOutputStream();
+  private Path file;
+  private OutputStream fileOutput;
+  private long length;
+
+  /**
+   * Create an instance that keeps up to {@value #DEFAULT_THRESHOLD} bytes in memory.
+   */
+  public SpillingDataBuffer() {
+    this(DEFAULT_THRESHOLD);
+  }
+
+  /**
+   * Create an instance.
+   * @param threshold The maximum number of bytes to keep in memory
+   */
+  public SpillingDataBuffer(int threshold) {
+    if (threshold < 0) {
+      throw new IllegalArgumentException("threshold must not be negative");
+    }
+    this.threshold = threshold;
+    NUM_BUFFERS.incrementAndGet();
+  }
+
+  /**
+   * Return statistics about all spilling buffers created in this process.
+   * @return Statistics about spilling buffers
+   */
+  public static Statistics getStatistics() {
+    return new Statistics(NUM_BUFFERS.get(), NUM_SPILLED.get(), NUM_BYTES_SPILLED.get());
+  }
+
+  @Override
+  public OutputStream openForWriting() throws IOException {
+    return new OutputStream() {
+      @Override
+      public void write(int value) throws IOException {
+        write(new byte[] { (byte)value }, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] buffer, int offset, int count) throws IOException {
+        SpillingDataBuffer.this.write(buffer, offset, count);
+      }
+
+      @Override
+      public void flush() throws IOException {
+        if (fileOutput != null) {
+          fileOutput.flush();
+        }
+      }
+
+      @Override
+      public void close() throws IOException {
+        flush();
+      }
+    };
+  }
+
+  private void write(byte[] buffer, int offset, int count) throws IOException {
+    if (memory != null && length + count > threshold) {
+      spill();
+    }
+    if (memory == null) {
+      fileOutput.write(buffer, offset, count);
+      NUM_BYTES_SPILLED.addAndGet(count);
+    } else {
+      memory.write(buffer, offset, count);
+    }
+    length += count;
+  }
+
+  private void spill() throws IOException {
+    file = Files.createTempFile(null, null);
+    fileOutput = new BufferedOutputStream(new FileOutputStream(file.toFile()), BUFFER_SIZE);
+    memory.writeTo(fileOutput);
+    NUM_SPILLED.incrementAndGet();
+    NUM_BYTES_SPILLED.addAndGet(memory.size());
+    memory = null;
+  }
+
+  @Override
+  public InputStream openForReading() throws IOException {
+    if (memory != null) {
+      return memory.getInputStream();
+    }
+    fileOutput.flush();
+    return new FileChannelInputStream(file);
+  }
+
+  @Override
+  public long length() {
+    return length;
+  }
+
+  /**
+   * Return whether the data has been moved to disk.
+   * @return <code>true</code> if the data is stored in a temporary file
+   */
+  public boolean isSpilled() {
+    return memory == null;
+  }
+
+  /**
+   * Release the memory or temporary file used by this buffer.
+   */
+  @Override
+  public void close() throws IOException {
+    memory = new ChunkedInputOutputStream();
+    length = 0;
+    if (fileOutput != null) {
+      try {
+        fileOutput.close();
+      } finally {
+        fileOutput = null;
+        Files.deleteIfExists(file);
+        file = null;
+      }
+    }
+  }
+
+
+  /**
+   * Statistics about {@linkplain SpillingDataBuffer}s.
+   */
+  public static class Statistics {
+
+    private final long numBuffers;
+    private final long numSpilled;
+    private final long numBytesSpilled;
+
+    Statistics(long numBuffers, long numSpilled, long numBytesSpilled) {
+      this.numBuffers = numBuffers;
+      this.numSpilled = numSpilled;
+      this.numBytesSpilled = numBytesSpilled;
+    }
+
+    /**
+     * Return the number of buffers created.
+     * @return The number of buffers created
+     */
+    public long numBuffers() {
+      return numBuffers;
+    }
+
+    /**
+     * Return the number of buffers that spilled to disk.
+     * @return The number of buffers that spilled to disk
+     */
+    public long numSpilled() {
+      return numSpilled;
+    }
+
+    /**
+     * Return the number of bytes written to disk by spilled buffers.
+     * @return The number of bytes written to disk
+     */
+    public long numBytesSpilled() {
+      return numBytesSpilled;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d of %d buffers spilled %d bytes to disk", numSpilled, numBuffers, numBytesSpilled);
+    }
+
+  }
+
+}
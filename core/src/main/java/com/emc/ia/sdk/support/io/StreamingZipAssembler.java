@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.io.output.CountingOutputStream;
+
+
+/**
+ * {@linkplain ZipAssembler} that can {@linkplain #beginEntry(String, HashAssembler) stream} the content of one entry
+ * directly into the ZIP, while other entries are being added. Since a ZIP is written sequentially, entries that are
+ * added while the streamed entry is open can't be written yet. They are compressed into a temporary spool file instead,
+ * and appended to the ZIP as raw entries as soon as the streamed entry is closed. The streamed entry thus comes before
+ * the entries that were added while it was open.
+ * <p>
+ * The content of the streamed entry is written only once, which makes this assembler suitable for entries that are too
+ * big to buffer, like the PDI of a large SIP.
+ */
+public class StreamingZipAssembler implements ZipAssembler {
+
+  private static final int BUFFER_SIZE = 65536;
+
+  private final CompressionPolicy compressionPolicy;
+  private final List<SpooledEntry> spooledEntries = new ArrayList<>();
+  private RawZipWriter zip;
+  private OutputStream streamedEntry;
+  private Path spoolFile;
+  private CountingOutputStream spool;
+
+  /**
+   * Create an instance that deflates all entries.
+   */
+  public StreamingZipAssembler() {
+    this(CompressionPolicy.always(Compression.DEFAULT));
+  }
+
+  /**
+   * Create an instance that uses the given policy to decide how to compress entries that aren't streamed.
+   * @param compressionPolicy The policy that decides how to compress entries
+   */
+  public StreamingZipAssembler(CompressionPolicy compressionPolicy) {
+    this.compressionPolicy = compressionPolicy;
+  }
+
+  @Override
+  public void begin(OutputStream output) {
+    zip = new RawZipWriter(output);
+  }
+
+  @Override
+  public OutputStream beginEntry(String name, HashAssembler hashAssembler) throws IOException {
+    if (streamedEntry != null) {
+      throw new IllegalStateException("Can stream only one entry at a time");
+    }
+    hashAssembler.initialize();
+    streamedEntry = new StreamedEntry(zip.beginEntry(name, Compression.DEFAULT.getLevel()), hashAssembler);
+    return streamedEntry;
+  }
+
+  @Override
+  public Collection<EncodedHash> addEntry(String name, InputStream stream, HashAssembler hashAssembler)
+      throws IOException {
+    return addEntry(name, stream, hashAssembler, null);
+  }
+
+  @Override
+  public Collection<EncodedHash> addEntry(String name, InputStream stream, HashAssembler hashAssembler,
+      String mediaType) throws IOException {
+    hashAssembler.initialize();
+    try {
+      ZipEntrySample sample = new ZipEntrySample(stream);
+      Compression compression = sample.compressionFor(compressionPolicy, name, mediaType);
+      if (streamedEntry == null) {
+        ChunkedInputOutputStream content = new ChunkedInputOutputStream();
+        SpooledEntry entry = compress(name, sample.getContent(), hashAssembler, compression, new CountingOutputStream(
+            content));
+        zip.writeEntry(entry.name, entry.method, entry.crc, entry.size, entry.compressedSize,
+            content.getInputStream());
+      } else {
+        spooledEntries.add(compress(name, sample.getContent(), hashAssembler, compression, spool()));
+      }
+    } catch (IOException | RuntimeException | Error e) { // NOPMD AvoidCatchingThrowable - Rethrown
+      hashAssembler.abort();
+      throw e;
+    }
+    return hashAssembler.get();
+  }
+
+  private CountingOutputStream spool() throws IOException {
+    if (spool == null) {
+      spoolFile = Files.createTempFile(null, null);
+      spool = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(spoolFile.toFile()),
+          BUFFER_SIZE));
+    }
+    return spool;
+  }
+
+  private SpooledEntry compress(String name, InputStream content, HashAssembler hashAssembler,
+      Compression compression, CountingOutputStream target) throws IOException {
+    CRC32 crc = new CRC32();
+    long start = target.getByteCount();
+    CountingOutputStream uncompressed;
+    if (compression.isStored()) {
+      uncompressed = new CountingOutputStream(new CheckedOutputStream(target, crc));
+      IOStreams.copy(content, uncompressed, BUFFER_SIZE, hashAssembler);
+    } else {
+      Deflater deflater = new Deflater(compression.getLevel(), true);
+      try {
+        DeflaterOutputStream deflated = new DeflaterOutputStream(target, deflater, BUFFER_SIZE);
+        uncompressed = new CountingOutputStream(new CheckedOutputStream(deflated, crc));
+        IOStreams.copy(content, uncompressed, BUFFER_SIZE, hashAssembler);
+        deflated.finish();
+      } finally {
+        deflater.end();
+      }
+    }
+    int method = compression.isStored() ? ZipEntry.STORED : ZipEntry.DEFLATED;
+    return new SpooledEntry(name, method, crc.getValue(), uncompressed.getByteCount(), target.getByteCount() - start);
+  }
+
+  private void endStreamedEntry() throws IOException {
+    streamedEntry = null;
+    if (spool == null) {
+      return;
+    }
+    spool.close();
+    spool = null;
+    try (InputStream content = new BufferedInputStream(new FileInputStream(spoolFile.toFile()), BUFFER_SIZE)) {
+      for (SpooledEntry entry : spooledEntries) {
+        zip.writeEntry(entry.name, entry.method, entry.crc, entry.size, entry.compressedSize, content);
+      }
+    } finally {
+      spooledEntries.clear();
+      deleteSpoolFile();
+    }
+  }
+
+  private void deleteSpoolFile() throws IOException {
+    if (spoolFile != null) {
+      Files.deleteIfExists(spoolFile);
+      spoolFile = null;
+    }
+  }
+
+  /**
+   * Close the ZIP to make it available for use. Any streamed entry must be closed before.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      if (streamedEntry != null) {
+        throw new IllegalStateException("Streamed entry is still open");
+      }
+      zip.close();
+    } finally {
+      if (spool != null) {
+        spool.close();
+        spool = null;
+      }
+      deleteSpoolFile();
+    }
+  }
+
+
+  /**
+   * Content of the streamed entry. Closing it appends the spooled entries to the ZIP.
+   */
+  private class StreamedEntry extends FilterOutputStream {
+
+    private final HashAssembler hashAssembler;
+    private boolean closed;
+
+    StreamedEntry(OutputStream entry, HashAssembler hashAssembler) {
+      super(entry);
+      this.hashAssembler = hashAssembler;
+    }
+
+    @Override
+    public void write(int value) throws IOException {
+      write(new byte[] { (byte)value }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] buffer, int start, int length) throws IOException {
+      out.write(buffer, start, length);
+      if (start == 0) {
+        hashAssembler.add(buffer, length);
+      } else {
+        byte[] data = new byte[length];
+        System.arraycopy(buffer, start, data, 0, length);
+        hashAssembler.add(data, length);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      out.close();
+      endStreamedEntry();
+    }
+
+  }
+
+
+  /**
+   * Compressed entry waiting to be written to the ZIP.
+   */
+  private static class SpooledEntry {
+
+    private final String name;
+    private final int method;
+    private final long crc;
+    private final long size;
+    private final long compressedSize;
+
+    SpooledEntry(String name, int method, long crc, long size, long compressedSize) {
+      this.name = name;
+      this.method = method;
+      this.crc = crc;
+      this.size = size;
+      this.compressedSize = compressedSize;
+    }
+
+  }
+
+}
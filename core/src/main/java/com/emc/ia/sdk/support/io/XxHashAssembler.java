@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collection;
+import java.util.Collections;
+
+
+/**
+ * Assemble a 64-bit <a href="http://cyan4973.github.io/xxHash/">xxHash</a>. This is a fast, non-cryptographic hash
+ * that's suitable for quickly telling different data apart, but not for proving that data is the same or hasn't been
+ * tampered with.
+ */
+public class XxHashAssembler extends NoHashAssembler {
+
+  /**
+   * The name of the hash function.
+   */
+  public static final String HASH_FUNCTION = "XXH64";
+  private static final long PRIME1 = 0x9E3779B185EBCA87L;
+  private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+  private static final long PRIME3 = 0x165667B19E3779F9L;
+  private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+  private static final long PRIME5 = 0x27D4EB2F165667C5L;
+  private static final int STRIPE_SIZE = 32;
+
+  private final ByteBuffer stripe = ByteBuffer.allocate(STRIPE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+  private long acc1;
+  private long acc2;
+  private long acc3;
+  private long acc4;
+
+  /**
+   * Create an instance.
+   */
+  public XxHashAssembler() {
+    initialize();
+  }
+
+  @Override
+  public void initialize() {
+    super.initialize();
+    stripe.clear();
+    acc1 = PRIME1 + PRIME2;
+    acc2 = PRIME2;
+    acc3 = 0;
+    acc4 = -PRIME1;
+  }
+
+  @Override
+  public void add(byte[] buffer, int length) {
+    add(ByteBuffer.wrap(buffer, 0, length));
+  }
+
+  @Override
+  public void add(ByteBuffer buffer) {
+    super.add(buffer.duplicate());
+    ByteBuffer data = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    buffer.position(buffer.limit());
+    if (stripe.position() > 0) {
+      while (stripe.hasRemaining() && data.hasRemaining()) {
+        stripe.put(data.get());
+      }
+      if (stripe.hasRemaining()) {
+        return;
+      }
+      stripe.flip();
+      consumeStripe(stripe);
+      stripe.clear();
+    }
+    while (data.remaining() >= STRIPE_SIZE) {
+      consumeStripe(data);
+    }
+    stripe.put(data);
+  }
+
+  private void consumeStripe(ByteBuffer data) {
+    acc1 = round(acc1, data.getLong());
+    acc2 = round(acc2, data.getLong());
+    acc3 = round(acc3, data.getLong());
+    acc4 = round(acc4, data.getLong());
+  }
+
+  private static long round(long acc, long lane) {
+    return Long.rotateLeft(acc + lane * PRIME2, 31) * PRIME1;
+  }
+
+  private static long merge(long hash, long acc) {
+    return (hash ^ round(0, acc)) * PRIME1 + PRIME4;
+  }
+
+  /**
+   * Return the hash of the data added since the last {@linkplain #initialize() initialization}.
+   * @return The hash of the data
+   */
+  public long getHash() {
+    long result;
+    if (numBytesHashed() >= STRIPE_SIZE) {
+      result = Long.rotateLeft(acc1, 1) + Long.rotateLeft(acc2, 7) + Long.rotateLeft(acc3, 12)
+          + Long.rotateLeft(acc4, 18);
+      result = merge(result, acc1);
+      result = merge(result, acc2);
+      result = merge(result, acc3);
+      result = merge(result, acc4);
+    } else {
+      result = PRIME5;
+    }
+    result += numBytesHashed();
+    ByteBuffer tail = stripe.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    tail.flip();
+    while (tail.remaining() >= 8) {
+      result ^= round(0, tail.getLong());
+      result = Long.rotateLeft(result, 27) * PRIME1 + PRIME4;
+    }
+    if (tail.remaining() >= 4) {
+      result ^= (tail.getInt() & 0xFFFFFFFFL) * PRIME1;
+      result = Long.rotateLeft(result, 23) * PRIME2 + PRIME3;
+    }
+    while (tail.hasRemaining()) {
+      result ^= (tail.get() & 0xFF) * PRIME5;
+      result = Long.rotateLeft(result, 11) * PRIME1;
+    }
+    result ^= result >>> 33;
+    result *= PRIME2;
+    result ^= result >>> 29;
+    result *= PRIME3;
+    result ^= result >>> 32;
+    return result;
+  }
+
+  @Override
+  public Collection<EncodedHash> get() {
+    byte[] digest = ByteBuffer.allocate(8).putLong(getHash()).array();
+    return Collections.singletonList(new EncodedHash(HASH_FUNCTION, Encoding.HEX, digest));
+  }
+
+}
@@ -37,4 +37,33 @@ public interface ZipAssembler extends Closeable {
    */
   Collection<EncodedHash> addEntry(String name, InputStream content, HashAssembler hashAssembler) throws IOException;
 
+  /**
+   * Add an entry of a known media type to the ZIP. Implementations may use the media type to decide how to compress the
+   * entry. The default implementation ignores the media type.
+   * @param name The name of the entry to add
+   * @param content The content of the entry to add
+   * @param hashAssembler The hasher to will calculate the hash of the entry's content
+   * @param mediaType The media type of the entry's content, or <code>null</code> if not known
+   * @return Any calculated hashes
+   * @throws IOException When an I/O error occurs
+   */
+  default Collection<EncodedHash> addEntry(String name, InputStream content, HashAssembler hashAssembler,
+      String mediaType) throws IOException {
+    return addEntry(name, content, hashAssembler);
+  }
+
+  /**
+   * Start an entry whose content is written to the returned stream rather than read from an input stream. The entry
+   * ends when the returned stream is closed, after which the calculated hashes are available from the given hash
+   * assembler. The default implementation doesn't support this.
+   * @param name The name of the entry to add
+   * @param hashAssembler The hasher that will calculate the hash of the entry's content
+   * @return The stream to write the entry's content to
+   * @throws IOException When an I/O error occurs
+   * @see StreamingZipAssembler
+   */
+  default OutputStream beginEntry(String name, HashAssembler hashAssembler) throws IOException {
+    throw new UnsupportedOperationException(getClass().getSimpleName() + " doesn't support streaming entries");
+  }
+
 }
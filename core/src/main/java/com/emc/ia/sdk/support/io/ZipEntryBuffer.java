@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+
+/**
+ * {@linkplain DataBuffer} that writes its data directly into a {@linkplain ZipAssembler#beginEntry(String, HashAssembler)
+ * streamed} ZIP entry. The data can only be written once and can't be read back.
+ */
+public class ZipEntryBuffer implements DataBuffer, Closeable {
+
+  private final ZipAssembler zip;
+  private final String name;
+  private final HashAssembler hashAssembler;
+  private OutputStream entry;
+  private long length;
+
+  /**
+   * Create an instance.
+   * @param zip The ZIP to write the data to
+   * @param name The name of the ZIP entry
+   * @param hashAssembler The hasher that will calculate the hash of the entry's content
+   */
+  public ZipEntryBuffer(ZipAssembler zip, String name, HashAssembler hashAssembler) {
+    this.zip = zip;
+    this.name = name;
+    this.hashAssembler = hashAssembler;
+  }
+
+  @Override
+  public OutputStream openForWriting() throws IOException {
+    if (entry != null) {
+      throw new IllegalStateException("ZIP entry " + name + " can only be written once");
+    }
+    entry = zip.beginEntry(name, hashAssembler);
+    return new FilterOutputStream(entry) {
+      @Override
+      public void write(int value) throws IOException {
+        out.write(value);
+        length++;
+      }
+
+      @Override
+      public void write(byte[] buffer, int start, int count) throws IOException {
+        out.write(buffer, start, count);
+        length += count;
+      }
+    };
+  }
+
+  @Override
+  public InputStream openForReading() throws IOException {
+    throw new IOException("Can't read back ZIP entry " + name);
+  }
+
+  @Override
+  public long length() {
+    return length;
+  }
+
+  /**
+   * End the ZIP entry, if that didn't already happen by closing the stream returned by {@linkplain #openForWriting()}.
+   */
+  @Override
+  public void close() throws IOException {
+    if (entry != null) {
+      entry.close();
+    }
+  }
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+
+
+/**
+ * The first bytes of a ZIP entry's content, used by a {@linkplain CompressionPolicy} to decide how to compress the entry.
+ * Taking the sample doesn't consume any content: {@linkplain #getContent()} returns the complete content.
+ */
+final class ZipEntrySample {
+
+  private static final int SIZE = 4096;
+
+  private final byte[] bytes = new byte[SIZE];
+  private final int length;
+  private final InputStream content;
+
+  /**
+   * Take a sample of the given content.
+   * @param stream The content to sample
+   * @throws IOException When an I/O error occurs
+   */
+  ZipEntrySample(InputStream stream) throws IOException {
+    int numRead = 0;
+    int lastRead = 0;
+    while (numRead < SIZE && lastRead >= 0) {
+      lastRead = stream.read(bytes, numRead, SIZE - numRead);
+      if (lastRead > 0) {
+        numRead += lastRead;
+      }
+    }
+    this.length = numRead;
+    this.content = new SequenceInputStream(new ByteArrayInputStream(bytes, 0, length), stream);
+  }
+
+  /**
+   * Decide how to compress the entry.
+   * @param policy The policy that makes the decision
+   * @param name The name of the entry
+   * @param mediaType The media type of the entry, or <code>null</code> if not known
+   * @return How to compress the entry
+   */
+  Compression compressionFor(CompressionPolicy policy, String name, String mediaType) {
+    return policy.compressionFor(name, mediaType, bytes, length);
+  }
+
+  /**
+   * Return the complete content of the entry, including the sample.
+   * @return The content of the entry
+   */
+  InputStream getContent() {
+    return content;
+  }
+
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.xml;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+
+/**
+ * Serializes a DOM node to a {@linkplain Writer}, either pretty-printed or compact. Output is collected in a small buffer
+ * that is handed to the writer in large chunks, since many writers synchronize or encode on every call.
+ */
+class NodeWriter { // NOPMD CyclomaticComplexity
+
+  private static final String INDENT = "  ";
+  private static final String XSI_NAMESPACE = "http://www.w3.org/2001/XMLSchema-instance";
+  private static final String XML_NAMESPACE = "http://www.w3.org/XML/1998/namespace";
+  private static final int NUM_PREDEFINED_PREFIXES = 2;
+  private static final int INITIAL_BUFFER_SIZE = 512;
+  private static final int MAX_BUFFER_SIZE = 8192;
+
+  private final Writer writer;
+  private final XmlUtil.Options options;
+  private Map<String, String> prefixesByNamespace;
+  private char[] buffer = new char[INITIAL_BUFFER_SIZE];
+  private int length;
+
+  NodeWriter(Writer writer, XmlUtil.Options options) {
+    this.writer = writer;
+    this.options = options;
+  }
+
+  void write(Node node, int level) throws IOException { // NOPMD CyclomaticComplexity
+    switch (node.getNodeType()) {
+      case Node.ELEMENT_NODE:
+        writeElement((Element)node, level);
+        break;
+      case Node.ATTRIBUTE_NODE:
+        writeAttribute(node);
+        break;
+      case Node.TEXT_NODE:
+        append(valueOf(node));
+        break;
+      case Node.CDATA_SECTION_NODE:
+        writeIndentation(level);
+        append("<![CDATA[");
+        append(valueOf(node));
+        append("]]>");
+        writeNewLine();
+        break;
+      case Node.ENTITY_NODE:
+        throw new IllegalStateException("Unhandled node of type Entity");
+      case Node.PROCESSING_INSTRUCTION_NODE:
+        writeIndentation(level);
+        append("<?");
+        append(node.getNodeName());
+        append(' ');
+        append(valueOf(node));
+        append("?>");
+        writeNewLine();
+        break;
+      case Node.COMMENT_NODE:
+        writeIndentation(level);
+        append("<!-- ");
+        append(valueOf(node));
+        append(" -->");
+        writeNewLine();
+        break;
+      case Node.DOCUMENT_NODE:
+        append(XmlUtil.XML_DECLARATION);
+        writeChildren(node, level);
+        break;
+      default:
+        throw new UnsupportedOperationException("Unhandled node type: " + node.getNodeType());
+    }
+  }
+
+  void flush() throws IOException {
+    if (length > 0) {
+      writer.write(buffer, 0, length);
+      length = 0;
+    }
+  }
+
+  private void append(char c) throws IOException {
+    if (length == buffer.length) {
+      makeRoom(1);
+    }
+    buffer[length++] = c;
+  }
+
+  private void append(String text) throws IOException {
+    append(text, 0, text.length());
+  }
+
+  private void append(String text, int offset, int count) throws IOException {
+    if (length + count > buffer.length && !makeRoom(count)) {
+      writer.write(text, offset, count);
+      return;
+    }
+    text.getChars(offset, offset + count, buffer, length);
+    length += count;
+  }
+
+  private boolean makeRoom(int count) throws IOException {
+    int size = buffer.length;
+    while (size < MAX_BUFFER_SIZE && length + count > size) {
+      size *= 2;
+    }
+    if (length + count <= size) {
+      buffer = Arrays.copyOf(buffer, size);
+      return true;
+    }
+    flush();
+    return count <= buffer.length;
+  }
+
+  private void writeIndentation(int level) throws IOException {
+    if (options.isPretty()) {
+      append(options.getIndentation());
+      for (int i = 0; i < level; i++) {
+        append(INDENT);
+      }
+    }
+  }
+
+  private void writeNewLine() throws IOException {
+    if (options.isPretty()) {
+      append('\n');
+    }
+  }
+
+  private void writeElement(Element element, int level) throws IOException {
+    writeIndentation(level);
+    openElement(element);
+    NamedNodeMap attributes = element.getAttributes();
+    for (int i = 0; i < attributes.getLength(); i++) {
+      writeAttribute(attributes.item(i));
+    }
+    if (element.getFirstChild() == null) {
+      append("/>");
+    } else if (startsWithNonWhitespaceText(element)) {
+      append('>');
+      writeChildren(element, level + 1);
+      closeElement(element);
+    } else {
+      append('>');
+      writeNewLine();
+      writeChildren(element, level + 1);
+      writeIndentation(level);
+      closeElement(element);
+    }
+    writeNewLine();
+  }
+
+  private void openElement(Element element) throws IOException {
+    String tag = element.getTagName();
+    append('<');
+    append(tag);
+    if (hasDifferentNamespaceThanParent(element)) {
+      int index = tag.indexOf(':');
+      if (index < 0) {
+        append(" xmlns=\"");
+      } else {
+        append(" xmlns:");
+        append(tag, 0, index);
+        append("=\"");
+      }
+      append(element.getNamespaceURI());
+      append('"');
+    }
+  }
+
+  private static boolean hasDifferentNamespaceThanParent(Node node) {
+    if (node.getNamespaceURI() == null || isNamespaceNode(node)) {
+      return false;
+    }
+    Node parent;
+    if (node.getNodeType() == Node.ATTRIBUTE_NODE) {
+      parent = ((Attr)node).getOwnerElement();
+    } else {
+      parent = node.getParentNode();
+    }
+    if (parent == null) {
+      return true;
+    }
+    return !node.getNamespaceURI().equals(parent.getNamespaceURI());
+  }
+
+  private static boolean isNamespaceNode(Node node) {
+    return node.getNodeType() == Node.ATTRIBUTE_NODE && node.getNodeName().startsWith("xmlns")
+        && "http://www.w3.org/2000/xmlns/".equals(node.getNamespaceURI());
+  }
+
+  private static boolean startsWithNonWhitespaceText(Node node) {
+    for (Node child = node.getFirstChild(); child != null && child.getNodeType() == Node.TEXT_NODE;
+        child = child.getNextSibling()) {
+      String text = child.getNodeValue();
+      for (int i = 0; i < text.length(); i++) {
+        if (text.charAt(i) > ' ') {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private void writeChildren(Node node, int level) throws IOException {
+    for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+      if (child.getNodeType() != Node.ATTRIBUTE_NODE) {
+        write(child, level);
+      }
+    }
+  }
+
+  private void closeElement(Element element) throws IOException {
+    append("</");
+    append(element.getTagName());
+    append('>');
+  }
+
+  private void writeAttribute(Node node) throws IOException {
+    if (isNamespaceNode(node)) {
+      return;
+    }
+    append(' ');
+    if (hasDifferentNamespaceThanParent(node)) {
+      String uri = node.getNamespaceURI();
+      String prefix = getPrefix(uri);
+      if (!"xml".equals(prefix)) {
+        append("xmlns:");
+        append(prefix);
+        append("=\"");
+        append(uri);
+        append("\" ");
+      }
+      append(prefix);
+      append(':');
+    }
+    append(getAttributeName(node));
+    append("=\"");
+    append(valueOf(node));
+    append('"');
+  }
+
+  private static String getAttributeName(Node node) {
+    String result = node.getLocalName();
+    if (result == null) {
+      // No namespace support while parsing
+      result = node.getNodeName();
+    }
+    return result;
+  }
+
+  private String getPrefix(String uri) {
+    if (XSI_NAMESPACE.equals(uri)) {
+      return "xsi";
+    }
+    if (XML_NAMESPACE.equals(uri)) {
+      return "xml";
+    }
+    if (prefixesByNamespace == null) {
+      prefixesByNamespace = new HashMap<>();
+    }
+    String result = prefixesByNamespace.get(uri);
+    if (result == null) {
+      result = "ns" + (NUM_PREDEFINED_PREFIXES + prefixesByNamespace.size() + 1);
+      prefixesByNamespace.put(uri, result);
+    }
+    return result;
+  }
+
+  private static String valueOf(Node node) {
+    return node.getNodeValue().trim();
+  }
+
+}
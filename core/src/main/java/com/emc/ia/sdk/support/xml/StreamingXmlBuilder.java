@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.xml;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import com.emc.ia.sdk.support.io.RuntimeIoException;
+
+
+/**
+ * Fluent API for writing XML, like {@linkplain XmlBuilder}, but writing straight to a {@linkplain Writer} instead of
+ * building a DOM. Example usage:
+ * <pre>new StreamingXmlBuilder(writer)
+    .namespace("http://company.com/ns/example")
+    .element("parent")
+        .attribute("name", "value")
+        .element("child")
+            .element("grandChild")
+            .end()
+        .end()
+        .element("child", "text")
+    .end();
+ * </pre>
+ * The XML is pretty-printed the same way as {@linkplain XmlUtil#toString(org.w3c.dom.Node, String)} does, except that
+ * attributes are written in the order in which they are added, and that attribute values are escaped. Text is escaped
+ * by both, but {@linkplain XmlBuilder} doesn't escape attribute values and XmlUtil writes them as is, so the output only
+ * differs when attribute values contain characters like <code>&lt;</code>, <code>&amp;</code> or quotes. Escaping them
+ * keeps the streamed XML well-formed. Since nothing is kept in memory except for the names of
+ * the open elements and a reusable buffer, writing XML this way hardly allocates any memory. The buffer is written to
+ * the underlying writer whenever a top-level element ends, so that the writer sees one call per element rather than
+ * one per tag or piece of text.
+ * <p>
+ * A builder may be reused to write any number of top-level elements to the same writer.
+ */
+public class StreamingXmlBuilder {
+
+  private static final String INDENT = "  ";
+  private static final int INITIAL_DEPTH = 16;
+  private static final int BUFFER_SIZE = 8192;
+
+  private final Writer writer;
+  private final String indentation;
+  private final Map<String, String> prefixesByNamespace = new HashMap<>();
+  private String namespaceUri;
+  private String[] names = new String[INITIAL_DEPTH];
+  private String[] namespaces = new String[INITIAL_DEPTH];
+  private boolean[] textFirst = new boolean[INITIAL_DEPTH];
+  private int depth;
+  private boolean startTagOpen;
+  private char[] buffer = new char[BUFFER_SIZE];
+  private int length;
+
+  /**
+   * Create an instance that writes top-level elements without indentation.
+   * @param writer The writer to write the XML to
+   */
+  public StreamingXmlBuilder(Writer writer) {
+    this(writer, "");
+  }
+
+  /**
+   * Create an instance.
+   * @param writer The writer to write the XML to
+   * @param indentation The indentation of top-level elements
+   */
+  public StreamingXmlBuilder(Writer writer, String indentation) {
+    this.writer = writer;
+    this.indentation = indentation;
+    prefixesByNamespace.put("http://www.w3.org/2001/XMLSchema-instance", "xsi");
+    prefixesByNamespace.put("http://www.w3.org/XML/1998/namespace", "xml");
+  }
+
+  /**
+   * Set the <a href="http://www.w3.org/TR/REC-xml-names/">XML namespace</a> to the provided namespace URI for all
+   * elements added afterwards.
+   * @param uri The namespace URI
+   * @return This builder
+   */
+  public StreamingXmlBuilder namespace(String uri) {
+    namespaceUri = uri;
+    return this;
+  }
+
+  /**
+   * Set the <a href="http://www.w3.org/TR/REC-xml-names/">XML namespace</a> to the provided namespace URI for all
+   * elements added afterwards.
+   * @param uri The namespace URI
+   * @return This builder
+   */
+  public StreamingXmlBuilder namespace(URI uri) {
+    return namespace(uri.toString());
+  }
+
+  /**
+   * Add an element at the current location in the XML document.
+   * @param name The name (tag) of the element to add
+   * @return This builder
+   */
+  public StreamingXmlBuilder element(String name) {
+    if (depth > 0) {
+      startContent(false);
+    }
+    writeIndentation(depth);
+    write('<');
+    write(name);
+    String parentNamespace = depth == 0 ? null : namespaces[depth - 1];
+    if (namespaceUri != null && !namespaceUri.equals(parentNamespace)) {
+      int index = name.indexOf(':');
+      if (index < 0) {
+        write(" xmlns=\"");
+      } else {
+        write(" xmlns:");
+        write(name, 0, index);
+        write("=\"");
+      }
+      write(namespaceUri);
+      write('"');
+    }
+    push(name);
+    startTagOpen = true;
+    return this;
+  }
+
+  private void push(String name) {
+    if (depth == names.length) {
+      names = Arrays.copyOf(names, 2 * depth);
+      namespaces = Arrays.copyOf(namespaces, 2 * depth);
+      textFirst = Arrays.copyOf(textFirst, 2 * depth);
+    }
+    names[depth] = name;
+    namespaces[depth] = namespaceUri;
+    textFirst[depth] = false;
+    depth++;
+  }
+
+  private void startContent(boolean text) {
+    if (startTagOpen) {
+      startTagOpen = false;
+      textFirst[depth - 1] = text;
+      if (text) {
+        write('>');
+      } else {
+        write(">\n");
+      }
+    }
+  }
+
+  private void writeIndentation(int level) {
+    write(indentation);
+    for (int i = 0; i < level; i++) {
+      write(INDENT);
+    }
+  }
+
+  /**
+   * End the current element in the XML document.
+   * @return This builder
+   */
+  public StreamingXmlBuilder end() {
+    if (depth == 0) {
+      throw new IllegalStateException("No element to end");
+    }
+    depth--;
+    if (startTagOpen) {
+      startTagOpen = false;
+      write("/>\n");
+    } else {
+      if (!textFirst[depth]) {
+        writeIndentation(depth);
+      }
+      write("</");
+      write(names[depth]);
+      write(">\n");
+    }
+    names[depth] = null;
+    if (depth == 0) {
+      flush();
+    }
+    return this;
+  }
+
+  /**
+   * Add an attribute to the current element in the XML document.
+   * @param name The name of the attribute
+   * @param value The value of the attribute
+   * @return This builder
+   */
+  public StreamingXmlBuilder attribute(String name, String value) {
+    return attribute(name, value, null);
+  }
+
+  /**
+   * Add an attribute to the current element in the XML document in a given
+   * <a href="http://www.w3.org/TR/REC-xml-names/">XML namespace</a>.
+   * @param name The name of the attribute
+   * @param value The value of the attribute
+   * @param namespace The URI of the XML namespace in which to add the attribute
+   * @return This builder
+   */
+  public StreamingXmlBuilder attribute(String name, String value, String namespace) {
+    if (!startTagOpen) {
+      throw new IllegalStateException("Can only add attributes to an element before adding its content");
+    }
+    write(' ');
+    if (namespace != null && !namespace.equals(namespaces[depth - 1])) {
+      String prefix = prefixFor(namespace);
+      if (!"xml".equals(prefix)) {
+        write("xmlns:");
+        write(prefix);
+        write("=\"");
+        write(namespace);
+        write("\" ");
+      }
+      write(prefix);
+      write(':');
+    }
+    write(name);
+    write("=\"");
+    if (value != null) {
+      writeEscaped(value, 0, value.length());
+    }
+    write('"');
+    return this;
+  }
+
+  private String prefixFor(String namespace) {
+    String result = prefixesByNamespace.get(namespace);
+    if (result == null) {
+      result = "ns" + (prefixesByNamespace.size() + 1);
+      prefixesByNamespace.put(namespace, result);
+    }
+    return result;
+  }
+
+  /**
+   * Add some text to the current element in the XML document. Leading and trailing whitespace is removed.
+   * @param text The text to add
+   * @return This builder
+   */
+  public StreamingXmlBuilder text(String text) {
+    if (text == null) {
+      return this;
+    }
+    if (depth == 0) {
+      throw new IllegalStateException("Can only add text to an element");
+    }
+    int start = 0;
+    int end = text.length();
+    while (start < end && text.charAt(start) <= ' ') {
+      start++;
+    }
+    while (end > start && text.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    startContent(start < end);
+    writeEscaped(text, start, end);
+    return this;
+  }
+
+  private void writeEscaped(String text, int start, int end) {
+    int unescaped = start;
+    for (int i = start; i < end; i++) {
+      String replacement = escape(text.charAt(i));
+      if (replacement != null) {
+        write(text, unescaped, i - unescaped);
+        write(replacement);
+        unescaped = i + 1;
+      }
+    }
+    write(text, unescaped, end - unescaped);
+  }
+
+  private static String escape(char c) {
+    switch (c) {
+      case '&':
+        return "&amp;";
+      case '<':
+        return "&lt;";
+      case '>':
+        return "&gt;";
+      case '\'':
+        return "&apos;";
+      case '"':
+        return "&quot;";
+      default:
+        return null;
+    }
+  }
+
+  private void write(char c) {
+    if (length == buffer.length) {
+      flush();
+    }
+    buffer[length++] = c;
+  }
+
+  private void write(String text) {
+    write(text, 0, text.length());
+  }
+
+  private void write(String text, int offset, int count) {
+    if (length + count > buffer.length) {
+      flush();
+      if (count > buffer.length) {
+        buffer = new char[Math.max(count, 2 * buffer.length)];
+      }
+    }
+    text.getChars(offset, offset + count, buffer, length);
+    length += count;
+  }
+
+  /**
+   * Write any buffered XML to the underlying writer. This happens automatically whenever a top-level element ends.
+   */
+  public void flush() {
+    if (length > 0) {
+      try {
+        writer.write(buffer, 0, length);
+      } catch (IOException e) {
+        throw new RuntimeIoException(e);
+      }
+      length = 0;
+    }
+  }
+
+  /**
+   * Add an element containing the given text to the current location in the XML document. The element is automatically
+   * closed. Note that this is a shorthand notation for
+   * <pre>element(name)
+   *     .text(text)
+   * .end()</pre>
+   * @param name The name/tag of the element to add
+   * @param text The text to add to the element
+   * @return This builder
+   */
+  public StreamingXmlBuilder element(String name, String text) {
+    return text == null ? this : element(name).text(text).end();
+  }
+
+  /**
+   * Add elements for a collection.
+   * @param <T> The type of items in the collection
+   * @param collectionName The name/tag for the collection
+   * @param itemName The name/tag for an item in the collection
+   * @param items The collection
+   * @param itemBuilder A builder for an item in the collection
+   * @return This builder
+   */
+  public <T> StreamingXmlBuilder elements(String collectionName, String itemName, Iterable<T> items,
+      BiConsumer<T, StreamingXmlBuilder> itemBuilder) {
+    return elements(collectionName, itemName, items.iterator(), itemBuilder);
+  }
+
+  /**
+   * Add elements for a collection.
+   * @param <T> The type of items in the collection
+   * @param collectionName The name/tag for the collection
+   * @param itemName The name/tag for an item in the collection
+   * @param items The collection
+   * @param itemBuilder A builder for an item in the collection
+   * @return This builder
+   */
+  public <T> StreamingXmlBuilder elements(String collectionName, String itemName, Iterator<T> items,
+      BiConsumer<T, StreamingXmlBuilder> itemBuilder) {
+    if (!items.hasNext()) {
+      return this;
+    }
+    element(collectionName);
+    while (items.hasNext()) {
+      element(itemName);
+      itemBuilder.accept(items.next(), this);
+      end();
+    }
+    end();
+    return this;
+  }
+
+  /**
+   * Return the number of elements that are started, but not yet ended.
+   * @return The number of open elements
+   */
+  public int getDepth() {
+    return depth;
+  }
+
+}
@@ -3,11 +3,14 @@
  */
 package com.emc.ia.sdk.support.xml;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Stream;
@@ -19,19 +22,22 @@ import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 import javax.xml.validation.Validator;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.IOUtils;
-import org.w3c.dom.Attr;
+import org.apache.commons.io.output.StringBuilderWriter;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
-import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.xml.sax.ErrorHandler;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
+import com.emc.ia.sdk.support.io.RuntimeIoException;
+
 
 /**
  * Generic XML processing functions.
@@ -48,6 +54,16 @@ public final class XmlUtil { // NOPMD CyclomaticComplexity, StdCyclomaticComplex
     // Utility class
   }
 
+  private static final int MAX_COMPILED_SCHEMAS = 64;
+  private static final Map<String, Schema> COMPILED_SCHEMAS = Collections.synchronizedMap(
+      new LinkedHashMap<String, Schema>(16, 0.75f, true) {
+        private static final long serialVersionUID = -2093744157395712851L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Schema> eldest) {
+          return size() > MAX_COMPILED_SCHEMAS;
+        }
+      });
   private static final DocumentBuilderFactory VALIDATING_DOCUMENT_BUILDER_FACTORY = newSecureDocumentBuilderFactory();
   private static final ThreadLocal<DocumentBuilder> VALIDATING_DOCUMENT_BUILDER = new ThreadLocal<DocumentBuilder>() {
     @Override
@@ -59,7 +75,6 @@ public final class XmlUtil { // NOPMD CyclomaticComplexity, StdCyclomaticComplex
       }
     }
   };
-  private static final String INDENT = "  ";
 
   /**
    * Return a new factory for building XML documents that is configured to operate securely. The factory also supports
@@ -108,199 +123,35 @@ public final class XmlUtil { // NOPMD CyclomaticComplexity, StdCyclomaticComplex
     return toString(node, "");
   }
 
+  /**
+   * Convert a given node to a pretty-printed string.
+   * @param node The node to convert
+   * @param indentation The indentation of the node
+   * @return The pretty-printed string
+   */
   public static String toString(Node node, String indentation) {
-    StringBuilder result = new StringBuilder();
-    if (node != null) {
-      Map<String, String> namespaces = new HashMap<>();
-      namespaces.put("http://www.w3.org/2001/XMLSchema-instance", "xsi");
-      namespaces.put("http://www.w3.org/XML/1998/namespace", "xml");
-      append(node, indentation, namespaces, result);
-    }
+    StringBuilderWriter result = new StringBuilderWriter();
+    write(node, result, Options.pretty(indentation));
     return result.toString();
   }
 
-  private static void append(Node node, String indentation, Map<String, String> namespaces, // NOPMD CyclomaticComplexity
-      StringBuilder builder) {
-    switch (node.getNodeType()) {
-      case Node.ELEMENT_NODE:
-        appendElement(node, indentation, namespaces, builder);
-        break;
-      case Node.ATTRIBUTE_NODE:
-        appendAttribute(node, namespaces, builder);
-        break;
-      case Node.TEXT_NODE:
-        appendText(node, builder);
-        break;
-      case Node.CDATA_SECTION_NODE:
-        appendCdataSection(node, indentation, builder);
-        break;
-      case Node.ENTITY_NODE:
-        throw new IllegalStateException("Unhandled node of type Entity");
-      case Node.PROCESSING_INSTRUCTION_NODE:
-        appendProcessingInstruction(node, indentation, builder);
-        break;
-      case Node.COMMENT_NODE:
-        appendComment(node, indentation, builder);
-        break;
-      case Node.DOCUMENT_NODE:
-        appendDocument(node, indentation, namespaces, builder);
-        break;
-      default:
-        throw new UnsupportedOperationException("Unhandled node type: " + node.getNodeType());
-    }
-  }
-
-  private static void appendDocument(Node node, String indentation, Map<String, String> namespaces,
-      StringBuilder builder) {
-    builder.append(XML_DECLARATION);
-    for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
-      append(child, indentation, namespaces, builder);
-    }
-  }
-
-  private static void appendElement(Node node, String indentation, Map<String, String> namespaces,
-      StringBuilder builder) {
-    Element element = (Element)node;
-    openElement(indentation, builder, element);
-    appendAttributes(indentation, element, namespaces, builder);
-    if (node.getFirstChild() == null) {
-      builder.append("/>\n");
-    } else if (startsWithNonWhitespaceText(node)) {
-      builder.append('>');
-      appendChildren(node, indentation, namespaces, builder);
-      closeElement(builder, element);
-    } else {
-      builder.append(">\n");
-      appendChildren(node, indentation, namespaces, builder);
-      builder.append(indentation);
-      closeElement(builder, element);
-    }
-  }
-
-  private static StringBuilder openElement(String indentation, StringBuilder builder, Element element) {
-    String tag = element.getTagName();
-    builder.append(indentation).append('<');
-    builder.append(tag);
-    if (hasDifferentNamespaceThanParent(element)) {
-      int index = tag.indexOf(':');
-      if (index < 0) {
-        builder.append(" xmlns=\"").append(element.getNamespaceURI()).append('"');
-      } else {
-        builder.append(" xmlns:").append(tag.substring(0, index)).append("=\"").append(element.getNamespaceURI())
-            .append('"');
-      }
-    }
-    return builder;
-  }
-
-  private static boolean hasDifferentNamespaceThanParent(Node node) {
-    if (node.getNamespaceURI() == null || isNamespaceNode(node)) {
-      return false;
-    }
-    Node parent;
-    if (node.getNodeType() == Node.ATTRIBUTE_NODE) {
-      parent = ((Attr)node).getOwnerElement();
-    } else {
-      parent = node.getParentNode();
-    }
-    if (parent == null) {
-      return true;
-    }
-    return !node.getNamespaceURI().equals(parent.getNamespaceURI());
-  }
-
-  private static boolean isNamespaceNode(Node node) {
-    return node.getNodeType() == Node.ATTRIBUTE_NODE && node.getNodeName().startsWith("xmlns")
-        && "http://www.w3.org/2000/xmlns/".equals(node.getNamespaceURI());
-  }
-
-  private static void appendAttributes(String indentation, Element element, Map<String, String> namespaces,
-      StringBuilder builder) {
-    NamedNodeMap attributes = element.getAttributes();
-    for (int i = 0; i < attributes.getLength(); i++) {
-      append(attributes.item(i), indentation + INDENT, namespaces, builder);
-    }
-  }
-
-  private static boolean startsWithNonWhitespaceText(Node node) {
-    StringBuilder text = new StringBuilder();
-    Node child = node.getFirstChild();
-    while (child != null) {
-      if (child.getNodeType() != Node.TEXT_NODE) {
-        break;
-      }
-      text.append(child.getNodeValue());
-      child = child.getNextSibling();
-    }
-    return text.length() > 0 && !text.toString().trim().isEmpty();
-  }
-
-  private static void appendChildren(Node node, String indentation, Map<String, String> namespaces,
-      StringBuilder builder) {
-    for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
-      if (child.getNodeType() != Node.ATTRIBUTE_NODE) {
-        append(child, indentation + INDENT, namespaces, builder);
-      }
-    }
-  }
-
-  private static StringBuilder closeElement(StringBuilder builder, Element element) {
-    return builder.append("</").append(element.getTagName()).append(">\n");
-  }
-
-  private static void appendAttribute(Node node, Map<String, String> namespaces, StringBuilder builder) {
-    if (isNamespaceNode(node)) {
+  /**
+   * Write a given node to a writer, without building an intermediate string.
+   * @param node The node to write
+   * @param writer The writer to write the node to
+   * @param options How to format the XML
+   */
+  public static void write(Node node, Writer writer, Options options) {
+    if (node == null) {
       return;
     }
-    builder.append(' ');
-    if (hasDifferentNamespaceThanParent(node)) {
-      String uri = node.getNamespaceURI();
-      String prefix = getPrefix(uri, namespaces);
-      if (!"xml".equals(prefix)) {
-        builder.append("xmlns:").append(prefix).append("=\"").append(uri).append("\" ");
-      }
-      builder.append(prefix).append(':');
-    }
-    builder.append(getAttributeName(node)).append("=\"").append(valueOf(node)).append('\"');
-  }
-
-  private static String getAttributeName(Node node) {
-    String result = node.getLocalName();
-    if (result == null) {
-      // No namespace support while parsing
-      result = node.getNodeName();
-    }
-    return result;
-  }
-
-  private static String getPrefix(String uri, Map<String, String> namespaces) {
-    String result = namespaces.get(uri);
-    if (result == null) {
-      result = "ns" + (namespaces.size() + 1);
-      namespaces.put(uri, result);
+    try {
+      NodeWriter nodeWriter = new NodeWriter(writer, Objects.requireNonNull(options));
+      nodeWriter.write(node, 0);
+      nodeWriter.flush();
+    } catch (IOException e) {
+      throw new RuntimeIoException(e);
     }
-    return result;
-  }
-
-  private static void appendText(Node node, StringBuilder builder) {
-    builder.append(valueOf(node));
-  }
-
-  private static String valueOf(Node node) {
-    return node.getNodeValue().trim();
-  }
-
-  private static void appendComment(Node node, String indentation, StringBuilder builder) {
-    builder.append(indentation).append("<!-- ").append(valueOf(node)).append(" -->\n");
-  }
-
-  private static void appendProcessingInstruction(Node node, String indentation, StringBuilder builder) {
-    builder.append(indentation).append("<?").append(node.getNodeName()).append(' ')
-        .append(valueOf(node)).append("?>\n");
-  }
-
-  private static void appendCdataSection(Node node, String indentation, StringBuilder builder) {
-    builder.append(indentation).append("<![CDATA[").append(valueOf(node)).append("]]>\n");
   }
 
   /**
@@ -414,16 +265,55 @@ public final class XmlUtil { // NOPMD CyclomaticComplexity, StdCyclomaticComplex
     }
   }
 
+  /**
+   * Return a new validator for an XML Schema. The validator is not thread-safe.
+   * @param xmlSchema The XML Schema document to validate against
+   * @return A validator for the XML Schema
+   * @see #getXmlSchema(InputStream)
+   */
   public static Validator newXmlSchemaValidator(InputStream xmlSchema) {
+    return getXmlSchema(xmlSchema).newValidator();
+  }
+
+  /**
+   * Return the compiled form of an XML Schema document. Compiling a schema is expensive, so the most recently used
+   * compiled schemas are cached, keyed by a digest of the schema document. Compiled schemas are thread-safe, but the
+   * {@linkplain Schema#newValidator() validators} they create are not.
+   * @param xmlSchema The XML Schema document to compile
+   * @return The compiled XML Schema
+   */
+  public static Schema getXmlSchema(InputStream xmlSchema) {
+    byte[] content;
     try {
-      return SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
-          .newSchema(new StreamSource(xmlSchema))
-          .newValidator();
-    } catch (SAXException | NullPointerException e) { // NOPMD AvoidCatchingNPE - Want better error message
+      content = IOUtils.toByteArray(xmlSchema);
+    } catch (IOException e) {
+      throw new RuntimeIoException(e);
+    } catch (NullPointerException e) { // NOPMD AvoidCatchingNPE - Want better error message
       throw new ValidationException("Invalid XML Schema", e);
     } finally {
       IOUtils.closeQuietly(xmlSchema);
     }
+    String digest = DigestUtils.sha256Hex(content);
+    Schema result = COMPILED_SCHEMAS.get(digest);
+    if (result == null) {
+      // Compile outside the cache's lock, so that a slow compilation doesn't hold up lookups of other schemas. Threads
+      // that miss the same schema at the same time may each compile it, but they all end up using the same one
+      Schema compiled = compileXmlSchema(content);
+      result = COMPILED_SCHEMAS.putIfAbsent(digest, compiled);
+      if (result == null) {
+        result = compiled;
+      }
+    }
+    return result;
+  }
+
+  private static Schema compileXmlSchema(byte[] xmlSchema) {
+    try {
+      return SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+          .newSchema(new StreamSource(new ByteArrayInputStream(xmlSchema)));
+    } catch (SAXException e) {
+      throw new ValidationException("Invalid XML Schema", e);
+    }
   }
 
 
@@ -456,6 +346,67 @@ public final class XmlUtil { // NOPMD CyclomaticComplexity, StdCyclomaticComplex
   }
 
 
+  /**
+   * How to format XML that is {@linkplain XmlUtil#write(Node, Writer, Options) written}.
+   */
+  public static final class Options {
+
+    private static final Options COMPACT = new Options(false, "");
+    private static final Options PRETTY = new Options(true, "");
+
+    private final boolean pretty;
+    private final String indentation;
+
+    private Options(boolean pretty, String indentation) {
+      this.pretty = pretty;
+      this.indentation = indentation;
+    }
+
+    /**
+     * Return options for writing XML without any indentation or line breaks. This saves space at the expense of
+     * readability.
+     * @return Options for writing compact XML
+     */
+    public static Options compact() {
+      return COMPACT;
+    }
+
+    /**
+     * Return options for writing pretty-printed XML.
+     * @return Options for writing pretty-printed XML
+     */
+    public static Options pretty() {
+      return PRETTY;
+    }
+
+    /**
+     * Return options for writing pretty-printed XML.
+     * @param indentation The indentation of the top-level node
+     * @return Options for writing pretty-printed XML
+     */
+    public static Options pretty(String indentation) {
+      return indentation.isEmpty() ? PRETTY : new Options(true, indentation);
+    }
+
+    /**
+     * Return whether to write indentation and line breaks.
+     * @return Whether to pretty-print the XML
+     */
+    public boolean isPretty() {
+      return pretty;
+    }
+
+    /**
+     * Return the indentation of the top-level node when pretty-printing.
+     * @return The indentation of the top-level node
+     */
+    public String getIndentation() {
+      return indentation;
+    }
+
+  }
+
+
   public static String escape(String text) {
     return text
         .replace("&", "&amp;")
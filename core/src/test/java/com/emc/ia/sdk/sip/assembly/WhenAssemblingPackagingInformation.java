@@ -7,20 +7,28 @@ import static org.junit.Assert.assertEquals;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Optional;
 
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
 import com.emc.ia.sdk.support.io.DataBuffer;
+import com.emc.ia.sdk.support.io.EncodedHash;
 import com.emc.ia.sdk.support.io.MemoryBuffer;
 import com.emc.ia.sdk.support.xml.XmlUtil;
 
 
 public class WhenAssemblingPackagingInformation extends XmlTestCase {
 
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
   private final Assembler<PackagingInformation> assembler = new InfoArchivePackagingInformationAssembler();
 
   @Test
@@ -62,6 +70,51 @@ public class WhenAssemblingPackagingInformation extends XmlTestCase {
     }
   }
 
+  @Test
+  public void shouldWriteSameXmlWithPrecompiledTemplate() throws IOException {
+    PackagingInformation packagingInformation = PackagingInformation.builder()
+        .dss()
+            .id(randomString(16))
+            .application("a_" + randomString(16) + " & <more>")
+            .holding(randomString(16))
+            .entity(randomString(16))
+            .producer(" " + randomString(16) + "\n")
+            .schema(randomString(16))
+        .end()
+        .aiuCount(randomInt(20))
+        .encodedHash(new EncodedHash("SHA-256", "base64", randomString(44)))
+        .build();
+
+    String expected = assemble(assembler, packagingInformation);
+    String actual = assemble(new PrecompiledPackagingInformationAssembler(true), packagingInformation);
+
+    assertEquals("Packaging Information", expected, actual);
+  }
+
+  private String assemble(Assembler<PackagingInformation> packagingInformationAssembler,
+      PackagingInformation packagingInformation) throws IOException {
+    DataBuffer buffer = new MemoryBuffer();
+    packagingInformationAssembler.start(buffer);
+    packagingInformationAssembler.add(packagingInformation);
+    packagingInformationAssembler.end();
+    try (InputStream stream = buffer.openForReading()) {
+      return IOUtils.toString(stream, StandardCharsets.UTF_8);
+    }
+  }
+
+  @Test
+  public void shouldOnlyValidatePrecompiledTemplateInVerificationMode() throws IOException {
+    PackagingInformation packagingInformation = PackagingInformation.builder()
+        .dss()
+            .application(randomString(100))
+        .end()
+        .build();
+    assemble(new PrecompiledPackagingInformationAssembler(), packagingInformation);
+
+    thrown.expect(IOException.class);
+    assemble(new PrecompiledPackagingInformationAssembler(true), packagingInformation);
+  }
+
   private Element assertValidPackagingInformation(InputStream stream) throws IOException {
     Document packagingInformation = assertValidXml(stream, "Packaging Information", "sip.xsd");
     return XmlUtil.getFirstChildElement(packagingInformation.getDocumentElement(), "dss");
@@ -9,6 +9,8 @@ import static org.mockito.Mockito.*;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -32,6 +34,9 @@ import com.emc.ia.sdk.support.io.HashAssembler;
 import com.emc.ia.sdk.support.io.HashFunction;
 import com.emc.ia.sdk.support.io.MemoryBuffer;
 import com.emc.ia.sdk.support.io.NoHashAssembler;
+import com.emc.ia.sdk.support.io.ParallelZipAssembler;
+import com.emc.ia.sdk.support.io.SingleHashAssembler;
+import com.emc.ia.sdk.support.io.SpillingDataBuffer;
 import com.emc.ia.sdk.support.xml.XmlUtil;
 
 
@@ -213,4 +218,126 @@ public class WhenAssemblingSips extends XmlTestCase {
     assertEquals(SipMetrics.SIZE_PDI.toString(), pdiSize, metrics.pdiSize());
   }
 
+  @Test
+  public void shouldRecordStageLatencies() throws IOException {
+    HashAssembler noHashAssembler = new NoHashAssembler();
+    Assembler<HashedContents<Object>> pdiAssembler = mock(Assembler.class);
+    SipAssembler<Object> sipAssembler = SipAssembler.forPdiAndContent(somePackagingInformation(), pdiAssembler,
+        ContentAssembler.noDedup(domainObject -> Collections.singletonList(
+            DigitalObject.fromBytes(randomString(8), randomBytes())).iterator(), noHashAssembler));
+    Map<SipAssemblyStage, Long> stagesCompleted = new HashMap<>();
+    Collection<SipMetrics> sipsEnded = new ArrayList<>();
+    sipAssembler.setListener(new SipAssemblyListener() {
+      @Override
+      public void stageCompleted(SipAssemblyStage stage, long nanos) {
+        stagesCompleted.merge(stage, 1L, Long::sum);
+      }
+
+      @Override
+      public void sipEnded(SipMetrics metrics) {
+        sipsEnded.add(metrics);
+      }
+    });
+
+    sipAssembler.start(new MemoryBuffer());
+    sipAssembler.add(new Object());
+    sipAssembler.add(new Object());
+    assertEquals("Live PDI rendering", 2, sipAssembler.getLiveMetrics().latency(SipAssemblyStage.PDI_RENDERING)
+        .getCount());
+    sipAssembler.end();
+
+    SipMetrics metrics = sipAssembler.getMetrics();
+    assertEquals("PDI rendering", 2, metrics.latency(SipAssemblyStage.PDI_RENDERING).getCount());
+    assertEquals("PDI validation", 1, metrics.latency(SipAssemblyStage.PDI_VALIDATION).getCount());
+    assertEquals("Packaging information", 1, metrics.latency(SipAssemblyStage.PACKAGING_INFORMATION).getCount());
+    assertTrue("Content I/O", metrics.latency(SipAssemblyStage.CONTENT_IO).getCount() > 0);
+    assertTrue("Hashing", metrics.latency(SipAssemblyStage.HASHING).getCount() > 0);
+    assertTrue("Deflate", metrics.latency(SipAssemblyStage.DEFLATE).getCount() > 0);
+    for (SipAssemblyStage stage : SipAssemblyStage.values()) {
+      assertEquals("Notified " + stage, metrics.latency(stage).getCount(), stagesCompleted.get(stage).longValue());
+    }
+    assertEquals("# SIPs ended", 1, sipsEnded.size());
+    assertEquals("# AIUs", 2, sipsEnded.iterator().next().numAius());
+  }
+
+  @Test
+  public void shouldRecordZipLatenciesPerEntry() throws IOException {
+    SipMetrics metrics = assembleSipWithContent(true);
+
+    // Two digital objects and the PDI
+    assertEquals("Content I/O", 3, metrics.latency(SipAssemblyStage.CONTENT_IO).getCount());
+    assertEquals("Hashing", 3, metrics.latency(SipAssemblyStage.HASHING).getCount());
+    // Plus closing the ZIP
+    assertEquals("Deflate", 4, metrics.latency(SipAssemblyStage.DEFLATE).getCount());
+  }
+
+  @Test
+  public void shouldNotRecordZipLatenciesWhenDisabled() throws IOException {
+    SipMetrics metrics = assembleSipWithContent(false);
+
+    assertEquals("Content I/O", 0, metrics.latency(SipAssemblyStage.CONTENT_IO).getCount());
+    assertEquals("Hashing", 0, metrics.latency(SipAssemblyStage.HASHING).getCount());
+    assertEquals("Deflate", 0, metrics.latency(SipAssemblyStage.DEFLATE).getCount());
+    assertEquals("PDI rendering", 2, metrics.latency(SipAssemblyStage.PDI_RENDERING).getCount());
+  }
+
+  private SipMetrics assembleSipWithContent(boolean timeZipEntries) throws IOException {
+    Assembler<HashedContents<Object>> pdiAssembler = mock(Assembler.class);
+    SipAssembler<Object> sipAssembler = SipAssembler.forPdiAndContent(somePackagingInformation(), pdiAssembler,
+        ContentAssembler.noDedup(domainObject -> Collections.singletonList(
+            DigitalObject.fromBytes(randomString(8), randomBytes())).iterator(), new SingleHashAssembler()));
+    sipAssembler.setTimeZipEntries(timeZipEntries);
+
+    sipAssembler.start(new MemoryBuffer());
+    sipAssembler.add(new Object());
+    sipAssembler.add(new Object());
+    sipAssembler.end();
+    return sipAssembler.getMetrics();
+  }
+
+  @Test
+  public void shouldReleaseSpilledPdiOnlyAfterZipIsWritten() throws IOException {
+    HashAssembler noHashAssembler = new NoHashAssembler();
+    for (int i = 0; i < 20; i++) {
+      SpillingDataBuffer pdiBuffer = new SpillingDataBuffer(0);
+      SipAssembler<Object> sipAssembler = new SipAssembler<>(
+          new DefaultPackagingInformationFactory(somePackagingInformation()),
+          new InfoArchivePackagingInformationAssembler(), new LinesAssembler(), noHashAssembler, () -> pdiBuffer,
+          new ParallelZipAssembler(2), ContentAssembler.noDedup(domainObject -> Collections.emptyIterator(),
+              noHashAssembler));
+      DataBuffer buffer = new MemoryBuffer();
+
+      sipAssembler.start(buffer);
+      sipAssembler.add("line1");
+      sipAssembler.add("line2");
+      sipAssembler.end();
+
+      assertEquals("Released PDI", 0, pdiBuffer.length());
+      try (ZipInputStream zip = new ZipInputStream(buffer.openForReading())) {
+        assertEquals("PDI entry", "eas_pdi.xml", zip.getNextEntry().getName());
+        assertEquals("PDI", String.format("line1%nline2%n"), IOUtils.toString(zip, "UTF-8"));
+      }
+    }
+  }
+
+
+  private static class LinesAssembler extends PrintWriterAssembler<HashedContents<Object>> {
+
+    @Override
+    protected void start(PrintWriter writer) {
+      // Nothing to do
+    }
+
+    @Override
+    protected void add(HashedContents<Object> hashedContents, PrintWriter writer) {
+      writer.println(hashedContents.getSource());
+    }
+
+    @Override
+    protected void end(PrintWriter writer) {
+      // Nothing to do
+    }
+
+  }
+
 }
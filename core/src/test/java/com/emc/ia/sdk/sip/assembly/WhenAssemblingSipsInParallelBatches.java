@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.sip.assembly;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.emc.ia.sdk.support.io.EncodedHash;
+import com.emc.ia.sdk.support.io.RuntimeIoException;
+import com.emc.ia.sdk.support.test.TestCase;
+
+
+@SuppressWarnings("unchecked")
+public class WhenAssemblingSipsInParallelBatches extends TestCase {
+
+  private static final int NUM_LANES = 3;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private final List<PackagingInformation> packagingInformations = new ArrayList<>();
+  private PackagingInformationFactory factory;
+
+  @Before
+  public void init() {
+    PackagingInformationFactory decorated = new DefaultPackagingInformationFactory(somePackagingInformation());
+    factory = new PackagingInformationFactory() {
+      @Override
+      public PackagingInformation newInstance(long aiuCount, Optional<EncodedHash> pdiHash) {
+        PackagingInformation result = decorated.newInstance(aiuCount, pdiHash);
+        packagingInformations.add(result);
+        return result;
+      }
+
+      @Override
+      public void setFinalSipInDss(boolean finalSipInDss) {
+        decorated.setFinalSipInDss(finalSipInDss);
+      }
+    };
+  }
+
+  private PackagingInformation somePackagingInformation() {
+    return PackagingInformation.builder()
+        .dss()
+            .holding(randomString(64))
+            .schema(randomString(64))
+            .entity(randomString(64))
+            .producer(randomString(64))
+        .end()
+        .build();
+  }
+
+  private ParallelBatchSipAssembler<String> newBatcher(SipSegmentationStrategy<String> segmentationStrategy) {
+    return new ParallelBatchSipAssembler<>(laneFactory -> SipAssembler.forPdi(laneFactory,
+        (Assembler<HashedContents<String>>)mock(Assembler.class)), factory, segmentationStrategy, () -> newFile(),
+        NUM_LANES);
+  }
+
+  private File newFile() {
+    try {
+      return folder.newFile();
+    } catch (IOException e) {
+      throw new RuntimeIoException(e);
+    }
+  }
+
+  @Test
+  public void shouldAssembleAllDomainObjectsInSegmentedSips() throws IOException {
+    ParallelBatchSipAssembler<String> batcher = newBatcher(SipSegmentationStrategy.byMaxAius(2));
+
+    for (int i = 0; i < 10; i++) {
+      batcher.add(randomString());
+    }
+    batcher.end();
+    Collection<FileGenerationMetrics> sips = batcher.getSipsMetrics();
+
+    assertEquals("# SIPs", 6, sips.size());
+    assertEquals("# AIUs", 10, sips.stream()
+        .mapToLong(sip -> ((SipMetrics)sip.getMetrics()).numAius())
+        .sum());
+    sips.forEach(sip -> assertTrue("Too many AIUs", ((SipMetrics)sip.getMetrics()).numAius() <= 2));
+    Set<File> files = sips.stream()
+        .map(FileGenerationMetrics::getFile)
+        .collect(Collectors.toSet());
+    assertEquals("# files", sips.size(), files.size());
+  }
+
+  @Test
+  public void shouldNumberSipsSequentiallyAndMarkOnlyTheFinalSipAsLast() throws IOException {
+    ParallelBatchSipAssembler<String> batcher = newBatcher(SipSegmentationStrategy.byMaxAius(3));
+
+    for (int i = 0; i < 20; i++) {
+      batcher.add(randomString());
+    }
+    batcher.end();
+
+    int numSips = packagingInformations.size();
+    assertEquals("# SIPs", batcher.getSipsMetrics().size(), numSips);
+    Set<Integer> sequenceNumbers = new HashSet<>();
+    packagingInformations.forEach(packagingInformation -> sequenceNumbers.add(
+        packagingInformation.getSequenceNumber()));
+    for (int i = 1; i <= numSips; i++) {
+      assertTrue("Missing sequence number " + i, sequenceNumbers.contains(i));
+    }
+    for (int i = 0; i < numSips - 1; i++) {
+      assertFalse("SIP #" + i + " is last", packagingInformations.get(i).isLast());
+    }
+    PackagingInformation last = packagingInformations.get(numSips - 1);
+    assertTrue("Final SIP isn't last", last.isLast());
+    assertEquals("Sequence number of final SIP", numSips, last.getSequenceNumber());
+  }
+
+  @Test
+  public void shouldReportFailuresFromLanes() throws IOException {
+    ParallelBatchSipAssembler<String> batcher = newBatcher((object, metrics) -> {
+      throw new IllegalStateException(object);
+    });
+    String domainObject = randomString();
+
+    for (int i = 0; i < NUM_LANES; i++) {
+      batcher.add(randomString());
+    }
+    try {
+      batcher.add(domainObject);
+      batcher.end();
+      fail("Missing exception");
+    } catch (IllegalStateException e) {
+      assertEquals("Message", domainObject, e.getMessage());
+    }
+  }
+
+  @Test
+  public void shouldCloseOpenSipsOfAllLanesWhenAnyLaneFails() throws IOException {
+    List<SipAssembler<String>> assemblers = new ArrayList<>();
+    String failing = randomString();
+    ParallelBatchSipAssembler<String> batcher = new ParallelBatchSipAssembler<>(laneFactory -> {
+      SipAssembler<String> result = spy(SipAssembler.forPdi(laneFactory,
+          (Assembler<HashedContents<String>>)mock(Assembler.class)));
+      assemblers.add(result);
+      return result;
+    }, factory, (object, metrics) -> {
+      if (failing.equals(object)) {
+        throw new IllegalStateException(object);
+      }
+      return false;
+    }, () -> newFile(), NUM_LANES);
+
+    for (int i = 0; i < NUM_LANES; i++) {
+      batcher.add(randomString());
+    }
+    try {
+      batcher.add(failing);
+    } catch (IllegalStateException e) {
+      // The lane may report its failure right away
+    }
+    try {
+      batcher.end();
+      fail("Missing exception");
+    } catch (IllegalStateException e) {
+      assertEquals("Message", failing, e.getMessage());
+    }
+
+    for (SipAssembler<String> assembler : assemblers) {
+      verify(assembler).abort(any(Throwable.class));
+      verify(assembler, never()).end();
+    }
+    assertTrue("SIPs of failed batch", batcher.getSipsMetrics().isEmpty());
+  }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.sip.assembly;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import com.emc.ia.sdk.support.io.DataBuffer;
+import com.emc.ia.sdk.support.io.DataBufferSupplier;
+import com.emc.ia.sdk.support.io.MemoryBuffer;
+import com.emc.ia.sdk.support.io.NoHashAssembler;
+import com.emc.ia.sdk.support.io.RuntimeIoException;
+import com.emc.ia.sdk.support.io.SingleHashAssembler;
+import com.emc.ia.sdk.support.test.TestCase;
+
+
+public class WhenAssemblingSipsInPipeline extends TestCase {
+
+  private final Map<String, byte[]> contents = new LinkedHashMap<>();
+
+  @Test
+  public void shouldAssembleSameSipAsWithoutPipeline() throws IOException {
+    List<String> domainObjects = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      String domainObject = "object" + i;
+      domainObjects.add(domainObject);
+      contents.put(domainObject, randomBytes());
+    }
+
+    Map<String, byte[]> expected = entriesOf(sip(newAssembler(false), domainObjects));
+    Map<String, byte[]> actual = entriesOf(sip(newAssembler(true), domainObjects));
+
+    assertEquals("Entries", new ArrayList<>(expected.keySet()), new ArrayList<>(actual.keySet()));
+    expected.forEach((name, content) -> {
+      if (!"eas_sip.xml".equals(name)) {
+        assertArrayEquals("Content of " + name, content, actual.get(name));
+      }
+    });
+  }
+
+  private SipAssembler<String> newAssembler(boolean pipelined) {
+    PackagingInformationFactory factory = new DefaultPackagingInformationFactory(somePackagingInformation());
+    PdiAssembler<String> pdiAssembler = new PdiAssembler<String>(null) {
+      @Override
+      protected void start(PrintWriter writer) {
+        writer.println("<objects>");
+      }
+
+      @Override
+      protected void add(String domainObject, Map<String, ContentInfo> contentInfo, PrintWriter writer) {
+        writer.format("<object id='%s' hash='%s'/>%n", domainObject, contentInfo.get(domainObject)
+            .getContentHashes()
+            .iterator()
+            .next()
+            .getValue());
+      }
+
+      @Override
+      protected void end(PrintWriter writer) {
+        writer.println("</objects>");
+      }
+    };
+    ContentAssembler<String> contentAssembler = ContentAssembler.noDedup(
+        domainObject -> Arrays.asList(DigitalObject.fromBytes(domainObject, contents.get(domainObject))).iterator(),
+        new SingleHashAssembler());
+    DataBufferSupplier<MemoryBuffer> pdiBufferSupplier = new DataBufferSupplier<>(MemoryBuffer.class);
+    if (pipelined) {
+      return new PipelinedSipAssembler<>(factory, pdiAssembler, new NoHashAssembler(), pdiBufferSupplier,
+          contentAssembler, 4);
+    }
+    return new SipAssembler<>(factory, pdiAssembler, new NoHashAssembler(), pdiBufferSupplier, contentAssembler);
+  }
+
+  private PackagingInformation somePackagingInformation() {
+    return PackagingInformation.builder()
+        .dss()
+            .holding(randomString(64))
+            .schema(randomString(64))
+            .entity(randomString(64))
+            .producer(randomString(64))
+        .end()
+        .build();
+  }
+
+  private DataBuffer sip(SipAssembler<String> assembler, List<String> domainObjects) throws IOException {
+    DataBuffer result = new MemoryBuffer();
+    assembler.start(result);
+    for (String domainObject : domainObjects) {
+      assembler.add(domainObject);
+    }
+    assembler.end();
+    assertEquals("# AIUs", domainObjects.size(), assembler.getMetrics().numAius());
+    assertEquals("# digital objects", domainObjects.size(), assembler.getMetrics().numDigitalObjects());
+    return result;
+  }
+
+  private Map<String, byte[]> entriesOf(DataBuffer sip) throws IOException {
+    Map<String, byte[]> result = new LinkedHashMap<>();
+    try (ZipInputStream zip = new ZipInputStream(sip.openForReading())) {
+      ZipEntry entry = zip.getNextEntry();
+      while (entry != null) {
+        result.put(entry.getName(), IOUtils.toByteArray(zip));
+        entry = zip.getNextEntry();
+      }
+    }
+    return result;
+  }
+
+  @Test
+  public void shouldReportFailuresFromStages() throws IOException {
+    String message = randomString(16);
+    ContentAssembler<String> contentAssembler = spy(ContentAssembler.noDedup(domainObject -> {
+      throw new RuntimeIoException(new IOException(message));
+    }));
+    SipAssembler<String> assembler = new PipelinedSipAssembler<>(
+        new DefaultPackagingInformationFactory(somePackagingInformation()), new PdiAssembler<String>(null) {
+          @Override
+          protected void start(PrintWriter writer) {
+            // Nothing to do
+          }
+
+          @Override
+          protected void add(String domainObject, Map<String, ContentInfo> contentInfo, PrintWriter writer) {
+            // Nothing to do
+          }
+
+          @Override
+          protected void end(PrintWriter writer) {
+            // Nothing to do
+          }
+        }, new NoHashAssembler(), new DataBufferSupplier<>(MemoryBuffer.class), contentAssembler);
+    DataBuffer sip = new MemoryBuffer();
+
+    assembler.start(sip);
+    assembler.add(randomString());
+    try {
+      assembler.end();
+      fail("Missing exception");
+    } catch (RuntimeIoException e) {
+      assertEquals("Message", message, e.getCause().getMessage());
+    }
+
+    verify(contentAssembler, never()).end();
+    assertEquals("Entries of failed SIP", Collections.emptySet(), entriesOf(sip).keySet());
+  }
+
+}
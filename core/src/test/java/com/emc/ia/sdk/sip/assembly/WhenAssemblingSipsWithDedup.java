@@ -4,23 +4,37 @@
 package com.emc.ia.sdk.sip.assembly;
 
 import static java.util.Objects.requireNonNull;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.NullOutputStream;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import com.emc.ia.sdk.support.io.DataBuffer;
+import com.emc.ia.sdk.support.io.DefaultZipAssembler;
+import com.emc.ia.sdk.support.io.DigestIndex;
 import com.emc.ia.sdk.support.io.MemoryBuffer;
 import com.emc.ia.sdk.support.io.SingleHashAssembler;
+import com.emc.ia.sdk.support.io.ZipAssembler;
 import com.emc.ia.sdk.support.test.validation.SipFileValidator;
 
 public class WhenAssemblingSipsWithDedup extends XmlTestCase {
@@ -35,6 +49,8 @@ public class WhenAssemblingSipsWithDedup extends XmlTestCase {
   private static final String CONTENT_3 = "file3.txt";
   private static final String CONTENT_2 = "file2.txt";
   private static final String CONTENT_1 = "file1.txt";
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
   private DigitalObjectsExtraction<TestObject> contentsExtraction;
   private PackagingInformation prototype;
   private PdiAssembler<TestObject> pdiAssembler;
@@ -230,4 +246,106 @@ public class WhenAssemblingSipsWithDedup extends XmlTestCase {
       .assertContentFileIdenticalTo(OBJECT_ID_2, CONTENT_2)
       .assertContentFileIdenticalTo(OBJECT_ID_4, CONTENT_4);
   }
+
+  @Test
+  public void withDedupOnHashShouldIncludeOnlyUniqueContentWhenSpillingToDisk() throws IOException {
+    domainObjects = objects(OBJECT_ID_1, OBJECT_ID_2, OBJECT_ID_3, OBJECT_ID_4, OBJECT_ID_5);
+    contentIdToResourceName.put(OBJECT_ID_3, CONTENT_1);
+    contentIdToResourceName.put(OBJECT_ID_5, CONTENT_1);
+
+    sip(new ContentAssemblerWithDedupOnHash<>(contentsExtraction, new SingleHashAssembler(), 5, 1))
+      .assertFileCount(2 + 3)
+      .assertPackagingInformation(5)
+      .assertContentFileIdenticalTo(OBJECT_ID_1, CONTENT_1)
+      .assertContentFileIdenticalTo(OBJECT_ID_2, CONTENT_2)
+      .assertContentFileIdenticalTo(OBJECT_ID_4, CONTENT_4);
+  }
+
+  @Test
+  public void withDedupOnHashShouldIncludeOnlyUniqueContentFromFiles() throws IOException {
+    domainObjects = objects(OBJECT_ID_1, OBJECT_ID_2, OBJECT_ID_3, OBJECT_ID_4, OBJECT_ID_5);
+    contentIdToResourceName.put(OBJECT_ID_3, CONTENT_1);
+    contentIdToResourceName.put(OBJECT_ID_5, CONTENT_1);
+    Map<String, File> files = new HashMap<>();
+    for (Map.Entry<String, String> entry : contentIdToResourceName.entrySet()) {
+      File file = folder.newFile();
+      try (InputStream content = getClass().getResourceAsStream(entry.getValue())) {
+        FileUtils.copyInputStreamToFile(content, file);
+      }
+      files.put(entry.getKey(), file);
+    }
+    contentsExtraction = t -> t.getContentId()
+      .stream()
+      .map(cid -> DigitalObject.fromFile(cid, files.get(cid)))
+      .collect(Collectors.toList())
+      .iterator();
+
+    sip(ContentAssembler.withDedupOnHash(contentsExtraction, new SingleHashAssembler())).assertFileCount(2 + 3)
+      .assertPackagingInformation(5)
+      .assertContentFileIdenticalTo(OBJECT_ID_1, CONTENT_1)
+      .assertContentFileIdenticalTo(OBJECT_ID_2, CONTENT_2)
+      .assertContentFileIdenticalTo(OBJECT_ID_4, CONTENT_4);
+  }
+
+  @Test
+  public void withPersistentDedupOnHashShouldIncludeContentOnlyInFirstSip() throws IOException {
+    domainObjects = objects(OBJECT_ID_1, OBJECT_ID_2);
+    try (DigestIndex index = new DigestIndex(folder.newFolder().toPath())) {
+      sip(ContentAssembler.withPersistentDedupOnHash(contentsExtraction, new SingleHashAssembler(), index))
+        .assertFileCount(2 + 2);
+
+      domainObjects = objects(OBJECT_ID_1, OBJECT_ID_2, OBJECT_ID_3);
+      sip(ContentAssembler.withPersistentDedupOnHash(contentsExtraction, new SingleHashAssembler(), index))
+        .assertFileCount(2 + 1)
+        .assertPackagingInformation(3)
+        .assertContentFileIdenticalTo(OBJECT_ID_3, CONTENT_3);
+    }
+  }
+
+  @Test
+  public void withPrefilteredDedupOnHashShouldComputeCryptographicHashesOnlyOnCollisions() throws IOException {
+    domainObjects = objects(OBJECT_ID_1, OBJECT_ID_2, OBJECT_ID_3, OBJECT_ID_4, OBJECT_ID_5);
+    contentIdToResourceName.put(OBJECT_ID_3, CONTENT_1);
+    contentIdToResourceName.put(OBJECT_ID_5, CONTENT_1);
+    AtomicInteger numHashAssemblers = new AtomicInteger();
+
+    sip(ContentAssembler.withPrefilteredDedupOnHash(contentsExtraction, () -> {
+      numHashAssemblers.incrementAndGet();
+      return new SingleHashAssembler();
+    })).assertFileCount(2 + 3)
+      .assertPackagingInformation(5)
+      .assertContentFileIdenticalTo(OBJECT_ID_1, CONTENT_1)
+      .assertContentFileIdenticalTo(OBJECT_ID_2, CONTENT_2)
+      .assertContentFileIdenticalTo(OBJECT_ID_4, CONTENT_4);
+    // One for the assembler itself, and one to lazily hash the content that the duplicates collided with
+    assertEquals("# hash assemblers", 2, numHashAssemblers.get());
+  }
+
+  @Test
+  public void withPrefilteredDedupOnHashShouldReleaseDigitalObjectsOnceHashed() throws IOException {
+    List<WeakReference<DigitalObject>> digitalObjects = new ArrayList<>();
+    ContentAssembler<String> contentAssembler = ContentAssembler.withPrefilteredDedupOnHash(content -> {
+      DigitalObject result = DigitalObject.fromString(randomString(), content, StandardCharsets.UTF_8);
+      digitalObjects.add(new WeakReference<>(result));
+      return Collections.singletonList(result).iterator();
+    }, SingleHashAssembler::new);
+    ZipAssembler zip = new DefaultZipAssembler();
+    zip.begin(new NullOutputStream());
+    contentAssembler.begin(zip, new Counters());
+
+    contentAssembler.addContentsOf(randomString()).values().forEach(ContentInfo::getContentHashes);
+    assertReleased("Hashed digital object", digitalObjects.get(0));
+
+    contentAssembler.addContentsOf(randomString());
+    contentAssembler.end();
+    assertReleased("Digital object at end of SIP", digitalObjects.get(1));
+  }
+
+  private void assertReleased(String message, WeakReference<?> reference) {
+    for (int i = 0; i < 100 && reference.get() != null; i++) {
+      System.gc();
+    }
+    assertNull(message, reference.get());
+  }
+
 }
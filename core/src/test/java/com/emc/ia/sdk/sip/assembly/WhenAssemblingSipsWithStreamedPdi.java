@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.sip.assembly;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import javax.validation.ValidationException;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import com.emc.ia.sdk.support.io.DataBuffer;
+import com.emc.ia.sdk.support.io.EncodedHash;
+import com.emc.ia.sdk.support.io.MemoryBuffer;
+import com.emc.ia.sdk.support.io.NoHashAssembler;
+import com.emc.ia.sdk.support.io.SingleHashAssembler;
+import com.emc.ia.sdk.support.test.TestCase;
+
+
+public class WhenAssemblingSipsWithStreamedPdi extends TestCase {
+
+  private final Map<String, byte[]> contents = new LinkedHashMap<>();
+  private Optional<EncodedHash> actualPdiHash;
+
+  @Test
+  public void shouldWritePdiDirectlyIntoZip() throws IOException {
+    List<String> domainObjects = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      String domainObject = "object" + i;
+      domainObjects.add(domainObject);
+      contents.put(domainObject, randomBytes());
+    }
+    SingleHashAssembler pdiHashAssembler = new SingleHashAssembler();
+    SipAssembler<String> assembler = SipAssembler.forStreamedPdiAndContentWithHashing(
+        newPackagingInformationFactory(), newPdiAssembler(), pdiHashAssembler, ContentAssembler.noDedup(
+            domainObject -> Arrays.asList(DigitalObject.fromBytes(domainObject, contents.get(domainObject)))
+                .iterator(), new NoHashAssembler()));
+    DataBuffer sip = new MemoryBuffer();
+
+    assembler.start(sip);
+    for (String domainObject : domainObjects) {
+      assembler.add(domainObject);
+    }
+    assembler.end();
+
+    Map<String, byte[]> entries = entriesOf(sip);
+    List<String> expectedNames = new ArrayList<>();
+    expectedNames.add("eas_pdi.xml");
+    expectedNames.addAll(domainObjects);
+    expectedNames.add("eas_sip.xml");
+    assertEquals("Entries", expectedNames, new ArrayList<>(entries.keySet()));
+    domainObjects.forEach(domainObject -> assertArrayEquals("Content of " + domainObject,
+        contents.get(domainObject), entries.get(domainObject)));
+
+    byte[] pdi = entries.get("eas_pdi.xml");
+    SingleHashAssembler expectedHashAssembler = new SingleHashAssembler();
+    expectedHashAssembler.initialize();
+    expectedHashAssembler.add(pdi, pdi.length);
+    assertEquals("PDI hash", expectedHashAssembler.get().iterator().next(), actualPdiHash.get());
+    assertEquals("PDI size", pdi.length, assembler.getMetrics().pdiSize());
+    assertEquals("# AIUs", domainObjects.size(), assembler.getMetrics().numAius());
+  }
+
+  @Test
+  public void shouldRejectPdiAssemblerThatValidatesAfterWriting() throws IOException {
+    SipAssembler<String> assembler = SipAssembler.forStreamedPdiAndContentWithHashing(
+        newPackagingInformationFactory(), newPdiAssembler(stream -> { }), new NoHashAssembler(),
+        ContentAssembler.ignoreContent());
+    DataBuffer sip = new MemoryBuffer();
+
+    try {
+      assembler.start(sip);
+      fail("Missing exception");
+    } catch (IllegalStateException e) {
+      assertEquals("SIP written", 0, sip.length());
+    }
+  }
+
+  @Test
+  public void shouldValidatePdiWhileWriting() throws IOException {
+    List<String> validated = new ArrayList<>();
+    PdiAssembler<String> pdiAssembler = newPdiAssembler(stream -> {
+      try {
+        validated.add(IOUtils.toString(stream, StandardCharsets.UTF_8));
+      } catch (IOException e) {
+        throw new ValidationException(e);
+      }
+    });
+    pdiAssembler.setValidateWhileWriting(true);
+    SipAssembler<String> assembler = SipAssembler.forStreamedPdiAndContentWithHashing(
+        newPackagingInformationFactory(), pdiAssembler, new NoHashAssembler(), ContentAssembler.ignoreContent());
+    DataBuffer sip = new MemoryBuffer();
+
+    assembler.start(sip);
+    assembler.add("object");
+    assembler.end();
+
+    assertEquals("Validated PDI", Collections.singletonList(new String(entriesOf(sip).get("eas_pdi.xml"),
+        StandardCharsets.UTF_8)), validated);
+  }
+
+  private PackagingInformationFactory newPackagingInformationFactory() {
+    PackagingInformationFactory decorated = new DefaultPackagingInformationFactory(PackagingInformation.builder()
+        .dss()
+            .holding(randomString(64))
+            .schema(randomString(64))
+            .entity(randomString(64))
+            .producer(randomString(64))
+        .end()
+        .build());
+    return new PackagingInformationFactory() {
+      @Override
+      public PackagingInformation newInstance(long aiuCount, Optional<EncodedHash> pdiHash) {
+        actualPdiHash = pdiHash;
+        return decorated.newInstance(aiuCount, pdiHash);
+      }
+
+      @Override
+      public void setFinalSipInDss(boolean finalSipInDss) {
+        decorated.setFinalSipInDss(finalSipInDss);
+      }
+    };
+  }
+
+  private PdiAssembler<String> newPdiAssembler() {
+    return newPdiAssembler(null);
+  }
+
+  private PdiAssembler<String> newPdiAssembler(Validator validator) {
+    return new PdiAssembler<String>(validator) {
+      @Override
+      protected void start(PrintWriter writer) {
+        writer.println("<objects>");
+      }
+
+      @Override
+      protected void add(String domainObject, Map<String, ContentInfo> contentInfo, PrintWriter writer) {
+        writer.format("<object id='%s'/>%n", domainObject);
+      }
+
+      @Override
+      protected void end(PrintWriter writer) {
+        writer.println("</objects>");
+      }
+    };
+  }
+
+  private Map<String, byte[]> entriesOf(DataBuffer sip) throws IOException {
+    Map<String, byte[]> result = new LinkedHashMap<>();
+    try (ZipInputStream zip = new ZipInputStream(sip.openForReading())) {
+      ZipEntry entry = zip.getNextEntry();
+      while (entry != null) {
+        result.put(entry.getName(), IOUtils.toByteArray(zip));
+        entry = zip.getNextEntry();
+      }
+    }
+    return result;
+  }
+
+}
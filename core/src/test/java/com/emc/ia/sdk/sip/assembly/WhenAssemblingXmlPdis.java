@@ -3,18 +3,26 @@
  */
 package com.emc.ia.sdk.sip.assembly;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import javax.xml.XMLConstants;
 
+import org.apache.commons.io.IOUtils;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.w3c.dom.Element;
 
 import com.emc.ia.sdk.support.io.MemoryBuffer;
 import com.emc.ia.sdk.support.test.TestCase;
@@ -23,6 +31,11 @@ import com.emc.ia.sdk.support.xml.XmlUtil;
 
 public class WhenAssemblingXmlPdis extends TestCase {
 
+  private static final URI NAMESPACE = URI.create("http://mycompany.com/ns/pdi");
+  private static final String RI = "content";
+  private static final Map<String, ContentInfo> CONTENT_INFO = Collections.singletonMap(RI,
+      new ContentInfo(RI, Collections.emptyList()));
+
   @Rule
   public ExpectedException thrown = ExpectedException.none();
 
@@ -54,6 +67,118 @@ public class WhenAssemblingXmlPdis extends TestCase {
     assemblePdi(null);
   }
 
+  @Test
+  public void shouldStreamSamePdiAsDom() throws IOException {
+    List<String> domainObjects = Arrays.asList(randomString(), randomString(), randomString());
+
+    assertEquals("PDI", assembleDomPdi(domainObjects), assembleStreamedPdi(domainObjects));
+  }
+
+  private String assembleDomPdi(List<String> domainObjects) throws IOException {
+    return assemblePdi(new XmlPdiAssembler<String>(NAMESPACE, "objects", "object") {
+      @Override
+      protected void doAdd(String domainObject, Map<String, ContentInfo> contents) {
+        getBuilder()
+            .attribute("id", domainObject)
+            .element("name", domainObject)
+            .elements("contents", "content", contents.keySet(), (ri, xml) -> xml.attribute("ri", ri));
+      }
+    }, domainObjects, CONTENT_INFO);
+  }
+
+  private String assembleStreamedPdi(List<String> domainObjects) throws IOException {
+    return assemblePdi(new StreamingXmlPdiAssembler<String>(NAMESPACE, "objects", "object") {
+      @Override
+      protected void doAdd(String domainObject, Map<String, ContentInfo> contents) {
+        getBuilder()
+            .attribute("id", domainObject)
+            .element("name", domainObject)
+            .elements("contents", "content", contents.keySet(), (ri, xml) -> xml.attribute("ri", ri));
+      }
+    }, domainObjects, CONTENT_INFO);
+  }
+
+  @Test
+  public void shouldStreamSamePdiAsDomExceptForEscapedAttributes() throws IOException {
+    String domainObject = "<a & 'b' > \"c\">";
+
+    String streamed = assembleStreamedPdi(Collections.singletonList(domainObject));
+
+    String dom = assembleDomPdi(Collections.singletonList(domainObject));
+    assertEquals("PDI", dom.replace("id=\"" + domainObject + '"', "id=\"" + XmlUtil.escape(domainObject) + '"'),
+        streamed);
+    Element object = XmlUtil.getFirstChildElement(XmlUtil.parse(new ByteArrayInputStream(
+        streamed.getBytes(StandardCharsets.UTF_8))).getDocumentElement(), "object");
+    assertEquals("Attribute", domainObject, object.getAttribute("id"));
+    assertEquals("Text", domainObject, XmlUtil.getFirstChildElement(object, "name").getTextContent());
+  }
+
+  @Test
+  public void shouldRecoverFromFailureToAddDomainObjectWhenStreaming() throws IOException {
+    StreamingXmlPdiAssembler<String> pdiAssembler = new StreamingXmlPdiAssembler<String>(null, "objects", "object") {
+      @Override
+      protected void doAdd(String domainObject, Map<String, ContentInfo> contents) {
+        getBuilder().element("name");
+        if (domainObject.isEmpty()) {
+          throw new IllegalArgumentException("Missing name");
+        }
+        getBuilder().text(domainObject).end();
+      }
+    };
+    MemoryBuffer buffer = new MemoryBuffer();
+    pdiAssembler.start(buffer);
+    try {
+      pdiAssembler.add(new HashedContents<>("", Collections.emptyMap()));
+      fail("Missing exception");
+    } catch (IllegalArgumentException e) {
+      // Expected
+    }
+    String name = randomString();
+    pdiAssembler.add(new HashedContents<>(name, Collections.emptyMap()));
+    pdiAssembler.end();
+
+    try (InputStream pdi = buffer.openForReading()) {
+      assertEquals("PDI", String.format("%s%n<objects>%n  <object>%n    <name>%s</name>%n  </object>%n%n</objects>%n",
+          XmlUtil.XML_DECLARATION, name), IOUtils.toString(pdi, StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void shouldWriteCompactPdiWhenRequested() throws IOException {
+    URI namespace = URI.create("http://mycompany.com/ns/" + randomString());
+    String domainObject = randomString();
+    XmlPdiAssembler<String> pdiAssembler = new XmlPdiAssembler<String>(namespace, "objects", "object") {
+      @Override
+      protected void doAdd(String object, Map<String, ContentInfo> contents) {
+        getBuilder()
+            .element("name", object)
+            .element("children")
+                .element("child", object)
+            .end();
+      }
+    };
+    pdiAssembler.setCompact(true);
+
+    String pdi = assemblePdi(pdiAssembler, Collections.singletonList(domainObject), Collections.emptyMap());
+
+    assertEquals("PDI", String.format("%s%n<objects xmlns=\"%2$s\">%n<object xmlns=\"%2$s\"><name>%3$s</name>"
+        + "<children><child>%3$s</child></children></object></objects>%n", XmlUtil.XML_DECLARATION, namespace,
+        domainObject), pdi);
+  }
+
+  private String assemblePdi(PdiAssembler<String> pdiAssembler, List<String> domainObjects,
+      Map<String, ContentInfo> contentInfo) throws IOException {
+    MemoryBuffer buffer = new MemoryBuffer();
+    pdiAssembler.start(buffer);
+    for (String domainObject : domainObjects) {
+      pdiAssembler.add(new HashedContents<>(domainObject, contentInfo));
+    }
+    pdiAssembler.end();
+    try (InputStream pdi = buffer.openForReading()) {
+      return IOUtils.toString(pdi, StandardCharsets.UTF_8);
+    }
+  }
+
   private class TestPdiAssembler extends XmlPdiAssembler<String> {
 
     TestPdiAssembler(InputStream schema) {
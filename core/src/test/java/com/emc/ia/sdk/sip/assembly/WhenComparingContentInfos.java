@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.sip.assembly;
+
+import static org.junit.Assert.*;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import com.emc.ia.sdk.support.io.EncodedHash;
+import com.emc.ia.sdk.support.test.TestCase;
+
+
+public class WhenComparingContentInfos extends TestCase {
+
+  private final AtomicInteger numHashed = new AtomicInteger();
+  private final EncodedHash hash = new EncodedHash("SHA-256", "base64", randomString());
+
+  @Test
+  public void shouldNotComputeHashesForHashCodeOrToString() {
+    String ri = randomString();
+    ContentInfo contentInfo = new ContentInfo(ri, lazyHashes());
+
+    Set<ContentInfo> contentInfos = new HashSet<>();
+    contentInfos.add(contentInfo);
+    contentInfos.add(new ContentInfo(randomString(), lazyHashes()));
+    String text = contentInfo.toString();
+
+    assertEquals("# hashed", 0, numHashed.get());
+    assertEquals("Text", ri + " and content hashes not computed", text);
+    contentInfo.getContentHashes();
+    assertEquals("Text after hashing", ri + " and content hashes [" + hash + "]", contentInfo.toString());
+  }
+
+  private Supplier<Collection<EncodedHash>> lazyHashes() {
+    return () -> {
+      numHashed.incrementAndGet();
+      return Collections.singletonList(hash);
+    };
+  }
+
+  @Test
+  public void shouldCompareHashesOfLazilyHashedContent() {
+    String ri = randomString();
+    ContentInfo lazy = new ContentInfo(ri, lazyHashes());
+
+    assertEquals("Same hashes", new ContentInfo(ri, Collections.singletonList(hash)), lazy);
+    assertEquals("Hash code", new ContentInfo(ri, Collections.singletonList(hash)).hashCode(), lazy.hashCode());
+    assertNotEquals("Different hashes", new ContentInfo(ri, Collections.emptyList()), lazy);
+    assertEquals("# hashed", 1, numHashed.get());
+  }
+
+}
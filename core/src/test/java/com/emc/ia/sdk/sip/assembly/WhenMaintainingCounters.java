@@ -10,7 +10,7 @@ import org.junit.Test;
 
 public class WhenMaintainingCounters {
 
-  private final Counters counters = new Counters();
+  private final Counters counters = new Counters(TestMetrics.FOO);
 
   @Test
   public void shouldIncreaseCounter() {
@@ -31,4 +31,55 @@ public class WhenMaintainingCounters {
     assertEquals("Reset bar", 0, counters.get(TestMetrics.BAR));
   }
 
+  @Test
+  public void shouldReflectUpdatesInView() {
+    Counters view = counters.view();
+
+    counters.inc(TestMetrics.FOO, 3);
+    counters.set(TestMetrics.BAR, 42);
+
+    assertEquals("Foo", 3, view.get(TestMetrics.FOO));
+    assertEquals("Bar", 42, view.get(TestMetrics.BAR));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void shouldNotUpdateView() {
+    counters.view().inc(TestMetrics.FOO);
+  }
+
+  @Test
+  public void shouldNotReflectUpdatesInSnapshot() {
+    counters.inc(TestMetrics.FOO);
+    counters.inc(TestMetrics.BAR);
+
+    Counters snapshot = counters.forReading();
+    counters.inc(TestMetrics.FOO);
+    counters.inc(TestMetrics.BAR);
+
+    assertEquals("Foo", 1, snapshot.get(TestMetrics.FOO));
+    assertEquals("Bar", 1, snapshot.get(TestMetrics.BAR));
+  }
+
+  @Test
+  public void shouldCountFromMultipleThreads() throws InterruptedException {
+    int numThreads = 4;
+    int numIncrements = 10_000;
+    Thread[] threads = new Thread[numThreads];
+    for (int i = 0; i < numThreads; i++) {
+      threads[i] = new Thread(() -> {
+        for (int j = 0; j < numIncrements; j++) {
+          counters.inc(TestMetrics.FOO);
+          counters.inc(TestMetrics.BAR);
+        }
+      });
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals("Foo", numThreads * numIncrements, counters.get(TestMetrics.FOO));
+    assertEquals("Bar", numThreads * numIncrements, counters.get(TestMetrics.BAR));
+  }
+
 }
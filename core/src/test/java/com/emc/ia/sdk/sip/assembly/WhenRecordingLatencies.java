@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.sip.assembly;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+
+public class WhenRecordingLatencies {
+
+  private final LatencyHistogram histogram = new LatencyHistogram();
+
+  @Test
+  public void shouldSummarizeLatencies() {
+    for (long nanos = 1; nanos <= 1000; nanos++) {
+      histogram.record(nanos);
+    }
+
+    assertEquals("Count", 1000, histogram.getCount());
+    assertEquals("Total", 500_500, histogram.getTotalNanos());
+    assertEquals("Mean", 500.5, histogram.getMeanNanos(), 0.001);
+    assertEquals("Max", 1000, histogram.getMaxNanos());
+    assertEquals("Max percentile", 1000, histogram.getValueAtPercentile(100));
+  }
+
+  @Test
+  public void shouldReportPercentilesWithBoundedError() {
+    for (long nanos = 1; nanos <= 100_000; nanos++) {
+      histogram.record(nanos * 1000);
+    }
+
+    assertWithinError(50_000_000, histogram.getValueAtPercentile(50));
+    assertWithinError(99_000_000, histogram.getValueAtPercentile(99));
+    assertWithinError(99_900_000, histogram.getValueAtPercentile(99.9));
+  }
+
+  private void assertWithinError(long expected, long actual) {
+    assertTrue("Expected " + expected + " but got " + actual,
+        actual >= expected && actual <= expected + expected / 16);
+  }
+
+  @Test
+  public void shouldTrackLongLatenciesInLastBucket() {
+    histogram.record(Long.MAX_VALUE / 2);
+
+    assertEquals("Max", Long.MAX_VALUE / 2, histogram.getMaxNanos());
+    assertEquals("Percentile", Long.MAX_VALUE / 2, histogram.getValueAtPercentile(50));
+  }
+
+  @Test
+  public void shouldForgetLatenciesOnReset() {
+    histogram.record(42);
+
+    histogram.reset();
+
+    assertEquals("Count", 0, histogram.getCount());
+    assertEquals("Max", 0, histogram.getMaxNanos());
+    assertEquals("Percentile", 0, histogram.getValueAtPercentile(50));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectInvalidPercentile() {
+    histogram.getValueAtPercentile(101);
+  }
+
+}
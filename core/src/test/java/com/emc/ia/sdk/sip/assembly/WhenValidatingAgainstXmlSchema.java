@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.sip.assembly;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.validation.ValidationException;
+import javax.xml.validation.Schema;
+
+import org.junit.Test;
+
+import com.emc.ia.sdk.support.test.TestCase;
+import com.emc.ia.sdk.support.xml.XmlUtil;
+
+
+public class WhenValidatingAgainstXmlSchema extends TestCase {
+
+  private static final String SCHEMA = "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\">"
+      + "<xs:element name=\"value\" type=\"xs:int\"/></xs:schema>";
+  private static final int NUM_THREADS = 4;
+  private static final int NUM_VALIDATIONS = 250;
+
+  @Test
+  public void shouldValidateConcurrently() throws Exception {
+    XmlSchemaValidator validator = new XmlSchemaValidator(toStream(SCHEMA));
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+    try {
+      List<Future<Integer>> results = new ArrayList<>();
+      for (int i = 0; i < NUM_THREADS; i++) {
+        results.add(executor.submit(() -> countInvalid(validator)));
+      }
+      for (Future<Integer> result : results) {
+        assertEquals("# invalid", NUM_VALIDATIONS / 2, result.get().intValue());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private int countInvalid(Validator validator) {
+    int result = 0;
+    for (int i = 0; i < NUM_VALIDATIONS; i++) {
+      String value = i % 2 == 0 ? Integer.toString(i) : randomString(8);
+      try {
+        validator.validate(toStream("<value>" + value + "</value>"));
+      } catch (ValidationException e) {
+        result++;
+      }
+    }
+    return result;
+  }
+
+  private InputStream toStream(String text) {
+    return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void shouldNotKeepSchemasThatAreNoLongerUsed() {
+    String schema = "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\"><xs:element name=\"%s\"/></xs:schema>";
+    String name = randomString(8);
+    new XmlSchemaValidator(toStream(String.format(schema, name))).validate(toStream("<" + name + "/>"));
+    WeakReference<Schema> compiled = new WeakReference<>(XmlUtil.getXmlSchema(toStream(String.format(schema, name))));
+
+    for (int i = 0; i < 100; i++) {
+      String otherName = randomString(8);
+      new XmlSchemaValidator(toStream(String.format(schema, otherName))).validate(toStream("<" + otherName + "/>"));
+    }
+
+    for (int i = 0; i < 100 && compiled.get() != null; i++) {
+      System.gc();
+    }
+    assertNull("Schema kept", compiled.get());
+  }
+
+  @Test(expected = ValidationException.class)
+  public void shouldRejectInvalidSchema() {
+    new XmlSchemaValidator(toStream("<" + randomString(8) + "/>"));
+  }
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.sip.assembly;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import com.emc.ia.sdk.support.io.MemoryBuffer;
+import com.emc.ia.sdk.support.test.TestCase;
+
+
+public class WhenValidatingWhileWriting extends TestCase {
+
+  private static final String SCHEMA = "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\">"
+      + "<xs:element name=\"items\"><xs:complexType><xs:sequence>"
+      + "<xs:element name=\"item\" type=\"xs:int\" maxOccurs=\"unbounded\"/>"
+      + "</xs:sequence></xs:complexType></xs:element></xs:schema>";
+  private static final int NUM_ITEMS = 100_000;
+
+  private final MemoryBuffer buffer = new MemoryBuffer();
+
+  @Test
+  public void shouldAcceptValidContent() throws IOException {
+    ItemsAssembler assembler = new ItemsAssembler(true);
+
+    assemble(assembler, "42");
+
+    try (InputStream content = buffer.openForReading()) {
+      String pdi = IOUtils.toString(content, StandardCharsets.UTF_8);
+      assertTrue("Content", pdi.startsWith("<items>") && pdi.trim().endsWith("</items>"));
+    }
+  }
+
+  private void assemble(ItemsAssembler assembler, String value) throws IOException {
+    assembler.start(buffer);
+    for (int i = 0; i < NUM_ITEMS; i++) {
+      assembler.add(i == NUM_ITEMS / 2 ? value : Integer.toString(i));
+    }
+    assembler.end();
+  }
+
+  @Test
+  public void shouldReportLinesAroundInvalidContent() throws IOException {
+    assertInvalidContentReported(new ItemsAssembler(true));
+  }
+
+  @Test
+  public void shouldReportLinesAroundInvalidContentWhenValidatingAfterWriting() throws IOException {
+    assertInvalidContentReported(new ItemsAssembler(false));
+  }
+
+  private void assertInvalidContentReported(ItemsAssembler assembler) throws IOException {
+    String invalid = randomString(8);
+    try {
+      assemble(assembler, invalid);
+      fail("Missing exception");
+    } catch (IOException e) {
+      String message = e.getMessage();
+      int failingLine = NUM_ITEMS / 2 + 2;
+      assertTrue("Failing line:\n" + message, message.contains(String.format(">%6d: <item>%s</item>", failingLine,
+          invalid)));
+      assertTrue("Previous line:\n" + message, message.contains(String.format(" %6d: <item>%d</item>",
+          failingLine - 1, NUM_ITEMS / 2 - 1)));
+      assertEquals("# lines", 12, message.split("\n").length);
+    }
+  }
+
+  @Test
+  public void shouldStopValidatingWhenAddingFails() throws IOException, InterruptedException {
+    CountDownLatch validationStarted = new CountDownLatch(1);
+    CountDownLatch validationEnded = new CountDownLatch(1);
+    ItemsAssembler assembler = new ItemsAssembler(stream -> {
+      validationStarted.countDown();
+      try {
+        IOUtils.toByteArray(stream);
+      } catch (IOException e) {
+        // Aborted
+      } finally {
+        validationEnded.countDown();
+      }
+    });
+    assembler.start(buffer);
+    assembler.add("1");
+    assertTrue("Validation not started", validationStarted.await(10, TimeUnit.SECONDS));
+    try {
+      assembler.add(null);
+      fail("Missing exception");
+    } catch (NullPointerException e) {
+      assertTrue("Validation still running", validationEnded.await(10, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  public void shouldStopPreviousValidationWhenStartingAgain() throws IOException, InterruptedException {
+    CountDownLatch validationStarted = new CountDownLatch(1);
+    CountDownLatch validationEnded = new CountDownLatch(1);
+    ItemsAssembler assembler = new ItemsAssembler(stream -> {
+      validationStarted.countDown();
+      try {
+        IOUtils.toByteArray(stream);
+      } catch (IOException e) {
+        // Aborted
+      } finally {
+        validationEnded.countDown();
+      }
+    });
+    assembler.start(buffer);
+    assembler.add("1");
+    assertTrue("Validation not started", validationStarted.await(10, TimeUnit.SECONDS));
+
+    assembler.start(new MemoryBuffer());
+
+    assertTrue("Previous validation still running", validationEnded.await(10, TimeUnit.SECONDS));
+  }
+
+
+  private static class ItemsAssembler extends PrintWriterAssembler<String> {
+
+    ItemsAssembler(boolean validateWhileWriting) {
+      super(new XmlSchemaValidator(new ByteArrayInputStream(SCHEMA.getBytes(StandardCharsets.UTF_8))));
+      setValidateWhileWriting(validateWhileWriting);
+    }
+
+    ItemsAssembler(Validator validator) {
+      super(validator);
+      setValidateWhileWriting(true);
+    }
+
+    @Override
+    protected void start(PrintWriter writer) {
+      writer.println("<items>");
+    }
+
+    @Override
+    protected void add(String item, PrintWriter writer) {
+      Objects.requireNonNull(item, "item");
+      writer.print("<item>");
+      writer.print(item);
+      writer.println("</item>");
+    }
+
+    @Override
+    protected void end(PrintWriter writer) {
+      writer.println("</items>");
+    }
+
+  }
+
+}
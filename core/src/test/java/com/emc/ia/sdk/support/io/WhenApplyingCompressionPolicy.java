@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.emc.ia.sdk.support.test.TestCase;
+
+
+public class WhenApplyingCompressionPolicy extends TestCase {
+
+  private static final byte[] TEXT = String.format("%0512d", 42).getBytes(StandardCharsets.US_ASCII);
+
+  private final CompressionPolicy policy = new ContentBasedCompressionPolicy(Compression.FAST);
+
+  @Test
+  public void shouldStoreContentWithCompressedExtension() {
+    assertEquals("Compression", Compression.STORED, policy.compressionFor("scan.JPG", null, TEXT, TEXT.length));
+  }
+
+  @Test
+  public void shouldStoreContentWithCompressedMediaType() {
+    assertEquals("Compression", Compression.STORED,
+        policy.compressionFor(randomString(), "application/pdf", TEXT, TEXT.length));
+    assertEquals("Compression", Compression.STORED,
+        policy.compressionFor(randomString(), "video/mp4; codecs=avc1", TEXT, TEXT.length));
+  }
+
+  @Test
+  public void shouldStoreContentWithHighEntropy() {
+    byte[] sample = new byte[4096];
+    new Random().nextBytes(sample);
+
+    assertEquals("Compression", Compression.STORED, policy.compressionFor("scan", null, sample, sample.length));
+  }
+
+  @Test
+  public void shouldCompressOtherContent() {
+    assertEquals("Compression", Compression.FAST,
+        policy.compressionFor("document.txt", "text/plain", TEXT, TEXT.length));
+  }
+
+  @Test
+  public void shouldCompressAllContentTheSameWay() {
+    assertEquals("Compression", Compression.BEST,
+        CompressionPolicy.always(Compression.BEST).compressionFor("scan.jpg", "image/jpeg", TEXT, TEXT.length));
+  }
+
+}
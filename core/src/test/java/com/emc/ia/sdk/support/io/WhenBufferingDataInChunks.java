@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import com.emc.ia.sdk.support.test.TestCase;
+
+
+public class WhenBufferingDataInChunks extends TestCase {
+
+  @Test
+  public void shouldReadBackDataSpanningChunks() throws IOException {
+    byte[] expected = someBytes(2 * ChunkedInputOutputStream.CHUNK_SIZE + randomInt(1, 1000));
+    ChunkedInputOutputStream buffer = new ChunkedInputOutputStream();
+
+    buffer.write(expected[0]);
+    buffer.write(expected, 1, expected.length - 1);
+
+    assertEquals("Size", expected.length, buffer.size());
+    assertArrayEquals("Content #1", expected, read(buffer));
+    assertArrayEquals("Content #2", expected, read(buffer));
+    ByteArrayOutputStream copy = new ByteArrayOutputStream();
+    buffer.writeTo(copy);
+    assertArrayEquals("Written content", expected, copy.toByteArray());
+  }
+
+  private byte[] someBytes(int length) {
+    byte[] result = new byte[length];
+    for (int i = 0; i < length; i++) {
+      result[i] = (byte)i;
+    }
+    return result;
+  }
+
+  private byte[] read(ChunkedInputOutputStream buffer) throws IOException {
+    try (InputStream stream = buffer.getInputStream()) {
+      return IOUtils.toByteArray(stream);
+    }
+  }
+
+  @Test
+  public void shouldReadSnapshotOfData() throws IOException {
+    byte[] expected = someBytes(randomInt(10, 100));
+    ChunkedInputOutputStream buffer = new ChunkedInputOutputStream(expected.length);
+    buffer.write(expected);
+
+    InputStream snapshot = buffer.getInputStream();
+    buffer.write(someBytes(10));
+
+    assertArrayEquals("Content", expected, IOUtils.toByteArray(snapshot));
+    assertEquals("Size", expected.length + 10, buffer.size());
+  }
+
+  @Test
+  public void shouldSkipData() throws IOException {
+    byte[] data = someBytes(ChunkedInputOutputStream.CHUNK_SIZE + 10);
+    ChunkedInputOutputStream buffer = new ChunkedInputOutputStream(data.length);
+    buffer.write(data);
+
+    try (InputStream stream = buffer.getInputStream()) {
+      assertEquals("Skipped", data.length - 1, stream.skip(data.length - 1));
+      assertEquals("Last byte", data[data.length - 1] & 0xFF, stream.read());
+      assertEquals("End", -1, stream.read());
+    }
+  }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import com.emc.ia.sdk.support.test.TestCase;
+
+
+public class WhenBufferingDataInSlabs extends TestCase {
+
+  private static final int SLAB_SIZE = 64;
+
+  private final SlabPool pool = new SlabPool(SLAB_SIZE, 4 * SLAB_SIZE);
+  private final SlabBuffer buffer = new SlabBuffer(pool);
+
+  @Test
+  public void shouldReadBackWrittenData() throws IOException {
+    byte[] expected = randomBytes(3 * SLAB_SIZE + 1);
+
+    write(expected);
+
+    assertEquals("Length", expected.length, buffer.length());
+    assertArrayEquals("Content", expected, read());
+    assertArrayEquals("Content read again", expected, read());
+    assertEquals("# slabs", 4, pool.numSlabsInUse());
+  }
+
+  private byte[] randomBytes(int length) {
+    byte[] result = new byte[length];
+    for (int i = 0; i < length; i++) {
+      result[i] = (byte)randomInt(256);
+    }
+    return result;
+  }
+
+  private void write(byte[] data) throws IOException {
+    try (OutputStream stream = buffer.openForWriting()) {
+      stream.write(data[0]);
+      stream.write(data, 1, data.length - 1);
+    }
+  }
+
+  private byte[] read() throws IOException {
+    try (InputStream stream = buffer.openForReading()) {
+      return IOUtils.toByteArray(stream);
+    }
+  }
+
+  @Test
+  public void shouldReturnSlabsToPoolWhenClosed() throws IOException {
+    write(randomBytes(2 * SLAB_SIZE));
+
+    buffer.close();
+
+    assertEquals("# slabs in use", 0, pool.numSlabsInUse());
+    assertEquals("Length", 0, buffer.length());
+    try (SlabBuffer other = new SlabBuffer(pool)) {
+      try (OutputStream stream = other.openForWriting()) {
+        stream.write(randomBytes(4 * SLAB_SIZE));
+      }
+      assertEquals("# slabs reused", 4, pool.numSlabsInUse());
+    }
+  }
+
+  @Test
+  public void shouldNotExceedBudget() throws IOException {
+    try {
+      write(randomBytes(4 * SLAB_SIZE + 1));
+      fail("Missing exception");
+    } catch (IOException e) {
+      assertEquals("# slabs in use", 4, pool.numSlabsInUse());
+    }
+  }
+
+  @Test
+  public void shouldRejectReleasingSlabThatIsNotInUse() throws IOException {
+    ByteBuffer slab = pool.acquire();
+    pool.release(slab);
+
+    assertReleaseRejected("Released twice", slab);
+    assertReleaseRejected("From other pool", new SlabPool(SLAB_SIZE, SLAB_SIZE).acquire());
+    assertReleaseRejected("Not from a pool", ByteBuffer.allocateDirect(SLAB_SIZE));
+    assertEquals("# slabs in use", 0, pool.numSlabsInUse());
+  }
+
+  private void assertReleaseRejected(String message, ByteBuffer slab) {
+    try {
+      pool.release(slab);
+      fail(message);
+    } catch (IllegalArgumentException e) {
+      // Expected
+    }
+  }
+
+}
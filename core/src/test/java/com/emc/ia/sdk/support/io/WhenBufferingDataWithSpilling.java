@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import com.emc.ia.sdk.support.test.TestCase;
+
+
+public class WhenBufferingDataWithSpilling extends TestCase {
+
+  private static final int THRESHOLD = 100;
+
+  private final SpillingDataBuffer buffer = new SpillingDataBuffer(THRESHOLD);
+
+  @Test
+  public void shouldKeepSmallDataInMemory() throws IOException {
+    byte[] expected = new byte[THRESHOLD];
+    SpillingDataBuffer.Statistics before = SpillingDataBuffer.getStatistics();
+
+    write(expected);
+
+    assertFalse("Spilled", buffer.isSpilled());
+    assertEquals("Length", expected.length, buffer.length());
+    assertArrayEquals("Content", expected, read());
+    assertEquals("# spilled", before.numSpilled(), SpillingDataBuffer.getStatistics().numSpilled());
+  }
+
+  private void write(byte[] data) throws IOException {
+    try (OutputStream stream = buffer.openForWriting()) {
+      stream.write(data, 0, 1);
+      stream.write(data, 1, data.length - 1);
+    }
+  }
+
+  private byte[] read() throws IOException {
+    try (InputStream stream = buffer.openForReading()) {
+      return IOUtils.toByteArray(stream);
+    }
+  }
+
+  @Test
+  public void shouldSpillLargeDataToDisk() throws IOException {
+    byte[] expected = new byte[THRESHOLD + 1 + randomInt(1000)];
+    for (int i = 0; i < expected.length; i++) {
+      expected[i] = (byte)i;
+    }
+    SpillingDataBuffer.Statistics before = SpillingDataBuffer.getStatistics();
+
+    write(expected);
+
+    assertTrue("Not spilled", buffer.isSpilled());
+    assertEquals("Length", expected.length, buffer.length());
+    assertArrayEquals("Content", expected, read());
+    assertArrayEquals("Content read again", expected, read());
+    SpillingDataBuffer.Statistics after = SpillingDataBuffer.getStatistics();
+    assertTrue("# spilled", after.numSpilled() > before.numSpilled());
+    assertTrue("# bytes spilled", after.numBytesSpilled() >= before.numBytesSpilled() + expected.length);
+  }
+
+  @Test
+  public void shouldReleaseDataWhenClosed() throws IOException {
+    write(new byte[2 * THRESHOLD]);
+
+    buffer.close();
+
+    assertEquals("Length", 0, buffer.length());
+    assertFalse("Still spilled", buffer.isSpilled());
+  }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.emc.ia.sdk.support.test.TestCase;
+
+
+public class WhenComparingEncodedHashes extends TestCase {
+
+  private static final String HASH_FUNCTION = "SHA-1";
+
+  @Test
+  public void shouldEncodeDigestOnDemand() {
+    byte[] digest = randomBytes();
+
+    EncodedHash hash = new EncodedHash(HASH_FUNCTION, Encoding.HEX, digest);
+
+    assertEquals("Value", Encoding.HEX.encode(digest), hash.getValue());
+    assertArrayEquals("Digest", digest, hash.getDigest());
+    assertEquals("Encoding", "hex", hash.getEncoding());
+  }
+
+  @Test
+  public void shouldEqualHashWithSameEncodedValue() {
+    byte[] digest = randomBytes();
+    EncodedHash binary = new EncodedHash(HASH_FUNCTION, Encoding.BASE64, digest);
+    EncodedHash encoded = new EncodedHash(HASH_FUNCTION, "base64", Encoding.BASE64.encode(digest));
+
+    assertEquals("Binary vs encoded", binary, encoded);
+    assertEquals("Encoded vs binary", encoded, binary);
+    assertEquals("Hash code", binary.hashCode(), encoded.hashCode());
+    assertNotEquals("Different digest", binary, new EncodedHash(HASH_FUNCTION, Encoding.BASE64, randomBytes()));
+    assertNotEquals("Different function", binary, new EncodedHash("MD5", Encoding.BASE64, digest));
+    assertNotEquals("Malformed value", binary, new EncodedHash(HASH_FUNCTION, "base64",
+        Encoding.BASE64.encode(digest) + '!'));
+  }
+
+  @Test
+  public void shouldCompareValuesForUnknownEncoding() {
+    String value = randomString();
+
+    assertEquals("Same", new EncodedHash(HASH_FUNCTION, "custom", value), new EncodedHash(HASH_FUNCTION, "custom",
+        value));
+    assertNotEquals("Different", new EncodedHash(HASH_FUNCTION, "custom", value), new EncodedHash(HASH_FUNCTION,
+        "custom", value + "x"));
+  }
+
+}
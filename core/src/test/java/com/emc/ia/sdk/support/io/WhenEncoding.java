@@ -3,7 +3,9 @@
  */
 package com.emc.ia.sdk.support.io;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
@@ -38,4 +40,38 @@ public class WhenEncoding extends TestCase {
     assertEquals("Text", text, new String(new Hex().decode(actual.getBytes(CHAR_SET)), CHAR_SET));
   }
 
+  @Test
+  public void shouldEncodeSameAsCommonsCodec() {
+    for (int length = 0; length < 10; length++) {
+      byte[] bytes = new byte[length];
+      for (int i = 0; i < length; i++) {
+        bytes[i] = (byte)randomInt(256);
+      }
+
+      assertEquals("Base64 of " + length + " bytes", Base64.encodeBase64String(bytes), Encoding.BASE64.encode(bytes));
+      assertEquals("Hex of " + length + " bytes", Hex.encodeHexString(bytes), Encoding.HEX.encode(bytes));
+      assertArrayEquals("Decoded base64", bytes, Encoding.BASE64.decode(Encoding.BASE64.encode(bytes)));
+      assertArrayEquals("Decoded hex", bytes, Encoding.HEX.decode(Encoding.HEX.encode(bytes)));
+    }
+  }
+
+  @Test
+  public void shouldRejectMalformedValues() {
+    for (String value : new String[] { "QQ", "QQ=", "QUI", "QUJD=", "QQ==QQ==", "Q!==", "QR==", "QQ== ", "Q\nQ==" }) {
+      assertRejected(Encoding.BASE64, value);
+    }
+    for (String value : new String[] { "a", "0g", "0 " }) {
+      assertRejected(Encoding.HEX, value);
+    }
+  }
+
+  private void assertRejected(Encoding encoding, String value) {
+    try {
+      encoding.decode(value);
+      fail("Accepted " + encoding + " value '" + value + "'");
+    } catch (IllegalArgumentException e) {
+      // Expected
+    }
+  }
+
 }
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.emc.ia.sdk.support.test.TestCase;
+
+
+public class WhenFilteringHashes extends TestCase {
+
+  @Test
+  public void shouldNotMissAddedHashes() {
+    BloomFilter filter = new BloomFilter(1000);
+    Set<Long> added = new HashSet<>();
+    for (int i = 0; i < 1000; i++) {
+      long hash = randomLong();
+      filter.add(hash);
+      added.add(hash);
+    }
+
+    added.forEach(hash -> assertTrue("Missing hash", filter.mightContain(hash)));
+    int numFalsePositives = 0;
+    for (int i = 0; i < 10000; i++) {
+      long hash = randomLong();
+      if (!added.contains(hash) && filter.mightContain(hash)) {
+        numFalsePositives++;
+      }
+    }
+    assertTrue("Too many false positives: " + numFalsePositives, numFalsePositives < 500);
+  }
+
+  private long randomLong() {
+    return (long)randomInt(Integer.MAX_VALUE) << 32 ^ randomInt(Integer.MAX_VALUE);
+  }
+
+}
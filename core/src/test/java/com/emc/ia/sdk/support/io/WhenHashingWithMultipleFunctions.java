@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import com.emc.ia.sdk.support.test.TestCase;
+
+
+public class WhenHashingWithMultipleFunctions extends TestCase {
+
+  private final HashAssembler hashAssembler = new MultiHashAssembler(Encoding.HEX, HashFunction.SHA256,
+      HashFunction.MD5);
+
+  @Test
+  public void shouldAssembleSameHashesAsSingleHashAssemblers() {
+    assertHashes(new byte[0]);
+    assertHashes(randomBytes());
+    assertHashes(content(1024 * 1024 + randomInt(1000)));
+  }
+
+  private byte[] content(int length) {
+    byte[] result = new byte[length];
+    new Random().nextBytes(result);
+    return result;
+  }
+
+  private void assertHashes(byte[] content) {
+    hashAssembler.initialize();
+    int offset = 0;
+    while (offset < content.length) {
+      int length = Math.min(content.length - offset, randomInt(1, 100000));
+      byte[] buffer = new byte[length];
+      System.arraycopy(content, offset, buffer, 0, length);
+      hashAssembler.add(buffer, length);
+      // Reuse the buffer, like IOStreams.copy does, to make sure the data was copied
+      buffer[0]++;
+      offset += length;
+    }
+
+    assertEquals("Hashes of " + content.length + " bytes", expectedHashes(content), hashAssembler.get());
+    assertEquals("# bytes hashed", content.length, hashAssembler.numBytesHashed());
+  }
+
+  private List<EncodedHash> expectedHashes(byte[] content) {
+    List<EncodedHash> result = new ArrayList<>();
+    for (HashFunction hashFunction : new HashFunction[] { HashFunction.SHA256, HashFunction.MD5 }) {
+      HashAssembler expected = new SingleHashAssembler(hashFunction, Encoding.HEX);
+      expected.initialize();
+      expected.add(content, content.length);
+      result.addAll(expected.get());
+    }
+    return result;
+  }
+
+  @Test
+  public void shouldHashByteBuffers() {
+    byte[] content = content(300000);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(content.length);
+    buffer.put(content);
+    buffer.flip();
+
+    hashAssembler.initialize();
+    hashAssembler.add(buffer);
+    Collection<EncodedHash> actual = hashAssembler.get();
+
+    assertEquals("Hashes", expectedHashes(content), actual);
+    assertFalse("Buffer not consumed", buffer.hasRemaining());
+  }
+
+  @Test
+  public void shouldStartOverWhenInitializedBeforeGettingHashes() {
+    hashAssembler.initialize();
+    byte[] ignored = content(500000);
+    hashAssembler.add(ignored, ignored.length);
+
+    assertHashes(content(200000));
+  }
+
+  @Test
+  public void shouldReleaseThreadsWhenAbandoningHash() {
+    hashAssembler.initialize();
+    // More data than fits in the ring of chunks, so that the digesting threads have started
+    byte[] abandoned = content(1000000);
+    hashAssembler.add(abandoned, abandoned.length);
+    assertTrue("Hashing on other threads", numDigestingThreads() > 0);
+
+    hashAssembler.abort();
+
+    assertEquals("# threads still hashing", 0, numDigestingThreads());
+    assertHashes(content(200000));
+  }
+
+  private long numDigestingThreads() {
+    return digestingThreads().count();
+  }
+
+  private Stream<Thread> digestingThreads() {
+    return Thread.getAllStackTraces().entrySet().stream()
+      .filter(entry -> Arrays.stream(entry.getValue()).anyMatch(frame -> MultiHashAssembler.class.getName().equals(
+          frame.getClassName()) && "digest".equals(frame.getMethodName())))
+      .map(Map.Entry::getKey);
+  }
+
+  @Test
+  public void shouldFailInsteadOfWaitingForFailedThread() {
+    hashAssembler.initialize();
+    byte[] content = content(1000000);
+    hashAssembler.add(content, content.length);
+    digestingThreads().forEach(Thread::interrupt);
+
+    try {
+      for (int i = 0; i < 100; i++) {
+        hashAssembler.add(content, content.length);
+      }
+      fail("Missing exception");
+    } catch (IllegalStateException e) {
+      assertTrue("Cause", e.getCause() instanceof InterruptedException);
+    } finally {
+      hashAssembler.abort();
+    }
+    assertHashes(content(200000));
+  }
+
+}
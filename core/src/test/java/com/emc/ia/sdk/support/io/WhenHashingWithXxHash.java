@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.emc.ia.sdk.support.test.TestCase;
+
+
+public class WhenHashingWithXxHash extends TestCase {
+
+  private final XxHashAssembler hashAssembler = new XxHashAssembler();
+
+  @Test
+  public void shouldMatchReferenceImplementation() {
+    assertHash(0xEF46DB3751D8E999L, "");
+    assertHash(0xD24EC4F1A98C6E5BL, "a");
+    assertHash(0x44BC2CF5AD770999L, "abc");
+    assertHash(0xFBCEA83C8A378BF1L, "Nobody inspects the spammish repetition");
+  }
+
+  private void assertHash(long expected, String text) {
+    byte[] content = text.getBytes(StandardCharsets.US_ASCII);
+    hashAssembler.initialize();
+    hashAssembler.add(content, content.length);
+
+    assertEquals("Hash of '" + text + "'", expected, hashAssembler.getHash());
+  }
+
+  @Test
+  public void shouldNotDependOnHowDataIsAdded() {
+    byte[] content = new byte[randomInt(100, 10000)];
+    new Random().nextBytes(content);
+    hashAssembler.initialize();
+    hashAssembler.add(content, content.length);
+    long expected = hashAssembler.getHash();
+
+    hashAssembler.initialize();
+    int offset = 0;
+    while (offset < content.length) {
+      int length = Math.min(content.length - offset, randomInt(1, 50));
+      hashAssembler.add(ByteBuffer.wrap(content, offset, length));
+      offset += length;
+    }
+
+    assertEquals("Hash", expected, hashAssembler.getHash());
+    assertEquals("# bytes hashed", content.length, hashAssembler.numBytesHashed());
+    assertEquals("Encoded hash", Long.toHexString(expected), hashAssembler.get().iterator().next().getValue()
+        .replaceFirst("^0+", ""));
+  }
+
+}
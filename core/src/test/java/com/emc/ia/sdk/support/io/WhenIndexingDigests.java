@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.emc.ia.sdk.support.test.TestCase;
+
+
+public class WhenIndexingDigests extends TestCase {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private Path directory;
+
+  @Before
+  public void init() throws IOException {
+    directory = folder.newFolder().toPath();
+  }
+
+  @Test
+  public void shouldFindAddedDigests() throws IOException {
+    byte[] digest = randomBytes();
+    String value = randomString();
+
+    try (DigestIndex index = new DigestIndex(directory)) {
+      assertNull("Value before adding", index.get(digest));
+      assertNull("Previous value", index.putIfAbsent(digest, value));
+      assertEquals("Value", value, index.get(digest));
+      assertEquals("Existing value", value, index.putIfAbsent(digest, randomString()));
+      assertEquals("Size", 1, index.size());
+    }
+  }
+
+  @Test
+  public void shouldKeepDigestsAcrossRestartsAndGrowth() throws IOException {
+    int numDigests = 3000;
+    try (DigestIndex index = new DigestIndex(directory)) {
+      for (int i = 0; i < numDigests; i++) {
+        index.putIfAbsent(digest(i), Integer.toString(i));
+      }
+    }
+
+    try (DigestIndex index = new DigestIndex(directory)) {
+      assertEquals("Size", numDigests, index.size());
+      for (int i = 0; i < numDigests; i++) {
+        assertEquals("Value", Integer.toString(i), index.get(digest(i)));
+      }
+      assertNull("Unknown digest", index.get(digest(numDigests)));
+    }
+  }
+
+  private byte[] digest(int value) {
+    return ByteBuffer.allocate(20).putInt(16, value).array();
+  }
+
+  @Test
+  public void shouldRebuildMissingTableFromLog() throws IOException {
+    try (DigestIndex index = new DigestIndex(directory)) {
+      index.putIfAbsent(digest(1), "one");
+      index.putIfAbsent(digest(2), "two");
+    }
+    Files.delete(directory.resolve("digests.idx"));
+
+    try (DigestIndex index = new DigestIndex(directory)) {
+      assertEquals("Size", 2, index.size());
+      assertEquals("Value", "two", index.get(digest(2)));
+    }
+  }
+
+  @Test
+  public void shouldDiscardPartlyWrittenRecord() throws IOException {
+    try (DigestIndex index = new DigestIndex(directory)) {
+      index.putIfAbsent(digest(1), "one");
+    }
+    Path log = directory.resolve("digests.log");
+    long validLength = Files.size(log);
+    try (FileChannel channel = FileChannel.open(log, StandardOpenOption.APPEND)) {
+      channel.write(ByteBuffer.wrap(new byte[] { 0, 0, 0, 42, 1, 2, 3 }));
+    }
+
+    try (DigestIndex index = new DigestIndex(directory)) {
+      assertEquals("Value", "one", index.get(digest(1)));
+      assertEquals("Log length", validLength, Files.size(log));
+      index.putIfAbsent(digest(2), "two");
+    }
+    try (DigestIndex index = new DigestIndex(directory)) {
+      assertEquals("Value after recovery", "two", index.get(digest(2)));
+    }
+  }
+
+  @Test
+  public void shouldTreatDamagedRecordAsMissing() throws IOException {
+    try (DigestIndex index = new DigestIndex(directory)) {
+      index.putIfAbsent(digest(1), "one");
+      index.putIfAbsent(digest(2), "two");
+    }
+    try (FileChannel channel = FileChannel.open(directory.resolve("digests.log"), StandardOpenOption.WRITE)) {
+      // Overwrite part of the first record's value, so that its checksum no longer matches
+      channel.write(ByteBuffer.wrap(new byte[] { 'X' }), 8 + 4 + 20);
+    }
+
+    try (DigestIndex index = new DigestIndex(directory)) {
+      assertNull("Damaged value", index.get(digest(1)));
+      assertEquals("Undamaged value", "two", index.get(digest(2)));
+      assertNull("Previous value", index.putIfAbsent(digest(1), "uno"));
+      assertEquals("Value", "uno", index.get(digest(1)));
+    }
+  }
+
+  @Test
+  public void shouldNotOpenIndexThatIsInUse() throws IOException {
+    try (DigestIndex index = new DigestIndex(directory)) {
+      index.putIfAbsent(digest(1), "one");
+      try {
+        new DigestIndex(directory).close();
+        fail("Missing exception");
+      } catch (IOException e) {
+        assertTrue("Message", e.getMessage().contains("in use"));
+      }
+      assertEquals("Value", "one", index.get(digest(1)));
+    }
+    try (DigestIndex index = new DigestIndex(directory)) {
+      assertEquals("Value after closing", "one", index.get(digest(1)));
+    }
+  }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import com.emc.ia.sdk.support.test.TestCase;
+
+
+public class WhenMappingDigests extends TestCase {
+
+  private final DigestMap<String> map = new DigestMap<>(4);
+
+  @Test
+  public void shouldFindAddedDigests() {
+    int numDigests = 1000;
+    for (int i = 0; i < numDigests; i++) {
+      assertNull("Previous value", map.putIfAbsent(digest(i), Integer.toString(i)));
+    }
+
+    assertEquals("Size", numDigests, map.size());
+    for (int i = 0; i < numDigests; i++) {
+      assertEquals("Value", Integer.toString(i), map.get(digest(i)));
+    }
+    assertNull("Unknown digest", map.get(digest(numDigests)));
+    assertEquals("Values", numDigests, new HashSet<>(map.values()).size());
+  }
+
+  private byte[] digest(int value) {
+    // Differ only in the last word, to make sure all words are compared
+    return ByteBuffer.allocate(20).putInt(16, value).array();
+  }
+
+  @Test
+  public void shouldKeepFirstValue() {
+    byte[] digest = randomBytes();
+    String value = randomString();
+    map.putIfAbsent(digest, value);
+
+    assertEquals("Existing value", value, map.putIfAbsent(digest.clone(), randomString()));
+    assertEquals("Value", value, map.get(digest));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectDigestsOfDifferentLength() {
+    map.putIfAbsent(new byte[20], randomString());
+    map.putIfAbsent(new byte[32], randomString());
+  }
+
+  @Test
+  public void shouldForgetDigestsWhenCleared() {
+    byte[] digest = randomBytes();
+    map.putIfAbsent(digest, randomString());
+
+    map.clear();
+
+    assertNull("Value", map.get(digest));
+    assertEquals("Size", 0, map.size());
+  }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import com.emc.ia.sdk.support.test.TestCase;
+
+
+public class WhenStreamingZipEntries extends TestCase {
+
+  private final ZipAssembler zip = new StreamingZipAssembler(CompressionPolicy.byContent());
+  private final ByteArrayInputOutputStream output = new ByteArrayInputOutputStream();
+
+  @Test
+  public void shouldWriteStreamedEntryBeforeEntriesAddedWhileItWasOpen() throws IOException {
+    byte[] streamedContent = randomBytes();
+    byte[] content1 = randomBytes();
+    byte[] content2 = randomBytes();
+    byte[] content3 = randomBytes();
+    HashAssembler streamedHashAssembler = new SingleHashAssembler();
+
+    zip.begin(output);
+    try (OutputStream streamed = zip.beginEntry("streamed", streamedHashAssembler)) {
+      streamed.write(streamedContent, 0, 1);
+      zip.addEntry("entry1", new ByteArrayInputStream(content1), new NoHashAssembler());
+      streamed.write(streamedContent, 1, streamedContent.length - 1);
+      zip.addEntry("entry2.jpg", new ByteArrayInputStream(content2), new NoHashAssembler());
+    }
+    zip.addEntry("entry3", new ByteArrayInputStream(content3), new NoHashAssembler());
+    zip.close();
+
+    assertEquals("Streamed hash", hashOf(streamedContent), streamedHashAssembler.get());
+    assertEquals("# bytes hashed", streamedContent.length, streamedHashAssembler.numBytesHashed());
+    List<String> names = new ArrayList<>();
+    try (ZipInputStream unzip = new ZipInputStream(output.getInputStream())) {
+      for (byte[] expected : Arrays.asList(streamedContent, content1, content2, content3)) {
+        ZipEntry entry = unzip.getNextEntry();
+        assertNotNull("Missing entry", entry);
+        names.add(entry.getName());
+        assertArrayEquals("Content of " + entry.getName(), expected, IOUtils.toByteArray(unzip));
+      }
+      assertNull("Additional entries", unzip.getNextEntry());
+    }
+    assertEquals("Entries", Arrays.asList("streamed", "entry1", "entry2.jpg", "entry3"), names);
+  }
+
+  private Collection<EncodedHash> hashOf(byte[] content) {
+    HashAssembler result = new SingleHashAssembler();
+    result.initialize();
+    result.add(content, content.length);
+    return result.get();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldStreamOnlyOneEntryAtATime() throws IOException {
+    zip.begin(output);
+    zip.beginEntry(randomString(), new NoHashAssembler());
+    zip.beginEntry(randomString(), new NoHashAssembler());
+  }
+
+  @Test
+  public void shouldBufferStreamedEntryInZipEntryBuffer() throws IOException {
+    byte[] content = randomBytes();
+    ZipEntryBuffer buffer = new ZipEntryBuffer(zip, "buffered", new NoHashAssembler());
+
+    zip.begin(output);
+    buffer.openForWriting().write(content);
+    buffer.close();
+    zip.close();
+
+    assertEquals("Length", content.length, buffer.length());
+    try (ZipInputStream unzip = new ZipInputStream(output.getInputStream())) {
+      assertEquals("Entry", "buffered", unzip.getNextEntry().getName());
+      assertArrayEquals("Content", content, IOUtils.toByteArray(unzip));
+    }
+  }
+
+}
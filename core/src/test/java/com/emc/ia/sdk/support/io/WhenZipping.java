@@ -9,9 +9,14 @@ import static org.mockito.Mockito.*;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -24,6 +29,8 @@ import com.emc.ia.sdk.support.test.TestCase;
 
 public class WhenZipping extends TestCase {
 
+  private static final int MAX_BYTES_IN_MEMORY = 16 * 1024;
+
   private final ZipAssembler zip = new DefaultZipAssembler();
   private final ByteArrayInputOutputStream output = new ByteArrayInputOutputStream();
 
@@ -79,6 +86,148 @@ public class WhenZipping extends TestCase {
     assertEquals("Hash", expected, actual);
   }
 
+  @Test
+  public void shouldStoreEntriesAccordingToCompressionPolicy() throws IOException {
+    String storedName = someName() + ".jpg";
+    byte[] storedContent = randomBytes();
+    String deflatedName = someName() + ".txt";
+    byte[] deflatedContent = randomBytes();
+    ZipAssembler policyZip = new DefaultZipAssembler(CompressionPolicy.byContent());
+    SingleHashAssembler hashAssembler = new SingleHashAssembler();
+    SingleHashAssembler expectedHashAssembler = new SingleHashAssembler();
+    expectedHashAssembler.initialize();
+    expectedHashAssembler.add(storedContent, storedContent.length);
+    Collection<EncodedHash> expectedHashes = expectedHashAssembler.get();
+
+    policyZip.begin(output);
+    Collection<EncodedHash> actualHashes = policyZip.addEntry(storedName, new ByteArrayInputStream(storedContent),
+        hashAssembler);
+    policyZip.addEntry(deflatedName, new ByteArrayInputStream(deflatedContent), hashAssembler);
+    policyZip.close();
+
+    assertEquals("Hash", expectedHashes, actualHashes);
+    try (ZipInputStream unzip = new ZipInputStream(output.getInputStream())) {
+      ZipEntry entry = unzip.getNextEntry();
+      assertEquals("Zip entry #1", storedName, entry.getName());
+      assertEquals("Method #1", ZipEntry.STORED, entry.getMethod());
+      assertArrayEquals("Zip content #1", storedContent, IOUtils.toByteArray(unzip));
+
+      entry = unzip.getNextEntry();
+      assertEquals("Zip entry #2", deflatedName, entry.getName());
+      assertEquals("Method #2", ZipEntry.DEFLATED, entry.getMethod());
+      assertArrayEquals("Zip content #2", deflatedContent, IOUtils.toByteArray(unzip));
+    }
+  }
+
+  @Test
+  public void shouldKeepLimitedPartOfLargeStoredEntriesInMemory() throws IOException {
+    assertLargeStoredEntrySpilled(new DefaultZipAssembler(CompressionPolicy.byContent(), MAX_BYTES_IN_MEMORY));
+  }
+
+  @Test
+  public void shouldKeepLimitedPartOfLargeStoredEntriesInMemoryWhenZippingInParallel() throws IOException {
+    assertLargeStoredEntrySpilled(new ParallelZipAssembler(2, 2, CompressionPolicy.byContent(), MAX_BYTES_IN_MEMORY));
+  }
+
+  private void assertLargeStoredEntrySpilled(ZipAssembler zipAssembler) throws IOException {
+    byte[] content = new byte[20 * MAX_BYTES_IN_MEMORY];
+    new Random().nextBytes(content);
+    String name = someName();
+    SpillingDataBuffer.Statistics before = SpillingDataBuffer.getStatistics();
+
+    zipAssembler.begin(output);
+    zipAssembler.addEntry(name, new ByteArrayInputStream(content), new NoHashAssembler());
+    zipAssembler.close();
+
+    SpillingDataBuffer.Statistics after = SpillingDataBuffer.getStatistics();
+    assertEquals("# spilled", 1, after.numSpilled() - before.numSpilled());
+    assertEquals("# bytes spilled", content.length, after.numBytesSpilled() - before.numBytesSpilled());
+    try (ZipInputStream unzip = new ZipInputStream(output.getInputStream())) {
+      ZipEntry entry = unzip.getNextEntry();
+      assertEquals("Zip entry", name, entry.getName());
+      assertEquals("Method", ZipEntry.STORED, entry.getMethod());
+      assertArrayEquals("Zip content", content, IOUtils.toByteArray(unzip));
+    }
+  }
+
+  @Test
+  public void shouldKeepLimitedPartOfLargeDeflatedEntriesInMemoryWhenZippingInParallel() throws IOException {
+    byte[] content = new byte[20 * MAX_BYTES_IN_MEMORY];
+    new Random().nextBytes(content);
+    String name = someName();
+    ZipAssembler zipAssembler = new ParallelZipAssembler(2, 2, CompressionPolicy.always(Compression.DEFAULT),
+        MAX_BYTES_IN_MEMORY);
+    SpillingDataBuffer.Statistics before = SpillingDataBuffer.getStatistics();
+
+    zipAssembler.begin(output);
+    zipAssembler.addEntry(name, new ByteArrayInputStream(content), new NoHashAssembler());
+    zipAssembler.close();
+
+    SpillingDataBuffer.Statistics after = SpillingDataBuffer.getStatistics();
+    assertEquals("# spilled", 2, after.numSpilled() - before.numSpilled());
+    try (ZipInputStream unzip = new ZipInputStream(output.getInputStream())) {
+      ZipEntry entry = unzip.getNextEntry();
+      assertEquals("Zip entry", name, entry.getName());
+      assertEquals("Method", ZipEntry.DEFLATED, entry.getMethod());
+      assertArrayEquals("Zip content", content, IOUtils.toByteArray(unzip));
+    }
+  }
+
+  @Test
+  public void shouldCloseOutputWhenWritingRemainingEntriesFails() throws IOException {
+    AtomicBoolean closed = new AtomicBoolean();
+    OutputStream failingOutput = new OutputStream() {
+      @Override
+      public void write(int value) throws IOException {
+        throw new IOException("Failed to write ZIP");
+      }
+
+      @Override
+      public void close() {
+        closed.set(true);
+      }
+    };
+    byte[] content = new byte[64 * MAX_BYTES_IN_MEMORY];
+    new Random().nextBytes(content);
+    ZipAssembler zipAssembler = new ParallelZipAssembler(1, 4);
+
+    zipAssembler.begin(failingOutput);
+    zipAssembler.addEntry(someName(), new ByteArrayInputStream(content), new NoHashAssembler());
+    try {
+      zipAssembler.close();
+      fail("Missing exception");
+    } catch (IOException e) {
+      assertTrue("Output not closed", closed.get());
+    }
+  }
+
+  @Test
+  public void shouldAbortHashWhenReadingContentFails() throws IOException {
+    assertHashAborted(new DefaultZipAssembler());
+    assertHashAborted(new ParallelZipAssembler(2));
+    assertHashAborted(new StreamingZipAssembler());
+  }
+
+  private void assertHashAborted(ZipAssembler zipAssembler) throws IOException {
+    HashAssembler hashAssembler = mock(HashAssembler.class);
+    InputStream content = new SequenceInputStream(new ByteArrayInputStream(randomBytes()), new InputStream() {
+      @Override
+      public int read() throws IOException {
+        throw new IOException("Failed to read content");
+      }
+    });
+    zipAssembler.begin(new ByteArrayInputOutputStream());
+    try {
+      zipAssembler.addEntry(someName(), content, hashAssembler);
+      fail("Missing exception");
+    } catch (IOException e) {
+      verify(hashAssembler).abort();
+      verify(hashAssembler, never()).get();
+    } finally {
+      zipAssembler.close();
+    }
+  }
+
   private EncodedHash someHash() {
     return new EncodedHash(someName(), someName(), someName());
   }
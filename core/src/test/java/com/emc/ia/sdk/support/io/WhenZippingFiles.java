@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.emc.ia.sdk.support.test.TestCase;
+
+
+public class WhenZippingFiles extends TestCase {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void shouldHashFileThroughChannel() throws IOException {
+    byte[] content = someContent();
+    File file = file(folder, content);
+    SingleHashAssembler expected = new SingleHashAssembler();
+    expected.initialize();
+    expected.add(content, content.length);
+    CRC32 expectedCrc = new CRC32();
+    expectedCrc.update(content);
+    SingleHashAssembler actual = new SingleHashAssembler();
+    actual.initialize();
+    CRC32 actualCrc = new CRC32();
+
+    try (FileChannelInputStream stream = new FileChannelInputStream(file.toPath())) {
+      assertEquals("Size", content.length, IOStreams.hash(stream.getChannel(), actual, actualCrc));
+    }
+
+    assertEquals("Hash", expected.get(), actual.get());
+    assertEquals("# bytes hashed", content.length, actual.numBytesHashed());
+    assertEquals("CRC", expectedCrc.getValue(), actualCrc.getValue());
+  }
+
+  private byte[] someContent() {
+    byte[] result = new byte[randomInt(10000, 100000)];
+    new Random().nextBytes(result);
+    return result;
+  }
+
+  @Test
+  public void shouldStoreFilesWithDefaultZipAssembler() throws IOException {
+    assertFilesZipped(new DefaultZipAssembler(CompressionPolicy.byContent()));
+  }
+
+  @Test
+  public void shouldStoreFilesWithParallelZipAssembler() throws IOException {
+    assertFilesZipped(new ParallelZipAssembler(2, 2, CompressionPolicy.byContent()));
+  }
+
+  private void assertFilesZipped(ZipAssembler zipAssembler) throws IOException {
+    byte[] storedContent = someContent();
+    byte[] deflatedContent = new byte[randomInt(10000, 100000)];
+    File zip = folder.newFile();
+    HashAssembler hashAssembler = new SingleHashAssembler();
+
+    Collection<EncodedHash> storedHash;
+    Collection<EncodedHash> deflatedHash;
+    FileBuffer buffer = new FileBuffer(zip);
+    zipAssembler.begin(buffer.openForWriting());
+    try (InputStream stored = new FileChannelInputStream(file(folder, storedContent).toPath());
+        InputStream deflated = new FileChannelInputStream(file(folder, deflatedContent).toPath())) {
+      storedHash = zipAssembler.addEntry("stored.jpg", stored, hashAssembler);
+      deflatedHash = zipAssembler.addEntry("deflated.txt", deflated, hashAssembler);
+    }
+    zipAssembler.close();
+
+    assertEquals("Stored hash", hashOf(storedContent), storedHash);
+    assertEquals("Deflated hash", hashOf(deflatedContent), deflatedHash);
+    try (ZipFile zipFile = new ZipFile(zip)) {
+      assertEntry(zipFile, "stored.jpg", ZipEntry.STORED, storedContent);
+      assertEntry(zipFile, "deflated.txt", ZipEntry.DEFLATED, deflatedContent);
+    }
+  }
+
+  @Test
+  public void shouldZipFilesThatAreDeletedOnceAdded() throws IOException {
+    byte[] deflatedContent = new byte[randomInt(100000, 1000000)];
+    byte[] storedContent = someContent();
+    File zip = folder.newFile();
+    ZipAssembler zipAssembler = new ParallelZipAssembler(2, 4, CompressionPolicy.byContent());
+
+    zipAssembler.begin(new FileBuffer(zip).openForWriting());
+    addAndDelete(zipAssembler, "deflated.txt", deflatedContent);
+    addAndDelete(zipAssembler, "stored.jpg", storedContent);
+    zipAssembler.close();
+
+    try (ZipFile zipFile = new ZipFile(zip)) {
+      assertEntry(zipFile, "deflated.txt", ZipEntry.DEFLATED, deflatedContent);
+      assertEntry(zipFile, "stored.jpg", ZipEntry.STORED, storedContent);
+    }
+  }
+
+  private void addAndDelete(ZipAssembler zipAssembler, String name, byte[] content) throws IOException {
+    File file = file(folder, content);
+    try (InputStream stream = new FileChannelInputStream(file.toPath())) {
+      zipAssembler.addEntry(name, stream, new NoHashAssembler());
+    }
+    assertTrue("Deleted", file.delete());
+  }
+
+  private Collection<EncodedHash> hashOf(byte[] content) throws IOException {
+    HashAssembler result = new SingleHashAssembler();
+    result.initialize();
+    IOStreams.copy(new ByteArrayInputStream(content), new ByteArrayInputOutputStream(), 4096, result);
+    return result.get();
+  }
+
+  private void assertEntry(ZipFile zipFile, String name, int method, byte[] content) throws IOException {
+    ZipEntry entry = zipFile.getEntry(name);
+    assertNotNull("Missing entry " + name, entry);
+    assertEquals("Method of " + name, method, entry.getMethod());
+    try (InputStream stream = zipFile.getInputStream(entry)) {
+      assertArrayEquals("Content of " + name, content, IOUtils.toByteArray(stream));
+    }
+  }
+
+}
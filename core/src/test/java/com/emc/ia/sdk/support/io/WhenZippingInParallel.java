@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.emc.ia.sdk.support.test.TestCase;
+
+
+public class WhenZippingInParallel extends TestCase {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private final Map<String, byte[]> contents = new LinkedHashMap<>();
+
+  @Test
+  public void shouldWriteSameEntriesAsDefaultZipAssembler() throws IOException {
+    Random random = new Random();
+    for (int i = 0; i < 50; i++) {
+      contents.put("entry" + i, compressibleBytes());
+      if (i % 5 == 0) {
+        byte[] incompressible = new byte[randomInt(5000, 50000)];
+        random.nextBytes(incompressible);
+        contents.put("random" + i, incompressible);
+      }
+    }
+    contents.put("empty", new byte[0]);
+
+    File expected = zip(new DefaultZipAssembler(CompressionPolicy.byContent()));
+    File actual = zip(new ParallelZipAssembler(4, 3, CompressionPolicy.byContent()));
+
+    List<ZipEntry> expectedEntries = entriesOf(expected);
+    List<ZipEntry> actualEntries = entriesOf(actual);
+    assertEquals("# entries", expectedEntries.size(), actualEntries.size());
+    for (int i = 0; i < expectedEntries.size(); i++) {
+      ZipEntry expectedEntry = expectedEntries.get(i);
+      ZipEntry actualEntry = actualEntries.get(i);
+      assertEquals("Name", expectedEntry.getName(), actualEntry.getName());
+      assertEquals("Method", expectedEntry.getMethod(), actualEntry.getMethod());
+      assertEquals("CRC", expectedEntry.getCrc(), actualEntry.getCrc());
+      assertEquals("Size", expectedEntry.getSize(), actualEntry.getSize());
+      assertEquals("Compressed size", expectedEntry.getCompressedSize(), actualEntry.getCompressedSize());
+    }
+    assertContents(actual);
+  }
+
+  private byte[] compressibleBytes() {
+    byte[] result = new byte[randomInt(1000, 100000)];
+    byte[] pattern = randomBytes();
+    for (int i = 0; i < result.length; i++) {
+      result[i] = pattern[i % pattern.length];
+    }
+    return result;
+  }
+
+  private File zip(ZipAssembler zip) throws IOException {
+    File result = folder.newFile();
+    try (FileOutputStream output = new FileOutputStream(result)) {
+      zip.begin(output);
+      for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+        zip.addEntry(entry.getKey(), new ByteArrayInputStream(entry.getValue()), new NoHashAssembler());
+      }
+      zip.close();
+    }
+    return result;
+  }
+
+  private List<ZipEntry> entriesOf(File zip) throws IOException {
+    List<ZipEntry> result = new ArrayList<>();
+    try (ZipFile zipFile = new ZipFile(zip)) {
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements()) {
+        result.add(entries.nextElement());
+      }
+    }
+    return result;
+  }
+
+  private void assertContents(File zip) throws IOException {
+    List<String> names = new ArrayList<>();
+    try (ZipInputStream unzip = new ZipInputStream(new ByteArrayInputStream(IOUtils.toByteArray(zip.toURI())))) {
+      ZipEntry entry = unzip.getNextEntry();
+      while (entry != null) {
+        names.add(entry.getName());
+        assertArrayEquals("Content of " + entry.getName(), contents.get(entry.getName()), IOUtils.toByteArray(unzip));
+        entry = unzip.getNextEntry();
+      }
+    }
+    assertEquals("Entries", new ArrayList<>(contents.keySet()), names);
+  }
+
+  @Test
+  public void shouldCalculateHashesOnCallingThread() throws IOException {
+    byte[] content = randomBytes();
+    SingleHashAssembler expected = new SingleHashAssembler();
+    expected.initialize();
+    expected.add(content, content.length);
+    ZipAssembler zip = new ParallelZipAssembler(2);
+
+    zip.begin(new ByteArrayInputOutputStream());
+    Collection<EncodedHash> actual = zip.addEntry(randomString(), new ByteArrayInputStream(content),
+        new SingleHashAssembler());
+    zip.close();
+
+    assertEquals("Hash", expected.get(), actual);
+  }
+
+  @Test
+  public void shouldUseZip64ForManyEntries() throws IOException {
+    byte[] content = randomBytes();
+    for (int i = 0; i < 0x10000; i++) {
+      contents.put(Integer.toString(i), content);
+    }
+
+    File zip = zip(new ParallelZipAssembler());
+
+    try (ZipFile zipFile = new ZipFile(zip)) {
+      assertEquals("# entries", contents.size(), zipFile.size());
+      try (InputStream stream = zipFile.getInputStream(zipFile.getEntry("65535"))) {
+        assertArrayEquals("Content", content, IOUtils.toByteArray(stream));
+      }
+    }
+  }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sdk.support.xml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.emc.ia.sdk.support.test.TestCase;
+
+
+public class WhenStreamingXml extends TestCase {
+
+  private final StringWriter writer = new StringWriter();
+
+  @Test
+  public void shouldWriteSameXmlAsDom() {
+    String namespace = randomString();
+    String root = randomString();
+    String attributeValue = randomString();
+    String text = randomString();
+
+    new StreamingXmlBuilder(writer, "  ")
+        .namespace(namespace)
+        .element(root)
+            .attribute("name", attributeValue)
+            .element("empty")
+            .end()
+            .element("child", text)
+            .element("parent")
+                .element("grandChild", " " + text + "\n")
+            .end()
+            .element("mixed")
+                .text(text)
+                .element("child", text)
+            .end()
+            .elements("items", "item", Arrays.asList(text, text), (item, xml) -> xml.text(item))
+        .end();
+
+    String expected = XmlUtil.toString(XmlBuilder.newDocument()
+        .namespace(namespace)
+        .element(root)
+            .attribute("name", attributeValue)
+            .element("empty")
+            .end()
+            .element("child", text)
+            .element("parent")
+                .element("grandChild", " " + text + "\n")
+            .end()
+            .element("mixed")
+                .text(text)
+                .element("child", text)
+            .end()
+            .elements("items", "item", Arrays.asList(text, text), (item, xml) -> xml.text(item))
+        .end()
+        .build()
+        .getDocumentElement(), "  ");
+    assertEquals("XML", expected, writer.toString());
+  }
+
+  @Test
+  public void shouldEscapeTextAndAttributes() {
+    new StreamingXmlBuilder(writer)
+        .element("root")
+            .attribute("a", "<\"'&>")
+            .text("1 < 2 & 3 > 2")
+        .end();
+
+    assertEquals("XML", "<root a=\"&lt;&quot;&apos;&amp;&gt;\">1 &lt; 2 &amp; 3 &gt; 2</root>\n", writer.toString());
+  }
+
+  @Test
+  public void shouldDeclareNamespacesOnlyWhenTheyChange() {
+    new StreamingXmlBuilder(writer)
+        .namespace("urn:a")
+        .element("root")
+            .element("same")
+            .end()
+            .namespace("urn:b")
+            .element("other")
+                .attribute("attr", "value", "urn:c")
+            .end()
+        .end();
+
+    assertEquals("XML", "<root xmlns=\"urn:a\">\n  <same/>\n"
+        + "  <other xmlns=\"urn:b\" xmlns:ns3=\"urn:c\" ns3:attr=\"value\"/>\n</root>\n", writer.toString());
+  }
+
+  @Test
+  public void shouldWriteMultipleTopLevelElements() {
+    StreamingXmlBuilder builder = new StreamingXmlBuilder(writer, "  ");
+
+    builder.element("first", "1");
+    builder.element("second", "2");
+
+    assertEquals("XML", "  <first>1</first>\n  <second>2</second>\n", writer.toString());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldNotEndMoreElementsThanWereStarted() {
+    new StreamingXmlBuilder(writer)
+        .element("root")
+        .end()
+        .end();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldNotAddAttributesAfterContent() {
+    new StreamingXmlBuilder(writer)
+        .element("root")
+            .text(randomString())
+            .attribute(randomString(), randomString());
+  }
+
+}
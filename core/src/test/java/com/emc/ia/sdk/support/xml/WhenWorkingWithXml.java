@@ -4,14 +4,18 @@
 package com.emc.ia.sdk.support.xml;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
 
 import javax.validation.ValidationException;
 import javax.xml.XMLConstants;
+import javax.xml.validation.Schema;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -42,6 +46,30 @@ public class WhenWorkingWithXml extends TestCase {
     assertEquals("Formatted XML", expected, actual);
   }
 
+  @Test
+  public void shouldWriteSameXmlAsToString() {
+    Document document = XmlUtil.parse(toStream(XmlUtil.XML_DECLARATION
+        + "<root xmlns=\"urn:" + randomString(8) + "\" a=\"b\">\n  <child>text</child>\n  <child><grandChild/></child>\n"
+        + "</root>\n"));
+    StringWriter writer = new StringWriter();
+
+    XmlUtil.write(document.getDocumentElement(), writer, XmlUtil.Options.pretty("  "));
+
+    assertEquals("XML", XmlUtil.toString(document.getDocumentElement(), "  "), writer.toString());
+  }
+
+  @Test
+  public void shouldWriteCompactXml() {
+    Document document = XmlUtil.parse(toStream(
+        "<root a=\"b\">\n  <child>text</child>\n  <!-- comment -->\n  <child>\n    <grandChild/>\n  </child>\n</root>\n"));
+    StringWriter writer = new StringWriter();
+
+    XmlUtil.write(document, writer, XmlUtil.Options.compact());
+
+    assertEquals("XML", XmlUtil.XML_DECLARATION
+        + "<root a=\"b\"><child>text</child><!-- comment --><child><grandChild/></child></root>", writer.toString());
+  }
+
   private InputStream toStream(String text) {
     return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
   }
@@ -78,6 +106,24 @@ public class WhenWorkingWithXml extends TestCase {
     XmlUtil.validate(toStream(document), toStream(schema), randomString());
   }
 
+  @Test
+  public void shouldCompileSchemaOnlyOnce() {
+    Document schema = someSchema(randomString(8));
+
+    assertSame("Compiled schema", XmlUtil.getXmlSchema(toStream(schema)), XmlUtil.getXmlSchema(toStream(schema)));
+  }
+
+  @Test
+  public void shouldEvictLeastRecentlyUsedSchemas() {
+    Document schema = someSchema(randomString(8));
+    Schema compiled = XmlUtil.getXmlSchema(toStream(schema));
+    for (int i = 0; i < 100; i++) {
+      XmlUtil.getXmlSchema(toStream(someSchema(randomString(8))));
+    }
+
+    assertNotSame("Compiled schema", compiled, XmlUtil.getXmlSchema(toStream(schema)));
+  }
+
   @Test
   public void shouldThrowExceptionOnInvalidSchemaWhenValidating() throws IOException {
     Document document = XmlBuilder.newDocument().element(randomString(8)).build();
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sip.assembly.stringtemplate;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.stringtemplate.v4.AttributeRenderer;
+import org.stringtemplate.v4.ModelAdaptor;
+import org.stringtemplate.v4.STGroup;
+
+
+/**
+ * {@linkplain STGroup} that remembers which renderer and model adaptor apply to which type. StringTemplate looks these up
+ * for every attribute it renders, through synchronized maps that search the type hierarchy, which makes the lookups
+ * expensive and a point of contention between threads.
+ */
+class CachingSTGroup extends STGroup {
+
+  private final ConcurrentMap<Class<?>, Optional<AttributeRenderer>> renderersByType = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Class<?>, ModelAdaptor> adaptorsByType = new ConcurrentHashMap<>();
+
+  CachingSTGroup(char delimiterStartChar, char delimiterStopChar) {
+    super(delimiterStartChar, delimiterStopChar);
+  }
+
+  @Override
+  public void registerRenderer(Class<?> attributeType, AttributeRenderer renderer, boolean recursive) {
+    super.registerRenderer(attributeType, renderer, recursive);
+    renderersByType.clear();
+  }
+
+  @Override
+  public AttributeRenderer getAttributeRenderer(Class<?> attributeType) {
+    Optional<AttributeRenderer> result = renderersByType.get(attributeType);
+    if (result == null) {
+      result = Optional.ofNullable(super.getAttributeRenderer(attributeType));
+      renderersByType.put(attributeType, result);
+    }
+    return result.orElse(null);
+  }
+
+  @Override
+  public void registerModelAdaptor(Class<?> attributeType, ModelAdaptor adaptor) {
+    super.registerModelAdaptor(attributeType, adaptor);
+    adaptorsByType.clear();
+  }
+
+  @Override
+  public ModelAdaptor getModelAdaptor(Class<?> attributeType) {
+    ModelAdaptor result = adaptorsByType.get(attributeType);
+    if (result == null) {
+      result = super.getModelAdaptor(attributeType);
+      adaptorsByType.put(attributeType, result);
+    }
+    return result;
+  }
+
+}
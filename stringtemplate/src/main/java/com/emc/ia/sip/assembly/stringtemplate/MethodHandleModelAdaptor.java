@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2016 EMC Corporation. All Rights Reserved.
+ */
+package com.emc.ia.sip.assembly.stringtemplate;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.stringtemplate.v4.Interpreter;
+import org.stringtemplate.v4.ModelAdaptor;
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.misc.STNoSuchPropertyException;
+
+
+/**
+ * Resolves properties of domain objects the same way as StringTemplate's own {@linkplain ModelAdaptor} does: using a
+ * <code>get</code>, <code>is</code>, or <code>has</code> method, or a public field. Unlike StringTemplate's adaptor,
+ * this one caches the resolved accessors as {@linkplain MethodHandle}s per class and property, and doesn't need a lock
+ * to look them up.
+ */
+class MethodHandleModelAdaptor implements ModelAdaptor {
+
+  private static final MethodType ACCESSOR_TYPE = MethodType.methodType(Object.class, Object.class);
+  private static final MethodHandle NO_SUCH_PROPERTY = MethodHandles.constant(Object.class, null);
+  private static final ClassValue<ConcurrentMap<String, MethodHandle>> ACCESSORS =
+      new ClassValue<ConcurrentMap<String, MethodHandle>>() {
+        @Override
+        protected ConcurrentMap<String, MethodHandle> computeValue(Class<?> type) {
+          return new ConcurrentHashMap<>();
+        }
+      };
+
+  @Override
+  public Object getProperty(Interpreter interpreter, ST template, Object model, Object property, String propertyName)
+      throws STNoSuchPropertyException {
+    Objects.requireNonNull(model, "model");
+    if (property == null) {
+      throw new STNoSuchPropertyException(null, model, null);
+    }
+    Class<?> type = model.getClass();
+    ConcurrentMap<String, MethodHandle> accessors = ACCESSORS.get(type);
+    MethodHandle accessor = accessors.get(propertyName);
+    if (accessor == null) {
+      accessor = accessors.computeIfAbsent(propertyName, name -> findAccessor(type, name));
+    }
+    if (accessor == NO_SUCH_PROPERTY) { // NOPMD CompareObjectsWithEquals - Sentinel
+      throw new STNoSuchPropertyException(null, model, type.getName() + '.' + propertyName);
+    }
+    try {
+      return accessor.invokeExact(model);
+    } catch (RuntimeException e) {
+      throw new STNoSuchPropertyException(e, model, type.getName() + '.' + propertyName);
+    } catch (Throwable e) { // NOPMD AvoidCatchingThrowable - Required by MethodHandle.invokeExact()
+      throw new STNoSuchPropertyException(new IllegalStateException(e), model, type.getName() + '.' + propertyName);
+    }
+  }
+
+  private static MethodHandle findAccessor(Class<?> type, String propertyName) {
+    if (propertyName.isEmpty()) {
+      return NO_SUCH_PROPERTY;
+    }
+    String suffix = Character.toUpperCase(propertyName.charAt(0)) + propertyName.substring(1);
+    try {
+      for (String prefix : new String[] { "get", "is", "has" }) {
+        Method method = findMethod(type, prefix + suffix);
+        if (method != null) {
+          return lookup(method).unreflect(method).asType(ACCESSOR_TYPE);
+        }
+      }
+      Field field = type.getField(propertyName);
+      return lookup(field).unreflectGetter(field).asType(ACCESSOR_TYPE);
+    } catch (NoSuchFieldException | IllegalAccessException e) {
+      return NO_SUCH_PROPERTY;
+    }
+  }
+
+  private static Method findMethod(Class<?> type, String name) {
+    try {
+      return type.getMethod(name);
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  private static MethodHandles.Lookup lookup(AccessibleObject member) {
+    try {
+      member.setAccessible(true);
+    } catch (RuntimeException e) {
+      // Public members of inaccessible classes may still work
+      return MethodHandles.publicLookup();
+    }
+    return MethodHandles.lookup();
+  }
+
+}
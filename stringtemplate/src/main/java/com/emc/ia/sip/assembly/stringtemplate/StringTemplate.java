@@ -3,17 +3,22 @@
  */
 package com.emc.ia.sip.assembly.stringtemplate;
 
+import java.io.CharArrayWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
+import java.io.Writer;
 import java.util.Date;
 import java.util.Map;
 
 import org.stringtemplate.v4.AttributeRenderer;
+import org.stringtemplate.v4.InstanceScope;
+import org.stringtemplate.v4.Interpreter;
 import org.stringtemplate.v4.ModelAdaptor;
 import org.stringtemplate.v4.NoIndentWriter;
 import org.stringtemplate.v4.ST;
 import org.stringtemplate.v4.STGroup;
+import org.stringtemplate.v4.STWriter;
 
 import com.emc.ia.sdk.sip.assembly.ContentInfo;
 import com.emc.ia.sdk.sip.assembly.DigitalObject;
@@ -29,6 +34,10 @@ import com.emc.ia.sdk.sip.assembly.Template;
  * <dt><code>content</code></dt>
  * <dd>The reference information and the encoded hashes of the {@linkplain DigitalObject}s associated with the domain object, if any</dd>
  * </dl>
+ * <p>
+ * When rendering many rows, consider {@linkplain #setHighThroughput(boolean) high-throughput mode}, in which each
+ * thread reuses a single template instance, interpreter, and writer for all rows, and properties of domain objects are
+ * resolved through cached method handles. Regular mode uses StringTemplate's own model adaptor and group.
  * @param <D> The type of domain object to replace with text
  */
 public class StringTemplate<D> extends FixedHeaderAndFooterTemplate<D> {
@@ -39,7 +48,13 @@ public class StringTemplate<D> extends FixedHeaderAndFooterTemplate<D> {
   private static final String MODEL_VARIABLE = "model";
   private static final String CONTENT_VARIABLE = "content";
 
+  private final String row;
+  private final char delimeterStart;
+  private final char delimeterEnd;
   private final ST templatePrototype;
+  private ST highThroughputPrototype;
+  private final ThreadLocal<Renderer> renderers = new ThreadLocal<>();
+  private boolean highThroughput;
 
   /**
    * Create an instance.
@@ -72,11 +87,13 @@ public class StringTemplate<D> extends FixedHeaderAndFooterTemplate<D> {
    */
   public StringTemplate(String header, String footer, String row, char delimeterStart, char delimeterEnd) {
     super(header, footer);
-    this.templatePrototype = compileTemplate(row, delimeterStart, delimeterEnd);
+    this.row = row;
+    this.delimeterStart = delimeterStart;
+    this.delimeterEnd = delimeterEnd;
+    this.templatePrototype = compileTemplate(new STGroup(delimeterStart, delimeterEnd));
   }
 
-  private ST compileTemplate(String row, char delimeterStartChar, char delimeterEndChar) {
-    STGroup group = new STGroup(delimeterStartChar, delimeterEndChar);
+  private ST compileTemplate(STGroup group) {
     prepareGroup(group);
     group.defineTemplate(TEMPLATE_NAME, MODEL_VARIABLE + ',' + CONTENT_VARIABLE, row);
     return group.getInstanceOf(TEMPLATE_NAME);
@@ -89,10 +106,15 @@ public class StringTemplate<D> extends FixedHeaderAndFooterTemplate<D> {
    * <li>an {@linkplain XmlDateRenderer} which renders Date instances into the standard XML date and time format</li>
    * <li>an {@linkplain MapModelAdaptor} which allows {@linkplain java.util.Map} to be used transparently as domain
    * objects.</li>
+   * <li>in {@linkplain #setHighThroughput(boolean) high-throughput mode} only, a {@linkplain MethodHandleModelAdaptor}
+   * which resolves properties of other domain objects through cached method handles.</li>
    * </ul>
    * @param group The template group
    */
   protected void prepareGroup(STGroup group) {
+    if (group instanceof CachingSTGroup) {
+      registerAdaptor(group, Object.class, new MethodHandleModelAdaptor());
+    }
     registerAdaptor(group, Map.class, new MapModelAdaptor());
     registerRenderer(group, Date.class, new XmlDateRenderer());
   }
@@ -119,12 +141,49 @@ public class StringTemplate<D> extends FixedHeaderAndFooterTemplate<D> {
     group.registerRenderer(type, attributeRenderer);
   }
 
+  /**
+   * Set whether to render rows in high-throughput mode. In this mode, each thread renders all its rows using a single
+   * template instance, interpreter, and writer, rather than creating new ones for every row. Since the template
+   * instance is reused, {@linkplain #prepareTemplate(ST, Object, Map)} is not called in this mode.
+   * <p>
+   * The row template is compiled again for this mode, in a group that caches which renderer and model adaptor apply to
+   * which type, and with a {@linkplain MethodHandleModelAdaptor} that resolves properties of domain objects instead of
+   * StringTemplate's own adaptor.
+   * @param highThroughput Whether to use high-throughput mode
+   */
+  public void setHighThroughput(boolean highThroughput) {
+    if (highThroughput && highThroughputPrototype == null) {
+      highThroughputPrototype = compileTemplate(new CachingSTGroup(delimeterStart, delimeterEnd));
+    }
+    this.highThroughput = highThroughput;
+  }
+
   @Override
   public void writeRow(D domainObject, Map<String, ContentInfo> contentInfo, PrintWriter writer) throws IOException {
+    if (highThroughput) {
+      renderRow(domainObject, contentInfo, writer);
+      return;
+    }
     ST template = prepareTemplate(templatePrototype, domainObject, contentInfo);
     template.write(new NoIndentWriter(writer));
   }
 
+  private void renderRow(D domainObject, Map<String, ContentInfo> contentInfo, PrintWriter writer)
+      throws IOException {
+    Renderer renderer = renderers.get();
+    if (renderer == null) {
+      renderer = new Renderer(highThroughputPrototype);
+      renderers.set(renderer);
+    }
+    try {
+      renderer.render(domainObject, contentInfo, writer);
+    } catch (RuntimeException e) {
+      // Don't reuse an interpreter that may have been left in an inconsistent state
+      renderers.remove();
+      throw e;
+    }
+  }
+
   /**
    * Prepares the template by adding the variables.
    * @param prototype The template prototype
@@ -139,4 +198,56 @@ public class StringTemplate<D> extends FixedHeaderAndFooterTemplate<D> {
     return template;
   }
 
+
+  /**
+   * Renders rows for a single thread, reusing the same template instance, interpreter, and writer. Rows are rendered
+   * into a buffer and written out in one go, since the output writer may have a considerable overhead per call.
+   */
+  private static final class Renderer {
+
+    private final ReusableTemplate template;
+    private final Interpreter interpreter;
+    private final CharArrayWriter row = new CharArrayWriter();
+    private final STWriter writer = new NoIndentWriter(row);
+
+    Renderer(ST prototype) {
+      template = new ReusableTemplate(prototype);
+      interpreter = new Interpreter(prototype.groupThatCreatedThisInstance, prototype.impl.nativeGroup.errMgr, false);
+    }
+
+    void render(Object domainObject, Object contentInfo, Writer output) throws IOException {
+      template.set(domainObject, contentInfo);
+      try {
+        interpreter.exec(writer, new InstanceScope(null, template));
+        row.writeTo(output);
+      } finally {
+        template.set(null, null);
+        row.reset();
+      }
+    }
+
+  }
+
+
+  /**
+   * Template instance whose attributes can be replaced rather than added to.
+   */
+  private static final class ReusableTemplate extends ST {
+
+    private final int modelIndex;
+    private final int contentIndex;
+
+    ReusableTemplate(ST prototype) {
+      super(prototype);
+      modelIndex = impl.formalArguments.get(MODEL_VARIABLE).index;
+      contentIndex = impl.formalArguments.get(CONTENT_VARIABLE).index;
+    }
+
+    void set(Object model, Object content) {
+      locals[modelIndex] = model == null ? ST.EMPTY_ATTR : model;
+      locals[contentIndex] = content == null ? ST.EMPTY_ATTR : content;
+    }
+
+  }
+
 }
@@ -4,18 +4,25 @@
 package com.emc.ia.sip.assembly.stringtemplate;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.Test;
+import org.stringtemplate.v4.ModelAdaptor;
+import org.stringtemplate.v4.STGroup;
+import org.stringtemplate.v4.misc.ObjectModelAdaptor;
 
+import com.emc.ia.sdk.sip.assembly.ContentInfo;
 import com.emc.ia.sdk.sip.assembly.Template;
 import com.emc.ia.sdk.support.datetime.Dates;
 import com.emc.ia.sdk.support.test.TestCase;
@@ -47,4 +54,66 @@ public class WhenReplacingPatternsUsingStringTemplate extends TestCase {
     assertEquals("Text", prefix + value1 + infix + value2  + Dates.toIso(date) + suffix, actual.toString());
   }
 
+  @Test
+  public void shouldRenderSameRowsInHighThroughputMode() throws IOException {
+    String row = "<p id=\"$model.id$\" active=\"$model.active$\">$model.name$$content:{k|<c>$k$</c>}$</p>\n";
+    StringTemplate<Person> regular = new StringTemplate<>(randomString(), randomString(), row);
+    StringTemplate<Person> highThroughput = new StringTemplate<>(randomString(), randomString(), row);
+    highThroughput.setHighThroughput(true);
+    StringWriter expected = new StringWriter();
+    StringWriter actual = new StringWriter();
+    PrintWriter expectedWriter = new PrintWriter(expected);
+    PrintWriter actualWriter = new PrintWriter(actual);
+
+    for (int i = 0; i < 3; i++) {
+      Person person = new Person(i, randomString(), i % 2 == 0);
+      Map<String, ContentInfo> contentInfo = i == 1 ? Collections.emptyMap()
+          : Collections.singletonMap(randomString(), new ContentInfo(randomString(), Collections.emptyList()));
+      regular.writeRow(person, contentInfo, expectedWriter);
+      highThroughput.writeRow(person, contentInfo, actualWriter);
+    }
+
+    assertTrue("Properties", expected.toString().startsWith("<p id=\"0\" active=\"true\">"));
+    assertEquals("Rows", expected.toString(), actual.toString());
+  }
+
+  @Test
+  public void shouldUseOwnModelAdaptorOnlyInHighThroughputMode() {
+    List<ModelAdaptor> adaptors = new ArrayList<>();
+    StringTemplate<Person> template = new StringTemplate<Person>(randomString(), randomString(), "$model.name$") {
+      @Override
+      protected void prepareGroup(STGroup group) {
+        super.prepareGroup(group);
+        adaptors.add(group.getModelAdaptor(Person.class));
+      }
+    };
+    assertTrue("Regular mode", adaptors.get(0) instanceof ObjectModelAdaptor);
+
+    template.setHighThroughput(true);
+    assertTrue("High-throughput mode", adaptors.get(1) instanceof MethodHandleModelAdaptor);
+  }
+
+
+  public static class Person {
+
+    public final String name;
+    private final int id;
+    private final boolean active;
+
+    public Person(int id, String name, boolean active) {
+      this.id = id;
+      this.name = name;
+      this.active = active;
+    }
+
+    public int getId() {
+      return id;
+    }
+
+    public boolean isActive() {
+      return active;
+    }
+
+  }
+
 }
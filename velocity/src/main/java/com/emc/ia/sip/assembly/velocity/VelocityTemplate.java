@@ -6,12 +6,18 @@ package com.emc.ia.sip.assembly.velocity;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.velocity.Template;
-import org.apache.velocity.VelocityContext;
 import org.apache.velocity.app.Velocity;
 import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.context.AbstractContext;
 import org.apache.velocity.runtime.resource.loader.StringResourceLoader;
 import org.apache.velocity.runtime.resource.util.StringResourceRepository;
 
@@ -30,11 +36,28 @@ import com.emc.ia.sdk.sip.assembly.FixedHeaderAndFooterTemplate;
  * <dt><code>isodate</code></dt>
  *   <dd>A utility class to format a date in ISO 8601 format using the <code>format()</code> function</dd>
  * </dl>
+ * <p>
+ * All instances share a single Velocity engine, and instances with the same row template share the compiled template,
+ * as long as it's among the most recently compiled ones. Rows can be written from multiple threads at the same time;
+ * each thread reuses its own context to do so. A row may write another row, e.g. from a method of its model.
  * @param <D> The type of domain object to replace with text
  */
 public class VelocityTemplate<D> extends FixedHeaderAndFooterTemplate<D> {
 
   private static final String TEMPLATE_NAME = VelocityTemplate.class.getName();
+  private static final VelocityEngine ENGINE = newEngine();
+  private static final int MAX_TEMPLATES = 64;
+  private static final Map<String, Template> TEMPLATES = Collections.synchronizedMap(
+      new LinkedHashMap<String, Template>(16, 0.75f, true) {
+        private static final long serialVersionUID = 7021540318374265017L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Template> eldest) {
+          return size() > MAX_TEMPLATES;
+        }
+      });
+  private static final AtomicLong TEMPLATE_NUMBER = new AtomicLong();
+  private static final ThreadLocal<RowContext> CONTEXTS = ThreadLocal.withInitial(RowContext::new);
 
   private final Template template;
 
@@ -56,25 +79,188 @@ public class VelocityTemplate<D> extends FixedHeaderAndFooterTemplate<D> {
    */
   public VelocityTemplate(String header, String footer, String row) {
     super(header, footer);
-    VelocityEngine engine = new VelocityEngine();
-    engine.setProperty(Velocity.RESOURCE_LOADER, "string");
-    engine.addProperty("string.resource.loader.class", StringResourceLoader.class.getName());
-    engine.addProperty("string.resource.loader.repository.static", "false");
-    engine.init();
-    StringResourceRepository repository = (StringResourceRepository)engine.getApplicationAttribute(
+    template = TEMPLATES.computeIfAbsent(row, VelocityTemplate::compile);
+  }
+
+  private static VelocityEngine newEngine() {
+    VelocityEngine result = new VelocityEngine();
+    result.setProperty(Velocity.RESOURCE_LOADER, "string");
+    result.addProperty("string.resource.loader.class", StringResourceLoader.class.getName());
+    result.addProperty("string.resource.loader.repository.static", "false");
+    result.init();
+    return result;
+  }
+
+  private static Template compile(String row) {
+    StringResourceRepository repository = (StringResourceRepository)ENGINE.getApplicationAttribute(
         StringResourceLoader.REPOSITORY_NAME_DEFAULT);
-    repository.putStringResource(TEMPLATE_NAME, row);
-    template = engine.getTemplate(TEMPLATE_NAME);
+    String name = TEMPLATE_NAME + '-' + TEMPLATE_NUMBER.incrementAndGet();
+    repository.putStringResource(name, row);
+    try {
+      return ENGINE.getTemplate(name);
+    } finally {
+      // The compiled template is cached by us, so there is no need to keep the source around
+      repository.removeStringResource(name);
+    }
   }
 
   @Override
   public void writeRow(D domainObject, Map<String, ContentInfo> contentInfo, PrintWriter writer)
       throws IOException {
-    VelocityContext context = new VelocityContext();
-    context.put("isodate", new DatesTool());
-    context.put("model", domainObject);
-    context.put("content", contentInfo);
-    template.merge(context, writer);
+    RowContext context = CONTEXTS.get();
+    RowContext.Row outerRow = context.start(domainObject, contentInfo);
+    try {
+      template.merge(context, writer);
+    } finally {
+      context.end(outerRow);
+    }
+  }
+
+
+  /**
+   * Context for rendering rows on a single thread. The objects available to every row are kept in fields, so that
+   * they can be looked up and replaced without allocating. Anything else, like variables that a template
+   * <code>#set</code>s, is forgotten after each row, just like it would be with a fresh context. When a row is written
+   * while another one is being written on the same thread, the outer row's objects are saved and restored afterwards.
+   */
+  private static final class RowContext extends AbstractContext {
+
+    private static final String MODEL = "model";
+    private static final String CONTENT = "content";
+    private static final String ISODATE = "isodate";
+
+    private final DatesTool datesTool = new DatesTool();
+    private Object model;
+    private Object content;
+    private Object isodate;
+    private Map<String, Object> others;
+    private boolean writing;
+
+    /**
+     * Start writing a row.
+     * @return The objects of the row that is being written already, or <code>null</code> if there is none
+     */
+    Row start(Object domainObject, Object contentInfo) {
+      Row result = null;
+      if (writing) {
+        result = new Row(model, content, isodate, others);
+        others = null;
+      }
+      writing = true;
+      model = domainObject;
+      content = contentInfo;
+      isodate = datesTool;
+      return result;
+    }
+
+    void end(Row outerRow) {
+      if (outerRow == null) {
+        writing = false;
+        model = null;
+        content = null;
+        isodate = null;
+        if (others != null) {
+          others.clear();
+        }
+      } else {
+        model = outerRow.model;
+        content = outerRow.content;
+        isodate = outerRow.isodate;
+        others = outerRow.others;
+      }
+    }
+
+    @Override
+    public Object internalGet(String key) {
+      switch (key) {
+        case MODEL:
+          return model;
+        case CONTENT:
+          return content;
+        case ISODATE:
+          return isodate;
+        default:
+          return others == null ? null : others.get(key);
+      }
+    }
+
+    @Override
+    public Object internalPut(String key, Object value) {
+      Object result = internalGet(key);
+      switch (key) {
+        case MODEL:
+          model = value;
+          break;
+        case CONTENT:
+          content = value;
+          break;
+        case ISODATE:
+          isodate = value;
+          break;
+        default:
+          if (others == null) {
+            others = new HashMap<>();
+          }
+          others.put(key, value);
+          break;
+      }
+      return result;
+    }
+
+    @Override
+    public boolean internalContainsKey(Object key) {
+      return key instanceof String && internalGet((String)key) != null;
+    }
+
+    @Override
+    public Object[] internalGetKeys() {
+      List<Object> result = new ArrayList<>();
+      for (String key : new String[] { MODEL, CONTENT, ISODATE }) {
+        if (internalGet(key) != null) {
+          result.add(key);
+        }
+      }
+      if (others != null) {
+        result.addAll(others.keySet());
+      }
+      return result.toArray();
+    }
+
+    @Override
+    public Object internalRemove(Object key) {
+      if (!(key instanceof String)) {
+        return null;
+      }
+      String name = (String)key;
+      Object result = internalGet(name);
+      if (MODEL.equals(name) || CONTENT.equals(name) || ISODATE.equals(name)) {
+        internalPut(name, null);
+      } else if (others != null) {
+        others.remove(name);
+      }
+      return result;
+    }
+
+
+    /**
+     * The objects of a row whose writing was interrupted to write another row.
+     */
+    private static final class Row {
+
+      private final Object model;
+      private final Object content;
+      private final Object isodate;
+      private final Map<String, Object> others;
+
+      Row(Object model, Object content, Object isodate, Map<String, Object> others) {
+        this.model = model;
+        this.content = content;
+        this.isodate = isodate;
+        this.others = others;
+      }
+
+    }
+
   }
 
 }
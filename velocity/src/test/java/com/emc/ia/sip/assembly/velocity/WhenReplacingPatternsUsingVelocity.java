@@ -13,6 +13,12 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.junit.Test;
 
@@ -48,8 +54,88 @@ public class WhenReplacingPatternsUsingVelocity extends TestCase {
     assertEquals("Text", prefix + value1 + infix + value2 + ' ' + Dates.toIso(value3) + suffix, actual.toString());
   }
 
+  @Test
+  public void shouldNotRememberVariablesBetweenRows() throws IOException {
+    Template<String> template = new VelocityTemplate<>("", "",
+        "#if($previous)$previous#else-#end#set($previous = $model)");
+    Writer actual = new StringWriter();
+    PrintWriter writer = new PrintWriter(actual);
+
+    template.writeRow("a", Collections.emptyMap(), writer);
+    template.writeRow("b", Collections.emptyMap(), writer);
+
+    assertEquals("Text", "--", actual.toString());
+  }
+
+  @Test
+  public void shouldRestoreRowAfterWritingNestedRow() throws IOException {
+    Template<String> inner = new VelocityTemplate<>("", "", "#set($variable = 'i')$model$variable");
+    Template<NestingModel> outer = new VelocityTemplate<>("", "",
+        "#set($variable = 'o')$model.name:$model.nested:$model.name$variable");
+    Writer actual = new StringWriter();
+
+    outer.writeRow(new NestingModel("outer", inner), Collections.emptyMap(), new PrintWriter(actual));
+
+    assertEquals("Text", "outer:nestedi:outero", actual.toString());
+  }
+
+  @Test
+  public void shouldWriteRowsFromMultipleThreads() throws Exception {
+    int numThreads = 4;
+    int numRows = 1000;
+    Template<Map<String, Object>> template = new VelocityTemplate<>("", "",
+        "<row>$model.id</row>$isodate.format($model.date)\n");
+    Date date = new Date();
+    String expected = IntStream.range(0, numRows)
+        .mapToObj(i -> "<row>" + i + "</row>" + Dates.toIso(date) + '\n')
+        .collect(Collectors.joining());
+    Callable<String> writeRows = () -> {
+      Writer actual = new StringWriter();
+      PrintWriter writer = new PrintWriter(actual);
+      for (int i = 0; i < numRows; i++) {
+        Map<String, Object> values = new HashMap<>();
+        values.put("id", i);
+        values.put("date", date);
+        template.writeRow(values, Collections.emptyMap(), writer);
+      }
+      return actual.toString();
+    };
+
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      for (Future<String> result : executor.invokeAll(Collections.nCopies(numThreads, writeRows))) {
+        assertEquals("Rows", expected, result.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
   private String someString(char prefix) {
     return prefix + randomString(7);
   }
 
+
+  public static class NestingModel {
+
+    private final String name;
+    private final Template<String> nestedTemplate;
+
+    NestingModel(String name, Template<String> nestedTemplate) {
+      this.name = name;
+      this.nestedTemplate = nestedTemplate;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public String getNested() throws IOException {
+      Writer result = new StringWriter();
+      nestedTemplate.writeRow("nested", Collections.emptyMap(), new PrintWriter(result));
+      return result.toString();
+    }
+
+  }
+
 }